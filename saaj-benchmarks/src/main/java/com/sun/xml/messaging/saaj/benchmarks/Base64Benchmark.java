@@ -0,0 +1,158 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package com.sun.xml.messaging.saaj.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.bind.DatatypeConverter;
+
+import com.sun.xml.messaging.saaj.packaging.mime.util.BASE64DecoderStream;
+import com.sun.xml.messaging.saaj.packaging.mime.util.BASE64EncoderInputStream;
+import com.sun.xml.messaging.saaj.packaging.mime.util.BASE64EncoderStream;
+import com.sun.xml.messaging.saaj.util.Base64;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Base64 transcoding of an attachment of {@link #size} bytes, with the
+ * codec on arrays and through the MIME streams. {@code DatatypeConverter}
+ * is the reference. Throughput is {@code size} divided by the average
+ * time.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class Base64Benchmark {
+
+    @Param({"1048576"})
+    public int size;
+
+    private byte[] data;
+    private byte[] mime;
+    private byte[] encodeBuffer;
+    private byte[] decodeBuffer;
+    private byte[] readBuffer = new byte[8192];
+
+    @Setup
+    public void setup() {
+        data = new byte[size];
+        new Random(42).nextBytes(data);
+        mime = new byte[Base64.encodedLength(size, 76)];
+        Base64.encode(data, 0, size, mime, 0, 76);
+        encodeBuffer = new byte[mime.length];
+        decodeBuffer = new byte[size + 3];
+    }
+
+    @Benchmark
+    public int encodeArray() {
+        return Base64.encode(data, 0, data.length, encodeBuffer, 0, 76);
+    }
+
+    @Benchmark
+    public int decodeArray() {
+        return Base64.decode(mime, 0, mime.length, decodeBuffer, 0);
+    }
+
+    @Benchmark
+    public String encodeReference() {
+        return DatatypeConverter.printBase64Binary(data);
+    }
+
+    @Benchmark
+    public long encoderStream() throws IOException {
+        Sink sink = new Sink();
+        OutputStream out = new BASE64EncoderStream(sink);
+        for (int off = 0; off < data.length; off += 8192) {
+            out.write(data, off, Math.min(8192, data.length - off));
+        }
+        out.flush();
+        return sink.count;
+    }
+
+    @Benchmark
+    public long encoderInputStream() throws IOException {
+        return drain(new BASE64EncoderInputStream(new ByteArrayInputStream(data)));
+    }
+
+    @Benchmark
+    public long decoderStream() throws IOException {
+        return drain(new BASE64DecoderStream(new ByteArrayInputStream(mime)));
+    }
+
+    private long drain(InputStream in) throws IOException {
+        long count = 0;
+        for (int n; (n = in.read(readBuffer)) != -1;) {
+            count += n;
+        }
+        return count;
+    }
+
+    private static final class Sink extends OutputStream {
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
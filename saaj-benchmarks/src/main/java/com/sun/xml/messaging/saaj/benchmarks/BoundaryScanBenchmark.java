@@ -0,0 +1,167 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package com.sun.xml.messaging.saaj.benchmarks;
+
+import java.io.FilterInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import javax.activation.DataSource;
+
+import com.sun.xml.messaging.saaj.packaging.mime.internet.BMMimeMultipart;
+import com.sun.xml.messaging.saaj.packaging.mime.internet.ContentType;
+import com.sun.xml.messaging.saaj.packaging.mime.internet.MimeMultipart;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Boundary scanning of {@code BMMimeMultipart} against the window at a time
+ * scanner it replaced ({@link LegacyBMMimeMultipart}), parsing a multipart
+ * stream with a single part of 1 MB to 1 GB.
+ *
+ * With a {@link Shared} source the parts are views of the stream and only
+ * the scanning is measured. A {@link Copying} source hides the
+ * {@code SharedInputStream} interface, so part bodies are copied out as
+ * they are for a transport stream; it stops at 256 MB, the largest body a
+ * {@code ByteOutputStream} can double its buffer for.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class BoundaryScanBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Shared {
+        @Param({"1048576", "16777216", "268435456", "1073741824"})
+        public long size;
+
+        DataSource source() {
+            return new Source(size, true);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Copying {
+        @Param({"1048576", "16777216", "268435456"})
+        public long size;
+
+        DataSource source() {
+            return new Source(size, false);
+        }
+    }
+
+    @Benchmark
+    public int bulkShared(Shared s) throws Exception {
+        return parse(new BMMimeMultipart(s.source(), contentType()));
+    }
+
+    @Benchmark
+    public int legacyShared(Shared s) throws Exception {
+        return parse(new LegacyBMMimeMultipart(s.source(), contentType()));
+    }
+
+    @Benchmark
+    public int bulkCopying(Copying s) throws Exception {
+        return parse(new BMMimeMultipart(s.source(), contentType()));
+    }
+
+    @Benchmark
+    public int legacyCopying(Copying s) throws Exception {
+        return parse(new LegacyBMMimeMultipart(s.source(), contentType()));
+    }
+
+    private static ContentType contentType() throws Exception {
+        return new ContentType(GeneratedMultipart.contentType());
+    }
+
+    private static int parse(MimeMultipart mp) throws Exception {
+        return mp.getCount() + mp.getBodyPart(0).getSize();
+    }
+
+    private static final class Source implements DataSource {
+        private final long size;
+        private final boolean shared;
+
+        Source(long size, boolean shared) {
+            this.size = size;
+            this.shared = shared;
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            InputStream in = new GeneratedMultipart(size);
+            // a plain stream, buffered by the parser
+            return shared ? in : new FilterInputStream(in) {
+                @Override
+                public boolean markSupported() {
+                    return false;
+                }
+            };
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String getContentType() {
+            return GeneratedMultipart.contentType();
+        }
+
+        @Override
+        public String getName() {
+            return "";
+        }
+    }
+}
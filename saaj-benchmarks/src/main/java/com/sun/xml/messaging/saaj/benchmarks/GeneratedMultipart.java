@@ -0,0 +1,189 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package com.sun.xml.messaging.saaj.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+
+import com.sun.xml.messaging.saaj.packaging.mime.internet.SharedInputStream;
+
+/**
+ * A multipart stream with a single binary part of arbitrary size, generated
+ * on the fly from a 1 MB block of random bytes so that even gigabyte bodies
+ * take no heap. It implements {@link SharedInputStream}, so parsed parts
+ * are views of it rather than copies.
+ */
+final class GeneratedMultipart extends InputStream implements SharedInputStream {
+
+    private static final Charset US_ASCII = Charset.forName("US-ASCII");
+    private static final byte[] BLOCK = Payloads.binary(1024 * 1024);
+
+    private final byte[] head;
+    private final byte[] tail;
+    private final long bodySize;
+
+    private final long start;
+    private final long end;
+    private long pos;
+    private long mark;
+
+    GeneratedMultipart(long bodySize) {
+        this(("--" + Payloads.BOUNDARY + "\r\n"
+                + "Content-Type: application/octet-stream\r\n"
+                + "Content-ID: <data>\r\n\r\n").getBytes(US_ASCII),
+                ("\r\n--" + Payloads.BOUNDARY + "--\r\n").getBytes(US_ASCII),
+                bodySize, 0, -1);
+    }
+
+    private GeneratedMultipart(byte[] head, byte[] tail, long bodySize, long start, long end) {
+        this.head = head;
+        this.tail = tail;
+        this.bodySize = bodySize;
+        this.start = start;
+        this.end = (end == -1) ? head.length + bodySize + tail.length : end;
+        this.pos = start;
+        this.mark = start;
+    }
+
+    static String contentType() {
+        return "multipart/related; boundary=\"" + Payloads.BOUNDARY + "\"";
+    }
+
+    @Override
+    public int read() {
+        if (pos >= end) {
+            return -1;
+        }
+        byte[] b = new byte[1];
+        copy(pos++, b, 0, 1);
+        return b[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+        if (pos >= end) {
+            return -1;
+        }
+        int n = (int) Math.min(len, end - pos);
+        copy(pos, b, off, n);
+        pos += n;
+        return n;
+    }
+
+    @Override
+    public long skip(long n) {
+        long skipped = Math.max(0, Math.min(n, end - pos));
+        pos += skipped;
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return (int) Math.min(Integer.MAX_VALUE, end - pos);
+    }
+
+    @Override
+    public boolean markSupported() {
+        return true;
+    }
+
+    @Override
+    public void mark(int readlimit) {
+        mark = pos;
+    }
+
+    @Override
+    public void reset() {
+        pos = mark;
+    }
+
+    @Override
+    public long getPosition() {
+        return pos - start;
+    }
+
+    @Override
+    public InputStream newStream(long from, long to) {
+        return new GeneratedMultipart(head, tail, bodySize,
+                start + from, (to == -1) ? end : start + to);
+    }
+
+    @Override
+    public void writeTo(long from, long to, OutputStream out) {
+        byte[] buf = new byte[8192];
+        long p = start + from;
+        long limit = (to == -1) ? end : start + to;
+        try {
+            while (p < limit) {
+                int n = (int) Math.min(buf.length, limit - p);
+                copy(p, buf, 0, n);
+                out.write(buf, 0, n);
+                p += n;
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void copy(long p, byte[] b, int off, int len) {
+        while (len > 0) {
+            int n;
+            if (p < head.length) {
+                n = (int) Math.min(len, head.length - p);
+                System.arraycopy(head, (int) p, b, off, n);
+            } else if (p < head.length + bodySize) {
+                long q = p - head.length;
+                int i = (int) (q % BLOCK.length);
+                n = (int) Math.min(Math.min(len, BLOCK.length - i), bodySize - q);
+                System.arraycopy(BLOCK, i, b, off, n);
+            } else {
+                int i = (int) (p - head.length - bodySize);
+                n = Math.min(len, tail.length - i);
+                System.arraycopy(tail, i, b, off, n);
+            }
+            p += n;
+            off += n;
+            len -= n;
+        }
+    }
+}
@@ -0,0 +1,607 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package com.sun.xml.messaging.saaj.benchmarks;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.BitSet;
+
+import javax.activation.DataSource;
+
+import com.sun.xml.messaging.saaj.packaging.mime.MessagingException;
+import com.sun.xml.messaging.saaj.packaging.mime.internet.ContentType;
+import com.sun.xml.messaging.saaj.packaging.mime.internet.InternetHeaders;
+import com.sun.xml.messaging.saaj.packaging.mime.internet.MimeBodyPart;
+import com.sun.xml.messaging.saaj.packaging.mime.internet.MimeMultipart;
+import com.sun.xml.messaging.saaj.packaging.mime.internet.SharedInputStream;
+import com.sun.xml.messaging.saaj.packaging.mime.util.ASCIIUtility;
+import com.sun.xml.messaging.saaj.util.ByteOutputStream;
+
+/**
+ * The parsing part of {@code BMMimeMultipart} as it was before its boundary
+ * scanner worked on a bulk buffer: the stream is searched one
+ * boundary-length window at a time with {@code mark}, {@code reset} and
+ * {@code skip}. Kept only as the baseline of {@link BoundaryScanBenchmark}.
+ */
+class LegacyBMMimeMultipart extends MimeMultipart {
+
+    private boolean begining = true;
+
+    int[] bcs = new int[256];
+    int[] gss = null;
+    private static final int BUFFER_SIZE = 4096;
+    private byte[] buffer = new byte[BUFFER_SIZE];
+    private byte[] prevBuffer = new byte[BUFFER_SIZE];
+    private BitSet lastPartFound = new BitSet(1);
+
+    private InputStream in = null;
+    private String boundary = null;
+    int b = 0;
+
+    LegacyBMMimeMultipart(DataSource ds, ContentType ct)
+            throws MessagingException {
+        super(ds, ct);
+        boundary = ct.getParameter("boundary");
+    }
+
+    private InputStream initStream() throws MessagingException {
+        if (in == null) {
+            try {
+                in = ds.getInputStream();
+                if (!(in instanceof ByteArrayInputStream) &&
+                        !(in instanceof BufferedInputStream) &&
+                        !(in instanceof SharedInputStream))
+                    in = new BufferedInputStream(in);
+            } catch (Exception ex) {
+                throw new MessagingException("No inputstream from datasource");
+            }
+        }
+        return in;
+    }
+
+    @Override
+    protected void parse() throws MessagingException {
+        if (parsed)
+            return;
+
+        initStream();
+
+        SharedInputStream sin = null;
+        if (in instanceof SharedInputStream) {
+            sin = (SharedInputStream) in;
+        }
+
+        String bnd = "--" + boundary;
+        byte[] bndbytes = ASCIIUtility.getBytes(bnd);
+        try {
+            parse(in, bndbytes, sin);
+        } catch (IOException ioex) {
+            throw new MessagingException("IO Error", ioex);
+        } catch (Exception ex) {
+            throw new MessagingException("Error", ex);
+        }
+
+        parsed = true;
+    }
+
+    public boolean lastBodyPartFound() {
+        return lastPartFound.get(0);
+    }
+
+    public MimeBodyPart getNextPart(
+            InputStream stream, byte[] pattern, SharedInputStream sin)
+            throws Exception {
+
+        if (!stream.markSupported()) {
+            throw new Exception("InputStream does not support Marking");
+        }
+
+        if (begining) {
+            compile(pattern);
+            if (!skipPreamble(stream, pattern, sin)) {
+                throw new Exception(
+                        "Missing Start Boundary, or boundary does not start on a new line");
+            }
+            begining = false;
+        }
+
+        if (lastBodyPartFound()) {
+            throw new Exception("No parts found in Multipart InputStream");
+        }
+
+        if (sin != null) {
+            long start = sin.getPosition();
+            b = readHeaders(stream);
+            if (b == -1) {
+                throw new Exception(
+                        "End of Stream encountered while reading part headers");
+            }
+            long[] v = new long[1];
+            v[0] = -1; // just to ensure the code later sets it correctly
+            b = readBody(stream, pattern, v, null, sin);
+            // looks like this check has to be disabled
+            // it is allowed to have Mime Package without closing boundary
+            if (!ignoreMissingEndBoundary) {
+                if ((b == -1) && !lastBodyPartFound()) {
+                    throw new MessagingException("Missing End Boundary for Mime Package : EOF while skipping headers");
+                }
+            }
+            long end = v[0];
+            MimeBodyPart mbp = createMimeBodyPart(sin.newStream(start, end));
+            addBodyPart(mbp);
+            return mbp;
+
+        } else {
+            InternetHeaders headers = createInternetHeaders(stream);
+            ByteOutputStream baos = new ByteOutputStream();
+            b = readBody(stream, pattern, null, baos, null);
+            // looks like this check has to be disabled
+            // in the old impl it is allowed to have Mime Package 
+            // without closing boundary
+            if (!ignoreMissingEndBoundary) {
+                if ((b == -1) && !lastBodyPartFound()) {
+                    throw new MessagingException("Missing End Boundary for Mime Package : EOF while skipping headers");
+                }
+            }
+            MimeBodyPart mbp = createMimeBodyPart(
+                    headers, baos.getBytes(), baos.getCount());
+            addBodyPart(mbp);
+            return mbp;
+        }
+
+    }
+
+    public boolean parse(
+            InputStream stream, byte[] pattern, SharedInputStream sin)
+            throws Exception {
+
+        while (!lastPartFound.get(0) && (b != -1)) {
+            getNextPart(stream, pattern, sin);
+        }
+        return true;
+    }
+    private int readHeaders(InputStream is) throws Exception {
+        // if the headers are to end properly then there has to be CRLF
+        // actually we just need to mark the start and end positions
+        int b = is.read();
+        while (b != -1) {
+            // when it is a shared input stream no need to copy
+            if (b == '\r') {
+                b = is.read();
+                if (b == '\n') {
+                    b = is.read();
+                    if (b == '\r') {
+                        b = is.read();
+                        if (b == '\n') {
+                            return b;
+                        } else {
+                            continue;
+                        }
+                    } else {
+                        continue;
+                    }
+                } else {
+                    continue;
+                }
+            }
+            b = is.read();
+        }
+        if (b == -1) {
+            throw new Exception(
+                    "End of inputstream while reading Mime-Part Headers");
+        }
+        return b;
+    }
+
+    private int readBody(
+            InputStream is, byte[] pattern, long[] posVector,
+            ByteOutputStream baos, SharedInputStream sin)
+            throws Exception {
+        if (!find(is, pattern, posVector, baos, sin)) {
+            throw new Exception(
+                    "Missing boundary delimitier while reading Body Part");
+        }
+        return b;
+    }
+
+    private boolean skipPreamble(
+            InputStream is, byte[] pattern, SharedInputStream sin)
+            throws Exception {
+        if (!find(is, pattern, sin)) {
+            return false;
+        }
+        if (lastPartFound.get(0)) {
+            throw new Exception(
+                    "Found closing boundary delimiter while trying to skip preamble");
+        }
+        return true;
+    }
+
+
+    public int readNext(InputStream is, byte[] buff, int patternLength,
+                        BitSet eof, long[] posVector, SharedInputStream sin)
+            throws Exception {
+
+        int bufferLength = is.read(buffer, 0, patternLength);
+        if (bufferLength == -1) {
+            eof.flip(0);
+        } else if (bufferLength < patternLength) {
+            //repeatedly read patternLength - bufferLength
+            int temp = 0;
+            long pos = 0;
+            int i = bufferLength;
+            for (; i < patternLength; i++) {
+                if (sin != null) {
+                    pos = sin.getPosition();
+                }
+                temp = is.read();
+                if (temp == -1) {
+                    eof.flip(0);
+                    if (sin != null) {
+                        posVector[0] = pos;
+                    }
+                    break;
+                }
+                buffer[i] = (byte) temp;
+            }
+            bufferLength = i;
+        }
+        return bufferLength;
+    }
+
+    public boolean find(InputStream is, byte[] pattern, SharedInputStream sin)
+            throws Exception {
+        int i;
+        int l = pattern.length;
+        int lx = l - 1;
+        BitSet eof = new BitSet(1);
+        long[] posVector = new long[1];
+
+        while (true) {
+            is.mark(l);
+            readNext(is, buffer, l, eof, posVector, sin);
+            if (eof.get(0)) {
+                // End of stream
+                return false;
+            }
+
+            /*
+        if (bufferLength < l) {
+            //is.reset();
+        return false;
+        }*/
+
+            for (i = lx; i >= 0; i--) {
+                if (buffer[i] != pattern[i]) {
+                    break;
+                }
+            }
+
+            if (i < 0) {
+                // found the boundary, skip *LWSP-char and CRLF
+                if (!skipLWSPAndCRLF(is)) {
+                    throw new Exception("Boundary does not terminate with CRLF");
+                }
+                return true;
+            }
+
+            int s = Math.max(i + 1 - bcs[buffer[i] & 0x7f], gss[i]);
+            is.reset();
+            is.skip(s);
+        }
+    }
+
+    public boolean find(
+            InputStream is, byte[] pattern, long[] posVector,
+            ByteOutputStream out, SharedInputStream sin) throws Exception {
+        int i;
+        int l = pattern.length;
+        int lx = l - 1;
+        int bufferLength = 0;
+        int s = 0;
+        long endPos = -1;
+        byte[] tmp = null;
+
+        boolean first = true;
+        BitSet eof = new BitSet(1);
+
+        while (true) {
+            is.mark(l);
+            if (!first) {
+                tmp = prevBuffer;
+                prevBuffer = buffer;
+                buffer = tmp;
+            }
+            if (sin != null) {
+                endPos = sin.getPosition();
+            }
+
+            bufferLength = readNext(is, buffer, l, eof, posVector, sin);
+
+            if (bufferLength == -1) {
+                // End of stream
+                // looks like it is allowed to not have a closing boundary
+                //return false;
+                //if (sin != null) {
+                //   posVector[0] = endPos;
+                //}
+                b = -1;
+                if ((s == l) && (sin == null)) {
+                    out.write(prevBuffer, 0, s);
+                }
+                return true;
+            }
+
+            if (bufferLength < l) {
+                if (sin != null) {
+                    //endPos = sin.getPosition();
+                    //posVector[0] = endPos;
+                } else {
+                    // looks like it is allowed to not have a closing boundary
+                    // in the old implementation
+                    out.write(buffer, 0, bufferLength);
+                }
+                // looks like it is allowed to not have a closing boundary
+                // in the old implementation
+                //return false;
+                b = -1;
+                return true;
+            }
+
+            for (i = lx; i >= 0; i--) {
+                if (buffer[i] != pattern[i]) {
+                    break;
+                }
+            }
+
+            if (i < 0) {
+                if (s > 0) {
+                    //looks like the earlier impl allowed just an LF
+                    // so if s == 1 : it must be an LF
+                    // if s == 2 : it must be a CR LF
+                    if (s <= 2) {
+                        //it could be "some-char\n" so write some-char 
+                        if (s == 2) {
+                            if (prevBuffer[1] == '\n') {
+                                if (sin != null) {
+                                    posVector[0] = (prevBuffer[0] == '\r')
+                                            ? endPos - 2 : endPos - 1;
+                                } else
+                                if (prevBuffer[0] != '\r' && prevBuffer[0] != '\n') {
+                                    out.write(prevBuffer, 0, 1);
+                                }
+
+                            } else {
+                                throw new Exception(
+                                        "Boundary characters encountered in part Body " +
+                                                "without a preceeding CRLF");
+                            }
+
+                        } else if (s == 1) {
+                            if (prevBuffer[0] != '\n') {
+                                throw new Exception(
+                                        "Boundary characters encountered in part Body " +
+                                                "without a preceeding CRLF");
+                            } else {
+                                if (sin != null) {
+                                    // the CR of a CRLF is in the window before
+                                    posVector[0] = (byteAt(sin, endPos - 2) == '\r')
+                                            ? endPos - 2 : endPos - 1;
+                                }
+                            }
+                        }
+
+                    } else if (s > 2) {
+                        if ((prevBuffer[s - 2] == '\r') && (prevBuffer[s - 1] == '\n')) {
+                            if (sin != null) {
+                                posVector[0] = endPos - 2;
+                            } else {
+                                out.write(prevBuffer, 0, s - 2);
+                            }
+                        } else if (prevBuffer[s - 1] == '\n') {
+                            //old impl allowed just a \n
+                            if (sin != null) {
+                                posVector[0] = endPos - 1;
+                            } else {
+                                out.write(prevBuffer, 0, s - 1);
+                            }
+                        } else {
+                            throw new Exception(
+                                    "Boundary characters encountered in part Body " +
+                                            "without a preceeding CRLF");
+                        }
+                    }
+                }
+                // found the boundary, skip *LWSP-char and CRLF
+                if (!skipLWSPAndCRLF(is)) {
+                    //throw new Exception(
+                    //   "Boundary does not terminate with CRLF");
+                }
+                return true;
+            }
+
+            if ((s > 0) && (sin == null)) {
+                if (prevBuffer[s - 1] == (byte) 13) {
+                    // if buffer[0] == (byte)10
+                    if (buffer[0] == (byte) 10) {
+                        int j;
+                        for (j = lx - 1; j > 0; j--) {
+                            if (buffer[j + 1] != pattern[j]) {
+                                break;
+                            }
+                        }
+                        if (j == 0) {
+                            // matched the pattern excluding the last char of the pattern
+                            // so dont write the CR into stream
+                            out.write(prevBuffer, 0, s - 1);
+                        } else {
+                            out.write(prevBuffer, 0, s);
+                        }
+                    } else {
+                        out.write(prevBuffer, 0, s);
+                    }
+                } else {
+                    out.write(prevBuffer, 0, s);
+                }
+            }
+
+            s = Math.max(i + 1 - bcs[buffer[i] & 0x7f], gss[i]);
+            is.reset();
+            is.skip(s);
+            if (first) {
+                first = false;
+            }
+        }
+    }
+    private static int byteAt(SharedInputStream sin, long pos) throws IOException {
+        if (pos < 0) {
+            return -1;
+        }
+        InputStream is = sin.newStream(pos, pos + 1);
+        try {
+            return is.read();
+        } finally {
+            is.close();
+        }
+    }
+
+    private boolean skipLWSPAndCRLF(InputStream is) throws Exception {
+
+        b = is.read();
+        //looks like old impl allowed just a \n as well
+        if (b == '\n') {
+            return true;
+        }
+
+        if (b == '\r') {
+            b = is.read();
+            //skip any multiple '\r' "\r\n" --> "\r\r\n" on Win2k
+            if (b == '\r') {
+                b = is.read();
+            }
+            if (b == '\n') {
+                return true;
+            } else {
+                throw new Exception(
+                        "transport padding after a Mime Boundary  should end in a CRLF, found CR only");
+            }
+        }
+
+        if (b == '-') {
+            b = is.read();
+            if (b != '-') {
+                throw new Exception(
+                        "Unexpected singular '-' character after Mime Boundary");
+            } else {
+                //System.out.println("Last Part Found");
+                lastPartFound.flip(0);
+                // read the next char
+                b = is.read();
+            }
+        }
+
+        while ((b != -1) && ((b == ' ') || (b == '\t'))) {
+            b = is.read();
+            if (b == '\n') {
+                return true;
+            }
+            if (b == '\r') {
+                b = is.read();
+                //skip any multiple '\r': "\r\n" --> "\r\r\n" on Win2k
+                if (b == '\r') {
+                    b = is.read();
+                }
+                if (b == '\n') {
+                    return true;
+                }
+            }
+        }
+
+        if (b == -1) {
+            // the last boundary need not have CRLF
+            if (!lastPartFound.get(0)) {
+                throw new Exception(
+                        "End of Multipart Stream before encountering  closing boundary delimiter");
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private void compile(byte[] pattern) {
+        int l = pattern.length;
+
+        int i;
+        int j;
+
+        // Copied from J2SE 1.4 regex code
+        // java.util.regex.Pattern.java
+
+        // Initialise Bad Character Shift table
+        for (i = 0; i < l; i++) {
+            bcs[pattern[i]] = i + 1;
+        }
+
+        // Initialise Good Suffix Shift table
+        gss = new int[l];
+        NEXT:
+        for (i = l; i > 0; i--) {
+            // j is the beginning index of suffix being considered
+            for (j = l - 1; j >= i; j--) {
+                // Testing for good suffix
+                if (pattern[j] == pattern[j - i]) {
+                    // pattern[j..len] is a good suffix
+                    gss[j - 1] = i;
+                } else {
+                    // No match. The array has already been
+                    // filled up with correct values before.
+                    continue NEXT;
+                }
+            }
+            while (j > 0) {
+                gss[--j] = i;
+            }
+        }
+        gss[l - 1] = 1;
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package com.sun.xml.messaging.saaj.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.soap.MessageFactory;
+import javax.xml.soap.MimeHeaders;
+import javax.xml.soap.SOAPBody;
+import javax.xml.soap.SOAPEnvelope;
+import javax.xml.soap.SOAPMessage;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sun.xml.messaging.saaj.soap.MessageImpl;
+
+/**
+ * Parsing of single part SOAP 1.1 and 1.2 messages with
+ * {@code MessageFactoryImpl.createMessage(MimeHeaders, InputStream)}, using
+ * the default SAX parser and the lazy StAX parser enabled by
+ * {@link MessageImpl#LAZY_SOAP_BODY_PARSING}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class ParseBenchmark {
+
+    @Param({Payloads.SOAP_1_1, Payloads.SOAP_1_2})
+    public String protocol;
+
+    @Param({"1024", "102400", "10485760", "104857600"})
+    public int size;
+
+    private MessageFactory factory;
+    private MimeHeaders headers;
+    private byte[] payload;
+
+    @Setup
+    public void setUp() throws Exception {
+        factory = Payloads.messageFactory(protocol);
+        headers = Payloads.headers(Payloads.contentType(protocol));
+        payload = Payloads.envelope(protocol, size);
+    }
+
+    @Benchmark
+    public SOAPBody sax() throws Exception {
+        SOAPMessage msg = factory.createMessage(headers, new ByteArrayInputStream(payload));
+        return msg.getSOAPBody();
+    }
+
+    /**
+     * Only the envelope and headers are bridged, the body stays unparsed.
+     */
+    @Benchmark
+    public SOAPEnvelope lazyStax() throws Exception {
+        SOAPMessage msg = factory.createMessage(headers, new ByteArrayInputStream(payload));
+        msg.setProperty(MessageImpl.LAZY_SOAP_BODY_PARSING, Boolean.TRUE);
+        return msg.getSOAPPart().getEnvelope();
+    }
+
+    /**
+     * Lazy StAX parsing followed by access to the body content.
+     */
+    @Benchmark
+    public Object lazyStaxBody() throws Exception {
+        SOAPMessage msg = factory.createMessage(headers, new ByteArrayInputStream(payload));
+        msg.setProperty(MessageImpl.LAZY_SOAP_BODY_PARSING, Boolean.TRUE);
+        return msg.getSOAPBody().getFirstChild();
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package com.sun.xml.messaging.saaj.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Random;
+
+import javax.xml.soap.MessageFactory;
+import javax.xml.soap.MimeHeaders;
+import javax.xml.soap.SOAPConstants;
+import javax.xml.soap.SOAPException;
+
+/**
+ * Generates the messages used by the benchmarks.
+ */
+final class Payloads {
+
+    static final String SOAP_1_1 = "1.1";
+    static final String SOAP_1_2 = "1.2";
+
+    static final String SWA = "swa";
+    static final String MTOM = "mtom";
+
+    static final String BOUNDARY = "----=_Part_0_1145061287.1500000000000";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private Payloads() {
+    }
+
+    static MessageFactory messageFactory(String protocol) throws SOAPException {
+        return MessageFactory.newInstance(SOAP_1_2.equals(protocol)
+                ? SOAPConstants.SOAP_1_2_PROTOCOL : SOAPConstants.SOAP_1_1_PROTOCOL);
+    }
+
+    static MimeHeaders headers(String contentType) {
+        MimeHeaders headers = new MimeHeaders();
+        headers.addHeader("Content-Type", contentType);
+        return headers;
+    }
+
+    static String contentType(String protocol) {
+        return SOAP_1_2.equals(protocol)
+                ? "application/soap+xml; charset=utf-8" : "text/xml; charset=utf-8";
+    }
+
+    static String multipartContentType(String kind) {
+        if (MTOM.equals(kind)) {
+            return "multipart/related; type=\"application/xop+xml\"; boundary=\""
+                    + BOUNDARY + "\"; start=\"<root>\"; start-info=\"text/xml\"";
+        }
+        return "multipart/related; type=\"text/xml\"; boundary=\""
+                + BOUNDARY + "\"; start=\"<root>\"";
+    }
+
+    /**
+     * Envelope of roughly {@code size} bytes, the body holds a flat list of
+     * small elements.
+     */
+    static byte[] envelope(String protocol, int size) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(size + 512);
+        writeEnvelope(out, protocol, size, null);
+        return out.toByteArray();
+    }
+
+    /**
+     * SwA or MTOM/XOP message with a single binary attachment of
+     * {@code size} bytes and a small SOAP 1.1 envelope.
+     */
+    static byte[] multipart(String kind, int size) throws IOException {
+        boolean xop = MTOM.equals(kind);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(size + 4096);
+        write(out, "--" + BOUNDARY + "\r\n");
+        if (xop) {
+            write(out, "Content-Type: application/xop+xml; charset=utf-8; type=\"text/xml\"\r\n");
+        } else {
+            write(out, "Content-Type: text/xml; charset=utf-8\r\n");
+        }
+        write(out, "Content-Transfer-Encoding: 8bit\r\n");
+        write(out, "Content-ID: <root>\r\n\r\n");
+        writeEnvelope(out, SOAP_1_1, 1024, xop
+                ? "<m:data><xop:Include xmlns:xop=\"http://www.w3.org/2004/08/xop/include\" href=\"cid:data\"/></m:data>"
+                : "<m:data href=\"cid:data\"/>");
+        write(out, "\r\n--" + BOUNDARY + "\r\n");
+        write(out, "Content-Type: application/octet-stream\r\n");
+        write(out, "Content-Transfer-Encoding: binary\r\n");
+        write(out, "Content-ID: <data>\r\n\r\n");
+        out.write(binary(size));
+        write(out, "\r\n--" + BOUNDARY + "--\r\n");
+        return out.toByteArray();
+    }
+
+    static byte[] binary(int size) {
+        byte[] data = new byte[size];
+        new Random(42).nextBytes(data);
+        return data;
+    }
+
+    private static void writeEnvelope(OutputStream out, String protocol,
+            int size, String content) throws IOException {
+        String ns = SOAP_1_2.equals(protocol)
+                ? SOAPConstants.URI_NS_SOAP_1_2_ENVELOPE : SOAPConstants.URI_NS_SOAP_1_1_ENVELOPE;
+        String head = "<?xml version=\"1.0\" encoding=\"utf-8\"?>"
+                + "<env:Envelope xmlns:env=\"" + ns + "\">"
+                + "<env:Header><m:id xmlns:m=\"urn:benchmark\">4711</m:id></env:Header>"
+                + "<env:Body><m:order xmlns:m=\"urn:benchmark\">";
+        String tail = "</m:order></env:Body></env:Envelope>";
+        write(out, head);
+        int written = head.length() + tail.length();
+        if (content != null) {
+            write(out, content);
+            written += content.length();
+        }
+        for (int i = 0; written < size; i++) {
+            String item = "<m:item id=\"" + i + "\">value of item " + i + "</m:item>";
+            write(out, item);
+            written += item.length();
+        }
+        write(out, tail);
+    }
+
+    private static void write(OutputStream out, String s) throws IOException {
+        out.write(s.getBytes(UTF_8));
+    }
+
+    /**
+     * Drains the given stream, returning the number of bytes read.
+     */
+    static long drain(InputStream in) throws IOException {
+        byte[] buf = new byte[8192];
+        long count = 0;
+        int len;
+        while ((len = in.read(buf)) != -1) {
+            count += len;
+        }
+        in.close();
+        return count;
+    }
+
+    /**
+     * Discards everything written to it, counting the bytes.
+     */
+    static final class NullOutputStream extends OutputStream {
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
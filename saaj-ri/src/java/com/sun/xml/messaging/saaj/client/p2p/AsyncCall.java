@@ -0,0 +1,260 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package com.sun.xml.messaging.saaj.client.p2p;
+
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.xml.soap.SOAPException;
+import javax.xml.soap.SOAPMessage;
+
+import com.sun.xml.messaging.saaj.SOAPExceptionImpl;
+
+/**
+ * A single asynchronous call made through {@link AsyncSOAPConnection}.
+ *
+ * <p>The call runs {@link HttpSOAPConnection#post(SOAPMessage, URL, AsyncCall)}
+ * on an executor thread. When a deadline is given, the connect and read
+ * timeouts of the underlying connection are bounded by the remaining time
+ * and the connection is disconnected once the deadline passes, so that a
+ * stuck call releases its thread.
+ */
+class AsyncCall extends FutureTask<SOAPMessage> {
+
+    private static ExecutorService defaultExecutor;
+    private static ScheduledThreadPoolExecutor timer;
+
+    private final URL url;
+    private final boolean hasDeadline;
+    private final long deadline;
+    private final AsyncSOAPConnection.ResponseHandler handler;
+
+    private volatile HttpURLConnection connection;
+    private volatile ScheduledFuture<?> timeoutTask;
+
+    AsyncCall(HttpSOAPConnection soapConnection, SOAPMessage message, URL url,
+            long timeoutNanos, AsyncSOAPConnection.ResponseHandler handler) {
+        this(new Task(soapConnection, message, url), url, timeoutNanos, handler);
+    }
+
+    private AsyncCall(Task task, URL url, long timeoutNanos,
+            AsyncSOAPConnection.ResponseHandler handler) {
+        super(task);
+        task.call = this;
+        this.url = url;
+        this.hasDeadline = timeoutNanos > 0;
+        this.deadline = hasDeadline ? System.nanoTime() + timeoutNanos : 0;
+        this.handler = handler;
+    }
+
+    void submit(ExecutorService executor) {
+        if (hasDeadline) {
+            timeoutTask = timer().schedule(new Runnable() {
+                @Override
+                public void run() {
+                    expire();
+                }
+            }, deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+        try {
+            executor.execute(this);
+        } catch (RejectedExecutionException ex) {
+            // the call never runs, so it must not time out either
+            ScheduledFuture<?> t = timeoutTask;
+            if (t != null) {
+                t.cancel(false);
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * @return nanoseconds left until the deadline, which may be negative,
+     *         or {@code Long.MAX_VALUE} if the call has none
+     */
+    long remainingNanos() {
+        return hasDeadline ? deadline - System.nanoTime() : Long.MAX_VALUE;
+    }
+
+    /**
+     * Called by the executing thread once the HTTP connection is created.
+     */
+    void attach(HttpURLConnection httpConnection) throws SocketTimeoutException {
+        connection = httpConnection;
+        if (hasDeadline) {
+            long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remaining <= 0) {
+                throw new SocketTimeoutException("Call to " + url + " timed out");
+            }
+            int timeout = (int) Math.min(remaining, Integer.MAX_VALUE);
+            if (httpConnection.getConnectTimeout() == 0
+                    || httpConnection.getConnectTimeout() > timeout) {
+                httpConnection.setConnectTimeout(timeout);
+            }
+            if (httpConnection.getReadTimeout() == 0
+                    || httpConnection.getReadTimeout() > timeout) {
+                httpConnection.setReadTimeout(timeout);
+            }
+        }
+        if (isDone()) {
+            abort();
+        }
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        boolean cancelled = super.cancel(mayInterruptIfRunning);
+        if (cancelled) {
+            abort();
+        }
+        return cancelled;
+    }
+
+    @Override
+    protected void done() {
+        ScheduledFuture<?> t = timeoutTask;
+        if (t != null) {
+            t.cancel(false);
+        }
+        if (handler == null) {
+            return;
+        }
+        SOAPMessage response;
+        try {
+            response = get();
+        } catch (CancellationException ex) {
+            handler.handleException(new SOAPExceptionImpl("Call to " + url + " cancelled"));
+            return;
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            handler.handleException(cause instanceof SOAPException
+                    ? (SOAPException) cause : new SOAPExceptionImpl(cause));
+            return;
+        } catch (InterruptedException ex) {
+            // cannot happen, the call is complete
+            Thread.currentThread().interrupt();
+            return;
+        }
+        handler.handleResponse(response);
+    }
+
+    private void expire() {
+        if (!isDone()) {
+            setException(new SOAPExceptionImpl("Call to " + url + " timed out"));
+            abort();
+        }
+    }
+
+    private void abort() {
+        HttpURLConnection c = connection;
+        if (c != null) {
+            c.disconnect();
+        }
+    }
+
+    static synchronized ExecutorService defaultExecutor() {
+        if (defaultExecutor == null) {
+            defaultExecutor = Executors.newCachedThreadPool(new DaemonThreadFactory("saaj-async-call-"));
+        }
+        return defaultExecutor;
+    }
+
+    private static synchronized ScheduledThreadPoolExecutor timer() {
+        if (timer == null) {
+            timer = new ScheduledThreadPoolExecutor(1, new DaemonThreadFactory("saaj-async-timer-"));
+            timer.setRemoveOnCancelPolicy(true);
+        }
+        return timer;
+    }
+
+    private static final class Task implements Callable<SOAPMessage> {
+        private final HttpSOAPConnection soapConnection;
+        private final SOAPMessage message;
+        private final URL url;
+        AsyncCall call;
+
+        Task(HttpSOAPConnection soapConnection, SOAPMessage message, URL url) {
+            this.soapConnection = soapConnection;
+            this.message = message;
+            this.url = url;
+        }
+
+        @Override
+        public SOAPMessage call() throws SOAPException {
+            try {
+                return soapConnection.post(message, url, call);
+            } catch (SOAPException ex) {
+                throw ex;
+            } catch (Exception ex) {
+                throw new SOAPExceptionImpl(ex);
+            }
+        }
+    }
+
+    private static final class DaemonThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+        private final String prefix;
+
+        DaemonThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, prefix + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+}
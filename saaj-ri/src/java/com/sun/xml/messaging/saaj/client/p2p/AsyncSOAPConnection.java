@@ -0,0 +1,126 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package com.sun.xml.messaging.saaj.client.p2p;
+
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.soap.SOAPException;
+import javax.xml.soap.SOAPMessage;
+
+/**
+ * Asynchronous extension of {@link javax.xml.soap.SOAPConnection}
+ * implemented by the connections of {@link HttpSOAPConnectionFactory}.
+ *
+ * <p>Calls run on the executor configured with
+ * {@link HttpSOAPConnectionFactory#setExecutor(java.util.concurrent.ExecutorService)},
+ * or on a shared pool of daemon threads. The request message must not be
+ * modified until the call has completed.
+ */
+public interface AsyncSOAPConnection {
+
+    /**
+     * Sends the given message to the specified endpoint without waiting
+     * for the response.
+     *
+     * @param request the message to send
+     * @param endpoint an {@code Object} that identifies where the message
+     *        should be sent, like {@link javax.xml.soap.SOAPConnection#call}
+     * @return a future completed with the response, or {@code null} if the
+     *         endpoint returned no content
+     * @throws SOAPException if the connection is closed or the endpoint is
+     *         not valid
+     */
+    Future<SOAPMessage> callAsync(SOAPMessage request, Object endpoint)
+        throws SOAPException;
+
+    /**
+     * Like {@link #callAsync(SOAPMessage, Object)} but fails the call once
+     * the given deadline has passed, aborting the underlying connection.
+     *
+     * @param request the message to send
+     * @param endpoint where the message should be sent
+     * @param timeout time allowed for the whole call, zero or less for none
+     * @param unit unit of {@code timeout}
+     * @return a future completed with the response
+     * @throws SOAPException if the connection is closed or the endpoint is
+     *         not valid
+     */
+    Future<SOAPMessage> callAsync(SOAPMessage request, Object endpoint,
+            long timeout, TimeUnit unit) throws SOAPException;
+
+    /**
+     * Like {@link #callAsync(SOAPMessage, Object, long, TimeUnit)} and
+     * additionally notifies the given handler on completion, so that no
+     * thread needs to wait on the returned future.
+     *
+     * @param request the message to send
+     * @param endpoint where the message should be sent
+     * @param timeout time allowed for the whole call, zero or less for none
+     * @param unit unit of {@code timeout}
+     * @param handler notified with the outcome of the call, may be null
+     * @return a future completed with the response
+     * @throws SOAPException if the connection is closed or the endpoint is
+     *         not valid
+     */
+    Future<SOAPMessage> callAsync(SOAPMessage request, Object endpoint,
+            long timeout, TimeUnit unit, ResponseHandler handler)
+        throws SOAPException;
+
+    /**
+     * Receives the outcome of an asynchronous call. Methods are invoked on
+     * the thread completing the call and should not block.
+     */
+    interface ResponseHandler {
+
+        /**
+         * @param response the response, or {@code null} if the endpoint
+         *        returned no content
+         */
+        void handleResponse(SOAPMessage response);
+
+        /**
+         * @param ex cause of the failure, including a deadline being
+         *        exceeded or the call being cancelled
+         */
+        void handleException(SOAPException ex);
+    }
+}
@@ -46,12 +46,16 @@ import java.net.*;
 import java.security.*;
 import java.util.Iterator;
 import java.util.StringTokenizer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.xml.soap.*;
 
 import com.sun.xml.messaging.saaj.SOAPExceptionImpl;
+import com.sun.xml.messaging.saaj.soap.MessageImpl;
 import com.sun.xml.messaging.saaj.util.*;
 
 /**
@@ -62,21 +66,42 @@ import com.sun.xml.messaging.saaj.util.*;
  * @author Manveen Kaur (manveen.kaur@sun.com)
  *
  */
-class HttpSOAPConnection extends SOAPConnection {
+class HttpSOAPConnection extends SOAPConnection implements AsyncSOAPConnection {
 
     public static final String vmVendor = SAAJUtil.getSystemProperty("java.vendor.url");
     private static final String ibmVmVendor = "http://www.ibm.com/";
     private static final boolean isIBMVM = ibmVmVendor.equals(vmVendor) ? true : false;
     private static final String JAXM_URLENDPOINT="javax.xml.messaging.URLEndpoint";
+
+    /**
+     * System property enabling streamed responses by default, see
+     * {@link HttpSOAPConnectionFactory#setStreamResponse(boolean)}.
+     */
+    static final String STREAM_RESPONSE_PROP_NAME = "saaj.http.stream.response";
+
+    /**
+     * System property holding the default chunk size for requests, see
+     * {@link HttpSOAPConnectionFactory#setChunkSize(int)}.
+     */
+    static final String CHUNK_SIZE_PROP_NAME = "saaj.http.chunk.size";
     
     protected static final Logger log =
         Logger.getLogger(LogDomainConstants.HTTP_CONN_DOMAIN,
                          "com.sun.xml.messaging.saaj.client.p2p.LocalStrings");
 
 
-    MessageFactory messageFactory = null;
+    volatile MessageFactory messageFactory = null;
+
+    volatile boolean closed = false;
+
+    // hand the live response stream to the message instead of reading it up-front
+    boolean streamResponse = false;
+
+    // send requests with chunked transfer encoding if greater than zero
+    int chunkSize = 0;
 
-    boolean closed = false;
+    // runs asynchronous calls, the shared default executor if null
+    ExecutorService executor = null;
 
     public HttpSOAPConnection() throws SOAPException {
 
@@ -110,6 +135,45 @@ class HttpSOAPConnection extends SOAPConnection {
             throw new SOAPExceptionImpl("Connection is closed");
         }
 
+        URL url = toURL(endPoint);
+        try {
+            SOAPMessage response = post(message, url);
+            return response;
+        } catch (Exception ex) {
+            // TBD -- chaining?
+            throw new SOAPExceptionImpl(ex);
+        }
+    }
+
+    @Override
+    public Future<SOAPMessage> callAsync(SOAPMessage message, Object endPoint)
+        throws SOAPException {
+        return callAsync(message, endPoint, 0, TimeUnit.MILLISECONDS, null);
+    }
+
+    @Override
+    public Future<SOAPMessage> callAsync(SOAPMessage message, Object endPoint,
+            long timeout, TimeUnit unit) throws SOAPException {
+        return callAsync(message, endPoint, timeout, unit, null);
+    }
+
+    @Override
+    public Future<SOAPMessage> callAsync(SOAPMessage message, Object endPoint,
+            long timeout, TimeUnit unit, ResponseHandler handler)
+        throws SOAPException {
+        if (closed) {
+            log.severe("SAAJ0003.p2p.call.already.closed.conn");
+            throw new SOAPExceptionImpl("Connection is closed");
+        }
+
+        URL url = toURL(endPoint);
+        AsyncCall call = new AsyncCall(this, message, url,
+                unit.toNanos(timeout), handler);
+        call.submit(executor != null ? executor : AsyncCall.defaultExecutor());
+        return call;
+    }
+
+    private URL toURL(Object endPoint) throws SOAPException {
         Class<?> urlEndpointClass = null;
         ClassLoader loader = Thread.currentThread().getContextClassLoader();
         try {
@@ -155,20 +219,44 @@ class HttpSOAPConnection extends SOAPConnection {
             }
         }
 
-        if (endPoint instanceof URL)
-            try {
-                SOAPMessage response = post(message, (URL)endPoint);
-                return response;
-            } catch (Exception ex) {
-                // TBD -- chaining?
-                throw new SOAPExceptionImpl(ex);
-            } else {
+        if (endPoint instanceof URL) {
+            return (URL) endPoint;
+        } else {
             log.severe("SAAJ0007.p2p.bad.endPoint.type");
             throw new SOAPExceptionImpl("Bad endPoint type " + endPoint);
         }
     }
 
     SOAPMessage post(SOAPMessage message, URL endPoint) throws SOAPException, IOException {
+        return post(message, endPoint, null);
+    }
+
+    /**
+     * @param call the asynchronous call this request is made for, null
+     *        for a synchronous call
+     */
+    SOAPMessage post(SOAPMessage message, URL endPoint, AsyncCall call)
+        throws SOAPException, IOException {
+        return post(message, endPoint, call, null);
+    }
+
+    /**
+     * @param call the asynchronous call this request is made for, null
+     *        for a synchronous call
+     * @param lease closed once the connection is released, which for a
+     *        streamed response is when it has been read or its message
+     *        disposed; may be null
+     */
+    SOAPMessage post(SOAPMessage message, URL endPoint, AsyncCall call,
+                     Closeable lease) throws SOAPException, IOException {
+        // close() may run concurrently, so read the factory only once
+        MessageFactory factory = messageFactory;
+        if (closed || factory == null) {
+            release(lease);
+            log.severe("SAAJ0003.p2p.call.already.closed.conn");
+            throw new SOAPExceptionImpl("Connection is closed");
+        }
+
         boolean isFailure = false;
 
         URL url = null;
@@ -200,6 +288,9 @@ class HttpSOAPConnection extends SOAPConnection {
                         + url);
             }
             httpConnection = (HttpURLConnection) createConnection(url);
+            if (call != null) {
+                call.attach(httpConnection);
+            }
 
             httpConnection.setRequestMethod("POST");
 
@@ -208,7 +299,16 @@ class HttpSOAPConnection extends SOAPConnection {
             httpConnection.setUseCaches(false);
             httpConnection.setInstanceFollowRedirects(true);
 
-            if (message.saveRequired())
+            boolean chunked = chunkSize > 0;
+            if (chunked) {
+                // serialize the message straight into the socket
+                httpConnection.setChunkedStreamingMode(chunkSize);
+                if (message instanceof MessageImpl) {
+                    ((MessageImpl) message).saveChangesForStreaming();
+                } else if (message.saveRequired()) {
+                    message.saveChanges();
+                }
+            } else if (message.saveRequired())
                 message.saveChanges();
 
             MimeHeaders headers = message.getMimeHeaders();
@@ -218,6 +318,9 @@ class HttpSOAPConnection extends SOAPConnection {
             while (it.hasNext()) {
                 MimeHeader header = (MimeHeader) it.next();
 
+                if (chunked && "Content-Length".equalsIgnoreCase(header.getName()))
+                    continue;
+
                 String[] values = headers.getHeader(header.getName());
                 if (values.length == 1)
                     httpConnection.setRequestProperty(
@@ -291,14 +394,17 @@ class HttpSOAPConnection extends SOAPConnection {
             }
 
         } catch (SOAPException ex) {
+            release(lease);
             throw ex;
         } catch (Exception ex) {
+            release(lease);
             log.severe("SAAJ0009.p2p.msg.send.failed");
             throw new SOAPExceptionImpl("Message send failed", ex);
         }
 
         SOAPMessage response = null;
         InputStream httpIn = null;
+        boolean streaming = false;
         if (responseCode == HttpURLConnection.HTTP_OK || isFailure) {
             try {
                 MimeHeaders headers = new MimeHeaders();
@@ -330,21 +436,37 @@ class HttpSOAPConnection extends SOAPConnection {
                         ? httpConnection.getErrorStream()
                         : httpConnection.getInputStream());
 
-                byte[] bytes = readFully(httpIn);
-
-                int length =
-                    httpConnection.getContentLength() == -1
-                        ? bytes.length
-                        : httpConnection.getContentLength();
-                        
-                // If no reply message is returned,
-                // content-Length header field value is expected to be zero.
-                if (length == 0) {
-                    response = null;
-                    log.warning("SAAJ0014.p2p.content.zero");
+                if (streamResponse) {
+                    // If no reply message is returned,
+                    // content-Length header field value is expected to be zero.
+                    if (httpIn == null || httpConnection.getContentLength() == 0) {
+                        response = null;
+                        log.warning("SAAJ0014.p2p.content.zero");
+                    } else {
+                        ResponseInputStream in = new ResponseInputStream(httpIn, lease);
+                        response = factory.createMessage(headers, in);
+                        if (response instanceof MessageImpl) {
+                            ((MessageImpl) response).registerResource(in);
+                        }
+                        streaming = true;
+                    }
                 } else {
-                    ByteInputStream in = new ByteInputStream(bytes, length);
-                    response = messageFactory.createMessage(headers, in);
+                    byte[] bytes = readFully(httpIn);
+
+                    int length =
+                        httpConnection.getContentLength() == -1
+                            ? bytes.length
+                            : httpConnection.getContentLength();
+
+                    // If no reply message is returned,
+                    // content-Length header field value is expected to be zero.
+                    if (length == 0) {
+                        response = null;
+                        log.warning("SAAJ0014.p2p.content.zero");
+                    } else {
+                        ByteInputStream in = new ByteInputStream(bytes, length);
+                        response = factory.createMessage(headers, in);
+                    }
                 }
 
             } catch (SOAPException ex) {
@@ -354,14 +476,26 @@ class HttpSOAPConnection extends SOAPConnection {
                 throw new SOAPExceptionImpl(
                     "Unable to read response: " + ex.getMessage());
             } finally {
-               if (httpIn != null)
-                   httpIn.close();
-               httpConnection.disconnect();
+               // a streamed response is released once it has been read
+               // or when the message is disposed
+               if (!streaming) {
+                   if (httpIn != null)
+                       httpIn.close();
+                   releaseConnection(httpConnection);
+                   release(lease);
+               }
             }
+        } else {
+            release(lease);
         }
         return response;
     }
 
+    private static void release(Closeable lease) throws IOException {
+        if (lease != null)
+            lease.close();
+    }
+
     // Object identifies where the request should be sent.
     // It is required to support objects of type String and java.net.URL.
 
@@ -420,6 +554,12 @@ class HttpSOAPConnection extends SOAPConnection {
     }
 
     SOAPMessage doGet(URL endPoint) throws SOAPException, IOException {
+        MessageFactory factory = messageFactory;
+        if (closed || factory == null) {
+            log.severe("SAAJ0011.p2p.get.already.closed.conn");
+            throw new SOAPExceptionImpl("Connection is closed");
+        }
+
         boolean isFailure = false;
 
         URL url = null;
@@ -540,7 +680,7 @@ class HttpSOAPConnection extends SOAPConnection {
                     response = null;
                     log.warning("SAAJ0014.p2p.content.zero");
                 } else {
-                    response = messageFactory.createMessage(headers, httpIn);
+                    response = factory.createMessage(headers, httpIn);
                 }
 
             } catch (SOAPException ex) {
@@ -554,7 +694,7 @@ class HttpSOAPConnection extends SOAPConnection {
             } finally {
                if (httpIn != null)
                    httpIn.close();
-               httpConnection.disconnect();
+               releaseConnection(httpConnection);
             }
         }
         return response;
@@ -665,9 +805,17 @@ class HttpSOAPConnection extends SOAPConnection {
         System.err.println("HttpSOAPConnection: " + s);
     }
 
-    private java.net.HttpURLConnection createConnection(URL endpoint)
+    java.net.HttpURLConnection createConnection(URL endpoint)
         throws IOException {
         return (HttpURLConnection) endpoint.openConnection();
     }
 
+    /**
+     * Called once the response has been read. Disconnecting closes the
+     * underlying socket instead of leaving it in the keep-alive cache.
+     */
+    void releaseConnection(HttpURLConnection httpConnection) {
+        httpConnection.disconnect();
+    }
+
 }
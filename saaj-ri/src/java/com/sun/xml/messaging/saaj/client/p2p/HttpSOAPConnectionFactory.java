@@ -40,8 +40,13 @@
 
 package com.sun.xml.messaging.saaj.client.p2p;
 
+import java.util.concurrent.ExecutorService;
+
 import javax.xml.soap.*;
 
+import com.sun.xml.messaging.saaj.soap.MessageImpl;
+import com.sun.xml.messaging.saaj.util.SAAJUtil;
+
 /**
  * Implementation of the SOAPConnectionFactory
  *
@@ -49,11 +54,80 @@ import javax.xml.soap.*;
  */
 public class HttpSOAPConnectionFactory extends SOAPConnectionFactory {
 
+    private boolean streamResponse = SAAJUtil.getSystemBoolean(
+            HttpSOAPConnection.STREAM_RESPONSE_PROP_NAME);
+    private int chunkSize = SAAJUtil.getSystemInteger(
+            HttpSOAPConnection.CHUNK_SIZE_PROP_NAME, 0);
+    private ExecutorService executor = null;
+
     @Override
     public SOAPConnection createConnection()
         throws SOAPException
     {
+        HttpSOAPConnection connection = newConnection();
+        connection.streamResponse = streamResponse;
+        connection.chunkSize = chunkSize;
+        connection.executor = executor;
+        return connection;
+    }
+
+    HttpSOAPConnection newConnection() throws SOAPException {
         return new HttpSOAPConnection();
     }
-}
 
+    /**
+     * Controls whether connections created by this factory hand the live
+     * HTTP response stream to the message factory instead of reading the
+     * whole response body into memory first. The response message then
+     * reads its content from the connection on demand; the connection is
+     * released once the content has been read completely or the message is
+     * disposed through {@link MessageImpl#dispose()}.
+     *
+     * <p>Defaults to the value of the {@code saaj.http.stream.response}
+     * system property.
+     *
+     * @param streamResponse true to stream responses
+     */
+    public void setStreamResponse(boolean streamResponse) {
+        this.streamResponse = streamResponse;
+    }
+
+    public boolean isStreamResponse() {
+        return streamResponse;
+    }
+
+    /**
+     * Sets the chunk size used to send requests with chunked transfer
+     * encoding. In this mode the request is written directly to the
+     * connection: the envelope is serialized into the socket stream and
+     * attachments are streamed from their data handlers, instead of the
+     * whole request being buffered to compute its Content-Length.
+     *
+     * <p>A value of zero or less disables chunking. Defaults to the value of
+     * the {@code saaj.http.chunk.size} system property, or zero.
+     *
+     * @param chunkSize number of bytes in each chunk
+     */
+    public void setChunkSize(int chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * Sets the executor running the asynchronous calls of connections
+     * created by this factory, see {@link AsyncSOAPConnection}. By default a
+     * shared, unbounded pool of daemon threads is used.
+     *
+     * @param executor executor for asynchronous calls, null for the default
+     */
+    public void setExecutor(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    public ExecutorService getExecutor() {
+        return executor;
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package com.sun.xml.messaging.saaj.client.p2p;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+
+import javax.xml.soap.SOAPException;
+import javax.xml.soap.SOAPMessage;
+
+import com.sun.xml.messaging.saaj.SOAPExceptionImpl;
+
+/**
+ * HTTP connection which keeps the underlying sockets alive between calls
+ * and limits the number of concurrent requests per endpoint. Instances are
+ * safe to share between threads.
+ *
+ * @see PooledHttpSOAPConnectionFactory
+ */
+class PooledHttpSOAPConnection extends HttpSOAPConnection {
+
+    private final PooledHttpSOAPConnectionFactory factory;
+
+    PooledHttpSOAPConnection(PooledHttpSOAPConnectionFactory factory) throws SOAPException {
+        this.factory = factory;
+    }
+
+    @Override
+    SOAPMessage post(SOAPMessage message, URL endPoint, AsyncCall call)
+        throws SOAPException, IOException {
+        // a streamed response keeps the socket busy until it has been read
+        // or its message disposed, so the permit is released along with it
+        return super.post(message, endPoint, call, new Permit(acquire(endPoint, call)));
+    }
+
+    @Override
+    SOAPMessage doGet(URL endPoint) throws SOAPException, IOException {
+        Semaphore route = acquire(endPoint, null);
+        try {
+            return super.doGet(endPoint);
+        } finally {
+            route.release();
+        }
+    }
+
+    @Override
+    HttpURLConnection createConnection(URL endpoint) throws IOException {
+        HttpURLConnection connection = super.createConnection(endpoint);
+        connection.setConnectTimeout(factory.getConnectTimeout());
+        connection.setReadTimeout(factory.getReadTimeout());
+        return connection;
+    }
+
+    @Override
+    void releaseConnection(HttpURLConnection httpConnection) {
+        // the response stream has been read to the end and closed, which
+        // returns the socket to the keep-alive cache; do not disconnect
+    }
+
+    /**
+     * Waits for a permit of the route to the endpoint, no longer than the
+     * request timeout or the deadline of the asynchronous call, if any.
+     */
+    private Semaphore acquire(URL endPoint, AsyncCall call) throws SOAPException {
+        Semaphore route = factory.getRoute(endPoint);
+        long timeout = TimeUnit.MILLISECONDS.toNanos(factory.getRequestTimeout());
+        boolean bounded = timeout > 0;
+        if (call != null) {
+            long remaining = call.remainingNanos();
+            if (remaining != Long.MAX_VALUE && (!bounded || remaining < timeout)) {
+                timeout = remaining;
+                bounded = true;
+            }
+        }
+        try {
+            if (bounded) {
+                if (!route.tryAcquire(timeout, TimeUnit.NANOSECONDS)) {
+                    log.log(Level.SEVERE, "SAAJ0015.p2p.route.timeout",
+                            new Object[] { endPoint });
+                    throw new SOAPExceptionImpl(
+                        "Timed out waiting for a connection to " + endPoint);
+                }
+            } else {
+                route.acquire();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SOAPExceptionImpl(ex);
+        }
+        return route;
+    }
+
+    /**
+     * Released once the connection is no longer in use, however often it
+     * is closed.
+     */
+    private static final class Permit implements Closeable {
+
+        private final Semaphore route;
+
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        Permit(Semaphore route) {
+            this.route = route;
+        }
+
+        @Override
+        public void close() {
+            if (released.compareAndSet(false, true)) {
+                route.release();
+            }
+        }
+    }
+}
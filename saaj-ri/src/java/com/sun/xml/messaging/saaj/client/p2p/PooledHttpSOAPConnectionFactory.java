@@ -0,0 +1,201 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package com.sun.xml.messaging.saaj.client.p2p;
+
+import java.net.URL;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+
+import javax.xml.soap.*;
+
+import com.sun.xml.messaging.saaj.util.SAAJUtil;
+
+/**
+ * SOAPConnectionFactory whose connections keep persistent per-endpoint
+ * HTTP connections and may be shared across threads.
+ *
+ * <p>Connections created by the same factory share a limit on the number
+ * of concurrent requests to each endpoint (scheme, host and port). Sockets
+ * are not disconnected after a call, so they are kept in the keep-alive
+ * cache of {@link java.net.HttpURLConnection} and reused by later calls to
+ * the same endpoint, avoiding a new TCP and TLS handshake each time. Idle
+ * sockets are evicted by that cache once the keep-alive timeout announced
+ * by the server (5 seconds if none) expires; the {@code http.maxConnections}
+ * system property caps the number of idle sockets kept per endpoint and
+ * should not be lower than {@link #setMaxPerRoute(int) maxPerRoute}.
+ *
+ * <p>Defaults are read from the following system properties:
+ * <ul>
+ * <li>{@code saaj.http.maxPerRoute} - concurrent requests per endpoint, 5</li>
+ * <li>{@code saaj.http.connectTimeout} - milliseconds, 0 for none</li>
+ * <li>{@code saaj.http.readTimeout} - milliseconds, 0 for none</li>
+ * <li>{@code saaj.http.requestTimeout} - milliseconds to wait for a free
+ * slot to the endpoint, 0 for none</li>
+ * </ul>
+ */
+public class PooledHttpSOAPConnectionFactory extends HttpSOAPConnectionFactory {
+
+    private static final int DEFAULT_MAX_PER_ROUTE = 5;
+
+    private final ConcurrentMap<String, Route> routes =
+            new ConcurrentHashMap<String, Route>();
+
+    private volatile int maxPerRoute =
+            SAAJUtil.getSystemInteger("saaj.http.maxPerRoute", DEFAULT_MAX_PER_ROUTE);
+    private volatile int connectTimeout =
+            SAAJUtil.getSystemInteger("saaj.http.connectTimeout", 0);
+    private volatile int readTimeout =
+            SAAJUtil.getSystemInteger("saaj.http.readTimeout", 0);
+    private volatile int requestTimeout =
+            SAAJUtil.getSystemInteger("saaj.http.requestTimeout", 0);
+
+    @Override
+    HttpSOAPConnection newConnection() throws SOAPException {
+        return new PooledHttpSOAPConnection(this);
+    }
+
+    Semaphore getRoute(URL endPoint) {
+        int port = endPoint.getPort() == -1 ? endPoint.getDefaultPort() : endPoint.getPort();
+        String key = endPoint.getProtocol().toLowerCase() + "://"
+                + endPoint.getHost().toLowerCase() + ":" + port;
+        Route route = routes.get(key);
+        if (route == null) {
+            Route newRoute = new Route(maxPerRoute);
+            route = routes.putIfAbsent(key, newRoute);
+            if (route == null) {
+                route = newRoute;
+                if (route.limit != maxPerRoute) {
+                    // setMaxPerRoute() ran before the route was visible
+                    synchronized (this) {
+                        route.resize(maxPerRoute);
+                    }
+                }
+            }
+        }
+        return route;
+    }
+
+    /**
+     * Sets the maximum number of concurrent requests to one endpoint,
+     * including endpoints already in use. Requests in flight are not
+     * interrupted when the limit is lowered; new requests wait until the
+     * number in flight has dropped below it.
+     *
+     * @param maxPerRoute maximum number of concurrent requests per endpoint
+     */
+    public synchronized void setMaxPerRoute(int maxPerRoute) {
+        if (maxPerRoute < 1) {
+            throw new IllegalArgumentException("maxPerRoute must be positive: " + maxPerRoute);
+        }
+        this.maxPerRoute = maxPerRoute;
+        for (Route route : routes.values()) {
+            route.resize(maxPerRoute);
+        }
+    }
+
+    public int getMaxPerRoute() {
+        return maxPerRoute;
+    }
+
+    /**
+     * @param connectTimeout timeout in milliseconds to establish a
+     *        connection, zero for none
+     */
+    public void setConnectTimeout(int connectTimeout) {
+        this.connectTimeout = connectTimeout;
+    }
+
+    public int getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    /**
+     * @param readTimeout timeout in milliseconds when reading the response,
+     *        zero for none
+     */
+    public void setReadTimeout(int readTimeout) {
+        this.readTimeout = readTimeout;
+    }
+
+    public int getReadTimeout() {
+        return readTimeout;
+    }
+
+    /**
+     * @param requestTimeout timeout in milliseconds to wait until a request
+     *        to an endpoint which already has {@code maxPerRoute} requests in
+     *        flight may proceed, zero for none
+     */
+    public void setRequestTimeout(int requestTimeout) {
+        this.requestTimeout = requestTimeout;
+    }
+
+    public int getRequestTimeout() {
+        return requestTimeout;
+    }
+
+    /**
+     * Permits for the requests to one endpoint.
+     */
+    private static final class Route extends Semaphore {
+
+        private static final long serialVersionUID = 1L;
+
+        // guarded by the factory
+        volatile int limit;
+
+        Route(int limit) {
+            super(limit, true);
+            this.limit = limit;
+        }
+
+        void resize(int newLimit) {
+            int delta = newLimit - limit;
+            limit = newLimit;
+            if (delta > 0) {
+                release(delta);
+            } else if (delta < 0) {
+                reducePermits(-delta);
+            }
+        }
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package com.sun.xml.messaging.saaj.client.p2p;
+
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Live HTTP response stream handed to the message factory when the
+ * response is streamed instead of being read fully up-front.
+ *
+ * <p>The underlying stream is closed as soon as its end is reached or
+ * when the message owning it is disposed, whichever comes first, so that
+ * the connection can go back to the keep-alive cache. An optional lease,
+ * such as a per-route permit, is released along with it.
+ */
+class ResponseInputStream extends FilterInputStream {
+
+    private volatile boolean closed = false;
+
+    private final Closeable lease;
+
+    ResponseInputStream(InputStream in) {
+        this(in, null);
+    }
+
+    /**
+     * @param lease closed once this stream is closed, may be null
+     */
+    ResponseInputStream(InputStream in, Closeable lease) {
+        super(in);
+        this.lease = lease;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (closed) {
+            return -1;
+        }
+        int b = in.read();
+        if (b == -1) {
+            close();
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (closed) {
+            return -1;
+        }
+        int n = in.read(b, off, len);
+        if (n == -1) {
+            close();
+        }
+        return n;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return closed ? 0 : in.available();
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            in.close();
+        } finally {
+            if (lease != null) {
+                lease.close();
+            }
+        }
+    }
+}
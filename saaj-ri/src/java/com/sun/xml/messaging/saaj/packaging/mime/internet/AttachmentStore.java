@@ -0,0 +1,539 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package com.sun.xml.messaging.saaj.packaging.mime.internet;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.sun.xml.messaging.saaj.util.ByteOutputStream;
+import com.sun.xml.messaging.saaj.util.SAAJUtil;
+
+/**
+ * Storage for the attachment bodies of one message. Bodies are kept in
+ * memory up to a threshold, larger ones are written to temporary files
+ * which are read back, optionally memory-mapped, through streams
+ * implementing {@link SharedInputStream}.
+ *
+ * <p>The threshold, the directory of the temporary files and whether they
+ * are mapped are configured through the <code>saaj.attachment.memory.threshold</code>
+ * (in bytes, spilling is disabled when negative or unset),
+ * <code>saaj.attachment.tempdir</code> and <code>saaj.attachment.mmap</code>
+ * system properties.
+ *
+ * <p>{@link #close()} deletes the temporary files, after that the spilled
+ * bodies can no longer be read. Files of a store which is never closed are
+ * deleted once none of their content is referenced any more.
+ */
+public final class AttachmentStore implements Closeable {
+
+    public static final String MEMORY_THRESHOLD = "saaj.attachment.memory.threshold";
+    public static final String TEMP_DIR = "saaj.attachment.tempdir";
+    public static final String MEMORY_MAPPED = "saaj.attachment.mmap";
+
+    // cleans up the files of stores which were not closed
+    private static final ReferenceQueue<SpillFile> queue = new ReferenceQueue<SpillFile>();
+    private static final Set<Cleaner> cleaners =
+            Collections.synchronizedSet(new HashSet<Cleaner>());
+
+    private final long threshold;
+    private final File dir;
+    private final boolean mapped;
+
+    private List<SpillFile> files = new ArrayList<SpillFile>();
+    private int spilledParts;
+    private long spilledBytes;
+    private long memoryBytes;
+
+    /**
+     * Creates a store.
+     *
+     * @param threshold size in bytes above which a body is written to a
+     *        temporary file
+     * @param dir directory of the temporary files, <code>null</code> for
+     *        the default temporary directory
+     * @param mapped whether temporary files are memory-mapped to be read
+     */
+    public AttachmentStore(long threshold, File dir, boolean mapped) {
+        if (threshold < 0) {
+            throw new IllegalArgumentException("threshold < 0");
+        }
+        this.threshold = threshold;
+        this.dir = dir;
+        this.mapped = mapped;
+    }
+
+    /**
+     * Creates a store configured by the system properties.
+     *
+     * @return the store, or <code>null</code> if spilling to disk is not
+     *         enabled
+     */
+    public static AttachmentStore newInstance() {
+        int threshold = SAAJUtil.getSystemInteger(MEMORY_THRESHOLD, -1);
+        if (threshold < 0) {
+            return null;
+        }
+        String dir = SAAJUtil.getSystemProperty(TEMP_DIR);
+        return new AttachmentStore(threshold, (dir != null) ? new File(dir) : null,
+                SAAJUtil.getSystemBoolean(MEMORY_MAPPED));
+    }
+
+    public long getThreshold() {
+        return threshold;
+    }
+
+    public File getDirectory() {
+        return dir;
+    }
+
+    /**
+     * Returns a buffer to write a body into.
+     *
+     * @return new buffer
+     */
+    public Buffer newBuffer() {
+        return new Buffer();
+    }
+
+    /**
+     * @return number of bodies written to temporary files
+     */
+    public synchronized int getSpilledParts() {
+        return spilledParts;
+    }
+
+    /**
+     * @return total size of the bodies written to temporary files
+     */
+    public synchronized long getSpilledBytes() {
+        return spilledBytes;
+    }
+
+    /**
+     * @return total size of the bodies kept in memory
+     */
+    public synchronized long getMemoryBytes() {
+        return memoryBytes;
+    }
+
+    /**
+     * Deletes the temporary files of this store.
+     */
+    @Override
+    public void close() {
+        List<SpillFile> toClose;
+        synchronized (this) {
+            toClose = files;
+            files = new ArrayList<SpillFile>();
+        }
+        for (SpillFile file : toClose) {
+            file.cleaner.clean();
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "AttachmentStore[threshold=" + threshold
+                + ", spilledParts=" + spilledParts
+                + ", spilledBytes=" + spilledBytes
+                + ", memoryBytes=" + memoryBytes + "]";
+    }
+
+    private synchronized void completed(SpillFile file, long size) {
+        if (file != null) {
+            files.add(file);
+            spilledParts++;
+            spilledBytes += size;
+        } else {
+            memoryBytes += size;
+        }
+    }
+
+    private static void expunge() {
+        Reference<? extends SpillFile> ref;
+        while ((ref = queue.poll()) != null) {
+            ((Cleaner) ref).clean();
+        }
+    }
+
+    /**
+     * Collects a body, in memory until it grows past the threshold of the
+     * store and in a temporary file after that.
+     */
+    public final class Buffer extends OutputStream {
+
+        private ByteOutputStream memory = new ByteOutputStream();
+        private OutputStream out;
+        private SpillFile file;
+        private long size;
+
+        private Buffer() {
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (out == null && size >= threshold) {
+                spill();
+            }
+            if (out != null) {
+                out.write(b);
+            } else {
+                memory.write(b);
+            }
+            size++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (out == null && size + len > threshold) {
+                spill();
+            }
+            if (out != null) {
+                out.write(b, off, len);
+            } else {
+                memory.write(b, off, len);
+            }
+            size += len;
+        }
+
+        /**
+         * Copies the rest of the given stream into this buffer.
+         *
+         * @param in stream to read
+         * @throws IOException if reading or writing fails
+         */
+        public void write(InputStream in) throws IOException {
+            byte[] buf = new byte[8192];
+            for (int n; (n = in.read(buf)) != -1;) {
+                write(buf, 0, n);
+            }
+        }
+
+        public long size() {
+            return size;
+        }
+
+        /**
+         * Completes the buffer.
+         *
+         * @return a stream over the body, implementing
+         *         {@link SharedInputStream}
+         * @throws IOException if the temporary file cannot be read
+         */
+        public InputStream newInputStream() throws IOException {
+            if (file == null) {
+                if (memory == null) {
+                    throw new IOException("Buffer was already completed");
+                }
+                completed(null, size);
+                InputStream in = new SharedByteArrayInputStream(
+                        memory.getBytes(), 0, memory.getCount());
+                memory = null;
+                return in;
+            }
+            if (out != null) {
+                out.close();
+                out = null;
+                file.open(mapped, size);
+                completed(file, size);
+            }
+            return new FileStream(file, 0, size);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (out != null) {
+                out.close();
+            }
+        }
+
+        private void spill() throws IOException {
+            expunge();
+            File f = File.createTempFile("saaj", ".att", dir);
+            try {
+                out = new BufferedOutputStream(new FileOutputStream(f), 64 * 1024);
+            } catch (IOException e) {
+                f.delete();
+                throw e;
+            }
+            file = new SpillFile(f);
+            memory.writeTo(out);
+            memory = null;
+        }
+    }
+
+    private static final class SpillFile {
+        final Cleaner cleaner;
+        private MappedByteBuffer map;
+
+        SpillFile(File file) {
+            cleaner = new Cleaner(this, file);
+        }
+
+        void open(boolean mapped, long size) throws IOException {
+            FileChannel channel = new RandomAccessFile(cleaner.file, "r").getChannel();
+            cleaner.channel = channel;
+            if (mapped && size <= Integer.MAX_VALUE) {
+                map = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            }
+        }
+
+        int read(long pos, byte[] b, int off, int len) throws IOException {
+            if (map != null) {
+                ByteBuffer view = map.duplicate();
+                view.position((int) pos);
+                view.get(b, off, len);
+                return len;
+            }
+            FileChannel channel = cleaner.channel;
+            if (channel == null) {
+                throw new IOException("Attachment storage was released");
+            }
+            ByteBuffer buf = ByteBuffer.wrap(b, off, len);
+            while (buf.hasRemaining()) {
+                if (channel.read(buf, pos + buf.position() - off) < 0) {
+                    break;
+                }
+            }
+            return buf.position() - off;
+        }
+
+        /*
+         * Writes a range of the file without copying it to the heap, from
+         * the mapping or by FileChannel.transferTo.
+         */
+        void transferTo(long pos, long count, OutputStream out) throws IOException {
+            if (count <= 0) {
+                return;
+            }
+            WritableByteChannel target = (out instanceof FileOutputStream)
+                    ? ((FileOutputStream) out).getChannel()
+                    : Channels.newChannel(out);
+            if (map != null) {
+                ByteBuffer view = map.duplicate();
+                view.position((int) pos);
+                view.limit((int) (pos + count));
+                while (view.hasRemaining()) {
+                    target.write(view);
+                }
+                return;
+            }
+            FileChannel channel = cleaner.channel;
+            if (channel == null) {
+                throw new IOException("Attachment storage was released");
+            }
+            while (count > 0) {
+                long n = channel.transferTo(pos, count, target);
+                if (n <= 0) {
+                    throw new IOException("Unexpected end of attachment storage");
+                }
+                pos += n;
+                count -= n;
+            }
+        }
+    }
+
+    private static final class Cleaner extends PhantomReference<SpillFile> {
+        final File file;
+        volatile FileChannel channel;
+
+        Cleaner(SpillFile referent, File file) {
+            super(referent, queue);
+            this.file = file;
+            cleaners.add(this);
+        }
+
+        void clean() {
+            if (!cleaners.remove(this)) {
+                return;
+            }
+            FileChannel c = channel;
+            channel = null;
+            if (c != null) {
+                try {
+                    c.close();
+                } catch (IOException e) {
+                    // nothing to do, the file is deleted anyway
+                }
+            }
+            if (!file.delete()) {
+                // still mapped on some platforms
+                file.deleteOnExit();
+            }
+        }
+    }
+
+    /*
+     * Number of bytes of the given stream from the given position to its
+     * end, or -1 if the stream is not a shared one whose length is known.
+     */
+    static long length(InputStream in, long from) {
+        if (in instanceof FileStream) {
+            FileStream fs = (FileStream) in;
+            return Math.max(0, fs.end - (fs.start + from));
+        }
+        if (in instanceof SharedByteArrayInputStream) {
+            SharedByteArrayInputStream bs = (SharedByteArrayInputStream) in;
+            return ((SharedByteArrayInputStream) bs.newStream(from, -1)).available();
+        }
+        return -1;
+    }
+
+    private static final class FileStream extends InputStream implements SharedInputStream {
+        private final SpillFile file;
+        private final long start;
+        private final long end;
+        private long pos;
+        private long mark;
+
+        private byte[] buf;
+        private long bufPos;
+        private int bufLen;
+
+        FileStream(SpillFile file, long start, long end) {
+            this.file = file;
+            this.start = start;
+            this.end = end;
+            this.pos = start;
+            this.mark = start;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (pos >= end) {
+                return -1;
+            }
+            if (buf == null) {
+                buf = new byte[8192];
+            }
+            if (pos < bufPos || pos >= bufPos + bufLen) {
+                bufPos = pos;
+                bufLen = file.read(pos, buf, 0, (int) Math.min(buf.length, end - pos));
+                if (bufLen <= 0) {
+                    return -1;
+                }
+            }
+            return buf[(int) (pos++ - bufPos)] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (pos >= end) {
+                return -1;
+            }
+            int n = file.read(pos, b, off, (int) Math.min(len, end - pos));
+            if (n <= 0) {
+                return -1;
+            }
+            pos += n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) {
+            long skipped = Math.max(0, Math.min(n, end - pos));
+            pos += skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, end - pos);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return true;
+        }
+
+        @Override
+        public synchronized void mark(int readlimit) {
+            mark = pos;
+        }
+
+        @Override
+        public synchronized void reset() {
+            pos = mark;
+        }
+
+        @Override
+        public long getPosition() {
+            return pos - start;
+        }
+
+        @Override
+        public InputStream newStream(long from, long to) {
+            if (from < 0) {
+                throw new IllegalArgumentException("start < 0");
+            }
+            return new FileStream(file, start + from, (to == -1) ? end : start + to);
+        }
+
+        @Override
+        public void writeTo(long from, long to, OutputStream out) {
+            long limit = (to == -1) ? end : start + to;
+            try {
+                file.transferTo(start + from, limit - (start + from), out);
+            } catch (IOException ioe) {
+                throw new RuntimeException(ioe);
+            }
+        }
+    }
+}
@@ -47,15 +47,19 @@ package com.sun.xml.messaging.saaj.packaging.mime.internet;
 
 import com.sun.xml.messaging.saaj.packaging.mime.MessagingException;
 import com.sun.xml.messaging.saaj.packaging.mime.util.ASCIIUtility;
-import com.sun.xml.messaging.saaj.packaging.mime.util.OutputUtil;
+import com.sun.xml.messaging.saaj.util.ByteInputStream;
 import com.sun.xml.messaging.saaj.util.ByteOutputStream;
 
 import javax.activation.DataSource;
 import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.BitSet;
 
 /**
@@ -96,9 +100,9 @@ public class BMMimeMultipart extends MimeMultipart {
 
     int[] bcs = new int[256];
     int[] gss = null;
-    private static final int BUFFER_SIZE = 4096;
-    private byte[] buffer = new byte[BUFFER_SIZE];
-    private byte[] prevBuffer = new byte[BUFFER_SIZE];
+    // size of the buffer the boundary is searched in
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private byte[] buffer = null;
     private BitSet lastPartFound = new BitSet(1);
 
     // cached inputstream which is possibly partially consumed
@@ -110,6 +114,12 @@ public class BMMimeMultipart extends MimeMultipart {
     // property to indicate if lazyAttachments is ON
     private boolean lazyAttachments = false;
 
+    // forward the unparsed rest of the stream in writeTo without a copy
+    private boolean attachmentPassthrough = false;
+
+    // set once the unparsed rest of the stream has been forwarded
+    private boolean forwarded = false;
+
     /**
      * Default constructor. An empty MimeMultipart object
      * is created. Its content type is set to "multipart/mixed".
@@ -192,7 +202,17 @@ public class BMMimeMultipart extends MimeMultipart {
         if (in == null) {
             try {
                 in = ds.getInputStream();
-                if (!(in instanceof ByteArrayInputStream) &&
+                if (in instanceof ByteInputStream) {
+                    // parse parts as views of the buffer instead of copies
+                    ByteInputStream bis = (ByteInputStream) in;
+                    int available = bis.available();
+                    in = new SharedByteArrayInputStream(bis.getBytes(),
+                            bis.getCount() - available, available);
+                }
+                if (in instanceof FileInputStream)
+                    // keeps the file reachable for transfer()
+                    in = new FileBufferedInputStream((FileInputStream) in);
+                else if (!(in instanceof ByteArrayInputStream) &&
                         !(in instanceof BufferedInputStream) &&
                         !(in instanceof SharedInputStream))
                     in = new BufferedInputStream(in);
@@ -221,6 +241,7 @@ public class BMMimeMultipart extends MimeMultipart {
     protected void parse() throws MessagingException {
         if (parsed)
             return;
+        checkNotForwarded();
 
         initStream();
 
@@ -242,6 +263,45 @@ public class BMMimeMultipart extends MimeMultipart {
         parsed = true;
     }
 
+    /**
+     * Get the specified MimeBodyPart, reading the InputStream from our
+     * DataSource only as far as needed to reach it. Parts following it
+     * are left unparsed.
+     *
+     * @param index the index of the desired MimeBodyPart.
+     * @return the MimeBodyPart, or <code>null</code> if the stream has no
+     *         such part.
+     * @throws MessagingException in case of error.
+     */
+    public MimeBodyPart readBodyPart(int index) throws MessagingException {
+        if (!parsed && parts.size() <= index) {
+            checkNotForwarded();
+            initStream();
+
+            SharedInputStream sin = null;
+            if (in instanceof SharedInputStream) {
+                sin = (SharedInputStream) in;
+            }
+
+            byte[] bndbytes = ASCIIUtility.getBytes("--" + boundary);
+            try {
+                while (parts.size() <= index && !lastPartFound.get(0) && (b != -1)) {
+                    getNextPart(in, bndbytes, sin);
+                }
+            } catch (IOException ioex) {
+                throw new MessagingException("IO Error", ioex);
+            } catch (MessagingException mex) {
+                throw mex;
+            } catch (Exception ex) {
+                throw new MessagingException("Error", ex);
+            }
+            if (lastPartFound.get(0) || (b == -1)) {
+                parsed = true;
+            }
+        }
+        return (index < parts.size()) ? parts.get(index) : null;
+    }
+
     public boolean lastBodyPartFound() {
         return lastPartFound.get(0);
     }
@@ -291,8 +351,8 @@ public class BMMimeMultipart extends MimeMultipart {
 
         } else {
             InternetHeaders headers = createInternetHeaders(stream);
-            ByteOutputStream baos = new ByteOutputStream();
-            b = readBody(stream, pattern, null, baos, null);
+            OutputStream body = (store != null) ? store.newBuffer() : new ByteOutputStream();
+            b = readBody(stream, pattern, null, body, null);
             // looks like this check has to be disabled
             // in the old impl it is allowed to have Mime Package 
             // without closing boundary
@@ -301,8 +361,15 @@ public class BMMimeMultipart extends MimeMultipart {
                     throw new MessagingException("Missing End Boundary for Mime Package : EOF while skipping headers");
                 }
             }
-            MimeBodyPart mbp = createMimeBodyPart(
-                    headers, baos.getBytes(), baos.getCount());
+            MimeBodyPart mbp;
+            if (body instanceof AttachmentStore.Buffer) {
+                mbp = new MimeBodyPart(headers,
+                        ((AttachmentStore.Buffer) body).newInputStream());
+            } else {
+                ByteOutputStream baos = (ByteOutputStream) body;
+                mbp = createMimeBodyPart(
+                        headers, baos.getBytes(), baos.getCount());
+            }
             addBodyPart(mbp);
             return mbp;
         }
@@ -354,9 +421,9 @@ public class BMMimeMultipart extends MimeMultipart {
 
     private int readBody(
             InputStream is, byte[] pattern, long[] posVector,
-            ByteOutputStream baos, SharedInputStream sin)
+            OutputStream out, SharedInputStream sin)
             throws Exception {
-        if (!find(is, pattern, posVector, baos, sin)) {
+        if (!findBody(is, pattern, posVector, out, sin)) {
             throw new Exception(
                     "Missing boundary delimitier while reading Body Part");
         }
@@ -377,236 +444,156 @@ public class BMMimeMultipart extends MimeMultipart {
     }
 
 
-    public int readNext(InputStream is, byte[] buff, int patternLength,
-                        BitSet eof, long[] posVector, SharedInputStream sin)
-            throws Exception {
-
-        int bufferLength = is.read(buffer, 0, patternLength);
-        if (bufferLength == -1) {
-            eof.flip(0);
-        } else if (bufferLength < patternLength) {
-            //repeatedly read patternLength - bufferLength
-            int temp = 0;
-            long pos = 0;
-            int i = bufferLength;
-            for (; i < patternLength; i++) {
-                if (sin != null) {
-                    pos = sin.getPosition();
-                }
-                temp = is.read();
-                if (temp == -1) {
-                    eof.flip(0);
-                    if (sin != null) {
-                        posVector[0] = pos;
-                    }
-                    break;
-                }
-                buffer[i] = (byte) temp;
-            }
-            bufferLength = i;
-        }
-        return bufferLength;
-    }
-
     public boolean find(InputStream is, byte[] pattern, SharedInputStream sin)
             throws Exception {
-        int i;
-        int l = pattern.length;
-        int lx = l - 1;
-        BitSet eof = new BitSet(1);
-        long[] posVector = new long[1];
-
-        while (true) {
-            is.mark(l);
-            readNext(is, buffer, l, eof, posVector, sin);
-            if (eof.get(0)) {
-                // End of stream
-                return false;
-            }
-
-            /*
-        if (bufferLength < l) {
-            //is.reset();
-        return false;
-        }*/
-
-            for (i = lx; i >= 0; i--) {
-                if (buffer[i] != pattern[i]) {
-                    break;
-                }
-            }
-
-            if (i < 0) {
-                // found the boundary, skip *LWSP-char and CRLF
-                if (!skipLWSPAndCRLF(is)) {
-                    throw new Exception("Boundary does not terminate with CRLF");
-                }
-                return true;
-            }
-
-            int s = Math.max(i + 1 - bcs[buffer[i] & 0x7f], gss[i]);
-            is.reset();
-            is.skip(s);
+        if (!scan(is, pattern, false, null, null, sin)) {
+            return false;
+        }
+        // found the boundary, skip *LWSP-char and CRLF
+        if (!skipLWSPAndCRLF(is)) {
+            throw new Exception("Boundary does not terminate with CRLF");
         }
+        return true;
     }
 
     public boolean find(
             InputStream is, byte[] pattern, long[] posVector,
             ByteOutputStream out, SharedInputStream sin) throws Exception {
-        int i;
-        int l = pattern.length;
-        int lx = l - 1;
-        int bufferLength = 0;
-        int s = 0;
-        long endPos = -1;
-        byte[] tmp = null;
+        return findBody(is, pattern, posVector, out, sin);
+    }
 
-        boolean first = true;
-        BitSet eof = new BitSet(1);
+    private boolean findBody(
+            InputStream is, byte[] pattern, long[] posVector,
+            OutputStream out, SharedInputStream sin) throws Exception {
+        if (!scan(is, pattern, true, posVector, out, sin)) {
+            // looks like it is allowed to not have a closing boundary
+            // in the old implementation
+            b = -1;
+            return true;
+        }
+        // found the boundary, skip *LWSP-char and CRLF
+        skipLWSPAndCRLF(is);
+        return true;
+    }
 
-        while (true) {
-            is.mark(l);
-            if (!first) {
-                tmp = prevBuffer;
-                prevBuffer = buffer;
-                buffer = tmp;
-            }
-            if (sin != null) {
-                endPos = sin.getPosition();
-            }
+    /**
+     * Searches the stream for the pattern a buffer full at a time, leaving
+     * the stream positioned right after the pattern, or at its end if the
+     * pattern does not occur.
+     *
+     * When scanning a body, the bytes before the pattern except for the
+     * line break preceding it are part content. They are copied to
+     * <code>out</code>, or when reading from a SharedInputStream only the
+     * position where they end is stored in <code>posVector</code>.
+     */
+    private boolean scan(
+            InputStream is, byte[] pattern, boolean body, long[] posVector,
+            OutputStream out, SharedInputStream sin) throws Exception {
+        int l = pattern.length;
+        if ((buffer == null) || (buffer.length < 2 * l + 2)) {
+            buffer = new byte[Math.max(BUFFER_SIZE, 2 * l + 2)];
+        }
+        byte[] buf = buffer;
+        long pos = (sin != null) ? sin.getPosition() : 0;
+        // bytes at the start of buf carried over from the previous round
+        int carried = 0;
 
-            bufferLength = readNext(is, buffer, l, eof, posVector, sin);
-
-            if (bufferLength == -1) {
-                // End of stream
-                // looks like it is allowed to not have a closing boundary
-                //return false;
-                //if (sin != null) {
-                //   posVector[0] = endPos;
-                //}
-                b = -1;
-                if ((s == l) && (sin == null)) {
-                    out.write(prevBuffer, 0, s);
+        while (true) {
+            is.mark(buf.length);
+            int n = carried + readFully(is, buf, carried);
+            int m = indexOf(buf, n, pattern);
+            if (m >= 0) {
+                if (body) {
+                    int end = m;
+                    if (m > 0) {
+                        //looks like the earlier impl allowed just an LF
+                        if (buf[m - 1] != '\n') {
+                            throw new Exception(
+                                    "Boundary characters encountered in part Body " +
+                                            "without a preceeding CRLF");
+                        }
+                        end = ((m > 1) && (buf[m - 2] == '\r')) ? m - 2 : m - 1;
+                    }
+                    emit(buf, end, pos, posVector, out, sin);
                 }
+                // position the stream right after the pattern
+                is.reset();
+                skipFully(is, m + l - carried);
                 return true;
             }
 
-            if (bufferLength < l) {
-                if (sin != null) {
-                    //endPos = sin.getPosition();
-                    //posVector[0] = endPos;
-                } else {
-                    // looks like it is allowed to not have a closing boundary
-                    // in the old implementation
-                    out.write(buffer, 0, bufferLength);
+            if (n < buf.length) {
+                // end of stream, everything read belongs to the body
+                if (body) {
+                    emit(buf, n, pos, posVector, out, sin);
                 }
-                // looks like it is allowed to not have a closing boundary
-                // in the old implementation
-                //return false;
-                b = -1;
-                return true;
+                return false;
             }
 
-            for (i = lx; i >= 0; i--) {
-                if (buffer[i] != pattern[i]) {
-                    break;
-                }
+            // the pattern may still start in the last l - 1 bytes, carry
+            // those and the line break that may precede them over
+            int consumed = n - (l - 1) - 2;
+            if (body && (out != null)) {
+                out.write(buf, 0, consumed);
             }
+            carried = n - consumed;
+            System.arraycopy(buf, consumed, buf, 0, carried);
+            pos += consumed;
+        }
+    }
 
-            if (i < 0) {
-                if (s > 0) {
-                    //looks like the earlier impl allowed just an LF
-                    // so if s == 1 : it must be an LF
-                    // if s == 2 : it must be a CR LF
-                    if (s <= 2) {
-                        //it could be "some-char\n" so write some-char 
-                        if (s == 2) {
-                            if (prevBuffer[1] == '\n') {
-                                if (prevBuffer[0] != '\r' && prevBuffer[0] != '\n') {
-                                    out.write(prevBuffer, 0, 1);
-                                }
-                                if (sin != null) {
-                                    posVector[0] = endPos;
-                                }
-
-                            } else {
-                                throw new Exception(
-                                        "Boundary characters encountered in part Body " +
-                                                "without a preceeding CRLF");
-                            }
-
-                        } else if (s == 1) {
-                            if (prevBuffer[0] != '\n') {
-                                throw new Exception(
-                                        "Boundary characters encountered in part Body " +
-                                                "without a preceeding CRLF");
-                            } else {
-                                if (sin != null) {
-                                    posVector[0] = endPos;
-                                }
-                            }
-                        }
+    private static void emit(byte[] buf, int len, long pos, long[] posVector,
+            OutputStream out, SharedInputStream sin) throws IOException {
+        if (sin != null) {
+            posVector[0] = pos + len;
+        } else {
+            out.write(buf, 0, len);
+        }
+    }
 
-                    } else if (s > 2) {
-                        if ((prevBuffer[s - 2] == '\r') && (prevBuffer[s - 1] == '\n')) {
-                            if (sin != null) {
-                                posVector[0] = endPos - 2;
-                            } else {
-                                out.write(prevBuffer, 0, s - 2);
-                            }
-                        } else if (prevBuffer[s - 1] == '\n') {
-                            //old impl allowed just a \n
-                            if (sin != null) {
-                                posVector[0] = endPos - 1;
-                            } else {
-                                out.write(prevBuffer, 0, s - 1);
-                            }
-                        } else {
-                            throw new Exception(
-                                    "Boundary characters encountered in part Body " +
-                                            "without a preceeding CRLF");
-                        }
-                    }
-                }
-                // found the boundary, skip *LWSP-char and CRLF
-                if (!skipLWSPAndCRLF(is)) {
-                    //throw new Exception(
-                    //   "Boundary does not terminate with CRLF");
-                }
-                return true;
+    /**
+     * Boyer-Moore search for the pattern in the first <code>n</code> bytes
+     * of <code>buf</code>.
+     */
+    private int indexOf(byte[] buf, int n, byte[] pattern) {
+        int lx = pattern.length - 1;
+        int last = n - pattern.length;
+        int pos = 0;
+        while (pos <= last) {
+            int i = lx;
+            while ((i >= 0) && (buf[pos + i] == pattern[i])) {
+                i--;
             }
+            if (i < 0) {
+                return pos;
+            }
+            pos += Math.max(i + 1 - bcs[buf[pos + i] & 0x7f], gss[i]);
+        }
+        return -1;
+    }
 
-            if ((s > 0) && (sin == null)) {
-                if (prevBuffer[s - 1] == (byte) 13) {
-                    // if buffer[0] == (byte)10
-                    if (buffer[0] == (byte) 10) {
-                        int j;
-                        for (j = lx - 1; j > 0; j--) {
-                            if (buffer[j + 1] != pattern[j]) {
-                                break;
-                            }
-                        }
-                        if (j == 0) {
-                            // matched the pattern excluding the last char of the pattern
-                            // so dont write the CR into stream
-                            out.write(prevBuffer, 0, s - 1);
-                        } else {
-                            out.write(prevBuffer, 0, s);
-                        }
-                    } else {
-                        out.write(prevBuffer, 0, s);
-                    }
-                } else {
-                    out.write(prevBuffer, 0, s);
-                }
+    private static int readFully(InputStream is, byte[] buf, int off) throws IOException {
+        int n = off;
+        while (n < buf.length) {
+            int count = is.read(buf, n, buf.length - n);
+            if (count == -1) {
+                break;
             }
+            n += count;
+        }
+        return n - off;
+    }
 
-            s = Math.max(i + 1 - bcs[buffer[i] & 0x7f], gss[i]);
-            is.reset();
-            is.skip(s);
-            if (first) {
-                first = false;
+    private static void skipFully(InputStream is, long n) throws IOException {
+        while (n > 0) {
+            long skipped = is.skip(n);
+            if (skipped <= 0) {
+                if (is.read() == -1) {
+                    return;
+                }
+                skipped = 1;
             }
+            n -= skipped;
         }
     }
 
@@ -711,31 +698,65 @@ public class BMMimeMultipart extends MimeMultipart {
     }
 
 
-    /**
+    /*
      * Iterates through all the parts and outputs each Mime part
-     * separated by a boundary.
+     * separated by a boundary, followed by the unparsed rest of the stream.
      */
-
     @Override
-    public void writeTo(OutputStream os)
+    void writeTo(MultipartWriter os)
             throws IOException, MessagingException {
+        checkNotForwarded();
 
         // inputStream was not null
         if (in != null) {
             contentType.setParameter("boundary", this.boundary);
         }
 
-        String bnd = "--" + contentType.getParameter("boundary");
+        byte[] bnd = MultipartWriter.delimiter(
+                contentType.getParameter("boundary"));
         for (int i = 0; i < parts.size(); i++) {
-            OutputUtil.writeln(bnd, os); // put out boundary
+            os.write(bnd); // put out boundary
+            os.writeln();
             parts.get(i).writeTo(os);
-            OutputUtil.writeln(os); // put out empty line
+            os.writeln(); // put out empty line
         }
 
         if (in != null) {
-            OutputUtil.writeln(bnd, os); // put out boundary
-            if ((os instanceof ByteOutputStream) && lazyAttachments) {
-                ((ByteOutputStream) os).write(in);
+            os.write(bnd); // put out boundary
+            os.writeln();
+            if (in instanceof SharedInputStream) {
+                // written from the shared buffer or file, which stays
+                // available for a getAttachment later
+                SharedInputStream sin = (SharedInputStream) in;
+                try {
+                    sin.writeTo(sin.getPosition(), -1, os);
+                } catch (RuntimeException re) {
+                    // SharedInputStream.writeTo cannot throw IOException
+                    if (re.getCause() instanceof IOException)
+                        throw (IOException) re.getCause();
+                    throw re;
+                }
+            } else if ((os.getOutputStream() instanceof ByteOutputStream)
+                    && lazyAttachments) {
+                os.flushBuffer();
+                ((ByteOutputStream) os.getOutputStream()).write(in);
+            } else if (attachmentPassthrough) {
+                // the attachments are not read again, nothing is kept
+                transfer(in, os);
+                forwarded = true;
+            } else if (store != null) {
+                // keep a copy in the attachment store while writing
+                AttachmentStore.Buffer buf = store.newBuffer();
+                try {
+                    byte[] bytes = new byte[8192];
+                    for (int n; (n = in.read(bytes)) != -1;) {
+                        os.write(bytes, 0, n);
+                        buf.write(bytes, 0, n);
+                    }
+                    in = buf.newInputStream();
+                } finally {
+                    buf.close();
+                }
             } else {
                 ByteOutputStream baos = null;
                 try {
@@ -744,7 +765,8 @@ public class BMMimeMultipart extends MimeMultipart {
                     baos.writeTo(os);
                     // reset the inputstream so that we can support a
                     // getAttachment later
-                    in = baos.newInputStream();
+                    in = new SharedByteArrayInputStream(
+                            baos.getBytes(), 0, baos.getCount());
                 } finally {
                     if (baos != null)
                         baos.close();
@@ -754,11 +776,36 @@ public class BMMimeMultipart extends MimeMultipart {
             // this will endup writing the end boundary
         } else {
             // put out last boundary
-            OutputUtil.writeAsAscii(bnd, os);
-            OutputUtil.writeAsAscii("--", os);
+            os.write(bnd);
+            os.writeAscii("--");
         }
     }
 
+    @Override
+    public long getSerializedSize() throws MessagingException {
+        checkNotForwarded();
+        String boundary = (in != null)
+                ? this.boundary : contentType.getParameter("boundary");
+        int bnd = boundary.length() + 2;
+        long size = 0;
+        for (int i = 0; i < parts.size(); i++) {
+            long partSize = parts.get(i).getSerializedSize();
+            if (partSize < 0) {
+                return -1;
+            }
+            size += bnd + 2 + partSize + 2;
+        }
+
+        if (in == null) {
+            return size + bnd + 2;
+        }
+        // the rest of the stream, which ends with the closing boundary
+        long rest = (in instanceof SharedInputStream)
+                ? AttachmentStore.length(in, ((SharedInputStream) in).getPosition())
+                : -1;
+        return (rest < 0) ? -1 : size + bnd + 2 + rest;
+    }
+
     public void setInputStream(InputStream is) {
         this.in = is;
     }
@@ -786,4 +833,88 @@ public class BMMimeMultipart extends MimeMultipart {
         lazyAttachments = flag;
     }
 
+    /**
+     * Sets whether the unparsed rest of a stream which cannot be shared
+     * is transferred straight to the output by {@link #writeTo}, without
+     * keeping a copy. Once it has been, reading the parts in it, writing
+     * this multipart again or computing its size throws
+     * {@link IllegalStateException}.
+     *
+     * @param flag true to forward the rest of the stream
+     */
+    public void setAttachmentPassthrough(boolean flag) {
+        attachmentPassthrough = flag;
+    }
+
+    /**
+     * Returns whether the unparsed rest of the stream has been forwarded
+     * by {@link #writeTo}, so that it can no longer be read.
+     *
+     * @return true if the rest of the stream has been forwarded
+     * @see #setAttachmentPassthrough(boolean)
+     */
+    public boolean isForwarded() {
+        return forwarded;
+    }
+
+    private void checkNotForwarded() {
+        if (forwarded) {
+            throw new IllegalStateException(
+                    "The unread parts of this multipart have already been"
+                    + " forwarded and cannot be read or written again");
+        }
+    }
+
+    private static void transfer(InputStream is, MultipartWriter os) throws IOException {
+        WritableByteChannel dst = os.getChannel();
+        if (os.getOutputStream() instanceof FileOutputStream)
+            dst = ((FileOutputStream) os.getOutputStream()).getChannel();
+        if ((is instanceof FileBufferedInputStream) && dst != null) {
+            FileBufferedInputStream fis = (FileBufferedInputStream) is;
+            // what was already read from the file goes first
+            fis.writeBuffered(os);
+            os.flushBuffer();
+            FileChannel src = fis.getChannel();
+            long pos = src.position();
+            long size = src.size();
+            while (pos < size) {
+                long n = src.transferTo(pos, size - pos, dst);
+                if (n <= 0) {
+                    // truncated file, or a channel which takes nothing
+                    throw new IOException("Unable to forward the attachments");
+                }
+                pos += n;
+            }
+            src.position(pos);
+            return;
+        }
+        byte[] bytes = new byte[8192];
+        for (int n; (n = is.read(bytes)) != -1;) {
+            os.write(bytes, 0, n);
+        }
+    }
+
+    /*
+     * The buffer put in front of a FileInputStream, through which the
+     * unread rest of the file can still be reached for transfer().
+     */
+    private static final class FileBufferedInputStream
+            extends BufferedInputStream {
+
+        FileBufferedInputStream(FileInputStream in) {
+            super(in);
+        }
+
+        FileChannel getChannel() {
+            return ((FileInputStream) in).getChannel();
+        }
+
+        // writes and skips the bytes read from the file but not yet consumed
+        synchronized void writeBuffered(OutputStream os) throws IOException {
+            if (count > pos) {
+                os.write(buf, pos, count - pos);
+                pos = count;
+            }
+        }
+    }
 }
@@ -46,6 +46,8 @@
 
 package com.sun.xml.messaging.saaj.packaging.mime.internet;
 
+import com.sun.xml.messaging.saaj.util.SAAJUtil;
+
 
 /**
  * This class represents a MIME ContentType value. It provides
@@ -60,6 +62,10 @@ public final class ContentType {
     private String primaryType;	// primary type
     private String subType;	// subtype
     private ParameterList list;	// parameter list
+    private boolean readOnly;	// shared by getInstance()
+
+    private static final ContentTypeCache cache = new ContentTypeCache(
+            SAAJUtil.getSystemInteger("saaj.contenttype.cache.size", 64));
 
     /**
      * No-arg Constructor.
@@ -117,8 +123,47 @@ public final class ContentType {
 	    list = new ParameterList(rem);
     }
 
+    /**
+     * Returns the parsed Content-Type header value. Recently parsed values
+     * without a multipart boundary are cached, so the instance returned may
+     * be shared and cannot be changed; use {@link #copy()} for one which can.
+     *
+     * @param s the Content-Type string.
+     * @return the read-only ContentType
+     * @exception ParseException if the parse fails.
+     */
+    public static ContentType getInstance(String s) throws ParseException {
+        return cache.get(s);
+    }
+
+    /**
+     * Returns a copy which can be changed.
+     *
+     * @return the copy
+     */
     public ContentType copy() {
-        return new ContentType(primaryType,subType,list.copy());
+        return new ContentType(primaryType,subType,
+                (list == null) ? null : list.copy());
+    }
+
+    /**
+     * @return true if this ContentType is shared and cannot be changed
+     * @see #getInstance(String)
+     */
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
+    void setReadOnly() {
+        readOnly = true;
+        if (list != null)
+            list.setReadOnly();
+    }
+
+    private void checkWritable() {
+        if (readOnly)
+            throw new UnsupportedOperationException(
+                    "A shared ContentType cannot be changed");
     }
 
     /**
@@ -176,6 +221,7 @@ public final class ContentType {
      * @param	primaryType	primary type
      */
     public void setPrimaryType(String primaryType) {
+        checkWritable();
 	this.primaryType = primaryType;
     }
 
@@ -184,6 +230,7 @@ public final class ContentType {
      * @param	subType	subType
      */
     public void setSubType(String subType) {
+        checkWritable();
 	this.subType = subType;
     }
 
@@ -195,6 +242,7 @@ public final class ContentType {
      * @param	value	parameter value
      */
     public void setParameter(String name, String value) {
+        checkWritable();
 	if (list == null)
 	    list = new ParameterList();
 
@@ -206,6 +254,7 @@ public final class ContentType {
      * @param	list	ParameterList
      */
     public void setParameterList(ParameterList list) {
+        checkWritable();
 	this.list = list;
     }
 
@@ -0,0 +1,96 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package com.sun.xml.messaging.saaj.packaging.mime.internet;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded cache of parsed Content-Type values, keyed by the header string,
+ * which drops the least recently used value when full.
+ * <p>
+ * Values with a <code>boundary</code> or <code>start</code> parameter are
+ * not cached: they are different for every multipart message and would
+ * only push out the few Content-Types that do recur.
+ */
+final class ContentTypeCache {
+
+    private final int capacity;
+    private final Map<String, ContentType> map;
+
+    ContentTypeCache(final int capacity) {
+        this.capacity = capacity;
+        this.map = new LinkedHashMap<String, ContentType>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ContentType> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    ContentType get(String s) throws ParseException {
+        boolean cacheable = s != null && capacity > 0;
+        if (cacheable) {
+            synchronized (map) {
+                ContentType type = map.get(s);
+                if (type != null) {
+                    return type;
+                }
+            }
+        }
+
+        ContentType type = new ContentType(s);
+        type.setReadOnly();
+        if (cacheable && type.getParameter("boundary") == null
+                && type.getParameter("start") == null) {
+            synchronized (map) {
+                ContentType other = map.get(s);
+                if (other != null) {
+                    return other;
+                }
+                map.put(s, type);
+            }
+        }
+        return type;
+    }
+}
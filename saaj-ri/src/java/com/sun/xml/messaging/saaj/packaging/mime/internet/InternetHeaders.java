@@ -49,11 +49,15 @@ package com.sun.xml.messaging.saaj.packaging.mime.internet;
 import com.sun.xml.messaging.saaj.packaging.mime.Header;
 import com.sun.xml.messaging.saaj.packaging.mime.MessagingException;
 import com.sun.xml.messaging.saaj.packaging.mime.util.LineInputStream;
+import com.sun.xml.messaging.saaj.packaging.mime.util.OutputUtil;
 import com.sun.xml.messaging.saaj.util.FinalArrayList;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
 import java.util.AbstractList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.NoSuchElementException;
 
@@ -87,6 +91,8 @@ import java.util.NoSuchElementException;
  */
 public final class InternetHeaders {
 
+    static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
     private final FinalArrayList<hdr> headers = new FinalArrayList<hdr>();
 
     /**
@@ -129,6 +135,110 @@ public final class InternetHeaders {
      * @exception MessagingException in case of error
      */
     public void load(InputStream is) throws MessagingException {
+        try {
+            if (is instanceof SharedByteArrayInputStream) {
+                // parse in place, no copying at all
+                SharedByteArrayInputStream sis = (SharedByteArrayInputStream) is;
+                int pos = sis.position();
+                int end = headersEnd(sis.buffer(), pos, sis.limit(), true);
+                addHeaderLines(sis.buffer(), pos, end);
+                sis.skip(end - pos);
+            } else if (is.markSupported()) {
+                loadMarked(is);
+            } else {
+                loadLines(is);
+            }
+        } catch (IOException ioex) {
+            throw new MessagingException("Error in input stream", ioex);
+        }
+    }
+
+    /*
+     * Reads the whole header block in bulk, then repositions the stream
+     * at the start of the body. The header lines keep referring to the
+     * bytes read, and are only turned into Strings when asked for.
+     */
+    private void loadMarked(InputStream is) throws IOException {
+        byte[] buf = new byte[512];
+        int len = 0;
+        boolean eof = false;
+        int end;
+
+        is.mark(LineInputStream.MARK_LIMIT);
+        while ((end = headersEnd(buf, 0, len, eof)) < 0) {
+            if (len == LineInputStream.MARK_LIMIT) {
+                // unusually long headers, read them line by line instead
+                is.reset();
+                is.mark(0);
+                loadLines(is);
+                return;
+            }
+            if (len == buf.length)
+                buf = Arrays.copyOf(buf, Math.min(len * 2, LineInputStream.MARK_LIMIT));
+            int n = is.read(buf, len, buf.length - len);
+            if (n < 0)
+                eof = true;
+            else
+                len += n;
+        }
+        is.reset();
+        for (long n = end; n > 0; ) {
+            long skipped = is.skip(n);
+            if (skipped <= 0)
+                throw new IOException("Unable to skip over the headers");
+            n -= skipped;
+        }
+        // release the mark, or a buffered stream keeps the whole body
+        is.mark(0);
+        // don't pin a large buffer for a few header lines
+        if (buf.length > 2 * end + 512)
+            buf = Arrays.copyOf(buf, end);
+        addHeaderLines(buf, 0, end);
+    }
+
+    /*
+     * Returns the index just past the blank line that ends the headers
+     * starting at off, or -1 if more bytes are needed to find it.
+     */
+    private static int headersEnd(byte[] b, int off, int len, boolean eof) {
+        int[] next = new int[1];
+        int i = off;
+        while (i < len || !eof) {
+            int end = LineInputStream.findLineEnd(b, i, len, eof, next);
+            if (end < 0)
+                return -1;
+            if (end == i)   // blank line
+                return next[0];
+            i = next[0];
+        }
+        return len;
+    }
+
+    /*
+     * Adds the header lines in b[off..end), which must be complete
+     * as determined by headersEnd().
+     */
+    private void addHeaderLines(byte[] b, int off, int end) {
+        int[] next = new int[1];
+        hdr prev = null;
+        for (int i = off; i < end; i = next[0]) {
+            int e = LineInputStream.findLineEnd(b, i, end, true, next);
+            if (e == i)
+                break;
+            if (b[i] == ' ' || b[i] == '\t') {
+                // continuation of header
+                String cont = "\r\n" + new String(b, i, e - i, ISO_8859_1);
+                if (prev == null)
+                    headers.add(prev = new hdr(cont));
+                else
+                    prev.setLine(prev.getLine() + cont);
+            } else {
+                headers.add(prev = new hdr(b, i, e));
+            }
+        }
+    }
+
+    private void loadLines(InputStream is) throws IOException {
         // Read header lines until a blank line. It is valid
         // to have BodyParts with no header lines.
         String line;
@@ -137,34 +247,30 @@ public final class InternetHeaders {
         // a buffer to accumulate the header in, when we know it's needed
         StringBuilder lineBuffer = new StringBuilder();
 
-        try {
-            //while ((line = lis.readLine()) != null) {
-            do {
-                line = lis.readLine();
-                if (line != null &&
-                        (line.startsWith(" ") || line.startsWith("\t"))) {
-                    // continuation of header
-                    if (prevline != null) {
-                        lineBuffer.append(prevline);
-                        prevline = null;
-                    }
-                    lineBuffer.append("\r\n");
-                    lineBuffer.append(line);
-                } else {
-                    // new header
-                    if (prevline != null)
-                        addHeaderLine(prevline);
-                    else if (lineBuffer.length() > 0) {
-                        // store previous header first
-                        addHeaderLine(lineBuffer.toString());
-                        lineBuffer.setLength(0);
-                    }
-                    prevline = line;
+        //while ((line = lis.readLine()) != null) {
+        do {
+            line = lis.readLine();
+            if (line != null &&
+                    (line.startsWith(" ") || line.startsWith("\t"))) {
+                // continuation of header
+                if (prevline != null) {
+                    lineBuffer.append(prevline);
+                    prevline = null;
                 }
-            } while (line != null && line.length() > 0);
-        } catch (IOException ioex) {
-            throw new MessagingException("Error in input stream", ioex);
-        }
+                lineBuffer.append("\r\n");
+                lineBuffer.append(line);
+            } else {
+                // new header
+                if (prevline != null)
+                    addHeaderLine(prevline);
+                else if (lineBuffer.length() > 0) {
+                    // store previous header first
+                    addHeaderLine(lineBuffer.toString());
+                    lineBuffer.setLength(0);
+                }
+                prevline = line;
+            }
+        } while (line != null && line.length() > 0);
     }
 
     /**
@@ -238,11 +344,12 @@ public final class InternetHeaders {
             hdr h = headers.get(i);
             if (name.equalsIgnoreCase(h.name)) {
                 if (!found) {
+                    String line = h.getLine();
                     int j;
-                    if (h.line != null && (j = h.line.indexOf(':')) >= 0) {
-                        h.line = h.line.substring(0, j + 1) + " " + value;
+                    if (line != null && (j = line.indexOf(':')) >= 0) {
+                        h.setLine(line.substring(0, j + 1) + " " + value);
                     } else {
-                        h.line = name + ": " + value;
+                        h.setLine(name + ": " + value);
                     }
                     found = true;
                 } else {
@@ -318,7 +425,7 @@ public final class InternetHeaders {
             char c = line.charAt(0);
             if (c == ' ' || c == '\t') {
                 hdr h = headers.get(headers.size() - 1);
-                h.line += "\r\n" + line;
+                h.setLine(h.getLine() + "\r\n" + line);
             } else
                 headers.add(new hdr(line));
         } catch (StringIndexOutOfBoundsException e) {
@@ -329,6 +436,19 @@ public final class InternetHeaders {
         }
     }
 
+    /*
+     * Writes the header lines followed by the blank line that ends them.
+     * Lines read from a stream and not changed since are written from
+     * the bytes they were read from.
+     */
+    void writeTo(OutputStream os) throws IOException {
+        int len = headers.size();
+        for (int i = 0; i < len; i++) {
+            headers.get(i).writeTo(os);
+        }
+        OutputUtil.writeln(os);
+    }
+
     /**
      * Return all the header lines as a collection
      *
@@ -339,7 +459,7 @@ public final class InternetHeaders {
             headerValueView = new AbstractList<String>() {
                 @Override
                 public String get(int index) {
-                    return headers.get(index).line;
+                    return headers.get(index).getLine();
                 }
 
                 @Override
@@ -356,10 +476,23 @@ public final class InternetHeaders {
  */
 
 class hdr implements Header {
+    /*
+     * Names of the headers looked up for every part, shared rather
+     * than created for each header read.
+     */
+    private static final String[] KNOWN_NAMES = {
+        "Content-Type", "Content-ID", "Content-Id",
+        "Content-Transfer-Encoding", "Content-Location", "Content-Length"
+    };
+
     // XXX - should these be private?
     String name;    // the canonicalized (trimmed) name of this header
     // XXX - should name be stored in lower case?
-    String line;    // the entire RFC822 header "line"
+    private String line;    // the entire RFC822 header "line", or null while
+                            // it is still only held as bytes in buf
+    private byte[] buf;
+    private int start, end;
+    private String value;   // cached result of getValue()
 
     /*
      * Constructor that takes a line and splits out
@@ -384,6 +517,66 @@ class hdr implements Header {
         line = n + ": " + v;
     }
 
+    /*
+     * Constructor for a header line held in b[s..e); the line itself
+     * is only turned into a String if it is asked for.
+     */
+    hdr(byte[] b, int s, int e) {
+        int i = s;
+        while (i < e && b[i] != ':')
+            i++;
+        // trim the name the same way String.trim() would
+        int ns = s, ne = i;
+        while (ns < ne && (b[ns] & 0xff) <= ' ')
+            ns++;
+        while (ne > ns && (b[ne - 1] & 0xff) <= ' ')
+            ne--;
+        name = knownName(b, ns, ne);
+        if (name == null)
+            name = new String(b, ns, ne - ns, InternetHeaders.ISO_8859_1);
+        buf = b;
+        start = s;
+        end = e;
+    }
+
+    private static String knownName(byte[] b, int s, int e) {
+        for (String n : KNOWN_NAMES) {
+            if (n.length() != e - s)
+                continue;
+            int i = 0;
+            while (i < n.length() && b[s + i] == n.charAt(i))
+                i++;
+            if (i == n.length())
+                return n;
+        }
+        return null;
+    }
+
+    String getLine() {
+        if (line == null) {
+            line = new String(buf, start, end - start, InternetHeaders.ISO_8859_1);
+            buf = null;
+        }
+        return line;
+    }
+
+    void writeTo(OutputStream os) throws IOException {
+        if (line == null) {
+            os.write(buf, start, end - start);
+        } else if (os instanceof MultipartWriter) {
+            ((MultipartWriter) os).writeAscii(line);
+        } else {
+            OutputUtil.writeAsAscii(line, os);
+        }
+        OutputUtil.writeln(os);
+    }
+
+    void setLine(String l) {
+        line = l;
+        buf = null;
+        value = null;
+    }
+
     /*
      * Return the "name" part of the header line.
      */
@@ -397,6 +590,12 @@ class hdr implements Header {
      */
     @Override
     public String getValue() {
+        if (value == null)
+            value = line == null ? bytesValue() : stringValue();
+        return value;
+    }
+
+    private String stringValue() {
         int i = line.indexOf(':');
         if (i < 0)
             return line;
@@ -420,4 +619,22 @@ class hdr implements Header {
         }
         return line.substring(j);
     }
+
+    // same as stringValue(), straight from the bytes of the line
+    private String bytesValue() {
+        int i = start;
+        while (i < end && buf[i] != ':')
+            i++;
+        if (i == end)
+            return getLine();
+
+        boolean keepSpace = name.equalsIgnoreCase("Content-Description");
+        int j;
+        for (j = i + 1; j < end; j++) {
+            byte c = buf[j];
+            if (!((c == ' ' && !keepSpace) || c == '\t' || c == '\r' || c == '\n'))
+                break;
+        }
+        return new String(buf, j, end - j, InternetHeaders.ISO_8859_1);
+    }
 }
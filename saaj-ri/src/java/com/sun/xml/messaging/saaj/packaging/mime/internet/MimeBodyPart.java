@@ -48,11 +48,12 @@ package com.sun.xml.messaging.saaj.packaging.mime.internet;
 
 
 import com.sun.xml.messaging.saaj.packaging.mime.MessagingException;
-import com.sun.xml.messaging.saaj.packaging.mime.util.OutputUtil;
 import com.sun.xml.messaging.saaj.util.ByteOutputStream;
 import com.sun.xml.messaging.saaj.util.FinalArrayList;
 
 import javax.activation.DataHandler;
+import javax.activation.FileDataSource;
+import java.io.File;
 import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
@@ -248,6 +249,22 @@ public final class MimeBodyPart {
         this.contentLength = len;
     }
 
+    /**
+     * Constructs a MimeBodyPart using the given header and a stream
+     * over the content, such as one returned by an {@link AttachmentStore}.
+     *
+     * @param	headers	The header of this part
+     * @param	content	stream over the body of this part, which must
+     *                  implement {@link SharedInputStream}
+     */
+    public MimeBodyPart(InternetHeaders headers, InputStream content) {
+        if (!(content instanceof SharedInputStream)) {
+            throw new IllegalArgumentException("content must be a SharedInputStream");
+        }
+        this.headers = headers;
+        this.contentStream = content;
+    }
+
     public MimeBodyPart(MIMEPart part) {
        mimePart = part;
        headers = new InternetHeaders();
@@ -1004,19 +1021,21 @@ public final class MimeBodyPart {
     public void writeTo(OutputStream os)
 				throws IOException, MessagingException {
 
-        // First, write out the header
-        List<String> hdrLines = headers.getAllHeaderLines();
-        int sz = hdrLines.size();
-        for( int i=0; i<sz; i++ )
-            OutputUtil.writeln(hdrLines.get(i),os);
-
-        // The CRLF separator between header and content
-        OutputUtil.writeln(os);
+        // First, write out the header, and the CRLF separator
+        // between header and content
+        headers.writeTo(os);
 
         // Finally, the content.
         // XXX: May need to account for ESMTP ?
         if (contentStream != null) {
-            ((SharedInputStream)contentStream).writeTo(0,-1,os);
+            try {
+                ((SharedInputStream)contentStream).writeTo(0,-1,os);
+            } catch (RuntimeException re) {
+                // SharedInputStream.writeTo cannot throw IOException
+                if (re.getCause() instanceof IOException)
+                    throw (IOException) re.getCause();
+                throw re;
+            }
         } else
         if (content != null) {
             os.write(content,start,contentLength);
@@ -1037,6 +1056,63 @@ public final class MimeBodyPart {
         }
     }
 
+    /**
+     * Returns the number of bytes {@link #writeTo(OutputStream)} writes,
+     * without writing them. The size is known when the content is a byte
+     * array or a shared stream, or when a file or a received part is written
+     * without a transfer encoding.
+     *
+     * @return size in bytes, or -1 if it can only be found by writing
+     *         the part
+     *
+     * @exception MessagingException in case of error
+     */
+    public long getSerializedSize() throws MessagingException {
+        long size = getContentSize();
+        if (size < 0 && dh != null && isUnencoded(getEncoding())) {
+            DataSource ds = dh.getDataSource();
+            if (ds instanceof FileDataSource) {
+                File file = ((FileDataSource) ds).getFile();
+                size = file.isFile() ? file.length() : -1;
+            } else if (ds instanceof MimePartDataSource) {
+                // the content of a received part, if it is not decoded
+                MimeBodyPart part = ((MimePartDataSource) ds).getPart();
+                if (isUnencoded(part.getEncoding())) {
+                    size = part.getContentSize();
+                }
+            }
+        }
+        if (size < 0) {
+            return -1;
+        }
+
+        List<String> hdrLines = headers.getAllHeaderLines();
+        int sz = hdrLines.size();
+        for (int i = 0; i < sz; i++) {
+            size += hdrLines.get(i).length() + 2;
+        }
+        return size + 2;
+    }
+
+    /*
+     * Size of the raw content held as bytes or a shared stream, -1 otherwise.
+     */
+    private long getContentSize() {
+        if (contentStream != null) {
+            return AttachmentStore.length(contentStream, 0);
+        }
+        if (content != null) {
+            return contentLength;
+        }
+        return -1;
+    }
+
+    private static boolean isUnencoded(String encoding) {
+        return encoding == null || encoding.equalsIgnoreCase("binary")
+                || encoding.equalsIgnoreCase("7bit")
+                || encoding.equalsIgnoreCase("8bit");
+    }
+
     /**
      * Get all the headers for this header_name. Note that certain
      * headers may be encoded as per RFC 2047 if they contain
@@ -50,7 +50,6 @@ import com.sun.xml.messaging.saaj.packaging.mime.MessagingException;
 import com.sun.xml.messaging.saaj.packaging.mime.MultipartDataSource;
 import com.sun.xml.messaging.saaj.packaging.mime.util.ASCIIUtility;
 import com.sun.xml.messaging.saaj.packaging.mime.util.LineInputStream;
-import com.sun.xml.messaging.saaj.packaging.mime.util.OutputUtil;
 import com.sun.xml.messaging.saaj.util.ByteOutputStream;
 import com.sun.xml.messaging.saaj.util.FinalArrayList;
 import com.sun.xml.messaging.saaj.util.SAAJUtil;
@@ -61,6 +60,7 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.WritableByteChannel;
 
 /**
  * The MimeMultipart class is an implementation
@@ -129,6 +129,12 @@ public  class MimeMultipart {
      */
     protected MimeBodyPart parent;
 
+    /**
+     * Storage for the bodies of parsed parts, <code>null</code> to keep
+     * them in memory.
+     */
+    protected AttachmentStore store;
+
     protected static final boolean ignoreMissingEndBoundary;
     static {
         ignoreMissingEndBoundary = SAAJUtil.getSystemBoolean("saaj.mime.multipart.ignoremissingendboundary");
@@ -210,6 +216,15 @@ public  class MimeMultipart {
         contentType.setSubType(subtype);
     }
 
+    /**
+     * Sets the storage for the bodies of the parts parsed from now on.
+     *
+     * @param	store	storage, <code>null</code> to keep the bodies in memory
+     */
+    public void setAttachmentStore(AttachmentStore store) {
+        this.store = store;
+    }
+
     /**
      * Return the number of enclosed MimeBodyPart objects.
      *
@@ -301,20 +316,85 @@ public  class MimeMultipart {
      */
     public void writeTo(OutputStream os)
             throws IOException, MessagingException {
+        if (os instanceof MultipartWriter) {
+            // nested in a multipart being written, share its buffer
+            writeTo((MultipartWriter) os);
+            return;
+        }
+        MultipartWriter w = new MultipartWriter(os);
+        try {
+            writeTo(w);
+            w.flushBuffer();
+        } finally {
+            w.release();
+        }
+    }
+
+    /**
+     * Writes the same bytes as {@link #writeTo(OutputStream)} to a blocking
+     * channel. Contents at least as large as the write buffer are written
+     * from where they are, gathered with the buffered boundary and header
+     * bytes when the channel is a
+     * {@link java.nio.channels.GatheringByteChannel}.
+     *
+     * @param channel channel to write to.
+     *
+     * @exception IOException if an I/O Error occurs.
+     * @exception MessagingException in case of error.
+     */
+    public void writeTo(WritableByteChannel channel)
+            throws IOException, MessagingException {
+        MultipartWriter w = new MultipartWriter(channel);
+        try {
+            writeTo(w);
+            w.flushBuffer();
+        } finally {
+            w.release();
+        }
+    }
+
+    void writeTo(MultipartWriter w)
+            throws IOException, MessagingException {
         parse();
 
-        String boundary = "--" + contentType.getParameter("boundary");
+        byte[] boundary = MultipartWriter.delimiter(
+                contentType.getParameter("boundary"));
 
         for (int i = 0; i < parts.size(); i++) {
-            OutputUtil.writeln(boundary, os); // put out boundary
-            getBodyPart(i).writeTo(os);
-            OutputUtil.writeln(os); // put out empty line
+            w.write(boundary); // put out boundary
+            w.writeln();
+            getBodyPart(i).writeTo(w);
+            w.writeln(); // put out empty line
         }
 
         // put out last boundary
-        OutputUtil.writeAsAscii(boundary, os);
-        OutputUtil.writeAsAscii("--", os);
-        os.flush();
+        w.write(boundary);
+        w.writeAscii("--");
+        w.flush();
+    }
+
+    /**
+     * Returns the number of bytes {@link #writeTo(OutputStream)} writes,
+     * computed from the sizes of the body parts without writing them.
+     *
+     * @return size in bytes, or -1 if the size of a body part is not known
+     *
+     * @exception MessagingException in case of error
+     * @see MimeBodyPart#getSerializedSize()
+     */
+    public long getSerializedSize() throws MessagingException {
+        parse();
+
+        int bnd = contentType.getParameter("boundary").length() + 2;
+        long size = 0;
+        for (int i = 0; i < parts.size(); i++) {
+            long partSize = getBodyPart(i).getSerializedSize();
+            if (partSize < 0) {
+                return -1;
+            }
+            size += bnd + 2 + partSize + 2;
+        }
+        return size + bnd + 2;
     }
 
     /**
@@ -353,7 +433,7 @@ public  class MimeMultipart {
         byte[] bndbytes = ASCIIUtility.getBytes(boundary);
         int bl = bndbytes.length;
 
-        ByteOutputStream buf = null;
+        OutputStream buf = null;
         try {
             // Skip the preamble
             LineInputStream lin = new LineInputStream(in);
@@ -409,7 +489,7 @@ public  class MimeMultipart {
                 buf = null;
                 // if we don't have a shared input stream, we copy the data
                 if (sin == null)
-                    buf = new ByteOutputStream();
+                    buf = (store != null) ? store.newBuffer() : new ByteOutputStream();
                 int b;
                 boolean bol = true;    // beginning of line flag
                 // the two possible end of line characters
@@ -499,17 +579,27 @@ public  class MimeMultipart {
                  * Create a MimeBody element to represent this body part.
                  */
                 MimeBodyPart part;
-                if (sin != null)
+                if (sin != null) {
                     part = createMimeBodyPart(sin.newStream(start, end));
-                else
-                    part = createMimeBodyPart(headers, buf.getBytes(), buf.getCount());
+                } else if (buf instanceof AttachmentStore.Buffer) {
+                    part = new MimeBodyPart(headers,
+                            ((AttachmentStore.Buffer) buf).newInputStream());
+                } else {
+                    ByteOutputStream bos = (ByteOutputStream) buf;
+                    part = createMimeBodyPart(headers, bos.getBytes(), bos.getCount());
+                }
                 addBodyPart(part);
             }
         } catch (IOException ioex) {
             throw new MessagingException("IO Error", ioex);
         } finally {
-            if (buf != null)
-                buf.close();
+            if (buf != null) {
+                try {
+                    buf.close();
+                } catch (IOException ex) {
+                    // ignore it
+                }
+            }
         }
 
         if (!ignoreMissingEndBoundary && !foundClosingBoundary && sin == null) {
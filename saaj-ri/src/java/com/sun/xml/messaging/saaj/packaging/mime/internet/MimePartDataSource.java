@@ -72,6 +72,10 @@ public final class MimePartDataSource implements DataSource {
         this.part = part;
     }
 
+    MimeBodyPart getPart() {
+        return part;
+    }
+
     /**
      * Returns an input stream from this  MimeBodyPart. <p>
      *
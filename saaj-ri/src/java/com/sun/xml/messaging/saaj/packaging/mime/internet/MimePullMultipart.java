@@ -92,6 +92,13 @@ public class MimePullMultipart  extends MimeMultipart {
             }
             in = dataSource.getInputStream();
             MIMEConfig config = new MIMEConfig(); //use defaults
+            if (store != null) {
+                // mimepull spills to its own temporary files
+                config.setMemoryThreshold(store.getThreshold());
+                if (store.getDirectory() != null) {
+                    config.setDir(store.getDirectory().getPath());
+                }
+            }
             mm = new MIMEMessage(in, boundary, config);
             String st = contType.getParameter("start");
             if(startParam == null) {
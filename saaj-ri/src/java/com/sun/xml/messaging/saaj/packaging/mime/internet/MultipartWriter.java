@@ -0,0 +1,230 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package com.sun.xml.messaging.saaj.packaging.mime.internet;
+
+import com.sun.xml.messaging.saaj.util.SAAJUtil;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.IllegalBlockingModeException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * The buffered stream a multipart is serialized through. Boundaries,
+ * header lines and small contents are collected in one large buffer and
+ * handed to the destination in bulk; a content at least as large as the
+ * buffer is written straight through, gathered with whatever is buffered
+ * when the destination is a {@link GatheringByteChannel}.
+ * <p>
+ * The buffer is kept per thread between messages. Nested multiparts write
+ * through the writer of the enclosing one.
+ */
+final class MultipartWriter extends OutputStream {
+
+    private static final int BUFFER_SIZE = Math.max(1024,
+            SAAJUtil.getSystemInteger("saaj.multipart.write.buffer.size", 16384));
+
+    private static final byte[] CRLF = {'\r', '\n'};
+
+    private static final ThreadLocal<byte[]> buffers = new ThreadLocal<byte[]>();
+
+    private final OutputStream out;
+    private final WritableByteChannel channel;
+    private byte[] buf;
+    private int count;
+
+    MultipartWriter(OutputStream out) {
+        this.out = out;
+        this.channel = null;
+        this.buf = acquire();
+    }
+
+    MultipartWriter(WritableByteChannel channel) {
+        if (channel instanceof SelectableChannel
+                && !((SelectableChannel) channel).isBlocking()) {
+            throw new IllegalBlockingModeException();
+        }
+        this.out = null;
+        this.channel = channel;
+        this.buf = acquire();
+    }
+
+    private static byte[] acquire() {
+        byte[] b = buffers.get();
+        if (b == null) {
+            // first use on this thread, or a writer on this thread already
+            // holds it
+            return new byte[BUFFER_SIZE];
+        }
+        buffers.set(null);
+        return b;
+    }
+
+    /**
+     * Returns the buffer for reuse by the next writer on this thread,
+     * dropping anything not yet flushed.
+     */
+    void release() {
+        if (buf != null) {
+            buffers.set(buf);
+            buf = null;
+            count = 0;
+        }
+    }
+
+    /**
+     * Returns the stream this writer writes to, or null when it writes to
+     * a channel. Anything written to it directly must be preceded by
+     * {@link #flushBuffer()}.
+     */
+    OutputStream getOutputStream() {
+        return out;
+    }
+
+    /**
+     * Returns the channel this writer writes to, or null when it writes to
+     * a stream. Anything written to it directly must be preceded by
+     * {@link #flushBuffer()}.
+     */
+    WritableByteChannel getChannel() {
+        return channel;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (count == buf.length) {
+            flushBuffer();
+        }
+        buf[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (len >= buf.length) {
+            if (channel instanceof GatheringByteChannel && count > 0) {
+                ByteBuffer[] srcs = {
+                    ByteBuffer.wrap(buf, 0, count), ByteBuffer.wrap(b, off, len)
+                };
+                GatheringByteChannel gc = (GatheringByteChannel) channel;
+                while (srcs[1].hasRemaining()) {
+                    gc.write(srcs);
+                }
+                count = 0;
+            } else {
+                flushBuffer();
+                writeThrough(b, off, len);
+            }
+            return;
+        }
+        if (len > buf.length - count) {
+            flushBuffer();
+        }
+        System.arraycopy(b, off, buf, count, len);
+        count += len;
+    }
+
+    /**
+     * Writes the low byte of each character of a US-ASCII string.
+     */
+    void writeAscii(String s) throws IOException {
+        int len = s.length();
+        for (int i = 0; i < len; ) {
+            if (count == buf.length) {
+                flushBuffer();
+            }
+            int n = Math.min(len - i, buf.length - count);
+            for (int end = i + n; i < end; i++) {
+                buf[count++] = (byte) s.charAt(i);
+            }
+        }
+    }
+
+    void writeln() throws IOException {
+        write(CRLF, 0, 2);
+    }
+
+    /**
+     * Hands the buffered bytes to the destination without flushing it.
+     */
+    void flushBuffer() throws IOException {
+        if (count > 0) {
+            writeThrough(buf, 0, count);
+            count = 0;
+        }
+    }
+
+    private void writeThrough(byte[] b, int off, int len) throws IOException {
+        if (out != null) {
+            out.write(b, off, len);
+        } else {
+            ByteBuffer bb = ByteBuffer.wrap(b, off, len);
+            while (bb.hasRemaining()) {
+                channel.write(bb);
+            }
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+        if (out != null) {
+            out.flush();
+        }
+    }
+
+    /**
+     * Returns the bytes of a multipart boundary line, "--" followed by the
+     * boundary, for writing with {@link #write(byte[])}.
+     */
+    static byte[] delimiter(String boundary) {
+        int len = boundary.length();
+        byte[] b = new byte[len + 2];
+        b[0] = '-';
+        b[1] = '-';
+        for (int i = 0; i < len; i++) {
+            b[i + 2] = (byte) boundary.charAt(i);
+        }
+        return b;
+    }
+}
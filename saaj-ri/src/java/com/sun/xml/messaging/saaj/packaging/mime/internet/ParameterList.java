@@ -61,6 +61,9 @@ public final class ParameterList {
 
     private final HashMap<String, String> list;
 
+    // set for the list of a shared ContentType
+    private boolean readOnly;
+
     /**
      * No-arg Constructor.
      */
@@ -156,6 +159,7 @@ public final class ParameterList {
      * @param	value	value of the parameter.
      */
     public void set(String name, String value) {
+        checkWritable();
 	list.put(name.trim().toLowerCase(), value);
     }
 
@@ -166,9 +170,20 @@ public final class ParameterList {
      * @param	name	name of the parameter.
      */
     public void remove(String name) {
+        checkWritable();
 	list.remove(name.trim().toLowerCase());
     }
 
+    void setReadOnly() {
+        readOnly = true;
+    }
+
+    private void checkWritable() {
+        if (readOnly)
+            throw new UnsupportedOperationException(
+                    "Parameters of a shared ContentType cannot be changed");
+    }
+
     /**
      * Return an enumeration of the names of all parameters in this
      * list.
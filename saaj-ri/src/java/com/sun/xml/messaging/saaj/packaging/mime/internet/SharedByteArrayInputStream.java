@@ -0,0 +1,118 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package com.sun.xml.messaging.saaj.packaging.mime.internet;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * A {@link ByteArrayInputStream} that implements the
+ * {@link SharedInputStream} interface, so that body parts parsed from it
+ * are views of the same byte array rather than copies of it.
+ */
+public class SharedByteArrayInputStream extends ByteArrayInputStream
+        implements SharedInputStream {
+
+    /**
+     * Position within <code>buf</code> of the start of this stream.
+     */
+    protected int start;
+
+    /**
+     * Creates a stream over <code>length</code> bytes of <code>buf</code>
+     * starting at <code>offset</code>.
+     *
+     * @param buf the data
+     * @param offset offset of the first byte to read
+     * @param length number of bytes to read
+     */
+    public SharedByteArrayInputStream(byte[] buf, int offset, int length) {
+        super(buf, offset, length);
+        start = offset;
+    }
+
+    @Override
+    public long getPosition() {
+        return pos - start;
+    }
+
+    @Override
+    public InputStream newStream(long start, long end) {
+        if (start < 0) {
+            throw new IllegalArgumentException("start < 0");
+        }
+        if (end == -1) {
+            end = count - this.start;
+        }
+        return new SharedByteArrayInputStream(
+                buf, this.start + (int) start, (int) (end - start));
+    }
+
+    @Override
+    public void writeTo(long start, long end, OutputStream out) {
+        if (end == -1) {
+            end = count - this.start;
+        }
+        try {
+            out.write(buf, this.start + (int) start, (int) (end - start));
+        } catch (IOException ioe) {
+            throw new RuntimeException(ioe);
+        }
+    }
+
+    /*
+     * Direct access to the unread bytes, for parsers in this package
+     * that scan in place; they must skip() over whatever they consume.
+     */
+    byte[] buffer() {
+        return buf;
+    }
+
+    int position() {
+        return pos;
+    }
+
+    int limit() {
+        return count;
+    }
+}
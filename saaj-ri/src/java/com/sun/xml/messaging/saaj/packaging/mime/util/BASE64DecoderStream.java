@@ -48,6 +48,8 @@ package com.sun.xml.messaging.saaj.packaging.mime.util;
 
 import java.io.*;
 
+import com.sun.xml.messaging.saaj.util.Base64;
+
 /**
  * This class implements a BASE64 Decoder. It is implemented as
  * a FilterInputStream, so one can just wrap this class around
@@ -63,13 +65,19 @@ public class BASE64DecoderStream extends FilterInputStream {
     private int bufsize = 0;	// size of the cache
     private int index = 0;	// index into the cache
 
+    private byte[] inbuf;	// encoded bytes read but not decoded yet
+    private int carried = 0;	// number of bytes in inbuf
+    private boolean eof = false;
+    private final int[] consumed = new int[1];
+
     /** 
      * Create a BASE64 decoder that decodes the specified input stream
      * @param in	the input stream
      */
     public BASE64DecoderStream(InputStream in) {
 	super(in);
-	buffer = new byte[3];
+	inbuf = new byte[8192];
+	buffer = new byte[inbuf.length / 4 * 3];
     }
 
     /**
@@ -91,7 +99,6 @@ public class BASE64DecoderStream extends FilterInputStream {
 	    decode(); // Fills up buffer
 	    if (bufsize == 0) // buffer is empty
 		return -1;
-	    index = 0; // reset index into buffer
 	}
 	return buffer[index++] & 0xff; // Zero off the MSB
     }
@@ -112,17 +119,20 @@ public class BASE64DecoderStream extends FilterInputStream {
      */
     @Override
     public int read(byte[] buf, int off, int len) throws IOException {
-	int i, c;
-	for (i = 0; i < len; i++) {
-	    if ((c = read()) == -1) {
-		if (i == 0) // At end of stream, so we should
-		    i = -1; // return -1 , NOT 0.
-		break;
+	int i = 0;
+	while (i < len) {
+	    if (index >= bufsize) {
+		decode();
+		if (bufsize == 0)
+		    break;
 	    }
-	    buf[off+i] = (byte)c;
+	    int n = Math.min(len - i, bufsize - index);
+	    System.arraycopy(buffer, index, buf, off + i, n);
+	    index += n;
+	    i += n;
 	}
-
-	return i;
+	// At end of stream, so we should return -1 , NOT 0.
+	return (i == 0 && len > 0) ? -1 : i;
     }
 
     /**
@@ -147,70 +157,37 @@ public class BASE64DecoderStream extends FilterInputStream {
 	 return ((in.available() * 3)/4 + (bufsize-index));
     }
 
-    /**
-     * This character array provides the character to value map
-     * based on RFC1521.
-     */  
-    private final static char pem_array[] = {
-	'A','B','C','D','E','F','G','H', // 0
-	'I','J','K','L','M','N','O','P', // 1
-	'Q','R','S','T','U','V','W','X', // 2
-	'Y','Z','a','b','c','d','e','f', // 3
-	'g','h','i','j','k','l','m','n', // 4
-	'o','p','q','r','s','t','u','v', // 5
-	'w','x','y','z','0','1','2','3', // 6
-	'4','5','6','7','8','9','+','/'  // 7
-    };
-
-    private final static byte pem_convert_array[] = new byte[256];
-
-    static {
-	for (int i = 0; i < 255; i++)
-	    pem_convert_array[i] = -1;
-	for(int i = 0; i < pem_array.length; i++)
-	    pem_convert_array[pem_array[i]] = (byte) i;
-    }
-
     /* The decoder algorithm */
-    private byte[] decode_buffer = new byte[4];
     private void decode() throws IOException {
 	bufsize = 0;
+	index = 0;
 	/*
-	 * We need 4 valid base64 characters before we start decoding.
+	 * We need groups of 4 valid base64 characters to decode.
 	 * We skip anything that's not a valid base64 character (usually
 	 * just CRLF).
 	 */
-	int got = 0;
-	while (got < 4) {
-	    int i = in.read();
-	    if (i == -1) {
-		if (got == 0)
+	while (bufsize == 0) {
+	    if (eof) {
+		if (carried == 0)
 		    return;	// EOF before any data is ok
-		throw new IOException("Error in encoded stream, got " + got);
+		throw new IOException("Error in encoded stream, got " + carried);
+	    }
+	    int n = in.read(inbuf, carried, inbuf.length - carried);
+	    if (n == -1) {
+		eof = true;
+		continue;
 	    }
-	    if (i >= 0 && i < 256 && i == '=' || pem_convert_array[i] != -1)
-		decode_buffer[got++] = (byte)i;
+	    int total = carried + n;
+	    try {
+		bufsize = Base64.decode(inbuf, 0, total, buffer, 0, consumed);
+	    } catch (IllegalArgumentException e) {
+		throw new IOException("Error in encoded stream: " + e.getMessage());
+	    }
+	    // keep the characters of an incomplete group for the next round
+	    carried = total - consumed[0];
+	    System.arraycopy(inbuf, consumed[0], inbuf, 0, carried);
+	    carried = Base64.strip(inbuf, 0, carried);
 	}
-
-	byte a, b;
-	a = pem_convert_array[decode_buffer[0] & 0xff];
-	b = pem_convert_array[decode_buffer[1] & 0xff];
-	// The first decoded byte
-	buffer[bufsize++] = (byte)(((a << 2) & 0xfc) | ((b >>> 4) & 3));
-
-	if (decode_buffer[2] == '=') // End of this BASE64 encoding
-	    return;
-	a = b;
-	b = pem_convert_array[decode_buffer[2] & 0xff];
-	// The second decoded byte
-	buffer[bufsize++] = (byte)(((a << 4) & 0xf0) | ((b >>> 2) & 0xf));
-
-	if (decode_buffer[3] == '=') // End of this BASE64 encoding
-	    return;
-	a = b;
-	b = pem_convert_array[decode_buffer[3] & 0xff];
-	// The third decoded byte
-	buffer[bufsize++] = (byte)(((a << 6) & 0xc0) | (b & 0x3f));
     }
 
     /**
@@ -231,49 +208,12 @@ public class BASE64DecoderStream extends FilterInputStream {
 	if (size == 0)
 	    return inbuf;
 
-	if (inbuf[inbuf.length - 1] == '=') {
-	    size--;
-	    if (inbuf[inbuf.length - 2] == '=')
-		size--;
-	}
 	byte[] outbuf = new byte[size];
-
-	int inpos = 0, outpos = 0;
-	size = inbuf.length;
-	while (size > 0) {
-	    byte a, b;
-	    a = pem_convert_array[inbuf[inpos++] & 0xff];
-	    b = pem_convert_array[inbuf[inpos++] & 0xff];
-	    // The first decoded byte
-	    outbuf[outpos++] = (byte)(((a << 2) & 0xfc) | ((b >>> 4) & 3));
-
-	    if (inbuf[inpos] == '=') // End of this BASE64 encoding
-		return outbuf;
-	    a = b;
-	    b = pem_convert_array[inbuf[inpos++] & 0xff];
-	    // The second decoded byte
-	    outbuf[outpos++] = (byte)(((a << 4) & 0xf0) | ((b >>> 2) & 0xf));
-
-	    if (inbuf[inpos] == '=') // End of this BASE64 encoding
-		return outbuf;
-	    a = b;
-	    b = pem_convert_array[inbuf[inpos++] & 0xff];
-	    // The third decoded byte
-	    outbuf[outpos++] = (byte)(((a << 6) & 0xc0) | (b & 0x3f));
-	    size -= 4;
-	}
-	return outbuf;
-    }
-
-    /*** begin TEST program ***
-    public static void main(String argv[]) throws Exception {
-    	FileInputStream infile = new FileInputStream(argv[0]);
-	BASE64DecoderStream decoder = new BASE64DecoderStream(infile);
-	int c;
-
-	while ((c = decoder.read()) != -1)
-	    System.out.print((char)c);
-	System.out.flush();
+	size = Base64.decode(inbuf, 0, inbuf.length, outbuf, 0, new int[1]);
+	if (size == outbuf.length)
+	    return outbuf;
+	byte[] ret = new byte[size];
+	System.arraycopy(outbuf, 0, ret, 0, size);
+	return ret;
     }
-    *** end TEST program ***/
 }
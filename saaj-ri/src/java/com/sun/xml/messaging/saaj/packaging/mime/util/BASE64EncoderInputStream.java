@@ -0,0 +1,170 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package com.sun.xml.messaging.saaj.packaging.mime.util;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.sun.xml.messaging.saaj.util.Base64;
+
+/**
+ * This class implements a BASE64 Encoder as an input stream. The bytes
+ * of the underlying stream are encoded a few lines at a time as they are read,
+ * producing the same output as {@link BASE64EncoderStream} with lines of
+ * 76 characters.
+ */
+public class BASE64EncoderInputStream extends FilterInputStream {
+
+    private static final int LINE_LENGTH = 76;
+    private static final int LINES = 64;       // encoded at a time
+
+    private final byte[] raw = new byte[LINES * LINE_LENGTH / 4 * 3];
+    private final byte[] line = new byte[2 + Base64.encodedLength(raw.length, LINE_LENGTH)];
+    private int index = 0;      // index into the encoded lines
+    private int size = 0;       // size of the encoded lines
+    private boolean first = true;
+    private boolean eof = false;
+
+    /**
+     * Create a BASE64 encoder that encodes the specified input stream.
+     * @param in        the input stream
+     */
+    public BASE64EncoderInputStream(InputStream in) {
+        super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (index >= size && !encodeLine()) {
+            return -1;
+        }
+        return line[index++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] buf, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        int n = 0;
+        while (n < len) {
+            if (index >= size && !encodeLine()) {
+                break;
+            }
+            int chunk = Math.min(len - n, size - index);
+            System.arraycopy(line, index, buf, off + n, chunk);
+            index += chunk;
+            n += chunk;
+        }
+        return (n == 0) ? -1 : n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = 0;
+        while (skipped < n) {
+            if (index >= size && !encodeLine()) {
+                break;
+            }
+            int chunk = (int) Math.min(n - skipped, size - index);
+            index += chunk;
+            skipped += chunk;
+        }
+        return skipped;
+    }
+
+    /**
+     * Returns the number of encoded bytes that can be read without
+     * reading the underlying stream.
+     */
+    @Override
+    public int available() throws IOException {
+        return size - index;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+
+    /*
+     * Reads the bytes of the next lines and encodes them, preceded by a
+     * CRLF unless they are the first ones.
+     */
+    private boolean encodeLine() throws IOException {
+        if (eof) {
+            return false;
+        }
+        int n = 0;
+        while (n < raw.length) {
+            int r = in.read(raw, n, raw.length - n);
+            if (r == -1) {
+                eof = true;
+                break;
+            }
+            n += r;
+        }
+        if (n == 0) {
+            return false;
+        }
+
+        int outpos = 0;
+        if (!first) {
+            line[outpos++] = '\r';
+            line[outpos++] = '\n';
+        }
+        first = false;
+        outpos += Base64.encode(raw, 0, n, line, outpos, LINE_LENGTH);
+        index = 0;
+        size = outpos;
+        return true;
+    }
+}
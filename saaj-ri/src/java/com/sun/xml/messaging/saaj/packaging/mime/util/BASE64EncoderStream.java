@@ -48,6 +48,8 @@ package com.sun.xml.messaging.saaj.packaging.mime.util;
 
 import java.io.*;
 
+import com.sun.xml.messaging.saaj.util.Base64;
+
 /**
  * This class implements a BASE64 Encoder. It is implemented as
  * a FilterOutputStream, so one can just wrap this class around
@@ -64,6 +66,10 @@ public class BASE64EncoderStream extends FilterOutputStream {
     private int count = 0; 	// number of bytes that have been output
     private int bytesPerLine;	// number of bytes per line
 
+    // encoded bytes not yet written to the underlying stream
+    private final byte[] outbuf = new byte[8192];
+    private int outpos = 0;
+
     /**
      * Create a BASE64 encoder that encodes the specified input stream
      * @param out        the output stream
@@ -97,8 +103,15 @@ public class BASE64EncoderStream extends FilterOutputStream {
      */
     @Override
     public void write(byte[] b, int off, int len) throws IOException {
-	for (int i = 0; i < len; i++)
-	    write(b[off + i]);
+	// complete the pending group first
+	while (bufsize > 0 && len > 0) {
+	    write(b[off++]);
+	    len--;
+	}
+	int whole = len - len % 3;
+	encode(b, off, whole);
+	for (int i = whole; i < len; i++)
+	    buffer[bufsize++] = b[off + i];
     }
 
     /**
@@ -120,7 +133,7 @@ public class BASE64EncoderStream extends FilterOutputStream {
     public void write(int c) throws IOException {
 	buffer[bufsize++] = (byte)c;
 	if (bufsize == 3) { // Encoding unit = 3 bytes
-	    encode();
+	    encode(buffer, 0, 3);
 	    bufsize = 0;
 	}
     }
@@ -133,9 +146,14 @@ public class BASE64EncoderStream extends FilterOutputStream {
     @Override
     public void flush() throws IOException {
 	if (bufsize > 0) { // If there's unencoded characters in the buffer ..
-	    encode();      // .. encode them
+	    newLineIfFull();
+	    if (outpos + 4 > outbuf.length)
+		writeEncoded();
+	    outpos += Base64.encode(buffer, 0, bufsize, outbuf, outpos);
+	    count += 4;
 	    bufsize = 0;
 	}
+	writeEncoded();
 	out.flush();
     }
 
@@ -149,56 +167,45 @@ public class BASE64EncoderStream extends FilterOutputStream {
 	out.close();
     }
 
-    /** This array maps the characters to their 6 bit values */
-    private final static char pem_array[] = {
-	'A','B','C','D','E','F','G','H', // 0
-	'I','J','K','L','M','N','O','P', // 1
-	'Q','R','S','T','U','V','W','X', // 2
-	'Y','Z','a','b','c','d','e','f', // 3
-	'g','h','i','j','k','l','m','n', // 4
-	'o','p','q','r','s','t','u','v', // 5
-	'w','x','y','z','0','1','2','3', // 6
-	'4','5','6','7','8','9','+','/'  // 7
-    };
+    /*
+     * Encodes whole groups of 3 bytes, as many as fit on the current
+     * line at a time.
+     */
+    private void encode(byte[] b, int off, int len) throws IOException {
+	while (len > 0) {
+	    newLineIfFull();
+	    int groups = Math.min(len / 3,
+		    Math.max(1, (bytesPerLine - count) / 4));
+	    groups = Math.min(groups, (outbuf.length - outpos) / 4);
+	    if (groups == 0) {
+		writeEncoded();
+		continue;
+	    }
+	    int n = groups * 3;
+	    outpos += Base64.encode(b, off, n, outbuf, outpos);
+	    count += groups * 4;
+	    off += n;
+	    len -= n;
+	}
+    }
 
-    private void encode() throws IOException {
-	// If writing out this encoded unit will cause overflow,
+    private void newLineIfFull() throws IOException {
+	// If writing out the next encoded unit would cause overflow,
 	// start a new line.
 	if (count + 4 > bytesPerLine) {
-	    out.write('\r');
-	    out.write('\n');
+	    if (outpos + 2 > outbuf.length)
+		writeEncoded();
+	    outbuf[outpos++] = '\r';
+	    outbuf[outpos++] = '\n';
 	    count = 0;
 	}
+    }
 
-	byte a, b, c;
-	if (bufsize == 1) {
-	    a = buffer[0];
-	    b = 0;
-	    c = 0;
-	    out.write(pem_array[(a >>> 2) & 0x3F]);
-	    out.write(pem_array[((a << 4) & 0x30) + ((b >>> 4) & 0xf)]);
-	    out.write('='); // pad character
-	    out.write('='); // pad character
-	} else if (bufsize == 2) {
-	    a = buffer[0];
-	    b = buffer[1];
-	    c = 0;
-	    out.write(pem_array[(a >>> 2) & 0x3F]);
-	    out.write(pem_array[((a << 4) & 0x30) + ((b >>> 4) & 0xf)]);
-	    out.write(pem_array[((b << 2) & 0x3c) + ((c >>> 6) & 0x3)]);
-	    out.write('='); // pad character
-	} else {
-	    a = buffer[0];
-	    b = buffer[1];
-	    c = buffer[2];
-	    out.write(pem_array[(a >>> 2) & 0x3F]);
-	    out.write(pem_array[((a << 4) & 0x30) + ((b >>> 4) & 0xf)]);
-	    out.write(pem_array[((b << 2) & 0x3c) + ((c >>> 6) & 0x3)]);
-	    out.write(pem_array[c & 0x3F]);
-        }
-
-	// increment count
-	count += 4;
+    private void writeEncoded() throws IOException {
+	if (outpos > 0) {
+	    out.write(outbuf, 0, outpos);
+	    outpos = 0;
+	}
     }
 
     /**
@@ -214,55 +221,6 @@ public class BASE64EncoderStream extends FilterOutputStream {
     public static byte[] encode(byte[] inbuf) {
 	if (inbuf.length == 0)
 	    return inbuf;
-	byte[] outbuf = new byte[((inbuf.length + 2) / 3) * 4];
-	int inpos = 0, outpos = 0;
-	int size = inbuf.length;
-	while (size > 0) {
-	    byte a, b, c;
-	    if (size == 1) {
-		a = inbuf[inpos++];
-		b = 0;
-		c = 0;
-		outbuf[outpos++] = (byte)pem_array[(a >>> 2) & 0x3F];
-		outbuf[outpos++] =
-			(byte)pem_array[((a << 4) & 0x30) + ((b >>> 4) & 0xf)];
-		outbuf[outpos++] = (byte)'=';  // pad character
-		outbuf[outpos++] = (byte)'=';  // pad character
-	    } else if (size == 2) {
-		a = inbuf[inpos++];
-		b = inbuf[inpos++];
-		c = 0;
-		outbuf[outpos++] = (byte)pem_array[(a >>> 2) & 0x3F];
-		outbuf[outpos++] =
-			(byte)pem_array[((a << 4) & 0x30) + ((b >>> 4) & 0xf)];
-		outbuf[outpos++] =
-			(byte)pem_array[((b << 2) & 0x3c) + ((c >>> 6) & 0x3)];
-		outbuf[outpos++] = (byte)'=';  // pad character
-	    } else {
-		a = inbuf[inpos++];
-		b = inbuf[inpos++];
-		c = inbuf[inpos++];
-		outbuf[outpos++] = (byte)pem_array[(a >>> 2) & 0x3F];
-		outbuf[outpos++] =
-			(byte)pem_array[((a << 4) & 0x30) + ((b >>> 4) & 0xf)];
-		outbuf[outpos++] =
-			(byte)pem_array[((b << 2) & 0x3c) + ((c >>> 6) & 0x3)];
-		outbuf[outpos++] = (byte)pem_array[c & 0x3F];
-	    }
-	    size -= 3;
-	}
-	return outbuf;
-    }
-
-    /*** begin TEST program
-    public static void main(String argv[]) throws Exception {
-	FileInputStream infile = new FileInputStream(argv[0]);
-	BASE64EncoderStream encoder = new BASE64EncoderStream(System.out);
-	int c;
-
-	while ((c = infile.read()) != -1)
-	    encoder.write(c);
-	encoder.close();
+	return Base64.encode(inbuf);
     }
-    *** end TEST program **/
 }
@@ -64,6 +64,14 @@ import java.io.*;
 public final class LineInputStream extends FilterInputStream {
 
     private char[] lineBuffer = null; // reusable byte buffer
+    private byte[] byteBuffer = null; // reusable buffer for markable streams
+    private final int[] next = new int[1];
+
+    /**
+     * Most bytes read ahead under a mark when looking for the end of a
+     * line; longer lines are read byte by byte.
+     */
+    public static final int MARK_LIMIT = 8192;
 
     public LineInputStream(InputStream in) {
 	super(in);
@@ -86,6 +94,15 @@ public final class LineInputStream extends FilterInputStream {
      */
     public String readLine() throws IOException {
 	InputStream in = this.in;
+	if (in.markSupported() && !(in instanceof PushbackInputStream)) {
+	    int end = readMarkedLine(in);
+	    if (end == -1)
+		return null;
+	    if (end >= 0)
+		return String.copyValueOf(lineBuffer, 0, end);
+	    // longer than the mark limit, fall back to reading bytes
+	}
+
 	char[] buf = lineBuffer;
 
 	if (buf == null)
@@ -103,8 +120,8 @@ public final class LineInputStream extends FilterInputStream {
 		int c2 = in.read();
 		if (c2 == '\r')		// discard extraneous CR
 		    c2 = in.read();
-		if (c2 != '\n') {
-		    // If not NL, push it back
+		if (c2 != '\n' && c2 != -1) {
+		    // If not NL or EOF, push it back
 		    if (!(in instanceof PushbackInputStream))
 			in = this.in = new PushbackInputStream(in);
 		    ((PushbackInputStream)in).unread(c2);
@@ -128,4 +145,120 @@ public final class LineInputStream extends FilterInputStream {
 	
 	return String.copyValueOf(buf, 0, offset);
     }
+
+    /*
+     * Read a line from a stream that supports mark/reset: bytes are
+     * read in bulk, and the stream is then repositioned just past the
+     * line terminator, so no PushbackInputStream is ever needed.
+     * Returns the length of the line, now in lineBuffer, -1 at the end
+     * of the stream, or -2 with the stream unchanged if the line is
+     * longer than MARK_LIMIT.
+     */
+    private int readMarkedLine(InputStream in) throws IOException {
+	byte[] buf = byteBuffer;
+	if (buf == null)
+	    buf = byteBuffer = new byte[128];
+
+	in.mark(MARK_LIMIT);
+	int len = 0;
+	boolean eof = false;
+	int end;
+	while ((end = findLineEnd(buf, 0, len, eof, next)) < 0) {
+	    if (len == MARK_LIMIT) {
+		in.reset();
+		in.mark(0);
+		return -2;
+	    }
+	    if (len == buf.length) {
+		byte[] nbuf = new byte[Math.min(len * 2, MARK_LIMIT)];
+		System.arraycopy(buf, 0, nbuf, 0, len);
+		buf = byteBuffer = nbuf;
+	    }
+	    int n = in.read(buf, len, buf.length - len);
+	    if (n < 0)
+		eof = true;
+	    else
+		len += n;
+	}
+	in.reset();
+	skipFully(in, next[0]);
+	// release the mark, or a buffered stream keeps everything read next
+	in.mark(0);
+
+	if (eof && len == 0)
+	    return -1;
+
+	char[] cbuf = lineBuffer;
+	if (cbuf == null || cbuf.length < end)
+	    cbuf = lineBuffer = new char[Math.max(end, 128)];
+	for (int i = 0; i < end; i++)
+	    cbuf[i] = (char)(buf[i] & 0xff);
+	return end;
+    }
+
+    /**
+     * Find the end of the line that starts at <code>off</code> in
+     * <code>b</code>, using the same line terminators as
+     * {@link #readLine()}: CR, NL, CR-NL and CR-CR-NL. <p>
+     *
+     * If the line is complete, returns the index just past its last
+     * character (excluding the terminator) and stores the index of the
+     * start of the following line in <code>next[0]</code>. If the line
+     * cannot be told complete from the first <code>len</code> bytes,
+     * returns -1, unless <code>eof</code> is set, in which case the
+     * remaining bytes are taken as the last line.
+     *
+     * @param b the bytes to scan
+     * @param off index of the start of the line
+     * @param len index just past the last valid byte
+     * @param eof whether no more bytes follow <code>len</code>
+     * @param next receives the index of the start of the next line
+     * @return the end of the line, or -1 if more bytes are needed
+     */
+    public static int findLineEnd(byte[] b, int off, int len,
+				  boolean eof, int[] next) {
+	for (int i = off; i < len; i++) {
+	    byte c = b[i];
+	    if (c == '\n') {
+		next[0] = i + 1;
+		return i;
+	    }
+	    if (c == '\r') {
+		// Got CR, is the next char NL ? (CR-CR-NL also counts)
+		if (i + 1 == len) {
+		    if (!eof)
+			return -1;
+		    next[0] = i + 1;
+		} else if (b[i + 1] == '\n') {
+		    next[0] = i + 2;
+		} else if (b[i + 1] != '\r') {
+		    next[0] = i + 1;
+		} else if (i + 2 == len) {
+		    if (!eof)
+			return -1;
+		    next[0] = i + 2;
+		} else {
+		    // discard extraneous CR
+		    next[0] = b[i + 2] == '\n' ? i + 3 : i + 2;
+		}
+		return i;
+	    }
+	}
+	if (!eof)
+	    return -1;
+	next[0] = len;
+	return len;
+    }
+
+    private static void skipFully(InputStream in, long n) throws IOException {
+	while (n > 0) {
+	    long skipped = in.skip(n);
+	    if (skipped <= 0) {
+		if (in.read() < 0)
+		    throw new EOFException();
+		skipped = 1;
+	    }
+	    n -= skipped;
+	}
+    }
 }
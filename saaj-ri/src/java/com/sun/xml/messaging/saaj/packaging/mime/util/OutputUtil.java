@@ -76,9 +76,12 @@ public abstract class OutputUtil {
      * @throws IOException if an I/O error occurs.
      */
     public static void writeAsAscii(String s,OutputStream out) throws IOException {
+        // one bulk write rather than one call per character
         int len = s.length();
+        byte[] b = new byte[len];
         for( int i=0; i<len; i++ )
-            out.write((byte)s.charAt(i));
+            b[i] = (byte)s.charAt(i);
+        out.write(b);
     }
 
     public static void writeln(OutputStream out) throws IOException {
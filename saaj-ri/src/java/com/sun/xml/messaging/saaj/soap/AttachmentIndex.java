@@ -0,0 +1,185 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package com.sun.xml.messaging.saaj.soap;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.xml.soap.AttachmentPart;
+
+/**
+ * Hash index over the attachments of a message, keyed by the case
+ * insensitive values of their Content-ID and Content-Location headers and
+ * by the part name of JAX-RPC style Content-IDs.
+ *
+ * <p>The index covers a prefix of the attachment list and is extended as
+ * parts are appended to it. Entries record the position of the first part
+ * carrying a value and are verified against the list when looked up, so a
+ * removed part or a changed header never yields a wrong match; the index is
+ * rebuilt instead.
+ */
+final class AttachmentIndex {
+
+    private final Map<String, Integer> contentIds = new HashMap<String, Integer>();
+    private final Map<String, Integer> contentLocations = new HashMap<String, Integer>();
+    private final Map<String, Integer> partNames = new HashMap<String, Integer>();
+
+    private List<AttachmentPart> indexedList;
+    private int indexed;
+
+    /**
+     * Returns the first attachment having the given value for the
+     * Content-ID or Content-Location header, matched case insensitively.
+     */
+    AttachmentPart find(List<AttachmentPart> parts, String header, String value) {
+        Map<String, Integer> index = MessageImpl.CONTENT_ID.equalsIgnoreCase(header)
+                ? contentIds : contentLocations;
+        String key = key(value);
+        AttachmentPart part = probe(parts, index, header, key);
+        if (part == null && index.containsKey(key)) {
+            reset();
+            part = probe(parts, index, header, key);
+        }
+        return part;
+    }
+
+    /**
+     * Returns the first attachment whose JAX-RPC style Content-ID, such as
+     * <code>&lt;name=uuid@host&gt;</code>, carries the given part name.
+     */
+    AttachmentPart findByPartName(List<AttachmentPart> parts, String name) {
+        String key = key(name);
+        AttachmentPart part = probe(parts, partNames, null, key);
+        if (part == null && partNames.containsKey(key)) {
+            reset();
+            part = probe(parts, partNames, null, key);
+        }
+        return part;
+    }
+
+    /**
+     * Discards the index, it is rebuilt from the attachment list on the
+     * next lookup.
+     */
+    void reset() {
+        contentIds.clear();
+        contentLocations.clear();
+        partNames.clear();
+        indexedList = null;
+        indexed = 0;
+    }
+
+    private AttachmentPart probe(List<AttachmentPart> parts,
+            Map<String, Integer> index, String header, String key) {
+        if (parts == null) {
+            return null;
+        }
+        sync(parts);
+        Integer pos = index.get(key);
+        if (pos == null || pos >= parts.size()) {
+            return null;
+        }
+        AttachmentPart part = parts.get(pos);
+        if (part == null) {
+            return null;
+        }
+        if (header == null) {
+            return key.equals(partName(part)) ? part : null;
+        }
+        String[] values = part.getMimeHeader(header);
+        if (values != null) {
+            for (String v : values) {
+                if (key.equals(key(v))) {
+                    return part;
+                }
+            }
+        }
+        return null;
+    }
+
+    private void sync(List<AttachmentPart> parts) {
+        if (parts != indexedList || parts.size() < indexed) {
+            reset();
+            indexedList = parts;
+        }
+        for (int size = parts.size(); indexed < size; indexed++) {
+            AttachmentPart part = parts.get(indexed);
+            if (part == null) {
+                continue;
+            }
+            Integer pos = indexed;
+            add(contentIds, part.getMimeHeader(MessageImpl.CONTENT_ID), pos);
+            add(contentLocations, part.getMimeHeader(MessageImpl.CONTENT_LOCATION), pos);
+            String name = partName(part);
+            if (name != null && !partNames.containsKey(name)) {
+                partNames.put(name, pos);
+            }
+        }
+    }
+
+    private static void add(Map<String, Integer> index, String[] values, Integer pos) {
+        if (values != null) {
+            for (String v : values) {
+                String key = key(v);
+                if (key != null && !index.containsKey(key)) {
+                    index.put(key, pos);
+                }
+            }
+        }
+    }
+
+    private static String partName(AttachmentPart part) {
+        String cid = part.getContentId();
+        if (cid != null) {
+            int eqIndex = cid.indexOf('=');
+            if (eqIndex > 0) {
+                return key(cid.substring(1, eqIndex));
+            }
+        }
+        return null;
+    }
+
+    private static String key(String value) {
+        return (value == null) ? null : value.toLowerCase(Locale.ENGLISH);
+    }
+}
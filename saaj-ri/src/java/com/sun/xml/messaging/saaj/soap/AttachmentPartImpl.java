@@ -43,8 +43,10 @@ package com.sun.xml.messaging.saaj.soap;
 import com.sun.xml.messaging.saaj.SOAPExceptionImpl;
 
 import com.sun.xml.messaging.saaj.packaging.mime.util.ASCIIUtility;
+import com.sun.xml.messaging.saaj.packaging.mime.util.BASE64EncoderInputStream;
 
 import com.sun.xml.messaging.saaj.packaging.mime.Header;
+import com.sun.xml.messaging.saaj.packaging.mime.internet.AttachmentStore;
 import com.sun.xml.messaging.saaj.packaging.mime.internet.MimePartDataSource;
 import com.sun.xml.messaging.saaj.packaging.mime.internet.InternetHeaders;
 import com.sun.xml.messaging.saaj.packaging.mime.internet.MimeBodyPart;
@@ -54,7 +56,7 @@ import com.sun.xml.messaging.saaj.util.LogDomainConstants;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.ByteArrayOutputStream;
+import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
 import java.io.OutputStream;
 import java.util.Iterator;
@@ -84,6 +86,9 @@ public class AttachmentPartImpl extends AttachmentPart {
     //alternate impl that uses a MIMEPart
     private MIMEPart mimePart = null;
 
+    // storage for the content set from streams, null to keep it in memory
+    private AttachmentStore store = null;
+
     public AttachmentPartImpl() {
         headers = new MimeHeaders();
 
@@ -103,6 +108,17 @@ public class AttachmentPartImpl extends AttachmentPart {
         }
     }
 
+    /**
+     * Sets the storage for content set from a stream by
+     * {@link #setRawContent(InputStream, String)} or
+     * {@link #setBase64Content(InputStream, String)}.
+     *
+     * @param store storage, <code>null</code> to keep the content in memory
+     */
+    public void setAttachmentStore(AttachmentStore store) {
+        this.store = store;
+    }
+
     @Override
     public int getSize() throws SOAPException {
         if (mimePart != null) {
@@ -157,10 +173,8 @@ public class AttachmentPartImpl extends AttachmentPart {
                 //return an inputstream
                 return mimePart.read();
             }
-            if (dataHandler != null) {
+            if (dataHandler != null || rawContent != null) {
                 return getDataHandler().getContent();
-            } else if (rawContent != null) {
-                return rawContent.getContent();
             } else {
                 log.severe("SAAJ0572.soap.no.content.for.attachment");
                 throw new SOAPExceptionImpl("No data handler/content associated with this attachment");
@@ -178,7 +192,7 @@ public class AttachmentPartImpl extends AttachmentPart {
             mimePart.close();
             mimePart = null;
         }
-        DataHandler dh = new DataHandler(object, contentType);
+        DataHandler dh = SAAJCommandMap.configure(new DataHandler(object, contentType));
 
         setDataHandler(dh);
     }
@@ -188,7 +202,7 @@ public class AttachmentPartImpl extends AttachmentPart {
     public DataHandler getDataHandler() throws SOAPException {
         if (mimePart != null) {
             //return an inputstream
-            return new DataHandler(new DataSource() {
+            return SAAJCommandMap.configure(new DataHandler(new DataSource() {
 
                 @Override
                 public InputStream getInputStream() throws IOException {
@@ -209,11 +223,12 @@ public class AttachmentPartImpl extends AttachmentPart {
                 public String getName() {
                     return "MIMEPart Wrapper DataSource";
                 }
-            });
+            }));
         }
         if (dataHandler == null) {
             if (rawContent != null) {
-                return new DataHandler(new MimePartDataSource(rawContent));
+                return SAAJCommandMap.configure(
+                        new DataHandler(new MimePartDataSource(rawContent)));
             }
             log.severe("SAAJ0502.soap.no.handler.for.attachment");
             throw new SOAPExceptionImpl("No data handler associated with this attachment");
@@ -372,24 +387,22 @@ public class AttachmentPartImpl extends AttachmentPart {
         }
         dataHandler = null;
         InputStream decoded = null;
-        ByteOutputStream bos = null;
         try {
+            // the decoder reads a byte at a time
+            if (!(content instanceof ByteArrayInputStream)
+                    && !(content instanceof BufferedInputStream)) {
+                content = new BufferedInputStream(content);
+            }
             decoded = MimeUtility.decode(content, "base64");
             InternetHeaders hdrs = new InternetHeaders();
             hdrs.setHeader("Content-Type", contentType);
-            //TODO: reading the entire attachment here is ineffcient. Somehow the MimeBodyPart
-            // Ctor with inputStream causes problems based on the InputStream 
-            // has markSupported()==true
-            bos = new ByteOutputStream();
-            bos.write(decoded);
-            rawContent = new MimeBodyPart(hdrs, bos.getBytes(), bos.getCount());
+            // decoded into the attachment store, if any, as it is read
+            rawContent = readBodyPart(hdrs, decoded);
             setMimeHeader("Content-Type", contentType);
         } catch (Exception e) {
             log.log(Level.SEVERE, "SAAJ0578.soap.attachment.setbase64content.exception", e);
             throw new SOAPExceptionImpl(e.getLocalizedMessage());
         } finally {
-            if (bos != null)
-                bos.close();
             try {
                 if (decoded != null)
                 decoded.close();
@@ -423,36 +436,9 @@ public class AttachmentPartImpl extends AttachmentPart {
             throw new SOAPExceptionImpl("No data handler/content associated with this attachment");
         }
 
-        //TODO: Write a BASE64EncoderInputStream instead, 
-        // this code below is inefficient
-        // where we are trying to read the whole attachment first
-        int len;
-        int size = 1024;
-        byte [] buf;
         if (stream != null) {
-            try {
-                ByteArrayOutputStream bos = new ByteArrayOutputStream(size);
-                //TODO: try and optimize this on the same lines as 
-                // ByteOutputStream : to eliminate the temp buffer here
-                OutputStream ret = MimeUtility.encode(bos, "base64");
-                buf = new byte[size];
-                while ((len = stream.read(buf, 0, size)) != -1) {
-                    ret.write(buf, 0, len);
-                }
-                ret.flush();
-                buf = bos.toByteArray(); 
-                return new ByteArrayInputStream(buf);
-            } catch (Exception e) {
-                // throw new SOAPException
-                log.log(Level.SEVERE,"SAAJ0579.soap.attachment.getbase64content.exception", e);
-                throw new SOAPExceptionImpl(e.getLocalizedMessage());
-            } finally {
-                try {
-                    stream.close();
-                } catch (IOException ex) {
-                  //close the stream
-                }
-            }
+            // encoded as it is read, closing it closes the content stream
+            return new BASE64EncoderInputStream(stream);
         } else {
           //throw  new SOAPException
           log.log(Level.SEVERE,"SAAJ0572.soap.no.content.for.attachment");
@@ -468,23 +454,18 @@ public class AttachmentPartImpl extends AttachmentPart {
             mimePart = null;
         }
         dataHandler = null;
-        ByteOutputStream bos = null;
         try {
             InternetHeaders hdrs = new InternetHeaders();
             hdrs.setHeader("Content-Type", contentType);
             //TODO: reading the entire attachment here is ineffcient. Somehow the MimeBodyPart
             // Ctor with inputStream causes problems based on whether the InputStream has 
             // markSupported()==true or false
-            bos = new ByteOutputStream();
-            bos.write(content);
-            rawContent = new MimeBodyPart(hdrs, bos.getBytes(), bos.getCount());
+            rawContent = readBodyPart(hdrs, content);
             setMimeHeader("Content-Type", contentType);
         } catch (Exception e) {
             log.log(Level.SEVERE, "SAAJ0576.soap.attachment.setrawcontent.exception", e);
             throw new SOAPExceptionImpl(e.getLocalizedMessage());
         } finally {
-            if (bos != null)
-                bos.close();
             try {
                 content.close();
             } catch (IOException ex) {
@@ -493,6 +474,30 @@ public class AttachmentPartImpl extends AttachmentPart {
         }
     }
 
+    /**
+     * Copies the content into a new body part, kept in the attachment store
+     * of the message if there is one.
+     */
+    private MimeBodyPart readBodyPart(InternetHeaders hdrs, InputStream content)
+        throws IOException {
+        if (store != null) {
+            AttachmentStore.Buffer buf = store.newBuffer();
+            try {
+                buf.write(content);
+                return new MimeBodyPart(hdrs, buf.newInputStream());
+            } finally {
+                buf.close();
+            }
+        }
+        ByteOutputStream bos = new ByteOutputStream();
+        try {
+            bos.write(content);
+            return new MimeBodyPart(hdrs, bos.getBytes(), bos.getCount());
+        } finally {
+            bos.close();
+        }
+    }
+
    /*
     public void setRawContentBytes(byte[] content, String contentType) 
         throws SOAPException {
@@ -611,7 +616,21 @@ public class AttachmentPartImpl extends AttachmentPart {
         return headers;
     }
 
+    // registered once for the default CommandMap of each context classloader
+    private static final ContextClassloaderLocal<Boolean> mailcapRegistration =
+            new ContextClassloaderLocal<Boolean>() {
+                @Override
+                protected Boolean initialValue() {
+                    registerMailcap();
+                    return Boolean.TRUE;
+                }
+            };
+
     public static void initializeJavaActivationHandlers() {
+        mailcapRegistration.get();
+    }
+
+    private static void registerMailcap() {
         // DataHandler.writeTo() may search for DCH. So adding some default ones.
         try {
             CommandMap map = CommandMap.getDefaultCommandMap();
@@ -641,7 +660,7 @@ public class AttachmentPartImpl extends AttachmentPart {
             return false;
         }
 
-        String saajClassName = "com.sun.xml.internal.ws.binding.FastInfosetDataContentHandler";
+        String saajClassName = FastInfosetDataContentHandler.class.getName();
         for (CommandInfo command : commands) {
             String commandClass = command.getCommandClass();
             if (saajClassName.equals(commandClass)) {
@@ -40,37 +40,87 @@
 
 package com.sun.xml.messaging.saaj.soap;
 
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
 import java.text.MessageFormat;
 import java.util.ResourceBundle;
-import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Simple utility ensuring that the value is cached only in case it is non-internal implementation
+ * <p>
+ * The values are kept in a concurrent map with weak keys, so reads take no
+ * lock. A value is created at most once per classloader, under a lock taken
+ * only when the map has no value yet. The last value looked up is kept
+ * aside, which answers the usual case of a single context classloader
+ * without a map lookup.
+ * <p>
+ * Use it for JAXP factories and other providers looked up through the
+ * context classloader, instead of a static field pinned to whichever
+ * classloader asked first.
  */
-abstract class ContextClassloaderLocal<V> {
+public abstract class ContextClassloaderLocal<V> {
 
     private static final String FAILED_TO_CREATE_NEW_INSTANCE = "FAILED_TO_CREATE_NEW_INSTANCE";
 
-    private WeakHashMap<ClassLoader, V> CACHE = new WeakHashMap<ClassLoader, V>();
+    // key of the value for threads without a context classloader
+    private static final Object NULL_LOADER = new Object();
+
+    private final ConcurrentMap<Object, V> CACHE = new ConcurrentHashMap<Object, V>();
+    private final ReferenceQueue<ClassLoader> queue = new ReferenceQueue<ClassLoader>();
+
+    private volatile Last<V> last;
 
     public V get() throws Error {
         ClassLoader tccl = getContextClassLoader();
-        V instance = CACHE.get(tccl);
+        Object loader = (tccl == null) ? NULL_LOADER : tccl;
+        Last<V> l = last;
+        if (l != null && l.get() == loader) {
+            return l.value;
+        }
+
+        V instance = CACHE.get(lookupKey(tccl));
         if (instance == null) {
-            instance = createNewInstance();
-            CACHE.put(tccl, instance);
+            synchronized (this) {
+                instance = CACHE.get(lookupKey(tccl));
+                if (instance == null) {
+                    instance = createNewInstance();
+                    put(tccl, instance);
+                    l = null;
+                }
+            }
+        }
+        if (l == null || l.get() == null) {
+            last = new Last<V>(loader, instance);
         }
         return instance;
     }
 
     public void set(V instance) {
-        CACHE.put(getContextClassLoader(), instance);
+        ClassLoader tccl = getContextClassLoader();
+        synchronized (this) {
+            put(tccl, instance);
+        }
+        last = new Last<V>((tccl == null) ? NULL_LOADER : tccl, instance);
     }
 
     protected abstract V initialValue() throws Exception;
 
+    private void put(ClassLoader tccl, V instance) {
+        // drop the values of collected classloaders
+        for (Object key; (key = queue.poll()) != null;) {
+            CACHE.remove(key);
+        }
+        CACHE.put((tccl == null) ? NULL_LOADER : new Key(tccl, queue), instance);
+    }
+
+    private static Object lookupKey(ClassLoader tccl) {
+        return (tccl == null) ? NULL_LOADER : new Lookup(tccl);
+    }
+
     private V createNewInstance() {
         try {
             return initialValue();
@@ -85,6 +135,9 @@ abstract class ContextClassloaderLocal<V> {
     }
 
     private static ClassLoader getContextClassLoader() {
+        if (System.getSecurityManager() == null) {
+            return Thread.currentThread().getContextClassLoader();
+        }
         return AccessController.doPrivileged(new PrivilegedAction<ClassLoader>() {
                     @Override
                     public ClassLoader run() {
@@ -97,5 +150,60 @@ abstract class ContextClassloaderLocal<V> {
                     }
                 });
     }
-}
 
+    /*
+     * Weak key of the map, equal to the Lookup of the same classloader.
+     */
+    private static final class Key extends WeakReference<ClassLoader> {
+        private final int hash;
+
+        Key(ClassLoader loader, ReferenceQueue<ClassLoader> queue) {
+            super(loader, queue);
+            hash = System.identityHashCode(loader);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return this == o;
+        }
+    }
+
+    /*
+     * Strong key to look up the value of a classloader.
+     */
+    private static final class Lookup {
+        private final ClassLoader loader;
+
+        Lookup(ClassLoader loader) {
+            this.loader = loader;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(loader);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return (o instanceof Key) && ((Key) o).get() == loader;
+        }
+    }
+
+    /*
+     * The last value created or looked up, with its classloader or
+     * NULL_LOADER.
+     */
+    private static final class Last<V> extends WeakReference<Object> {
+        final V value;
+
+        Last(Object loader, V value) {
+            super(loader);
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package com.sun.xml.messaging.saaj.soap;
+
+import java.util.Arrays;
+
+import javax.xml.XMLConstants;
+
+import com.sun.xml.messaging.saaj.soap.impl.ElementImpl;
+import com.sun.xml.messaging.saaj.soap.name.NameImpl;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.ext.LexicalHandler;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Builds the SAAJ tree of a SOAP part directly from SAX events.
+ *
+ * <p>Elements in the SOAP envelope namespaces are created through the
+ * {@link SOAPDocumentImpl} factory methods, which pick the envelope, header,
+ * body and fault wrappers. All other elements are created as plain
+ * {@link ElementImpl}s from the names split by the parser, skipping the
+ * factory lookup. Either way the same SAAJ wrappers are registered as with
+ * an identity transform into a {@code DOMResult}, but without the
+ * transformer layer in between. Adjacent character events are
+ * merged into one text node and CDATA sections are reported as text, like
+ * the JAXP {@code DOMResult} builder does.
+ */
+class EnvelopeContentHandler extends DefaultHandler implements LexicalHandler {
+
+    private static final String XMLNS = XMLConstants.XMLNS_ATTRIBUTE;
+    private static final String XMLNS_COLON = XMLNS + ":";
+
+    private final SOAPDocumentImpl document;
+
+    // parent of the nodes being created, null while outside the root element
+    private Node current;
+
+    private char[] text = new char[256];
+    private int textLength = 0;
+
+    // namespace declarations for the next element, pairs of qname and URI
+    private String[] namespaces = new String[16];
+    private int namespaceCount = 0;
+
+    EnvelopeContentHandler(SOAPPartImpl soapPart) {
+        this.document = soapPart.getDocument();
+    }
+
+    @Override
+    public void startPrefixMapping(String prefix, String uri) {
+        if (namespaceCount == namespaces.length) {
+            namespaces = Arrays.copyOf(namespaces, namespaceCount * 2);
+        }
+        namespaces[namespaceCount++] = prefix.isEmpty() ? XMLNS : XMLNS_COLON + prefix;
+        namespaces[namespaceCount++] = uri;
+    }
+
+    @Override
+    public void startElement(String uri, String localName, String qName,
+            Attributes attributes) {
+        flushText();
+        Element element;
+        if (NameImpl.SOAP11_NAMESPACE.equals(uri)) {
+            // envelope, header, body and fault have their own wrappers,
+            // named with the shared SOAP constants
+            element = document.createElementNS(NameImpl.SOAP11_NAMESPACE, qName);
+        } else if (NameImpl.SOAP12_NAMESPACE.equals(uri)) {
+            element = document.createElementNS(NameImpl.SOAP12_NAMESPACE, qName);
+        } else if (localName.isEmpty()) {
+            element = document.createElementNS(uri, qName);
+        } else {
+            // the parser has split the name already
+            element = new ElementImpl(document, uri, qName, localName);
+        }
+
+        for (int i = 0; i < namespaceCount; i += 2) {
+            element.setAttributeNS(XMLConstants.XMLNS_ATTRIBUTE_NS_URI,
+                    namespaces[i], namespaces[i + 1]);
+        }
+        namespaceCount = 0;
+
+        int length = attributes.getLength();
+        for (int i = 0; i < length; i++) {
+            String attrQName = attributes.getQName(i);
+            if (attrQName.equals(XMLNS) || attrQName.startsWith(XMLNS_COLON)) {
+                element.setAttributeNS(XMLConstants.XMLNS_ATTRIBUTE_NS_URI,
+                        attrQName, attributes.getValue(i));
+            } else {
+                element.setAttributeNS(attributes.getURI(i), attrQName,
+                        attributes.getValue(i));
+            }
+        }
+
+        append(element);
+        current = document.getDomNode(element);
+    }
+
+    @Override
+    public void endElement(String uri, String localName, String qName) {
+        flushText();
+        Node parent = current.getParentNode();
+        current = parent.getNodeType() == Node.DOCUMENT_NODE ? null : parent;
+    }
+
+    @Override
+    public void characters(char[] ch, int start, int length) {
+        if (current == null) {
+            return;
+        }
+        if (textLength + length > text.length) {
+            text = Arrays.copyOf(text, Math.max(text.length * 2, textLength + length));
+        }
+        System.arraycopy(ch, start, text, textLength, length);
+        textLength += length;
+    }
+
+    @Override
+    public void processingInstruction(String target, String data) {
+        flushText();
+        // not allowed in SOAP, the document refuses to create it
+        append(document.createProcessingInstruction(target, data));
+    }
+
+    @Override
+    public void endDocument() {
+        flushText();
+    }
+
+    @Override
+    public void comment(char[] ch, int start, int length) {
+        flushText();
+        append(document.createComment(new String(ch, start, length)));
+    }
+
+    @Override
+    public void startDTD(String name, String publicId, String systemId)
+            throws SAXException {
+        throw new SAXException("Document Type Declaration is not allowed");
+    }
+
+    @Override
+    public void endDTD() {
+    }
+
+    @Override
+    public void startEntity(String name) {
+    }
+
+    @Override
+    public void endEntity(String name) {
+    }
+
+    @Override
+    public void startCDATA() {
+    }
+
+    @Override
+    public void endCDATA() {
+    }
+
+    private void flushText() {
+        if (textLength > 0) {
+            append(document.createTextNode(new String(text, 0, textLength)));
+            textLength = 0;
+        }
+    }
+
+    private void append(Node node) {
+        if (current == null) {
+            document.appendChild(node);
+        } else {
+            current.appendChild(document.getDomNode(node));
+        }
+    }
+}
@@ -73,7 +73,11 @@ import java.util.logging.Logger;
  */
 public class EnvelopeFactory {
     private static final String SAX_PARSER_POOL_SIZE_PROP_NAME = "com.sun.xml.messaging.saaj.soap.saxParserPoolSize";
+    private static final String SAX_PARSER_POOL_MAX_SIZE_PROP_NAME = "com.sun.xml.messaging.saaj.soap.saxParserPoolMaxSize";
+    private static final String SAX_PARSER_POOL_MAX_WAIT_PROP_NAME = "com.sun.xml.messaging.saaj.soap.saxParserPoolMaxWait";
+    private static final String SAX_PARSER_POOL_IDLE_TIMEOUT_PROP_NAME = "com.sun.xml.messaging.saaj.soap.saxParserPoolIdleTimeout";
     private static final int DEFAULT_SAX_PARSER_POOL_SIZE = 5;
+    private static final long DEFAULT_SAX_PARSER_POOL_MAX_WAIT = 0L;
     
     protected static final Logger
         log = Logger.getLogger(LogDomainConstants.SOAP_DOMAIN,
@@ -83,23 +87,55 @@ public class EnvelopeFactory {
             new ContextClassloaderLocal<ParserPool>() {
                 @Override
                 protected ParserPool initialValue() throws Exception {
-                	Integer poolSize = AccessController.doPrivileged(
-                			new PrivilegedAction<Integer>() {
+                	return AccessController.doPrivileged(
+                			new PrivilegedAction<ParserPool>() {
                 				@Override
-                				public Integer run() {
-                					try {
-                						return Integer.getInteger(
-                								SAX_PARSER_POOL_SIZE_PROP_NAME, 
-                								DEFAULT_SAX_PARSER_POOL_SIZE);
-                					} catch (SecurityException se) {
-                						return DEFAULT_SAX_PARSER_POOL_SIZE;
-                					}
+                				public ParserPool run() {
+                					int coreSize = getInteger(
+                							SAX_PARSER_POOL_SIZE_PROP_NAME,
+                							DEFAULT_SAX_PARSER_POOL_SIZE);
+                					int maxSize = getInteger(
+                							SAX_PARSER_POOL_MAX_SIZE_PROP_NAME,
+                							Math.max(coreSize, Runtime.getRuntime().availableProcessors() * 2));
+                					long maxWait = getLong(
+                							SAX_PARSER_POOL_MAX_WAIT_PROP_NAME,
+                							DEFAULT_SAX_PARSER_POOL_MAX_WAIT);
+                					long idleTimeout = getLong(
+                							SAX_PARSER_POOL_IDLE_TIMEOUT_PROP_NAME,
+                							ParserPool.DEFAULT_IDLE_TIMEOUT);
+                					return new ParserPool(coreSize,
+                							Math.max(coreSize, maxSize), maxWait, idleTimeout);
                 				}
                 			});
-                    return new ParserPool(poolSize);
                 }
     };
 
+    private static int getInteger(String name, int defaultValue) {
+        try {
+            return Integer.getInteger(name, defaultValue);
+        } catch (SecurityException se) {
+            return defaultValue;
+        }
+    }
+
+    private static long getLong(String name, long defaultValue) {
+        try {
+            return Long.getLong(name, defaultValue);
+        } catch (SecurityException se) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Returns the SAX parser pool used for the current context classloader,
+     * mainly to expose its usage counters.
+     *
+     * @return the parser pool
+     */
+    public static ParserPool getParserPool() {
+        return parserPool.get();
+    }
+
     public static Envelope createEnvelope(Source src, SOAPPartImpl soapPart)
         throws SOAPException 
     {
@@ -135,6 +171,9 @@ public class EnvelopeFactory {
         }
     }
     
+    private static final String LEXICAL_HANDLER_PROP =
+            "http://xml.org/sax/properties/lexical-handler";
+
     static private XMLInputFactory xmlInputFactory = null;
     
     private static Envelope parseEnvelopeStax(Source src, SOAPPartImpl soapPart)
@@ -146,7 +185,15 @@ public class EnvelopeFactory {
         try {
             if (streamReader == null) {
                 if (xmlInputFactory == null) xmlInputFactory = XMLInputFactory.newInstance();
-                streamReader = xmlInputFactory.createXMLStreamReader(src);
+                String charset = soapPart.getSourceCharsetEncoding();
+                if (src instanceof StreamSource && charset != null
+                        && ((StreamSource) src).getInputStream() != null) {
+                    // the charset of a MIME part, as for the SAX parser
+                    streamReader = xmlInputFactory.createXMLStreamReader(
+                            ((StreamSource) src).getInputStream(), charset);
+                } else {
+                    streamReader = xmlInputFactory.createXMLStreamReader(src);
+                }
             }
 //            SaajStaxWriter saajWriter = new SaajStaxWriter(soapPart.message, soapPart.document);
 //            XMLStreamReaderToXMLStreamWriter readerWriterBridge = new XMLStreamReaderToXMLStreamWriter(
@@ -193,12 +240,30 @@ public class EnvelopeFactory {
     						"Unable to create envelope from given source: ",
     						ex);
     			}
-    			src = new SAXSource(rejectFilter, is);
+
+    			// build the tree straight from the SAX events
+    			EnvelopeContentHandler handler = new EnvelopeContentHandler(soapPart);
+    			try {
+    				rejectFilter.setContentHandler(handler);
+    				rejectFilter.setProperty(LEXICAL_HANDLER_PROP, handler);
+    				rejectFilter.parse(is);
+
+    				Envelope env = (Envelope) soapPart.getEnvelope();
+    				return env;
+    			} catch (Exception ex) {
+    				if (ex instanceof SOAPVersionMismatchException) {
+    					throw (SOAPVersionMismatchException) ex;
+    				}
+    				log.severe("SAAJ0511.soap.cannot.create.envelope");
+    				throw new SOAPExceptionImpl(
+    						"Unable to create envelope from given source: ",
+    						ex);
+    			}
     		}
 
+    		Transformer transformer =
+    				EfficientStreamingTransformer.newTransformer();
     		try {
-    			Transformer transformer =
-    					EfficientStreamingTransformer.newTransformer();
     			DOMResult result = new DOMResult(soapPart);
     			transformer.transform(src, result);
 
@@ -212,7 +277,9 @@ public class EnvelopeFactory {
     			throw new SOAPExceptionImpl(
     					"Unable to create envelope from given source: ",
     					ex);
-    		} 
+    		} finally {
+    			EfficientStreamingTransformer.release(transformer);
+    		}
     	} finally {
     		//no matter what condition occurs, always return the parser to the pool
             if (saxParser != null) {
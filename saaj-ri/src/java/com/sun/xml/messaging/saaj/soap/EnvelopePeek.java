@@ -0,0 +1,179 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package com.sun.xml.messaging.saaj.soap;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.xml.namespace.QName;
+import javax.xml.soap.MimeHeaders;
+import javax.xml.soap.SOAPConstants;
+import javax.xml.soap.SOAPException;
+import javax.xml.soap.SOAPHeader;
+import javax.xml.soap.SOAPHeaderElement;
+import javax.xml.soap.SOAPMessage;
+
+import com.sun.xml.messaging.saaj.util.MimeHeadersUtil;
+
+/**
+ * The envelope namespace, header elements and payload name of a message,
+ * read without building the SOAP body. This is meant for routing: the
+ * headers are parsed, the body is left to a streaming reader, and the
+ * message returned by {@link #getMessage()} writes the body onward without
+ * materializing it, unless it is accessed first.
+ * <p>
+ * Both plain XML messages and multipart messages, whose root part is read,
+ * are supported.
+ */
+public final class EnvelopePeek {
+
+    private final SOAPMessage message;
+    private final LazyEnvelope envelope;
+    private List<SOAPHeaderElement> headerElements;
+
+    private EnvelopePeek(SOAPMessage message) throws SOAPException {
+        this.message = message;
+        this.envelope = (LazyEnvelope) message.getSOAPPart().getEnvelope();
+    }
+
+    /**
+     * Reads the envelope and headers of a message. The SOAP version is taken
+     * from the Content-Type of the message, which defaults to SOAP 1.1.
+     *
+     * @param headers MIME headers of the message, which are not modified,
+     *        may be <code>null</code>
+     * @param in the message
+     * @return the headers and payload name of the message
+     * @throws SOAPException if the message cannot be parsed
+     * @throws IOException in case of an I/O error
+     */
+    public static EnvelopePeek read(MimeHeaders headers, InputStream in)
+            throws SOAPException, IOException {
+        // the default Content-Type must not leak into the caller's headers
+        headers = headers == null ? new MimeHeaders() : MimeHeadersUtil.copy(headers);
+        if (MessageImpl.getContentType(headers) == null) {
+            headers.setHeader("Content-Type", SOAPConstants.SOAP_1_1_CONTENT_TYPE);
+        }
+        MessageFactoryImpl factory = new MessageFactoryImpl();
+        factory.setLazySoapBodyParsing(true);
+        return new EnvelopePeek(factory.createMessage(headers, in));
+    }
+
+    /**
+     * @return namespace of the SOAP envelope, which gives the SOAP version
+     */
+    public String getEnvelopeNamespace() {
+        return envelope.getNamespaceURI();
+    }
+
+    /**
+     * @return the elements of the SOAP header, empty if there is none
+     * @throws SOAPException in case of an error
+     */
+    public List<SOAPHeaderElement> getHeaderElements() throws SOAPException {
+        if (headerElements == null) {
+            SOAPHeader header = envelope.getHeader();
+            if (header == null) {
+                headerElements = Collections.emptyList();
+            } else {
+                List<SOAPHeaderElement> list = new ArrayList<SOAPHeaderElement>();
+                for (Iterator<?> i = header.examineAllHeaderElements(); i.hasNext();) {
+                    list.add((SOAPHeaderElement) i.next());
+                }
+                headerElements = Collections.unmodifiableList(list);
+            }
+        }
+        return headerElements;
+    }
+
+    /**
+     * @param name name of the header element
+     * @return the first header element with the given name, or
+     *         <code>null</code> if there is none
+     * @throws SOAPException in case of an error
+     */
+    public SOAPHeaderElement getHeaderElement(QName name) throws SOAPException {
+        for (SOAPHeaderElement element : getHeaderElements()) {
+            if (name.equals(element.getElementQName())) {
+                return element;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return name of the first child of the SOAP body, or <code>null</code>
+     *         if the body is empty
+     * @throws SOAPException in case of an error
+     */
+    public QName getPayloadQName() throws SOAPException {
+        return envelope.getPayloadQName();
+    }
+
+    /**
+     * @param localName local name of an unqualified attribute
+     * @return value of the attribute of the payload, or <code>null</code>
+     * @throws SOAPException in case of an error
+     */
+    public String getPayloadAttributeValue(String localName) throws SOAPException {
+        return envelope.getPayloadAttributeValue(localName);
+    }
+
+    /**
+     * @param name name of the attribute
+     * @return value of the attribute of the payload, or <code>null</code>
+     * @throws SOAPException in case of an error
+     */
+    public String getPayloadAttributeValue(QName name) throws SOAPException {
+        return envelope.getPayloadAttributeValue(name);
+    }
+
+    /**
+     * @return the message, whose body is read when it is accessed or written
+     */
+    public SOAPMessage getMessage() {
+        return message;
+    }
+}
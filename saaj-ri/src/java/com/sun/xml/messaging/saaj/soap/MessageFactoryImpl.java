@@ -52,6 +52,7 @@ import com.sun.xml.messaging.saaj.SOAPExceptionImpl;
 import com.sun.xml.messaging.saaj.soap.ver1_1.Message1_1Impl;
 import com.sun.xml.messaging.saaj.soap.ver1_2.Message1_2Impl;
 import com.sun.xml.messaging.saaj.util.LogDomainConstants;
+import com.sun.xml.messaging.saaj.util.SAAJUtil;
 import com.sun.xml.messaging.saaj.util.TeeInputStream;
 
 /**
@@ -71,6 +72,9 @@ public class MessageFactoryImpl extends MessageFactory {
     protected  OutputStream listener;
 
     protected boolean lazyAttachments = false;
+
+    protected boolean lazySoapBodyParsing =
+        SAAJUtil.getSystemBoolean(MessageImpl.LAZY_SOAP_BODY_PARSING);
     
     public  OutputStream listen(OutputStream newListener) {
         OutputStream oldListener = listener;
@@ -104,17 +108,20 @@ public class MessageFactoryImpl extends MessageFactory {
         }
 
         try {
-            ContentType contentType = new ContentType(contentTypeString);
+            ContentType contentType = ContentType.getInstance(contentTypeString);
             int stat = MessageImpl.identifyContentType(contentType);
 
+            MessageImpl msg;
             if (MessageImpl.isSoap1_1Content(stat)) {
-                return new Message1_1Impl(headers,contentType,stat,reader);
+                msg = new Message1_1Impl(headers,contentType,stat,reader);
             } else if (MessageImpl.isSoap1_2Content(stat)) {
-                return new Message1_2Impl(headers,contentType,stat,reader);
+                msg = new Message1_2Impl(headers,contentType,stat,reader);
             } else {
                 log.severe("SAAJ0530.soap.unknown.Content-Type");
                 throw new SOAPExceptionImpl("Unrecognized Content-Type");
             }
+            configure(msg);
+            return msg;
         } catch (ParseException e) {            
             log.severe("SAAJ0531.soap.cannot.parse.Content-Type");
             throw new SOAPExceptionImpl(
@@ -131,17 +138,20 @@ public class MessageFactoryImpl extends MessageFactory {
         }
 
         try {
-            ContentType contentType = new ContentType(contentTypeString);
+            ContentType contentType = ContentType.getInstance(contentTypeString);
             int stat = MessageImpl.identifyContentType(contentType);
 
+            MessageImpl msg;
             if (MessageImpl.isSoap1_1Content(stat)) {
-                return new Message1_1Impl(headers,contentType,stat,in);
+                msg = new Message1_1Impl(headers,contentType,stat,in);
             } else if (MessageImpl.isSoap1_2Content(stat)) {
-                return new Message1_2Impl(headers,contentType,stat,in);
+                msg = new Message1_2Impl(headers,contentType,stat,in);
             } else {
                 log.severe("SAAJ0530.soap.unknown.Content-Type");
                 throw new SOAPExceptionImpl("Unrecognized Content-Type");
             }
+            configure(msg);
+            return msg;
         } catch (ParseException e) {            
             log.severe("SAAJ0531.soap.cannot.parse.Content-Type");
             throw new SOAPExceptionImpl(
@@ -161,4 +171,28 @@ public class MessageFactoryImpl extends MessageFactory {
         lazyAttachments = flag;
     }
 
+    /**
+     * Sets whether the messages created from a stream read the SOAP headers
+     * up-front but leave the SOAP body to a streaming reader, which is only
+     * turned into a tree when the body is accessed. This applies to plain
+     * XML messages and to the root part of multipart messages, and is the
+     * same as setting {@link MessageImpl#LAZY_SOAP_BODY_PARSING} on each
+     * message. The default is taken from the system property of that name.
+     *
+     * @param flag <code>true</code> to defer parsing the SOAP body
+     */
+    public void setLazySoapBodyParsing(boolean flag) {
+        lazySoapBodyParsing = flag;
+    }
+
+    /*
+     * Applies the options of this factory to a message read from a stream.
+     */
+    protected void configure(MessageImpl msg) {
+        msg.setLazyAttachments(lazyAttachments);
+        if (lazySoapBodyParsing) {
+            msg.setProperty(MessageImpl.LAZY_SOAP_BODY_PARSING, Boolean.TRUE);
+        }
+    }
+
 }
@@ -41,6 +41,8 @@
 package com.sun.xml.messaging.saaj.soap;
 
 import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
 import java.util.*;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -107,6 +109,11 @@ public abstract class MessageImpl
     // used for lazy attachment initialization
     protected MimeMultipart multiPart = null;
     protected boolean attachmentsInitialized = false;
+    // number of parts of multiPart already turned into attachments
+    private int initializedParts = 0;
+
+    // Content-ID / Content-Location index over attachments, created on first lookup
+    private AttachmentIndex attachmentIndex = null;
 
     /**
      * True if this part is encoded using Fast Infoset.
@@ -127,6 +134,16 @@ public abstract class MessageImpl
 
     private InputStream inputStreamAfterSaveChanges = null;
 
+    // set by saveChangesForStreaming(), the envelope is then serialized by writeTo()
+    private boolean streamingSave = false;
+
+    // resources tied to the lifetime of this message, released by dispose()
+    private List<Closeable> resources = null;
+
+    // storage for attachment bodies above the memory threshold, created on first use
+    private AttachmentStore attachmentStore = null;
+    private boolean attachmentStoreChecked = false;
+
     public static final String LAZY_SOAP_BODY_PARSING = "saaj.lazy.soap.body";
     
     // switch back to old MimeMultipart incase of problem
@@ -150,6 +167,12 @@ public abstract class MessageImpl
     //property to indicate optimized serialization for lazy attachments
     private boolean lazyAttachments = false;
 
+    // forward unread attachments when writing without keeping a copy
+    private boolean attachmentPassthrough = false;
+
+    // set once unread attachments have been forwarded by writeTo
+    private boolean attachmentsForwarded = false;
+
     // most of the times, Content-Types are already all lower cased.
     // String.toLowerCase() works faster in this case, so even if you
     // are only doing one comparison, it pays off to use String.toLowerCase()
@@ -346,7 +369,7 @@ public abstract class MessageImpl
             throw new SOAPExceptionImpl("Absent Content-Type");
         }
         try {
-            return new ContentType(ct);
+            return ContentType.getInstance(ct);
         } catch (Throwable ex) {
             log.severe("SAAJ0535.soap.cannot.internalize.message");
             throw new SOAPExceptionImpl("Unable to internalize message", ex);
@@ -475,14 +498,17 @@ public abstract class MessageImpl
                     }
                 };
 
+                // the multipart sets parameters of its content type
+                ContentType multipartType = contentType.copy();
                 multiPart = null;
                 if (useMimePull) {
-                    multiPart = new MimePullMultipart(ds,contentType);
+                    multiPart = new MimePullMultipart(ds,multipartType);
                 } else if (switchOffBM) {
-                    multiPart = new MimeMultipart(ds,contentType);
+                    multiPart = new MimeMultipart(ds,multipartType);
                 } else {
-                    multiPart = new BMMimeMultipart(ds,contentType);
+                    multiPart = new BMMimeMultipart(ds,multipartType);
                 }
+                multiPart.setAttachmentStore(getAttachmentStore());
 
                 String startParam = contentType.getParameter("start");
                 MimeBodyPart soapMessagePart = null;
@@ -565,7 +591,7 @@ public abstract class MessageImpl
                     soapPartInputStream = soapMessagePart.getInputStream();
                 }
 
-                ContentType soapPartCType = new ContentType(
+                ContentType soapPartCType = ContentType.getInstance(
                                             soapMessagePart.getContentType());
                 initCharsetProperty(soapPartCType);
                 String baseType = soapPartCType.getBaseType().toLowerCase();
@@ -787,7 +813,8 @@ public abstract class MessageImpl
         try {
             String currentContent = getContentType();
             if (currentContent == null) {
-                return this.contentType;
+                return this.contentType.isReadOnly()
+                        ? this.contentType.copy() : this.contentType;
             }
             ct = new ContentType(currentContent);
         } catch (Exception e) {
@@ -796,11 +823,26 @@ public abstract class MessageImpl
         return ct;
     }
 
+    /*
+     * The current content type, which is shared and must not be changed.
+     */
+    private ContentType sharedContentType() {
+        try {
+            String currentContent = getContentType();
+            if (currentContent == null) {
+                return this.contentType;
+            }
+            return ContentType.getInstance(currentContent);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
     /*
      * Return the MIME type string, without the parameters.
      */
     public String getBaseType() {
-        return contentType().getBaseType();
+        return sharedContentType().getBaseType();
     }
 
     public void setBaseType(String type) {
@@ -811,7 +853,7 @@ public abstract class MessageImpl
     }
 
     public String getAction() {
-        return contentType().getParameter("action");
+        return sharedContentType().getParameter("action");
     }
 
     public void setAction(String action) {
@@ -822,7 +864,7 @@ public abstract class MessageImpl
     }
 
     public String getCharset() {
-        return contentType().getParameter("charset");
+        return sharedContentType().getParameter("charset");
     }
 
     public void setCharset(String charset) {
@@ -865,6 +907,7 @@ public abstract class MessageImpl
 
     @Override
     public void removeAllAttachments() {
+        checkAttachmentsNotForwarded();
         try {
             initializeAllAttachments();
         } catch (Exception e) {
@@ -875,10 +918,14 @@ public abstract class MessageImpl
             attachments.clear();
             needsSave();
         }
+        if (attachmentIndex != null) {
+            attachmentIndex.reset();
+        }
     }
 
     @Override
     public int countAttachments() {
+        checkAttachmentsNotForwarded();
         try {
             initializeAllAttachments();
         } catch (Exception e) {
@@ -891,6 +938,7 @@ public abstract class MessageImpl
 
     @Override
     public void addAttachmentPart(AttachmentPart attachment) {
+        checkAttachmentsNotForwarded();
         try {
             initializeAllAttachments();
             this.optimizeAttachmentProcessing = true;
@@ -909,14 +957,62 @@ public abstract class MessageImpl
 
     @Override
     public Iterator<AttachmentPart> getAttachments() {
-        try {
-            initializeAllAttachments();
-        } catch (Exception e) {
-            throw new RuntimeException(e);
-        }
-        if (attachments == null)
+        checkAttachmentsNotForwarded();
+        if (attachments == null && !hasLazyAttachments())
             return nullIter;
-        return attachments.iterator();
+        return new LazyAttachmentIterator();
+    }
+
+    /**
+     * Iterates over the attachments, turning lazily read parts into
+     * attachments only as the iterator advances to them.
+     */
+    private class LazyAttachmentIterator implements Iterator<AttachmentPart> {
+        private int next = 0;
+        private int last = -1;
+
+        @Override
+        public boolean hasNext() {
+            try {
+                while (attachments == null || next >= attachments.size()) {
+                    if (!initializeNextAttachment())
+                        return false;
+                }
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+            return true;
+        }
+
+        @Override
+        public AttachmentPart next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            last = next++;
+            return attachments.get(last);
+        }
+
+        @Override
+        public void remove() {
+            if (last < 0)
+                throw new IllegalStateException();
+            attachments.remove(last);
+            next = last;
+            last = -1;
+        }
+    }
+
+    private void checkAttachmentsNotForwarded() {
+        if (attachmentsForwarded) {
+            throw new IllegalStateException(
+                    "The unread attachments of this message have already"
+                    + " been forwarded and cannot be read");
+        }
+    }
+
+    private boolean hasLazyAttachments() {
+        return !switchOffBM && !switchOffLazyAttachment
+                && !attachmentsInitialized && (multiPart != null);
     }
 
     private void setFinalContentType(String charset) {
@@ -933,8 +1029,12 @@ public abstract class MessageImpl
 
     private class MimeMatchingIterator implements Iterator<AttachmentPart> {
         public MimeMatchingIterator(MimeHeaders headers) {
+            this(headers, attachments.iterator());
+        }
+
+        public MimeMatchingIterator(MimeHeaders headers, Iterator<AttachmentPart> iter) {
             this.headers = headers;
-            this.iter = attachments.iterator();
+            this.iter = iter;
         }
 
         private Iterator<AttachmentPart> iter;
@@ -979,19 +1079,15 @@ public abstract class MessageImpl
 
     @Override
     public Iterator<AttachmentPart> getAttachments(MimeHeaders headers) {
-        try {
-            initializeAllAttachments();
-        } catch (Exception e) {
-            throw new RuntimeException(e);
-        }
-        if (attachments == null)
+        if (attachments == null && !hasLazyAttachments())
             return nullIter;
 
-        return new MimeMatchingIterator(headers);
+        return new MimeMatchingIterator(headers, getAttachments());
     }
 
     @Override
     public void removeAttachments(MimeHeaders headers) {
+        checkAttachmentsNotForwarded();
         try {
             initializeAllAttachments();
         } catch (Exception e) {
@@ -1012,22 +1108,22 @@ public abstract class MessageImpl
             }
         }
         attachments = f;
+        if (attachmentIndex != null) {
+            attachmentIndex.reset();
+        }
        // needsSave();
     }
 
     @Override
     public AttachmentPart createAttachmentPart() {
-        return new AttachmentPartImpl();
+        AttachmentPartImpl part = new AttachmentPartImpl();
+        part.setAttachmentStore(getAttachmentStore());
+        return part;
     }
 
     @Override
     public  AttachmentPart getAttachment(SOAPElement element)
         throws SOAPException {
-        try {
-            initializeAllAttachments();
-        } catch (Exception e) {
-            throw new RuntimeException(e);
-        }
         String uri;
         String hrefAttr = element.getAttribute("href");
         if ("".equals(hrefAttr)) {
@@ -1062,45 +1158,29 @@ public abstract class MessageImpl
 
     
     private AttachmentPart getAttachmentPart(String uri) throws SOAPException {
+        checkAttachmentsNotForwarded();
         AttachmentPart _part;
         try {
+            String header;
             if (uri.startsWith("cid:")) {
                 // rfc2392
                 uri = '<'+uri.substring("cid:".length())+'>';
-                
-                MimeHeaders headersToMatch = new MimeHeaders();
-                headersToMatch.addHeader(CONTENT_ID, uri);
-                
-                Iterator i = this.getAttachments(headersToMatch);
-                _part = (i == null) ? null : (AttachmentPart)i.next();
+                header = CONTENT_ID;
             } else {
                 // try content-location
-                MimeHeaders headersToMatch = new MimeHeaders();
-                headersToMatch.addHeader(CONTENT_LOCATION, uri);
-                   
-                Iterator i = this.getAttachments(headersToMatch);
-                _part = (i == null) ? null : (AttachmentPart)i.next();
+                header = CONTENT_LOCATION;
+            }
+            _part = findAttachment(header, uri);
+
+            if (_part == null) {
+                // headers may have changed since the parts were indexed
+                attachmentIndex.reset();
+                _part = attachmentIndex.find(attachments, header, uri);
             }
 
             // try  auto-generated JAXRPC CID
             if (_part == null) {
-                Iterator j = this.getAttachments();
-                    
-                while (j.hasNext()) {
-                    AttachmentPart p = (AttachmentPart)j.next();
-                    String cl = p.getContentId();
-                    if (cl != null) {    
-                        // obtain the partname
-                        int eqIndex = cl.indexOf("=");
-                        if (eqIndex > -1) {
-                            cl = cl.substring(1, eqIndex);
-                            if (cl.equalsIgnoreCase(uri)) {
-                                _part = p;
-                                 break;
-                            }
-                        }
-                    } 
-                }
+                _part = attachmentIndex.findByPartName(attachments, uri);
             }
             
         } catch (Exception se) {
@@ -1109,6 +1189,23 @@ public abstract class MessageImpl
         }
         return _part;
     }
+
+    /**
+     * Looks up an attachment by header value, parsing lazily read parts
+     * only until a match is found. All parts have been initialized when
+     * this returns <code>null</code>.
+     */
+    private AttachmentPart findAttachment(String header, String value)
+        throws MessagingException, SOAPException {
+        if (attachmentIndex == null) {
+            attachmentIndex = new AttachmentIndex();
+        }
+        AttachmentPart part = attachmentIndex.find(attachments, header, value);
+        while (part == null && initializeNextAttachment()) {
+            part = attachmentIndex.find(attachments, header, value);
+        }
+        return part;
+    }
     
     private final InputStream getHeaderBytes()
         throws IOException {
@@ -1164,6 +1261,9 @@ public abstract class MessageImpl
                         ((BMMimeMultipart)multiPart).getBoundary());
                     ((BMMimeMultipart)headerAndBody).
                         setLazyAttachments(lazyAttachments);
+                    ((BMMimeMultipart)headerAndBody).
+                        setAttachmentPassthrough(attachmentPassthrough);
+                    headerAndBody.setAttachmentStore(getAttachmentStore());
                 }
 
             } else { 
@@ -1191,8 +1291,6 @@ public abstract class MessageImpl
             headers.setHeader(
                 "Content-Type",
                 convertToSingleLine(nct.toString()));
-          // TBD
-          //    Set content length MIME header here.
 
             return headerAndBody;
         } catch (SOAPException ex) {
@@ -1227,10 +1325,15 @@ public abstract class MessageImpl
     }
 
     private String getCharsetString(String s) {
+        int index = s.indexOf(';');
+        if (index < 0)
+            return null;
+        try {
+            return ContentType.getInstance(s).getParameter("charset");
+        } catch (ParseException pe) {
+            // the parameters may still be readable
+        }
         try {
-            int index = s.indexOf(";");
-            if(index < 0)
-                return null;
             ParameterList pl = new ParameterList(s.substring(index));
             return pl.get("charset");
         } catch(Exception e) {
@@ -1240,11 +1343,35 @@ public abstract class MessageImpl
 
     @Override
     public void saveChanges() throws SOAPException {
+        save(false);
+    }
+
+    /**
+     * Updates the message like {@link #saveChanges()} but, for a message
+     * without attachments, does not serialize the envelope up-front.
+     * {@link #writeTo(OutputStream)} then writes the envelope directly to its
+     * output stream. No Content-Length header is set, so this is meant for
+     * transports which do not need one, such as chunked HTTP requests.
+     *
+     * @throws SOAPException if there was a problem saving changes to this message
+     */
+    public void saveChangesForStreaming() throws SOAPException {
+        save(true);
+    }
+
+    private void save(boolean streaming) throws SOAPException {
+        if (attachmentsForwarded) {
+            log.severe("SAAJ0593.soap.attachments.already.forwarded");
+            throw new SOAPExceptionImpl(
+                    "The unread attachments of this message have already"
+                    + " been forwarded, it cannot be saved again");
+        }
 
         // suck in all the data from the attachments and have it
         // ready for writing/sending etc.
 
         String charset = initCharset();
+        streamingSave = streaming;
 
         /*if (countAttachments() == 0) {*/
         int attachmentCount = (attachments == null) ? 0 : attachments.size();
@@ -1257,7 +1384,14 @@ public abstract class MessageImpl
         }
 
         try {
-            if ((attachmentCount == 0) && !hasXOPContent()) {
+            if ((attachmentCount == 0) && !hasXOPContent() && streaming) {
+                // the envelope is written by writeTo(), its length is unknown
+                this.optimizeAttachmentProcessing = false;
+                messageBytes = null;
+                messageByteCount = 0;
+                setFinalContentType(charset);
+                headers.removeHeader("Content-Length");
+            } else if ((attachmentCount == 0) && !hasXOPContent()) {
                 InputStream in;
                 try{
                 /*
@@ -1300,6 +1434,14 @@ public abstract class MessageImpl
                     mmp = getXOPMessage();
                 else
                     mmp = getMimeMessage();
+
+                // known when the envelope and all attachments have a size
+                long size = mmp.getSerializedSize();
+                if (size >= 0) {
+                    headers.setHeader("Content-Length", Long.toString(size));
+                } else {
+                    headers.removeHeader("Content-Length");
+                }
             }
         } catch (Throwable ex) {
             log.severe("SAAJ0540.soap.err.saving.multipart.msg");
@@ -1365,8 +1507,6 @@ public abstract class MessageImpl
             headers.setHeader(
                 "Content-Type",
                 convertToSingleLine(nct.toString()));
-            // TBD
-            //    Set content length MIME header here.
                                                                                                                                 
             return headerAndBody;
         } catch (SOAPException ex) {
@@ -1385,7 +1525,7 @@ public abstract class MessageImpl
         String type = getContentType();
         if(type == null)
             return false;
-        ContentType ct = new ContentType(type);
+        ContentType ct = ContentType.getInstance(type);
         //return isMimeMultipartXOPPackage(ct) || isSOAPBodyXOPPackage(ct);
         return isMimeMultipartXOPSoap1_1Package(ct) ||
             isMimeMultipartXOPSoap1_2Package(ct) || isSOAPBodyXOPPackage(ct);
@@ -1394,13 +1534,43 @@ public abstract class MessageImpl
 
     @Override
     public void writeTo(OutputStream out) throws SOAPException, IOException {
+        writeTo(out, null);
+    }
+
+    /**
+     * Writes this message to a blocking channel, as
+     * {@link #writeTo(OutputStream)} would to a stream. The parts of a
+     * multipart message are written from where they are held, gathered
+     * with the boundaries and part headers when the channel is a
+     * {@link java.nio.channels.GatheringByteChannel}.
+     *
+     * @param channel channel to write the message to
+     * @throws SOAPException if there was a problem in externalizing
+     *         this SOAP message
+     * @throws IOException if an I/O error occurs
+     */
+    public void writeTo(WritableByteChannel channel)
+            throws SOAPException, IOException {
+        writeTo(Channels.newOutputStream(channel), channel);
+    }
+
+    private void writeTo(OutputStream out, WritableByteChannel channel)
+            throws SOAPException, IOException {
+        if (attachmentsForwarded) {
+            log.severe("SAAJ0593.soap.attachments.already.forwarded");
+            throw new SOAPExceptionImpl(
+                    "The unread attachments of this message have already"
+                    + " been forwarded, it cannot be written again");
+        }
         if (saveRequired()){
             this.optimizeAttachmentProcessing = true;
             saveChanges();
         }
 
         if(!optimizeAttachmentProcessing){
-            if (SOAPPartImpl.lazyContentLength && messageByteCount <= 0) {
+            if (streamingSave) {
+                ((SOAPPartImpl) getSOAPPart()).writeContentTo(out);
+            } else if (SOAPPartImpl.lazyContentLength && messageByteCount <= 0) {
                 byte[] buf = new byte[1024];
 
                 int length = 0;
@@ -1420,13 +1590,15 @@ public abstract class MessageImpl
         else{
             try{
                 if(hasXOPContent()){
-                    mmp.writeTo(out);
+                    writeMultipart(out, channel);
                 }else{
-                    mmp.writeTo(out);
+                    writeMultipart(out, channel);
                     if (!switchOffBM && !switchOffLazyAttachment &&
                             (multiPart != null) && !attachmentsInitialized) {
                         ((BMMimeMultipart)multiPart).setInputStream(
                                 ((BMMimeMultipart)mmp).getInputStream());
+                        attachmentsForwarded =
+                                ((BMMimeMultipart)mmp).isForwarded();
                     }
                 } 
             } catch(Exception ex){
@@ -1447,8 +1619,18 @@ public abstract class MessageImpl
         } 
         
         messageBytes = null;
+        streamingSave = false;
         needsSave();
     }
+
+    private void writeMultipart(OutputStream out, WritableByteChannel channel)
+            throws IOException, MessagingException {
+        if (channel != null) {
+            mmp.writeTo(channel);
+        } else {
+            mmp.writeTo(out);
+        }
+    }
     
     @Override
     public SOAPBody getSOAPBody() throws SOAPException {
@@ -1482,17 +1664,51 @@ public abstract class MessageImpl
             attachments = new FinalArrayList<AttachmentPart>();
                                                                                 
         int count = multiPart.getCount();
-        for (int i=0; i < count; i++ ) {
+        for (int i = initializedParts; i < count; i++ ) {
             initializeAttachment(multiPart.getBodyPart(i));
         }
+        initializedParts = count;
         attachmentsInitialized = true;
         //multiPart = null;
         needsSave();
      }
                                                                                 
+    /**
+     * Turns the next part of a lazily read multipart into an attachment,
+     * reading the stream only as far as that part.
+     *
+     * @return <code>false</code> if all parts have been initialized
+     */
+    private boolean initializeNextAttachment()
+        throws MessagingException, SOAPException {
+        if (!hasLazyAttachments()) {
+            return false;
+        }
+
+        if (!(multiPart instanceof BMMimeMultipart)) {
+            initializeAllAttachments();
+            return true;
+        }
+
+        MimeBodyPart mbp =
+            ((BMMimeMultipart) multiPart).readBodyPart(initializedParts);
+        if (mbp == null) {
+            initializeAllAttachments();
+            return false;
+        }
+
+        if (attachments == null)
+            attachments = new FinalArrayList<AttachmentPart>();
+        initializeAttachment(mbp);
+        initializedParts++;
+        needsSave();
+        return true;
+    }
+
     private void initializeAttachment(MimeBodyPart mbp) throws SOAPException {
         AttachmentPartImpl attachmentPart = new AttachmentPartImpl();
-        DataHandler attachmentHandler = mbp.getDataHandler();
+        DataHandler attachmentHandler =
+            SAAJCommandMap.configure(mbp.getDataHandler());
         attachmentPart.setDataHandler(attachmentHandler);
                                                                                 
         AttachmentPartImpl.copyMimeHeaders(mbp, attachmentPart);
@@ -1504,7 +1720,8 @@ public abstract class MessageImpl
         MimeBodyPart currentBodyPart = multiPart.getBodyPart(i);
         AttachmentPartImpl attachmentPart = new AttachmentPartImpl();
 
-        DataHandler attachmentHandler = currentBodyPart.getDataHandler();
+        DataHandler attachmentHandler =
+            SAAJCommandMap.configure(currentBodyPart.getDataHandler());
         attachmentPart.setDataHandler(attachmentHandler);
 
         AttachmentPartImpl.copyMimeHeaders(currentBodyPart, attachmentPart);
@@ -1538,4 +1755,82 @@ public abstract class MessageImpl
         lazyAttachments = flag;
     }
 
+    /**
+     * Sets whether attachments which have not been read yet are forwarded
+     * from the stream the message is being read from straight to the
+     * output when the message is written, as a gateway does with a message
+     * it passes on unchanged. No copy of them is kept, unless the stream
+     * can be shared. Once they have been forwarded, the attachments cannot
+     * be accessed any more: the attachment methods throw
+     * {@link IllegalStateException}, and <code>writeTo</code> and
+     * <code>saveChanges</code> throw {@link SOAPException}.
+     *
+     * @param flag true to forward unread attachments
+     */
+    public void setAttachmentPassthrough(boolean flag) {
+        attachmentPassthrough = flag;
+    }
+
+    /**
+     * Registers a resource, such as the transport stream this message is
+     * being read from, to be closed when the message is disposed.
+     *
+     * @param resource resource to close in {@link #dispose()}
+     */
+    public void registerResource(Closeable resource) {
+        if (resource == null) {
+            return;
+        }
+        synchronized (this) {
+            if (resources == null) {
+                resources = new ArrayList<>(2);
+            }
+            resources.add(resource);
+        }
+    }
+
+    /**
+     * Returns the storage of the attachment bodies of this message, which
+     * keeps bodies larger than the <code>saaj.attachment.memory.threshold</code>
+     * system property in temporary files and reports how much was spilled.
+     * The temporary files are deleted by {@link #dispose()}, after which a
+     * new storage is created if the message is used again.
+     *
+     * @return the storage, or <code>null</code> if spilling to disk is not
+     *         enabled
+     */
+    public synchronized AttachmentStore getAttachmentStore() {
+        if (!attachmentStoreChecked) {
+            attachmentStoreChecked = true;
+            attachmentStore = AttachmentStore.newInstance();
+            registerResource(attachmentStore);
+        }
+        return attachmentStore;
+    }
+
+    /**
+     * Releases the resources held by this message. Content which has not
+     * been read from the underlying stream yet is no longer available
+     * afterwards.
+     */
+    public void dispose() {
+        List<Closeable> toClose;
+        synchronized (this) {
+            toClose = resources;
+            resources = null;
+            attachmentStore = null;
+            attachmentStoreChecked = false;
+        }
+        if (toClose == null) {
+            return;
+        }
+        for (Closeable resource : toClose) {
+            try {
+                resource.close();
+            } catch (IOException e) {
+                log.log(Level.WARNING, "SAAJ0592.soap.cannot.release.resource", e);
+            }
+        }
+    }
+
 }
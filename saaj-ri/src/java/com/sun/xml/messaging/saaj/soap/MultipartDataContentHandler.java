@@ -45,7 +45,6 @@ import java.awt.datatransfer.DataFlavor;
 import javax.activation.*;
 import com.sun.xml.messaging.saaj.packaging.mime.internet.MimeMultipart;
 import com.sun.xml.messaging.saaj.packaging.mime.internet.ContentType;
-import com.sun.xml.messaging.saaj.util.ByteOutputStream;
 
 public class MultipartDataContentHandler implements DataContentHandler {
     private ActivationDataFlavor myDF = new ActivationDataFlavor(
@@ -104,16 +103,7 @@ public class MultipartDataContentHandler implements DataContentHandler {
 			throws IOException {
 	if (obj instanceof MimeMultipart) {
 	    try {
-                //TODO: temporarily allow only ByteOutputStream
-                // Need to add writeTo(OutputStream) on MimeMultipart
-                ByteOutputStream baos = null; 
-                if (os instanceof ByteOutputStream) {
-                    baos = (ByteOutputStream)os;
-                } else {
-                    throw new IOException("Input Stream expected to be a com.sun.xml.messaging.saaj.util.ByteOutputStream, but found " + 
-                        os.getClass().getName());
-                }
-		((MimeMultipart)obj).writeTo(baos);
+		((MimeMultipart)obj).writeTo(os);
 	    } catch (Exception e) {
 		throw new IOException(e.toString());
 	    }
@@ -0,0 +1,181 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package com.sun.xml.messaging.saaj.soap;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.activation.CommandInfo;
+import javax.activation.CommandMap;
+import javax.activation.DataContentHandler;
+import javax.activation.DataHandler;
+import javax.activation.DataSource;
+
+/**
+ * A CommandMap which provides the SAAJ DataContentHandlers itself and asks
+ * the default CommandMap only for other types and for commands. The
+ * DataHandlers of attachments use it, so that converting their content
+ * does not go through the synchronized default MailcapCommandMap.
+ */
+final class SAAJCommandMap extends CommandMap {
+
+    private static final SAAJCommandMap INSTANCE = new SAAJCommandMap();
+
+    // the same handlers as registered in the mailcap by AttachmentPartImpl
+    private static final Map<String, Class<? extends DataContentHandler>> HANDLERS =
+            new HashMap<String, Class<? extends DataContentHandler>>();
+
+    static {
+        HANDLERS.put("text/xml", XmlDataContentHandler.class);
+        HANDLERS.put("application/xml", XmlDataContentHandler.class);
+        HANDLERS.put("application/fastinfoset", FastInfosetDataContentHandler.class);
+        HANDLERS.put("image/*", ImageDataContentHandler.class);
+        HANDLERS.put("text/plain", StringDataContentHandler.class);
+    }
+
+    // the handlers have no state, one instance of each is shared
+    private static final ConcurrentMap<Class<?>, DataContentHandler> instances =
+            new ConcurrentHashMap<Class<?>, DataContentHandler>();
+
+    private SAAJCommandMap() {
+    }
+
+    /**
+     * Sets the SAAJ CommandMap on a DataHandler created by SAAJ.
+     *
+     * @param dh data handler
+     * @return the data handler
+     */
+    static DataHandler configure(DataHandler dh) {
+        dh.setCommandMap(INSTANCE);
+        return dh;
+    }
+
+    /**
+     * Returns the SAAJ DataContentHandler for a MIME type.
+     *
+     * @param mimeType base MIME type
+     * @return the handler, or <code>null</code> if SAAJ has none for the type
+     */
+    static DataContentHandler getDataContentHandler(String mimeType) {
+        Class<? extends DataContentHandler> type = HANDLERS.get(mimeType);
+        if (type == null) {
+            mimeType = mimeType.toLowerCase(Locale.ENGLISH);
+            type = HANDLERS.get(mimeType);
+            if (type == null) {
+                int slash = mimeType.indexOf('/');
+                if (slash > 0) {
+                    type = HANDLERS.get(mimeType.substring(0, slash + 1) + '*');
+                }
+                if (type == null) {
+                    return null;
+                }
+            }
+        }
+
+        DataContentHandler dch = instances.get(type);
+        if (dch == null) {
+            try {
+                dch = type.newInstance();
+            } catch (Exception e) {
+                // left to the default CommandMap
+                return null;
+            }
+            DataContentHandler other = instances.putIfAbsent(type, dch);
+            if (other != null) {
+                dch = other;
+            }
+        }
+        return dch;
+    }
+
+    @Override
+    public DataContentHandler createDataContentHandler(String mimeType) {
+        DataContentHandler dch = getDataContentHandler(mimeType);
+        return (dch != null)
+                ? dch : getDefaultCommandMap().createDataContentHandler(mimeType);
+    }
+
+    @Override
+    public DataContentHandler createDataContentHandler(String mimeType, DataSource ds) {
+        DataContentHandler dch = getDataContentHandler(mimeType);
+        return (dch != null)
+                ? dch : getDefaultCommandMap().createDataContentHandler(mimeType, ds);
+    }
+
+    @Override
+    public CommandInfo[] getPreferredCommands(String mimeType) {
+        return getDefaultCommandMap().getPreferredCommands(mimeType);
+    }
+
+    @Override
+    public CommandInfo[] getPreferredCommands(String mimeType, DataSource ds) {
+        return getDefaultCommandMap().getPreferredCommands(mimeType, ds);
+    }
+
+    @Override
+    public CommandInfo[] getAllCommands(String mimeType) {
+        return getDefaultCommandMap().getAllCommands(mimeType);
+    }
+
+    @Override
+    public CommandInfo[] getAllCommands(String mimeType, DataSource ds) {
+        return getDefaultCommandMap().getAllCommands(mimeType, ds);
+    }
+
+    @Override
+    public CommandInfo getCommand(String mimeType, String cmdName) {
+        return getDefaultCommandMap().getCommand(mimeType, cmdName);
+    }
+
+    @Override
+    public CommandInfo getCommand(String mimeType, String cmdName, DataSource ds) {
+        return getDefaultCommandMap().getCommand(mimeType, cmdName, ds);
+    }
+
+    @Override
+    public String[] getMimeTypes() {
+        return getDefaultCommandMap().getMimeTypes();
+    }
+}
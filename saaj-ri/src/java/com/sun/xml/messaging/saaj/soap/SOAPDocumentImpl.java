@@ -80,6 +80,8 @@ import javax.xml.soap.SOAPElement;
 import javax.xml.soap.SOAPException;
 import java.lang.reflect.Constructor;
 import java.text.MessageFormat;
+import java.util.IdentityHashMap;
+import java.util.Map;
 import java.util.logging.Logger;
 
 public class SOAPDocumentImpl implements SOAPDocument, javax.xml.soap.Node, Document {
@@ -95,6 +97,15 @@ public class SOAPDocumentImpl implements SOAPDocument, javax.xml.soap.Node, Docu
 
     private Document document;
 
+    /**
+     * SAAJ wrappers of the DOM nodes of this document. Only the document
+     * node itself keeps its wrapper as DOM user data, so that nodes can be
+     * mapped across documents. A wrapper refers to its node, so entries
+     * live as long as the document, as they did as user data.
+     */
+    private final Map<Node, javax.xml.soap.Node> wrappers =
+            new IdentityHashMap<Node, javax.xml.soap.Node>(64);
+
     public SOAPDocumentImpl(SOAPPartImpl enclosingDocument) {
         document = createDocument();
         this.enclosingSOAPPart = enclosingDocument;
@@ -234,7 +245,9 @@ public class SOAPDocumentImpl implements SOAPDocument, javax.xml.soap.Node, Docu
 
         if (importedNode instanceof javax.xml.soap.Node) {
             Node newSoapNode = createSoapNode(importedNode.getClass(), newNode);
-            newNode.setUserData(SAAJ_NODE, newSoapNode, null);
+            if (find(newNode, false) == null) {
+                register((javax.xml.soap.Node) newSoapNode);
+            }
             if (deep && newSoapNode.hasChildNodes()) {
                 NodeList childNodes = newSoapNode.getChildNodes();
                 for (int i = 0; i < childNodes.getLength(); i++) {
@@ -255,7 +268,7 @@ public class SOAPDocumentImpl implements SOAPDocument, javax.xml.soap.Node, Docu
      * @param deep wrap child nodes transitively
      */
     public void registerChildNodes(Node parentNode, boolean deep) {
-        if (parentNode.getUserData(SAAJ_NODE) == null) {
+        if (find(parentNode, false) == null) {
             if (parentNode instanceof Element) {
                 ElementFactory.createElement(this, (Element) parentNode);
             } else if (parentNode instanceof CharacterData) {
@@ -587,11 +600,35 @@ public class SOAPDocumentImpl implements SOAPDocument, javax.xml.soap.Node, Docu
      */
     public void register(javax.xml.soap.Node node) {
         final Node domElement = getDomNode(node);
-        if (domElement.getUserData(SAAJ_NODE) != null) {
+        if (domElement.getNodeType() == DOCUMENT_NODE) {
+            if (domElement.getUserData(SAAJ_NODE) != null) {
+                throw new IllegalStateException("Element " + domElement.getNodeName()
+                        + " is already registered");
+            }
+            domElement.setUserData(SAAJ_NODE, node, null);
+            return;
+        }
+        final Map<Node, javax.xml.soap.Node> table = wrappersOf(domElement);
+        final javax.xml.soap.Node registered = table.put(domElement, node);
+        if (registered != null) {
+            table.put(domElement, registered);
             throw new IllegalStateException("Element " + domElement.getNodeName()
                     + " is already registered");
         }
-        domElement.setUserData(SAAJ_NODE, node, null);
+    }
+
+    /**
+     * Wrapper table of the SAAJ document owning the given DOM node.
+     */
+    private Map<Node, javax.xml.soap.Node> wrappersOf(Node node) {
+        final Document owner = node.getOwnerDocument();
+        if (owner != null && owner != document) {
+            final Object soapDocument = owner.getUserData(SAAJ_NODE);
+            if (soapDocument instanceof SOAPDocumentImpl) {
+                return ((SOAPDocumentImpl) soapDocument).wrappers;
+            }
+        }
+        return wrappers;
     }
 
     /**
@@ -613,7 +650,9 @@ public class SOAPDocumentImpl implements SOAPDocument, javax.xml.soap.Node, Docu
         if (node instanceof javax.xml.soap.Node) {
             return (javax.xml.soap.Node) node;
         }
-        final javax.xml.soap.Node found = (javax.xml.soap.Node) node.getUserData(SAAJ_NODE);
+        final javax.xml.soap.Node found = node.getNodeType() == DOCUMENT_NODE
+                ? (javax.xml.soap.Node) node.getUserData(SAAJ_NODE)
+                : wrappersOf(node).get(node);
         if (found == null && required) {
             throw new IllegalArgumentException(MessageFormat.format("Cannot find SOAP wrapper for element {0}", node));
         }
@@ -41,6 +41,7 @@
 package com.sun.xml.messaging.saaj.soap;
 
 import com.sun.xml.messaging.saaj.SOAPExceptionImpl;
+import com.sun.xml.messaging.saaj.packaging.mime.internet.InternetHeaders;
 import com.sun.xml.messaging.saaj.packaging.mime.internet.MimeBodyPart;
 import com.sun.xml.messaging.saaj.soap.impl.ElementImpl;
 import com.sun.xml.messaging.saaj.soap.impl.EnvelopeImpl;
@@ -330,46 +331,77 @@ public abstract class SOAPPartImpl extends SOAPPart implements SOAPDocument {
     }
     
     public InputStream getContentAsStream() throws IOException {
+        InputStream is = getSourceStream();
+        if (is != null) {
+            if (lazyContentLength) {
+                return is;
+            }
+            if (!(is instanceof ByteInputStream)) {
+                log.severe("SAAJ0546.soap.stream.incorrect.type");
+                throw new IOException("Internal error: stream not of the right type");
+            }
+            return (ByteInputStream) is;
+        }
+        
+        ByteOutputStream b = new ByteOutputStream();
+        outputEnvelope(b);
+        return b.newInputStream();
+    }
+
+    /**
+     * Writes the content of this part straight to the given stream, without
+     * buffering the serialized envelope first.
+     *
+     * @param out stream to write to
+     * @throws IOException in case of an I/O error
+     */
+    public void writeContentTo(OutputStream out) throws IOException {
+        InputStream is = getSourceStream();
+        if (is instanceof ByteInputStream) {
+            ByteInputStream bis = (ByteInputStream) is;
+            out.write(bis.getBytes(), 0, bis.getCount());
+        } else if (is != null) {
+            byte[] buf = new byte[8192];
+            int len;
+            while ((len = is.read(buf)) != -1) {
+                out.write(buf, 0, len);
+            }
+        } else {
+            outputEnvelope(out);
+        }
+    }
+
+    /*
+     * Returns the stream of the source set on this part if it can be
+     * written as is, null if the envelope needs to be serialized.
+     */
+    private InputStream getSourceStream() throws IOException {
         if (source != null) {
-            InputStream is = null;
-            
             // Allow message to be transcode if so requested
             if (source instanceof StreamSource && !isFastInfoset()) {
-                is = ((StreamSource) source).getInputStream();
+                return ((StreamSource) source).getInputStream();
             }
             else if (FastInfosetReflection.isFastInfosetSource(source) && 
                 isFastInfoset()) 
             {
                 try {
                     // InputStream is = source.getInputStream()
-                    is = FastInfosetReflection.FastInfosetSource_getInputStream(source);
+                    return FastInfosetReflection.FastInfosetSource_getInputStream(source);
                 }
                 catch (Exception e) {
                     throw new IOException(e.toString());
                 }
             }
-            
-            if (is != null) {
-                if (lazyContentLength) {
-                    return is;
-                }
-                if (!(is instanceof ByteInputStream)) {
-                    log.severe("SAAJ0546.soap.stream.incorrect.type");
-                    throw new IOException("Internal error: stream not of the right type");
-                }
-                return (ByteInputStream) is;
-            }
             // need to do something here for reader...
             // for now we'll see if we can fallback...
         }
-        
-        ByteOutputStream b = new ByteOutputStream();
-        
-        Envelope env = null;
-        
+        return null;
+    }
+
+    private void outputEnvelope(OutputStream out) throws IOException {
         try {
-            env = (Envelope) getEnvelope();
-            env.output(b, isFastInfoset());
+            Envelope env = (Envelope) getEnvelope();
+            env.output(out, isFastInfoset());
         }
         catch (SOAPException soapException) {
             log.severe("SAAJ0547.soap.cannot.externalize");
@@ -377,15 +409,22 @@ public abstract class SOAPPartImpl extends SOAPPart implements SOAPDocument {
             "SOAP exception while trying to externalize: ",
             soapException);
         }
-        
-        return b.newInputStream();
     }
     
     MimeBodyPart getMimePart() throws SOAPException {
         try {
-            MimeBodyPart headerEnvelope = new MimeBodyPart();
-            
-            headerEnvelope.setDataHandler(getDataHandler());
+            MimeBodyPart headerEnvelope;
+            InputStream is = (lazyContentLength || isTransferEncoded())
+                    ? null : getContentAsStream();
+            if (is instanceof ByteInputStream) {
+                // the serialized envelope, so that the size of the part is known
+                ByteInputStream bis = (ByteInputStream) is;
+                headerEnvelope = new MimeBodyPart(
+                        new InternetHeaders(), bis.getBytes(), bis.getCount());
+            } else {
+                headerEnvelope = new MimeBodyPart();
+                headerEnvelope.setDataHandler(getDataHandler());
+            }
             AttachmentPartImpl.copyMimeHeaders(headers, headerEnvelope);
             
             return headerEnvelope;
@@ -400,6 +439,20 @@ public abstract class SOAPPartImpl extends SOAPPart implements SOAPDocument {
     MimeHeaders getMimeHeaders() {
         return headers;
     }
+
+    /*
+     * True if the part has a Content-Transfer-Encoding which the content
+     * has to be encoded with when it is written.
+     */
+    private boolean isTransferEncoded() {
+        String[] values = headers.getHeader("Content-Transfer-Encoding");
+        if (values == null || values.length == 0) {
+            return false;
+        }
+        String enc = values[0].trim();
+        return !(enc.equalsIgnoreCase("7bit") || enc.equalsIgnoreCase("8bit")
+                || enc.equalsIgnoreCase("binary"));
+    }
     
     DataHandler getDataHandler() {
         DataSource ds = new DataSource() {
@@ -122,8 +122,8 @@ public class XmlDataContentHandler implements DataContentHandler {
                 "Invalid content type \"" + mimeType + "\" for XmlDCH");
 
             
+        Transformer transformer = EfficientStreamingTransformer.newTransformer();
         try {
-            Transformer transformer = EfficientStreamingTransformer.newTransformer();
             StreamResult result = new StreamResult(os);
             if (obj instanceof DataSource) {
                 // Streaming transform applies only to javax.xml.transform.StreamSource 
@@ -141,6 +141,8 @@ public class XmlDataContentHandler implements DataContentHandler {
             throw new IOException(
                 "Unable to run the JAXP transformer on a stream "
                     + ex.getMessage());
+        } finally {
+            EfficientStreamingTransformer.release(transformer);
         }
     }
 }
@@ -183,6 +183,12 @@ public class ElementFactory {
         String prefix,
         String namespaceUri) {
 
+        if (!NameImpl.SOAP11_NAMESPACE.equals(namespaceUri)
+                && !NameImpl.SOAP12_NAMESPACE.equals(namespaceUri)) {
+            // all named elements are in one of the envelope namespaces
+            return null;
+        }
+
         if (prefix == null) {
             prefix = NameImpl.SOAP_ENVELOPE_PREFIX;
         }
@@ -187,6 +187,29 @@ public class ElementImpl implements SOAPElement, SOAPBodyElement {
         soapDocument.register(this);
     }
 
+    /**
+     * Creates an element from a name which has already been split, as a
+     * parser reports it to a SAX {@code ContentHandler}.
+     *
+     * @param ownerDoc owner document
+     * @param uri namespace URI
+     * @param qualifiedName qualified name
+     * @param localName local part of {@code qualifiedName}, not empty
+     */
+    public ElementImpl(
+        SOAPDocumentImpl ownerDoc,
+        String uri,
+        String qualifiedName,
+        String localName) {
+
+        this.soapDocument = ownerDoc;
+        this.element = ownerDoc.getDomDocument().createElementNS(uri, qualifiedName);
+        int prefixLength = qualifiedName.length() - localName.length() - 1;
+        elementQName = new QName(uri, localName,
+            prefixLength > 0 ? qualifiedName.substring(0, prefixLength) : "");
+        soapDocument.register(this);
+    }
+
     public ElementImpl(
         SOAPDocumentImpl ownerDoc,
         String uri,
@@ -48,20 +48,22 @@ import java.util.logging.Level;
 
 import javax.xml.namespace.QName;
 import javax.xml.soap.*;
+import javax.xml.stream.XMLOutputFactory;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamReader;
 import javax.xml.stream.XMLStreamWriter;
 import javax.xml.transform.*;
 import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
 
 import com.sun.xml.messaging.saaj.SOAPExceptionImpl;
+import com.sun.xml.messaging.saaj.soap.ContextClassloaderLocal;
 import com.sun.xml.messaging.saaj.soap.LazyEnvelope;
 import com.sun.xml.messaging.saaj.soap.SOAPDocumentImpl;
 import com.sun.xml.messaging.saaj.soap.StaxBridge;
 import com.sun.xml.messaging.saaj.soap.StaxLazySourceBridge;
 import com.sun.xml.messaging.saaj.soap.name.NameImpl;
 import com.sun.xml.messaging.saaj.util.FastInfosetReflection;
+import com.sun.xml.messaging.saaj.util.stax.DOMSerializer;
 import com.sun.xml.messaging.saaj.util.stax.LazyEnvelopeStaxReader;
 import com.sun.xml.messaging.saaj.util.transform.EfficientStreamingTransformer;
 
@@ -80,6 +82,14 @@ public abstract class EnvelopeImpl extends ElementImpl implements LazyEnvelope {
     String omitXmlDecl = "yes";
     String charset = "utf-8";
     String xmlDecl = null;
+
+    private static final ContextClassloaderLocal<XMLOutputFactory> xmlOutputFactory =
+            new ContextClassloaderLocal<XMLOutputFactory>() {
+                @Override
+                protected XMLOutputFactory initialValue() {
+                    return XMLOutputFactory.newInstance();
+                }
+            };
     
     protected EnvelopeImpl(SOAPDocumentImpl ownerDoc, Name name) {
         super(ownerDoc, name);
@@ -284,45 +294,45 @@ public abstract class EnvelopeImpl extends ElementImpl implements LazyEnvelope {
     @Override
     public void output(OutputStream out) throws IOException {
         try {
-//            materializeBody();
-            Transformer transformer =
-                EfficientStreamingTransformer.newTransformer();
-
-            transformer.setOutputProperty(
-                OutputKeys.OMIT_XML_DECLARATION, "yes");
-                /*omitXmlDecl);*/
-            // no equivalent for "setExpandEmptyElements"
-            transformer.setOutputProperty(
-                OutputKeys.ENCODING, 
-                charset);
-
             if (omitXmlDecl.equals("no") && xmlDecl == null) {
                 xmlDecl = "<?xml version=\"" + getOwnerDocument().getXmlVersion() + "\" encoding=\"" + 
                     charset + "\" ?>";
             }
-        
-           StreamResult result = new StreamResult(out);
+
             if (xmlDecl != null) {
                 OutputStreamWriter writer = new OutputStreamWriter(out, charset);
                 writer.write(xmlDecl);
                 writer.flush();
-                result = new StreamResult(writer);
             }
-           
+
             if (log.isLoggable(Level.FINE)) {
                 log.log(Level.FINE, "SAAJ0190.impl.set.xml.declaration",
                         new String[] { omitXmlDecl });
                 log.log(Level.FINE, "SAAJ0191.impl.set.encoding",
                         new String[] { charset });
             }
-                
-            //StreamResult result = new StreamResult(out);
-            transformer.transform(getContent(), result);
+
+            // write the DOM directly, an identity transformer is much slower
+            XMLStreamWriter writer = getXMLOutputFactory().createXMLStreamWriter(out, charset);
+            BodyImpl bodyImpl = (BodyImpl) getBody();
+            if (bodyImpl != null && bodyImpl.isLazy()) {
+                // stream the payload without building its DOM
+                writeTo(writer);
+            } else {
+                new DOMSerializer(writer).serialize(
+                        ((SOAPDocumentImpl) getOwnerDocument()).getDomDocument());
+            }
+            writer.flush();
+            writer.close();
         } catch (Exception ex) {
             throw new IOException(ex.getMessage());
         }
     }
 
+    private static XMLOutputFactory getXMLOutputFactory() {
+        return xmlOutputFactory.get();
+    }
+
     /**
      * Serialize to FI if boolean parameter set.
      */
@@ -334,15 +344,18 @@ public abstract class EnvelopeImpl extends ElementImpl implements LazyEnvelope {
             output(out);
         }
         else {
+            // Run transform and generate FI output from content
+            Transformer transformer = EfficientStreamingTransformer.newTransformer();
             try {
-                // Run transform and generate FI output from content
-                Transformer transformer = EfficientStreamingTransformer.newTransformer(); 
-                    transformer.transform(getContent(),
-                        FastInfosetReflection.FastInfosetResult_new(out));
+                transformer.transform(getContent(),
+                    FastInfosetReflection.FastInfosetResult_new(out));
             }
             catch (Exception ex) {
                 throw new IOException(ex.getMessage());
             }
+            finally {
+                EfficientStreamingTransformer.release(transformer);
+            }
         }
     }
 
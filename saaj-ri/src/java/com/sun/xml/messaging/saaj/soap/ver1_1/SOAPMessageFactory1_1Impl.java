@@ -79,7 +79,7 @@ public class SOAPMessageFactory1_1Impl extends MessageFactoryImpl {
         }
 
         MessageImpl msg = new Message1_1Impl(headers, in);
-        msg.setLazyAttachments(lazyAttachments);
+        configure(msg);
         return msg;
     }
 }
@@ -79,7 +79,7 @@ public class SOAPMessageFactory1_2Impl extends MessageFactoryImpl {
         }
 
         MessageImpl msg = new Message1_2Impl(headers, in);
-        msg.setLazyAttachments(lazyAttachments);
+        configure(msg);
         return msg;
     }
 }
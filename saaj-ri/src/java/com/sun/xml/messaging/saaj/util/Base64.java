@@ -40,8 +40,7 @@
 
 package com.sun.xml.messaging.saaj.util;
 
-
-// Cut & paste from tomcat
+import java.nio.ByteBuffer;
 
 /**
  * This class provides encode/decode for RFC 2045 Base64 as
@@ -49,59 +48,44 @@ package com.sun.xml.messaging.saaj.util;
  * RFC 2045: Multipurpose Internet Mail Extensions (MIME)
  * Part One: Format of Internet Message Bodies. Reference
  * 1996 Available at: http://www.ietf.org/rfc/rfc2045.txt
- * This class is used by XML Schema binary format validation
+ *
+ * <p>Besides the array methods, the codec works on ranges of arrays and
+ * on buffers a 3 byte group at a time, optionally breaking the encoded
+ * output into lines as MIME requires. The BASE64 streams of the MIME
+ * packaging use it too.
  *
  * @author Jeffrey Rodriguez
  */
 public final class Base64 {
 
+    static private final byte PAD = ( byte ) '=';
+
+    /** maps 6 bit values to characters */
+    static private final byte[] ENCODE = {
+        'A','B','C','D','E','F','G','H', // 0
+        'I','J','K','L','M','N','O','P', // 1
+        'Q','R','S','T','U','V','W','X', // 2
+        'Y','Z','a','b','c','d','e','f', // 3
+        'g','h','i','j','k','l','m','n', // 4
+        'o','p','q','r','s','t','u','v', // 5
+        'w','x','y','z','0','1','2','3', // 6
+        '4','5','6','7','8','9','+','/'  // 7
+    };
 
-    static private final int  BASELENGTH         = 255;
-    static private final int  LOOKUPLENGTH       = 63;
-    static private final int  TWENTYFOURBITGROUP = 24;
-    static private final int  EIGHTBIT           = 8;
-    static private final int  SIXTEENBIT         = 16;
-    static private final int  FOURBYTE           = 4;
-
-
-    static private final byte PAD               = ( byte ) '=';
-    static private byte [] base64Alphabet       = new byte[BASELENGTH];
-    static private byte [] lookUpBase64Alphabet = new byte[LOOKUPLENGTH];
+    /** maps characters to 6 bit values, -1 for characters outside the alphabet */
+    static private final int[] DECODE = new int[256];
 
     static {
-
-        for (int i = 0; i<BASELENGTH; i++ ) {
-            base64Alphabet[i] = -1;
+        for (int i = 0; i < DECODE.length; i++) {
+            DECODE[i] = -1;
         }
-        for ( int i = 'Z'; i >= 'A'; i-- ) {
-            base64Alphabet[i] = (byte) (i-'A');
+        for (int i = 0; i < ENCODE.length; i++) {
+            DECODE[ENCODE[i]] = i;
         }
-        for ( int i = 'z'; i>= 'a'; i--) {
-            base64Alphabet[i] = (byte) ( i-'a' + 26);
-        }
-
-        for ( int i = '9'; i >= '0'; i--) {
-            base64Alphabet[i] = (byte) (i-'0' + 52);
-        }
-
-        base64Alphabet['+']  = 62;
-        base64Alphabet['/']  = 63;
-
-       for (int i = 0; i<=25; i++ )
-            lookUpBase64Alphabet[i] = (byte) ('A'+i );
-
-        for (int i = 26,  j = 0; i<=51; i++, j++ )
-            lookUpBase64Alphabet[i] = (byte) ('a'+ j );
-
-        for (int i = 52,  j = 0; i<=61; i++, j++ )
-            lookUpBase64Alphabet[i] = (byte) ('0' + j );
-
     }
 
-
     static boolean isBase64( byte octect ) {
-        //shall we ignore white space? JEFF??
-        return(octect == PAD || base64Alphabet[octect] != -1 );
+        return (octect == PAD || DECODE[octect & 0xff] != -1);
     }
 
 
@@ -123,117 +107,314 @@ public final class Base64 {
      * @return Encoded Base64 array
      */
     public static byte[] encode( byte[] binaryData ) {
-        int      lengthDataBits    = binaryData.length*EIGHTBIT;
-        int      fewerThan24bits   = lengthDataBits%TWENTYFOURBITGROUP;
-        int      numberTriplets    = lengthDataBits/TWENTYFOURBITGROUP;
-        byte     encodedData[]     = null;
-
-
-        if ( fewerThan24bits != 0 ) //data not divisible by 24 bit
-            encodedData = new byte[ (numberTriplets + 1 )*4  ];
-        else // 16 or 8 bit
-            encodedData = new byte[ numberTriplets*4 ];
-
-        byte k=0, l=0, b1=0,b2=0,b3=0;
-
-        int encodedIndex = 0;
-        int dataIndex   = 0;
-        int i           = 0;
-        for ( i = 0; i<numberTriplets; i++ ) {
-
-            dataIndex = i*3;
-            b1 = binaryData[dataIndex];
-            b2 = binaryData[dataIndex + 1];
-            b3 = binaryData[dataIndex + 2];
-
-            l  = (byte)(b2 & 0x0f);
-            k  = (byte)(b1 & 0x03);
-
-            encodedIndex = i*4;
-            encodedData[encodedIndex]   = lookUpBase64Alphabet[ b1 >>2 ];
-            encodedData[encodedIndex+1] = lookUpBase64Alphabet[(b2 >>4 ) |
-( k<<4 )];
-            encodedData[encodedIndex+2] = lookUpBase64Alphabet[ (l <<2 ) |
-( b3>>6)];
-            encodedData[encodedIndex+3] = lookUpBase64Alphabet[ b3 & 0x3f ];
-        }
-
-        // form integral number of 6-bit groups
-        dataIndex    = i*3;
-        encodedIndex = i*4;
-        if (fewerThan24bits == EIGHTBIT ) {
-            b1 = binaryData[dataIndex];
-            k = (byte) ( b1 &0x03 );
-            encodedData[encodedIndex]     = lookUpBase64Alphabet[ b1 >>2 ];
-            encodedData[encodedIndex + 1] = lookUpBase64Alphabet[ k<<4 ];
-            encodedData[encodedIndex + 2] = PAD;
-            encodedData[encodedIndex + 3] = PAD;
-        } else if ( fewerThan24bits == SIXTEENBIT ) {
-
-            b1 = binaryData[dataIndex];
-            b2 = binaryData[dataIndex +1 ];
-            l = ( byte ) ( b2 &0x0f );
-            k = ( byte ) ( b1 &0x03 );
-            encodedData[encodedIndex]     = lookUpBase64Alphabet[ b1 >>2 ];
-            encodedData[encodedIndex + 1] = lookUpBase64Alphabet[ (b2 >>4 )
-| ( k<<4 )];
-            encodedData[encodedIndex + 2] = lookUpBase64Alphabet[ l<<2 ];
-            encodedData[encodedIndex + 3] = PAD;
-        }
+        byte[] encodedData = new byte[encodedLength(binaryData.length, 0)];
+        encode(binaryData, 0, binaryData.length, encodedData, 0);
         return encodedData;
     }
 
 
     /**
-     * Decodes Base64 data into octects
+     * Decodes Base64 data into octects. Characters outside of the Base64
+     * alphabet, such as line breaks, are ignored.
      *
      * @param base64Data Byte array containing Base64 data
      * @return Array containind decoded data.
      */
     public byte[] decode( byte[] base64Data ) {
-        int      numberQuadruple    = base64Data.length/FOURBYTE;
-        byte     decodedData[]      = null;
-        byte     b1=0,b2=0,b3=0, b4=0, marker0=0, marker1=0;
+        byte[] decodedData = new byte[base64Data.length / 4 * 3];
+        int n = decode(base64Data, 0, base64Data.length, decodedData, 0, new int[1]);
+        if (n == decodedData.length) {
+            return decodedData;
+        }
+        byte[] ret = new byte[n];
+        System.arraycopy(decodedData, 0, ret, 0, n);
+        return ret;
+    }
+
+    /**
+     * Returns the size of the encoding of <code>len</code> bytes.
+     *
+     * @param len number of bytes to encode
+     * @param lineLength length of the lines of the encoding, which must
+     *        be a multiple of 4, or 0 to not break lines
+     * @return number of encoded bytes, including the CRLFs between lines
+     */
+    public static int encodedLength(int len, int lineLength) {
+        long n = (len + 2L) / 3 * 4;
+        if (lineLength > 0 && n > 0) {
+            n += (n - 1) / lineLength * 2;
+        }
+        if (n > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Encoding of " + len + " bytes is too large");
+        }
+        return (int) n;
+    }
 
-        // Throw away anything not in base64Data
-        // Adjust size
+    /**
+     * Encodes <code>len</code> bytes of <code>src</code>, padding the last
+     * group. No line breaks are inserted.
+     *
+     * @param src bytes to encode
+     * @param off offset of the first byte
+     * @param len number of bytes
+     * @param dst array receiving the encoding, which must have room
+     *        for {@link #encodedLength encodedLength(len, 0)} bytes
+     * @param dpos offset in <code>dst</code>
+     * @return number of bytes written to <code>dst</code>
+     */
+    public static int encode(byte[] src, int off, int len, byte[] dst, int dpos) {
+        final byte[] enc = ENCODE;
+        int sp = off;
+        int dp = dpos;
+        int sl = off + len / 3 * 3;
+        while (sp < sl) {
+            int bits = (src[sp++] & 0xff) << 16
+                    | (src[sp++] & 0xff) << 8
+                    | (src[sp++] & 0xff);
+            dst[dp++] = enc[(bits >>> 18) & 0x3f];
+            dst[dp++] = enc[(bits >>> 12) & 0x3f];
+            dst[dp++] = enc[(bits >>> 6) & 0x3f];
+            dst[dp++] = enc[bits & 0x3f];
+        }
+        int rest = off + len - sp;
+        if (rest > 0) {
+            int b0 = src[sp] & 0xff;
+            dst[dp++] = enc[b0 >> 2];
+            if (rest == 1) {
+                dst[dp++] = enc[(b0 << 4) & 0x3f];
+                dst[dp++] = PAD;
+            } else {
+                int b1 = src[sp + 1] & 0xff;
+                dst[dp++] = enc[(b0 << 4) & 0x3f | (b1 >> 4)];
+                dst[dp++] = enc[(b1 << 2) & 0x3f];
+            }
+            dst[dp++] = PAD;
+        }
+        return dp - dpos;
+    }
 
-        int encodedIndex = 0;
-        int dataIndex    = 0;
-        decodedData      = new byte[ numberQuadruple*3 + 1 ];
+    /**
+     * Encodes <code>len</code> bytes of <code>src</code>, padding the last
+     * group, with a CRLF after every <code>lineLength</code> characters
+     * except at the end.
+     *
+     * @param src bytes to encode
+     * @param off offset of the first byte
+     * @param len number of bytes
+     * @param dst array receiving the encoding, which must have room for
+     *        {@link #encodedLength encodedLength(len, lineLength)} bytes
+     * @param dpos offset in <code>dst</code>
+     * @param lineLength length of the lines, a multiple of 4, or 0 to not
+     *        break lines
+     * @return number of bytes written to <code>dst</code>
+     */
+    public static int encode(byte[] src, int off, int len, byte[] dst, int dpos, int lineLength) {
+        if (lineLength <= 0) {
+            return encode(src, off, len, dst, dpos);
+        }
+        if (lineLength % 4 != 0) {
+            throw new IllegalArgumentException("lineLength must be a multiple of 4");
+        }
+        int bytesPerLine = lineLength / 4 * 3;
+        int dp = dpos;
+        int end = off + len;
+        for (int sp = off; sp < end; sp += bytesPerLine) {
+            if (sp > off) {
+                dst[dp++] = '\r';
+                dst[dp++] = '\n';
+            }
+            dp += encode(src, sp, Math.min(bytesPerLine, end - sp), dst, dp);
+        }
+        return dp - dpos;
+    }
 
-        for (int i = 0; i<numberQuadruple; i++ ) {
-            dataIndex = i*4;
-            marker0   = base64Data[dataIndex +2];
-            marker1   = base64Data[dataIndex +3];
+    /**
+     * Encodes the remaining bytes of <code>src</code> into
+     * <code>dst</code>, padding the last group. No line breaks are
+     * inserted. The positions of both buffers are advanced.
+     *
+     * @param src bytes to encode
+     * @param dst buffer receiving the encoding, which must have room for
+     *        {@link #encodedLength encodedLength(src.remaining(), 0)} bytes
+     */
+    public static void encode(ByteBuffer src, ByteBuffer dst) {
+        if (dst.remaining() < encodedLength(src.remaining(), 0)) {
+            throw new IllegalArgumentException("Insufficient space in destination buffer");
+        }
+        if (src.hasArray() && dst.hasArray()) {
+            int n = encode(src.array(), src.arrayOffset() + src.position(), src.remaining(),
+                    dst.array(), dst.arrayOffset() + dst.position());
+            src.position(src.limit());
+            dst.position(dst.position() + n);
+            return;
+        }
+        byte[] in = new byte[Math.min(src.remaining(), 3 * 1024)];
+        byte[] out = new byte[encodedLength(in.length, 0)];
+        while (src.hasRemaining()) {
+            int n = Math.min(src.remaining(), in.length);
+            src.get(in, 0, n);
+            dst.put(out, 0, encode(in, 0, n, out, 0));
+        }
+    }
 
-            b1 = base64Alphabet[base64Data[dataIndex]];
-            b2 = base64Alphabet[base64Data[dataIndex +1]];
+    /**
+     * Removes the characters which are neither in the Base64 alphabet
+     * nor padding, such as line breaks, from a range of an array.
+     *
+     * @param buf array holding the encoded data
+     * @param off offset of the range
+     * @param len length of the range
+     * @return the length of the range after the characters were removed
+     */
+    public static int strip(byte[] buf, int off, int len) {
+        final int[] dec = DECODE;
+        int end = off + len;
+        int i = off;
+        while (i < end && (dec[buf[i] & 0xff] >= 0 || buf[i] == PAD)) {
+            i++;
+        }
+        int j = i;
+        for (; i < end; i++) {
+            byte c = buf[i];
+            if (dec[c & 0xff] >= 0 || c == PAD) {
+                buf[j++] = c;
+            }
+        }
+        return j - off;
+    }
 
-            if ( marker0 != PAD && marker1 != PAD ) {     //No PAD e.g 3cQl
-                b3 = base64Alphabet[ marker0 ];
-                b4 = base64Alphabet[ marker1 ];
+    /**
+     * Decodes a range of Base64 data, ignoring characters outside of the
+     * Base64 alphabet such as line breaks. Each group of 4 characters may
+     * end with padding, so concatenated encodings are decoded too.
+     *
+     * @param src the encoded data
+     * @param off offset of the first character
+     * @param len number of characters
+     * @param dst array receiving the decoded bytes, which must have room
+     *        for <code>len / 4 * 3</code> bytes
+     * @param dpos offset in <code>dst</code>
+     * @return number of bytes written to <code>dst</code>
+     * @throws IllegalArgumentException if the data is not valid Base64
+     *         or ends with an incomplete group
+     */
+    public static int decode(byte[] src, int off, int len, byte[] dst, int dpos) {
+        int[] consumed = new int[1];
+        int n = decode(src, off, len, dst, dpos, consumed);
+        for (int i = off + consumed[0]; i < off + len; i++) {
+            if (isBase64(src[i])) {
+                throw new IllegalArgumentException("Incomplete Base64 group at end of data");
+            }
+        }
+        return n;
+    }
 
-                decodedData[encodedIndex]   = (byte)(  b1 <<2 | b2>>4 ) ;
-                decodedData[encodedIndex+1] = (byte)(((b2 & 0xf)<<4 ) |(
-(b3>>2) & 0xf) );
-                decodedData[encodedIndex+2] = (byte)( b3<<6 | b4 );
-            } else if ( marker0 == PAD ) {               //Two PAD e.g. 3c[Pad][Pad]
-                decodedData[encodedIndex]   = (byte)(  b1 <<2 | b2>>4 ) ;
-                decodedData[encodedIndex+1] = (byte)((b2 & 0xf)<<4 );
-                decodedData[encodedIndex+2] = (byte) 0;
-            } else if ( marker1 == PAD ) {              //One PAD e.g. 3cQ[Pad]
-                b3 = base64Alphabet[ marker0 ];
+    /**
+     * Decodes the complete groups of a range of Base64 data, ignoring
+     * characters outside of the Base64 alphabet such as line breaks.
+     * Decoding stops before a trailing incomplete group, so that data
+     * arriving in chunks can be decoded by carrying the rest over to the
+     * next chunk.
+     *
+     * @param src the encoded data
+     * @param off offset of the first character
+     * @param len number of characters
+     * @param dst array receiving the decoded bytes, which must have room
+     *        for <code>len / 4 * 3</code> bytes
+     * @param dpos offset in <code>dst</code>
+     * @param consumed receives at index 0 the number of characters
+     *        decoded or skipped, the rest belongs to an incomplete group
+     * @return number of bytes written to <code>dst</code>
+     * @throws IllegalArgumentException if the data is not valid Base64
+     */
+    public static int decode(byte[] src, int off, int len, byte[] dst, int dpos,
+            int[] consumed) {
+        final int[] dec = DECODE;
+        int sp = off;
+        int dp = dpos;
+        int end = off + len;
+        while (true) {
+            // groups of 4 characters of the alphabet
+            while (sp + 4 <= end) {
+                int b0 = dec[src[sp] & 0xff];
+                int b1 = dec[src[sp + 1] & 0xff];
+                int b2 = dec[src[sp + 2] & 0xff];
+                int b3 = dec[src[sp + 3] & 0xff];
+                if ((b0 | b1 | b2 | b3) < 0) {
+                    break;
+                }
+                int bits = b0 << 18 | b1 << 12 | b2 << 6 | b3;
+                dst[dp++] = (byte) (bits >> 16);
+                dst[dp++] = (byte) (bits >> 8);
+                dst[dp++] = (byte) bits;
+                sp += 4;
+            }
 
-                decodedData[encodedIndex]   = (byte)(  b1 <<2 | b2>>4 );
-                decodedData[encodedIndex+1] = (byte)(((b2 & 0xf)<<4 ) |(
-(b3>>2) & 0xf) );
-                decodedData[encodedIndex+2] = (byte)( b3<<6);
+            // a group with padding or interrupted by other characters
+            int start = sp;
+            int c0 = 0, c1 = 0, c2 = 0, c3 = 0;
+            int got = 0;
+            while (got < 4 && sp < end) {
+                int c = src[sp++] & 0xff;
+                if (dec[c] < 0 && c != PAD) {
+                    continue;
+                }
+                switch (got++) {
+                    case 0: c0 = c; break;
+                    case 1: c1 = c; break;
+                    case 2: c2 = c; break;
+                    default: c3 = c; break;
+                }
+            }
+            if (got < 4) {
+                consumed[0] = ((got == 0) ? sp : start) - off;
+                return dp - dpos;
+            }
+            int b0 = dec[c0], b1 = dec[c1], b2 = dec[c2], b3 = dec[c3];
+            if ((b0 | b1 | b2 | b3) >= 0) {
+                int bits = b0 << 18 | b1 << 12 | b2 << 6 | b3;
+                dst[dp++] = (byte) (bits >> 16);
+                dst[dp++] = (byte) (bits >> 8);
+                dst[dp++] = (byte) bits;
+            } else if ((b0 | b1) < 0) {
+                throw new IllegalArgumentException("Illegal Base64 group at " + (start - off));
+            } else if (c2 == PAD && c3 == PAD) {
+                dst[dp++] = (byte) (b0 << 2 | b1 >> 4);
+            } else if (b2 >= 0 && c3 == PAD) {
+                dst[dp++] = (byte) (b0 << 2 | b1 >> 4);
+                dst[dp++] = (byte) (b1 << 4 | b2 >> 2);
+            } else {
+                throw new IllegalArgumentException("Illegal Base64 group at " + (start - off));
             }
-            encodedIndex += 3;
         }
-        return decodedData;
+    }
 
+    /**
+     * Decodes the remaining characters of <code>src</code> into
+     * <code>dst</code>, ignoring characters outside of the Base64
+     * alphabet. The positions of both buffers are advanced.
+     *
+     * @param src the encoded data
+     * @param dst buffer receiving the decoded bytes
+     * @throws IllegalArgumentException if the data is not valid Base64
+     */
+    public static void decode(ByteBuffer src, ByteBuffer dst) {
+        byte[] in = new byte[Math.min(src.remaining(), 4 * 1024) + 3];
+        byte[] out = new byte[in.length / 4 * 3];
+        int[] consumed = new int[1];
+        int carried = 0;
+        while (src.hasRemaining()) {
+            int n = Math.min(src.remaining(), in.length - carried);
+            src.get(in, carried, n);
+            int total = carried + n;
+            dst.put(out, 0, decode(in, 0, total, out, 0, consumed));
+            carried = total - consumed[0];
+            System.arraycopy(in, consumed[0], in, 0, carried);
+            carried = strip(in, 0, carried);
+        }
+        if (carried != 0) {
+            throw new IllegalArgumentException("Incomplete Base64 group at end of data");
+        }
     }
 
     static final int base64[]= {
@@ -87,8 +87,10 @@ public final class ByteOutputStream extends OutputStream {
     public void write(InputStream in) throws IOException {
         if (in instanceof ByteArrayInputStream) {
             int size = in.available();
-            ensureCapacity(size);
-            count += in.read(buf,count,size);
+            if (size > 0) {
+                ensureCapacity(size);
+                count += in.read(buf,count,size);
+            }
             return;
         }
         while(true) {
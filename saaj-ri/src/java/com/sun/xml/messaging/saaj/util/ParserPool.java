@@ -42,36 +42,88 @@ package com.sun.xml.messaging.saaj.util;
 
 
 import org.xml.sax.SAXException;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.SAXParser;
 import javax.xml.parsers.SAXParserFactory;
-import org.xml.sax.SAXNotRecognizedException;
-import org.xml.sax.SAXNotSupportedException;
 
 
 /**
- * Pool of SAXParser objects
+ * Pool of SAXParser objects.
+ *
+ * <p>The pool is pre-filled with {@code coreSize} parsers and grows on demand
+ * up to {@code maxSize}. Once {@code maxSize} parsers are checked out, a caller
+ * waits at most {@code maxWait} milliseconds for one to be returned and then
+ * gets a fresh overflow parser, which is discarded when it is returned; callers
+ * are never blocked indefinitely. Parsers above {@code coreSize} which stay idle
+ * longer than {@code idleTimeout} milliseconds are released.
+ *
+ * <p>Hit, miss, overflow and wait counters are kept so that the pool can be
+ * sized from real traffic.
  */
 public class ParserPool {
-    private final BlockingQueue<SAXParser> queue;
-    private SAXParserFactory factory;
+
+    /** Default time in milliseconds after which idle parsers above the core size are released. */
+    public static final long DEFAULT_IDLE_TIMEOUT = 60000L;
+
+    private final LinkedBlockingDeque<Entry> queue;
+    private final Set<SAXParser> overflow =
+            Collections.newSetFromMap(new ConcurrentHashMap<SAXParser, Boolean>());
+    private final SAXParserFactory factory;
+
+    private final int coreSize;
+    private final int maxSize;
+    private final long maxWait;
+    private final long idleTimeout;
+
+    // number of parsers owned by the pool, idle or checked out (overflow parsers excluded)
+    private final AtomicInteger size = new AtomicInteger();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong overflows = new AtomicLong();
+    private final AtomicLong waits = new AtomicLong();
+    private final AtomicLong waitTime = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
 
     public ParserPool(int capacity) {
-        queue = new ArrayBlockingQueue<SAXParser>(capacity);
+        this(capacity, capacity, 0L, DEFAULT_IDLE_TIMEOUT);
+    }
+
+    /**
+     * @param coreSize number of parsers created up-front and never released
+     * @param maxSize maximum number of pooled parsers
+     * @param maxWait milliseconds to wait for a returned parser once
+     *        {@code maxSize} is reached before creating an overflow parser
+     * @param idleTimeout milliseconds after which idle parsers above
+     *        {@code coreSize} are released, {@code 0} or less to never release
+     */
+    public ParserPool(int coreSize, int maxSize, long maxWait, long idleTimeout) {
+        if (coreSize < 0 || maxSize < 1 || maxSize < coreSize) {
+            throw new IllegalArgumentException(
+                    "Invalid pool size: core=" + coreSize + ", max=" + maxSize);
+        }
+        this.coreSize = coreSize;
+        this.maxSize = maxSize;
+        this.maxWait = maxWait;
+        this.idleTimeout = idleTimeout;
+        queue = new LinkedBlockingDeque<Entry>(maxSize);
         factory = SAXParserFactory.newInstance("com.sun.org.apache.xerces.internal.jaxp.SAXParserFactoryImpl", SAAJUtil.getSystemClassLoader());
         try {
             factory.setFeature("jdk.xml.resetSymbolTable", true);
         } catch(SAXException | ParserConfigurationException e) {
         }
         factory.setNamespaceAware(true);
-        for (int i = 0; i < capacity; i++) {
+        for (int i = 0; i < coreSize; i++) {
            try {
-                queue.put(factory.newSAXParser());
-            } catch (InterruptedException ex) {
-                Thread.currentThread().interrupt();
-                throw new RuntimeException(ex);
+                queue.offerFirst(new Entry(newParser()));
+                size.incrementAndGet();
             } catch (ParserConfigurationException ex) {
                 throw new RuntimeException(ex);
             } catch (SAXException ex) {
@@ -83,16 +135,55 @@ public class ParserPool {
     public SAXParser get() throws ParserConfigurationException,
 		SAXException {
 
-        try {
-            return (SAXParser) queue.take();
-        } catch (InterruptedException ex) {
-            throw new SAXException(ex);
+        Entry entry = queue.pollFirst();
+        if (entry != null) {
+            hits.incrementAndGet();
+            return entry.parser;
+        }
+
+        if (size.incrementAndGet() <= maxSize) {
+            misses.incrementAndGet();
+            try {
+                return newParser();
+            } catch (ParserConfigurationException | SAXException | RuntimeException ex) {
+                size.decrementAndGet();
+                throw ex;
+            }
+        }
+        size.decrementAndGet();
+
+        if (maxWait > 0) {
+            long start = System.nanoTime();
+            try {
+                entry = queue.pollFirst(maxWait, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException ex) {
+                throw new SAXException(ex);
+            } finally {
+                waits.incrementAndGet();
+                waitTime.addAndGet(System.nanoTime() - start);
+            }
+            if (entry != null) {
+                hits.incrementAndGet();
+                return entry.parser;
+            }
         }
 
+        overflows.incrementAndGet();
+        SAXParser parser = newParser();
+        overflow.add(parser);
+        return parser;
     }
 
     public boolean put(SAXParser parser) {
-        return queue.offer(parser);
+        if (overflow.remove(parser)) {
+            return false;
+        }
+        evictIdle();
+        if (queue.offerFirst(new Entry(parser))) {
+            return true;
+        }
+        size.decrementAndGet();
+        return false;
     }
     
     public void returnParser(SAXParser saxParser) {
@@ -100,4 +191,99 @@ public class ParserPool {
         put(saxParser);
     }
 
+    /**
+     * Releases parsers above the core size which have been idle for longer
+     * than the idle timeout. The least recently used parsers sit at the tail
+     * of the deque, so the scan stops at the first one still in use.
+     */
+    private void evictIdle() {
+        if (idleTimeout <= 0) {
+            return;
+        }
+        long deadline = System.currentTimeMillis() - idleTimeout;
+        Entry last;
+        while ((last = queue.peekLast()) != null && last.lastUsed < deadline) {
+            int current = size.get();
+            if (current <= coreSize) {
+                return;
+            }
+            if (!size.compareAndSet(current, current - 1)) {
+                continue;
+            }
+            if (queue.removeLastOccurrence(last)) {
+                evictions.incrementAndGet();
+            } else {
+                size.incrementAndGet();
+            }
+        }
+    }
+
+    private SAXParser newParser() throws ParserConfigurationException, SAXException {
+        synchronized (factory) {
+            return factory.newSAXParser();
+        }
+    }
+
+    /** Number of parsers currently owned by the pool, idle or checked out. */
+    public int getSize() {
+        return size.get();
+    }
+
+    /** Number of parsers currently idle in the pool. */
+    public int getIdleCount() {
+        return queue.size();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /** Number of requests served by an idle pooled parser. */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /** Number of requests which grew the pool by creating a new parser. */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /** Number of requests served by a throw-away parser because the pool was exhausted. */
+    public long getOverflowCount() {
+        return overflows.get();
+    }
+
+    /** Number of requests which waited for a parser to be returned. */
+    public long getWaitCount() {
+        return waits.get();
+    }
+
+    /** Total time in milliseconds spent waiting for a parser to be returned. */
+    public long getWaitTime() {
+        return TimeUnit.NANOSECONDS.toMillis(waitTime.get());
+    }
+
+    /** Number of idle parsers released after the idle timeout. */
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    @Override
+    public String toString() {
+        return "ParserPool[size=" + getSize() + ", idle=" + getIdleCount()
+                + ", max=" + maxSize + ", hits=" + getHitCount()
+                + ", misses=" + getMissCount() + ", overflows=" + getOverflowCount()
+                + ", waits=" + getWaitCount() + ", waitTime=" + getWaitTime()
+                + "ms, evictions=" + getEvictionCount() + "]";
+    }
+
+    private static final class Entry {
+        final SAXParser parser;
+        final long lastUsed;
+
+        Entry(SAXParser parser) {
+            this.parser = parser;
+            this.lastUsed = System.currentTimeMillis();
+        }
+    }
 }
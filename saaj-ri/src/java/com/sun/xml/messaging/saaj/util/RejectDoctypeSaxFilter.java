@@ -81,6 +81,9 @@ public class RejectDoctypeSaxFilter extends XMLFilterImpl implements XMLReader,
     
     /** LexicalHandler to forward events to, if any */
     private LexicalHandler lexicalHandler;
+
+    /** Attributes passed on, reused for every element */
+    private final AttributesImpl attrImpl = new AttributesImpl();
     
     public RejectDoctypeSaxFilter(SAXParser saxParser) throws SOAPException {
         XMLReader xmlReader;
@@ -183,7 +186,7 @@ public class RejectDoctypeSaxFilter extends XMLFilterImpl implements XMLReader,
                 eos = true;
             }
             int length = atts.getLength();
-            AttributesImpl attrImpl = new AttributesImpl();
+            attrImpl.clear();
             for(int i=0; i< length;i++){
                 String name = atts.getLocalName(i);
                 if(name!=null && (name.equals("Id"))){
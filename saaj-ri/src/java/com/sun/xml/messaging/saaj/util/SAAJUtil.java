@@ -58,6 +58,14 @@ public final class SAAJUtil {
         }
     }
 
+    public static int getSystemInteger(String arg, int defaultValue) {
+        try {
+            return Integer.getInteger(arg, defaultValue);
+        } catch (SecurityException ex) {
+            return defaultValue;
+        }
+    }
+
     public static String getSystemProperty(String arg) {
         try {
             return System.getProperty(arg);
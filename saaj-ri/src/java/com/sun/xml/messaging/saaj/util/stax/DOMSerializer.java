@@ -0,0 +1,228 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package com.sun.xml.messaging.saaj.util.stax;
+
+import java.util.Arrays;
+
+import javax.xml.XMLConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+/**
+ * Writes a DOM tree to an {@link XMLStreamWriter} without going through an
+ * identity transformer. Namespace declarations present as attributes are
+ * written as they are; missing declarations for element and attribute
+ * prefixes are added, so the writer can be used in non-repairing mode.
+ *
+ * <p>Meant for the plain DOM nodes behind the SAAJ wrappers, which avoids
+ * the wrapper lookup done for every node visited through the SAAJ tree.
+ * Instances are not thread safe.
+ */
+public final class DOMSerializer {
+
+    private final XMLStreamWriter writer;
+
+    // in-scope bindings, pairs of prefix and namespace URI
+    private String[] bindings = new String[32];
+    private int bindingCount = 0;
+    private int generatedPrefixes = 0;
+
+    public DOMSerializer(XMLStreamWriter writer) {
+        this.writer = writer;
+    }
+
+    /**
+     * Writes the given node and its descendants. For a document its
+     * children are written, without an XML declaration.
+     *
+     * @param node document, element or any child node of an element
+     * @throws XMLStreamException if the writer fails
+     */
+    public void serialize(Node node) throws XMLStreamException {
+        switch (node.getNodeType()) {
+            case Node.DOCUMENT_NODE:
+            case Node.DOCUMENT_FRAGMENT_NODE:
+            case Node.ENTITY_REFERENCE_NODE:
+                for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+                    serialize(child);
+                }
+                break;
+            case Node.ELEMENT_NODE:
+                writeElement((Element) node);
+                break;
+            case Node.TEXT_NODE:
+                writer.writeCharacters(node.getNodeValue());
+                break;
+            case Node.CDATA_SECTION_NODE:
+                writeCData(node.getNodeValue());
+                break;
+            case Node.COMMENT_NODE:
+                writer.writeComment(node.getNodeValue());
+                break;
+            case Node.PROCESSING_INSTRUCTION_NODE:
+                writer.writeProcessingInstruction(node.getNodeName(), node.getNodeValue());
+                break;
+            default:
+                // document type and others are not serialized
+                break;
+        }
+    }
+
+    private void writeElement(Element element) throws XMLStreamException {
+        String prefix = nonNull(element.getPrefix());
+        String uri = nonNull(element.getNamespaceURI());
+        String localName = element.getLocalName();
+        if (localName == null) {
+            // DOM level 1 node, the name is not split
+            localName = element.getNodeName();
+        }
+
+        Node first = element.getFirstChild();
+        if (first == null) {
+            writer.writeEmptyElement(prefix, localName, uri);
+        } else {
+            writer.writeStartElement(prefix, localName, uri);
+        }
+
+        int mark = bindingCount;
+        NamedNodeMap attributes = element.getAttributes();
+        int length = attributes.getLength();
+
+        for (int i = 0; i < length; i++) {
+            Attr attr = (Attr) attributes.item(i);
+            if (XMLConstants.XMLNS_ATTRIBUTE_NS_URI.equals(attr.getNamespaceURI())) {
+                String declared = attr.getPrefix() == null ? "" : attr.getLocalName();
+                writeNamespace(declared, attr.getValue());
+            }
+        }
+
+        if (!uri.equals(lookup(prefix)) && !(uri.isEmpty() && lookup(prefix) == null)) {
+            writeNamespace(prefix, uri);
+        }
+
+        for (int i = 0; i < length; i++) {
+            Attr attr = (Attr) attributes.item(i);
+            String attrUri = attr.getNamespaceURI();
+            if (XMLConstants.XMLNS_ATTRIBUTE_NS_URI.equals(attrUri)) {
+                continue;
+            }
+            if (attrUri == null || attrUri.isEmpty()) {
+                String name = attr.getLocalName();
+                writer.writeAttribute(name == null ? attr.getNodeName() : name, attr.getValue());
+                continue;
+            }
+            String attrPrefix = attr.getPrefix();
+            if (XMLConstants.XML_NS_URI.equals(attrUri)) {
+                attrPrefix = XMLConstants.XML_NS_PREFIX;
+            } else if (attrPrefix == null || attrPrefix.isEmpty()) {
+                // unprefixed attributes are in no namespace, find or make a prefix
+                attrPrefix = prefixFor(attrUri);
+                if (attrPrefix == null) {
+                    attrPrefix = "ns" + (++generatedPrefixes);
+                    writeNamespace(attrPrefix, attrUri);
+                }
+            } else if (!attrUri.equals(lookup(attrPrefix))) {
+                writeNamespace(attrPrefix, attrUri);
+            }
+            writer.writeAttribute(attrPrefix, attrUri, attr.getLocalName(), attr.getValue());
+        }
+
+        if (first != null) {
+            for (Node child = first; child != null; child = child.getNextSibling()) {
+                serialize(child);
+            }
+            writer.writeEndElement();
+        }
+        bindingCount = mark;
+    }
+
+    private void writeNamespace(String prefix, String uri) throws XMLStreamException {
+        if (prefix.isEmpty()) {
+            writer.writeDefaultNamespace(uri);
+        } else {
+            writer.writeNamespace(prefix, uri);
+        }
+        if (bindingCount == bindings.length) {
+            bindings = Arrays.copyOf(bindings, bindingCount * 2);
+        }
+        bindings[bindingCount++] = prefix;
+        bindings[bindingCount++] = uri;
+    }
+
+    private String lookup(String prefix) {
+        for (int i = bindingCount - 2; i >= 0; i -= 2) {
+            if (bindings[i].equals(prefix)) {
+                return bindings[i + 1];
+            }
+        }
+        return null;
+    }
+
+    private String prefixFor(String uri) {
+        for (int i = bindingCount - 2; i >= 0; i -= 2) {
+            String prefix = bindings[i];
+            if (!prefix.isEmpty() && bindings[i + 1].equals(uri) && uri.equals(lookup(prefix))) {
+                return prefix;
+            }
+        }
+        return null;
+    }
+
+    private void writeCData(String data) throws XMLStreamException {
+        // a CDATA section cannot contain its end marker, split it
+        int start = 0;
+        int end;
+        while ((end = data.indexOf("]]>", start)) != -1) {
+            writer.writeCData(data.substring(start, end + 2));
+            start = end + 2;
+        }
+        writer.writeCData(data.substring(start));
+    }
+
+    private static String nonNull(String s) {
+        return s == null ? "" : s;
+    }
+}
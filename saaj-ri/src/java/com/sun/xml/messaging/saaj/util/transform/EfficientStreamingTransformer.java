@@ -58,7 +58,10 @@ import org.w3c.dom.Document;
 
 import com.sun.xml.messaging.saaj.util.XMLDeclarationParser;
 import com.sun.xml.messaging.saaj.util.FastInfosetReflection;
+import com.sun.xml.messaging.saaj.soap.ContextClassloaderLocal;
+import java.lang.ref.SoftReference;
 import java.net.URI;
+import java.util.ArrayDeque;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerException;
 import javax.xml.transform.TransformerFactory;
@@ -80,7 +83,9 @@ public class EfficientStreamingTransformer
   //static final String version;
   //static final String vendor;
   // removing static : security issue : CR 6813167Z
-  private final TransformerFactory transformerFactory = TransformerFactory.newInstance();
+  // factories are shared only between callers with the same context
+  // classloader, see Pool
+  private final TransformerFactory transformerFactory;
 
   /** 
   removing support for Java 1.4 and 1.3 : CR6658158
@@ -93,11 +98,33 @@ public class EfficientStreamingTransformer
                 new com.sun.org.apache.xalan.internal.xsltc.trax.TransformerFactoryImpl();
         }
   }*/
-                                                                                                                                                  
+
     /**
-     * TransformerFactory instance.
+     * Maximum number of idle transformers kept per context classloader.
      */
-    
+    private static final int MAX_IDLE = 16;
+
+    /**
+     * Idle transformers by context classloader.
+     */
+    private static final ContextClassloaderLocal<Pool> pools =
+            new ContextClassloaderLocal<Pool>() {
+                @Override
+                protected Pool initialValue() {
+                    return new Pool();
+                }
+            };
+
+    /**
+     * Pool this transformer is returned to on release.
+     */
+    private final Pool pool;
+
+    /**
+     * Whether this transformer is currently idle in its pool.
+     */
+    private boolean idle = false;
+
     /**
      * Underlying XSLT transformer.
      */
@@ -113,12 +140,17 @@ public class EfficientStreamingTransformer
      */
     private Object m_fiDOMDocumentSerializer = null;
     
-    private EfficientStreamingTransformer() {
+    private EfficientStreamingTransformer(Pool pool) {
+        this.pool = pool;
+        this.transformerFactory = pool.transformerFactory();
     }
 
     private void materialize() throws TransformerException {
         if (m_realTransformer == null) {
-            m_realTransformer = transformerFactory.newTransformer(); 
+            // factories are not guaranteed to be thread safe
+            synchronized (transformerFactory) {
+                m_realTransformer = transformerFactory.newTransformer();
+            }
         }
     }
 
@@ -128,6 +160,16 @@ public class EfficientStreamingTransformer
             m_realTransformer.clearParameters();
     }
 
+    /**
+     * Resets the underlying transformer to the state it had when created,
+     * clearing parameters and output properties.
+     */
+    @Override
+    public void reset() {
+        if (m_realTransformer != null)
+            m_realTransformer.reset();
+    }
+
     @Override
     public javax.xml.transform.ErrorListener getErrorListener() {
         try {
@@ -433,9 +475,10 @@ public class EfficientStreamingTransformer
     //private static ThreadLocal effTransformer = new ThreadLocal(); 
     
     /**
-     * Return Transformer instance for this thread, allocating a new one if 
-     * necessary. Note that this method does not clear global parameters, 
-     * properties or any other data set on a previously used transformer.
+     * Return a Transformer instance for the context classloader of this
+     * thread, reusing one given back by {@link #release(Transformer)} if
+     * possible. The instance is used by the caller only, until it is
+     * released.
      *
      * @return Transformer instance
      */
@@ -446,7 +489,92 @@ public class EfficientStreamingTransformer
             effTransformer.set(tt = new EfficientStreamingTransformer());
         }       
         return tt;*/
-        return new EfficientStreamingTransformer(); 
+        return pool().acquire();
+    }
+
+    /**
+     * Gives back a transformer obtained from {@link #newTransformer()}.
+     * Its parameters and output properties are reset and it must not be
+     * used by the caller any more.
+     *
+     * @param transformer transformer to release, may be null
+     */
+    public static void release(Transformer transformer) {
+        if (transformer instanceof EfficientStreamingTransformer) {
+            ((EfficientStreamingTransformer) transformer).recycle();
+        }
+    }
+
+    private void recycle() {
+        try {
+            reset();
+            if (m_fiDOMDocumentSerializer != null) {
+                // do not keep the last output stream reachable
+                FastInfosetReflection.DOMDocumentSerializer_setOutputStream(
+                    m_fiDOMDocumentSerializer, null);
+            }
+        } catch (Exception e) {
+            // not reusable, leave it to the garbage collector
+            return;
+        }
+        pool.offer(this);
+    }
+
+    private static Pool pool() {
+        return pools.get();
+    }
+
+    /**
+     * Transformer factory and idle transformers of one context classloader.
+     * They can be classes of that classloader, so they are held softly: the
+     * pool must not keep the classloader it is looked up by reachable.
+     */
+    private static final class Pool {
+
+        private SoftReference<Contents> contents = new SoftReference<Contents>(null);
+
+        private Contents contents() {
+            Contents c = contents.get();
+            if (c == null) {
+                c = new Contents();
+                contents = new SoftReference<Contents>(c);
+            }
+            return c;
+        }
+
+        synchronized TransformerFactory transformerFactory() {
+            return contents().transformerFactory;
+        }
+
+        EfficientStreamingTransformer acquire() {
+            EfficientStreamingTransformer transformer;
+            synchronized (this) {
+                transformer = contents().idle.pollFirst();
+                if (transformer != null) {
+                    transformer.idle = false;
+                    return transformer;
+                }
+            }
+            return new EfficientStreamingTransformer(this);
+        }
+
+        synchronized void offer(EfficientStreamingTransformer transformer) {
+            ArrayDeque<EfficientStreamingTransformer> idle = contents().idle;
+            // ignore repeated releases of the same transformer
+            if (!transformer.idle && idle.size() < MAX_IDLE) {
+                transformer.idle = true;
+                idle.addFirst(transformer);
+            }
+        }
+    }
+
+    private static final class Contents {
+
+        final TransformerFactory transformerFactory =
+                TransformerFactory.newInstance();
+
+        final ArrayDeque<EfficientStreamingTransformer> idle =
+                new ArrayDeque<EfficientStreamingTransformer>();
     }
 
 }
@@ -0,0 +1,512 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package client;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import com.sun.xml.messaging.saaj.client.p2p.AsyncSOAPConnection;
+import com.sun.xml.messaging.saaj.client.p2p.HttpSOAPConnectionFactory;
+import com.sun.xml.messaging.saaj.client.p2p.PooledHttpSOAPConnectionFactory;
+import com.sun.xml.messaging.saaj.soap.MessageImpl;
+import junit.framework.TestCase;
+
+import javax.xml.soap.AttachmentPart;
+import javax.xml.soap.MessageFactory;
+import javax.xml.soap.SOAPConnection;
+import javax.xml.soap.SOAPException;
+import javax.xml.soap.SOAPMessage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Round trips messages through a local echo server.
+ */
+public class HttpSOAPConnectionTest extends TestCase {
+
+    private static final String PAYLOAD = "hello-world";
+
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private String endpoint;
+
+    public HttpSOAPConnectionTest(String name) {
+        super(name);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/echo", new EchoHandler());
+        server.createContext("/slow", new SlowHandler());
+        serverExecutor = Executors.newCachedThreadPool();
+        server.setExecutor(serverExecutor);
+        server.start();
+        endpoint = "http://localhost:" + server.getAddress().getPort() + "/echo";
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    public void testBufferedResponse() throws Exception {
+        HttpSOAPConnectionFactory factory = new HttpSOAPConnectionFactory();
+        factory.setStreamResponse(false);
+        SOAPConnection con = factory.createConnection();
+        SOAPMessage reply = con.call(createMessage(), endpoint);
+        assertPayload(reply);
+        con.close();
+    }
+
+    public void testStreamedResponse() throws Exception {
+        HttpSOAPConnectionFactory factory = new HttpSOAPConnectionFactory();
+        factory.setStreamResponse(true);
+        SOAPConnection con = factory.createConnection();
+        SOAPMessage reply = con.call(createMessage(), endpoint);
+        assertPayload(reply);
+        ((MessageImpl) reply).dispose();
+        con.close();
+    }
+
+    public void testStreamedResponseNotBuffered() throws Exception {
+        SOAPMessage sent = createLargeMessage();
+        sent.saveChanges();
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        sent.writeTo(bos);
+        final StubConnection stub = new StubConnection(
+                sent.getMimeHeaders().getHeader("Content-Type")[0], bos.toByteArray());
+        URL url = new URL("http", "localhost", 80, "/stub", new URLStreamHandler() {
+            @Override
+            protected URLConnection openConnection(URL u) {
+                return stub;
+            }
+        });
+
+        HttpSOAPConnectionFactory factory = new HttpSOAPConnectionFactory();
+        factory.setStreamResponse(true);
+        SOAPConnection con = factory.createConnection();
+        SOAPMessage reply = con.call(createMessage(), url);
+        assertPayload(reply);
+        assertTrue("the attachment should not have been read",
+                stub.response.position() < bos.size() / 2);
+        assertFalse(stub.response.closed);
+        ((MessageImpl) reply).dispose();
+        assertTrue(stub.response.closed);
+        con.close();
+    }
+
+    public void testChunkedRequest() throws Exception {
+        HttpSOAPConnectionFactory factory = new HttpSOAPConnectionFactory();
+        factory.setChunkSize(4096);
+        SOAPConnection con = factory.createConnection();
+        SOAPMessage reply = con.call(createMessage(), endpoint);
+        assertPayload(reply);
+        assertEquals("chunked", lastTransferEncoding);
+        con.close();
+    }
+
+    public void testChunkedRequestWithAttachment() throws Exception {
+        HttpSOAPConnectionFactory factory = new HttpSOAPConnectionFactory();
+        factory.setChunkSize(4096);
+        SOAPConnection con = factory.createConnection();
+        SOAPMessage msg = createMessage();
+        AttachmentPart ap = msg.createAttachmentPart("attachment-content", "text/plain");
+        msg.addAttachmentPart(ap);
+        SOAPMessage reply = con.call(msg, endpoint);
+        assertPayload(reply);
+        assertEquals(1, reply.countAttachments());
+        AttachmentPart replyAp = (AttachmentPart) reply.getAttachments().next();
+        assertEquals("attachment-content", replyAp.getContent());
+        assertEquals("chunked", lastTransferEncoding);
+        con.close();
+    }
+
+    public void testPooledConnectionReusesSocket() throws Exception {
+        PooledHttpSOAPConnectionFactory factory = new PooledHttpSOAPConnectionFactory();
+        SOAPConnection con = factory.createConnection();
+        for (int i = 0; i < 5; i++) {
+            assertPayload(con.call(createMessage(), endpoint));
+        }
+        assertEquals(1, clientPorts.size());
+        con.close();
+    }
+
+    public void testPooledConnectionSharedByThreads() throws Exception {
+        PooledHttpSOAPConnectionFactory factory = new PooledHttpSOAPConnectionFactory();
+        factory.setMaxPerRoute(2);
+        final SOAPConnection con = factory.createConnection();
+        final List<Throwable> failures = Collections.synchronizedList(new ArrayList<Throwable>());
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int j = 0; j < 10; j++) {
+                            assertPayload(con.call(createMessage(), endpoint));
+                        }
+                    } catch (Throwable t) {
+                        failures.add(t);
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertTrue(failures.toString(), failures.isEmpty());
+        assertTrue(clientPorts.toString(), clientPorts.size() <= 2);
+        con.close();
+    }
+
+    public void testPooledStreamedResponseHoldsRoute() throws Exception {
+        PooledHttpSOAPConnectionFactory factory = new PooledHttpSOAPConnectionFactory();
+        factory.setMaxPerRoute(1);
+        factory.setRequestTimeout(300);
+        factory.setStreamResponse(true);
+        SOAPConnection con = factory.createConnection();
+        SOAPMessage first = con.call(createLargeMessage(), endpoint);
+        try {
+            con.call(createMessage(), endpoint);
+            fail("the unread response should still hold the route");
+        } catch (SOAPException expected) {
+        }
+        ((MessageImpl) first).dispose();
+        SOAPMessage second = con.call(createMessage(), endpoint);
+        assertPayload(second);
+        ((MessageImpl) second).dispose();
+        con.close();
+    }
+
+    public void testSetMaxPerRouteResizesRoute() throws Exception {
+        PooledHttpSOAPConnectionFactory factory = new PooledHttpSOAPConnectionFactory();
+        factory.setMaxPerRoute(1);
+        factory.setRequestTimeout(300);
+        factory.setStreamResponse(true);
+        SOAPConnection con = factory.createConnection();
+        ((MessageImpl) con.call(createMessage(), endpoint)).dispose();
+
+        factory.setMaxPerRoute(2);
+        SOAPMessage first = con.call(createLargeMessage(), endpoint);
+        SOAPMessage second = con.call(createLargeMessage(), endpoint);
+        try {
+            con.call(createMessage(), endpoint);
+            fail("both permits of the route should be in use");
+        } catch (SOAPException expected) {
+        }
+        ((MessageImpl) first).dispose();
+        ((MessageImpl) second).dispose();
+        con.close();
+    }
+
+    public void testCallAsync() throws Exception {
+        AsyncSOAPConnection con = (AsyncSOAPConnection) new HttpSOAPConnectionFactory().createConnection();
+        List<Future<SOAPMessage>> replies = new ArrayList<Future<SOAPMessage>>();
+        for (int i = 0; i < 4; i++) {
+            replies.add(con.callAsync(createMessage(), endpoint));
+        }
+        for (Future<SOAPMessage> reply : replies) {
+            assertPayload(reply.get(10, TimeUnit.SECONDS));
+        }
+    }
+
+    public void testCallAsyncHandler() throws Exception {
+        HttpSOAPConnectionFactory factory = new HttpSOAPConnectionFactory();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        factory.setExecutor(executor);
+        AsyncSOAPConnection con = (AsyncSOAPConnection) factory.createConnection();
+        final AtomicReference<Object> result = new AtomicReference<Object>();
+        final CountDownLatch latch = new CountDownLatch(1);
+        con.callAsync(createMessage(), endpoint, 0, TimeUnit.MILLISECONDS,
+                new AsyncSOAPConnection.ResponseHandler() {
+                    @Override
+                    public void handleResponse(SOAPMessage response) {
+                        result.set(response);
+                        latch.countDown();
+                    }
+
+                    @Override
+                    public void handleException(SOAPException ex) {
+                        result.set(ex);
+                        latch.countDown();
+                    }
+                });
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        assertTrue(String.valueOf(result.get()), result.get() instanceof SOAPMessage);
+        assertPayload((SOAPMessage) result.get());
+        executor.shutdown();
+    }
+
+    public void testCallAsyncTimeout() throws Exception {
+        AsyncSOAPConnection con = (AsyncSOAPConnection) new HttpSOAPConnectionFactory().createConnection();
+        String slow = endpoint.replace("/echo", "/slow");
+        long start = System.nanoTime();
+        Future<SOAPMessage> reply = con.callAsync(createMessage(), slow, 300, TimeUnit.MILLISECONDS);
+        try {
+            reply.get(10, TimeUnit.SECONDS);
+            fail("call should time out");
+        } catch (ExecutionException ex) {
+            assertTrue(String.valueOf(ex.getCause()), ex.getCause() instanceof SOAPException);
+        }
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 2000);
+    }
+
+    public void testCallAsyncRejected() throws Exception {
+        HttpSOAPConnectionFactory factory = new HttpSOAPConnectionFactory();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        executor.shutdown();
+        factory.setExecutor(executor);
+        AsyncSOAPConnection con = (AsyncSOAPConnection) factory.createConnection();
+        final CountDownLatch latch = new CountDownLatch(1);
+        try {
+            con.callAsync(createMessage(), endpoint, 100, TimeUnit.MILLISECONDS,
+                    new AsyncSOAPConnection.ResponseHandler() {
+                        @Override
+                        public void handleResponse(SOAPMessage response) {
+                            latch.countDown();
+                        }
+
+                        @Override
+                        public void handleException(SOAPException ex) {
+                            latch.countDown();
+                        }
+                    });
+            fail("the executor should reject the call");
+        } catch (RejectedExecutionException expected) {
+        }
+        // a rejected call must not time out later on
+        assertFalse(latch.await(500, TimeUnit.MILLISECONDS));
+    }
+
+    public void testCallAsyncDeadlineBoundsRouteWait() throws Exception {
+        PooledHttpSOAPConnectionFactory factory = new PooledHttpSOAPConnectionFactory();
+        factory.setMaxPerRoute(1);
+        factory.setStreamResponse(true);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        factory.setExecutor(executor);
+        SOAPConnection con = factory.createConnection();
+        SOAPMessage held = con.call(createLargeMessage(), endpoint);
+        try {
+            Future<SOAPMessage> reply = ((AsyncSOAPConnection) con).callAsync(createMessage(), endpoint,
+                    300, TimeUnit.MILLISECONDS);
+            try {
+                reply.get(10, TimeUnit.SECONDS);
+                fail("call should time out");
+            } catch (ExecutionException ex) {
+                assertTrue(String.valueOf(ex.getCause()), ex.getCause() instanceof SOAPException);
+            }
+            // the only executor thread gave up waiting for the route
+            executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                }
+            }).get(2, TimeUnit.SECONDS);
+        } finally {
+            ((MessageImpl) held).dispose();
+            executor.shutdownNow();
+        }
+    }
+
+    static SOAPMessage createMessage() throws Exception {
+        SOAPMessage msg = MessageFactory.newInstance().createMessage();
+        msg.getSOAPBody().addChildElement("echo", "e", "urn:test").addTextNode(PAYLOAD);
+        return msg;
+    }
+
+    // the attachment is not read while the reply is parsed
+    static SOAPMessage createLargeMessage() throws Exception {
+        SOAPMessage msg = createMessage();
+        AttachmentPart ap = msg.createAttachmentPart();
+        ap.setRawContentBytes(new byte[1 << 20], 0, 1 << 20, "application/octet-stream");
+        msg.addAttachmentPart(ap);
+        return msg;
+    }
+
+    static void assertPayload(SOAPMessage reply) throws Exception {
+        assertNotNull(reply);
+        assertEquals(PAYLOAD, reply.getSOAPBody().getFirstChild().getTextContent());
+    }
+
+    /**
+     * Answers every request with the same response, read from memory.
+     */
+    private static class StubConnection extends HttpURLConnection {
+
+        private final String contentType;
+        private final byte[] body;
+        TrackingInputStream response;
+
+        StubConnection(String contentType, byte[] body) throws IOException {
+            super(new URL("http://localhost/stub"));
+            this.contentType = contentType;
+            this.body = body;
+        }
+
+        @Override
+        public void connect() {
+            connected = true;
+        }
+
+        @Override
+        public void disconnect() {
+        }
+
+        @Override
+        public boolean usingProxy() {
+            return false;
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+            return new ByteArrayOutputStream();
+        }
+
+        @Override
+        public int getResponseCode() {
+            return HTTP_OK;
+        }
+
+        @Override
+        public String getHeaderFieldKey(int n) {
+            return n == 1 ? "Content-Type" : null;
+        }
+
+        @Override
+        public String getHeaderField(int n) {
+            return n == 1 ? contentType : null;
+        }
+
+        @Override
+        public String getHeaderField(String name) {
+            if ("Content-Type".equalsIgnoreCase(name)) {
+                return contentType;
+            }
+            if ("Content-Length".equalsIgnoreCase(name)) {
+                return String.valueOf(body.length);
+            }
+            return null;
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            response = new TrackingInputStream(body);
+            return response;
+        }
+    }
+
+    private static class TrackingInputStream extends ByteArrayInputStream {
+
+        volatile boolean closed;
+
+        TrackingInputStream(byte[] buf) {
+            super(buf);
+        }
+
+        synchronized int position() {
+            return pos;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    private volatile String lastTransferEncoding;
+    private final Set<Integer> clientPorts = Collections.synchronizedSet(new HashSet<Integer>());
+
+    private class EchoHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            lastTransferEncoding = exchange.getRequestHeaders().getFirst("Transfer-Encoding");
+            clientPorts.add(exchange.getRemoteAddress().getPort());
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            InputStream in = exchange.getRequestBody();
+            byte[] buf = new byte[1024];
+            int len;
+            while ((len = in.read(buf)) != -1) {
+                bos.write(buf, 0, len);
+            }
+            exchange.getResponseHeaders().set("Content-Type",
+                    exchange.getRequestHeaders().getFirst("Content-Type"));
+            exchange.sendResponseHeaders(200, bos.size());
+            OutputStream out = exchange.getResponseBody();
+            bos.writeTo(out);
+            out.close();
+        }
+    }
+
+    private class SlowHandler extends EchoHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            try {
+                Thread.sleep(3000);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            super.handle(exchange);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package mime;
+
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import javax.xml.soap.AttachmentPart;
+import javax.xml.soap.MessageFactory;
+import javax.xml.soap.MimeHeaders;
+import javax.xml.soap.SOAPBody;
+import javax.xml.soap.SOAPElement;
+import javax.xml.soap.SOAPMessage;
+
+import util.MessageHelper;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests looking up attachments by Content-ID and Content-Location.
+ */
+public class AttachmentLookupTest extends TestCase {
+
+    private static final int PARTS = 20;
+    private static final int PART_SIZE = 64 * 1024;
+
+    public AttachmentLookupTest(String name) {
+        super(name);
+    }
+
+    public void testLookupReadsOnlyRequiredParts() throws Exception {
+        SOAPMessage sent = createMessage();
+        byte[] bytes = MessageHelper.toBytes(sent);
+
+        MessageHelper.CountingInputStream in =
+                new MessageHelper.CountingInputStream(new ByteArrayInputStream(bytes));
+        SOAPMessage msg = MessageFactory.newInstance().createMessage(
+                MessageHelper.headers(sent), in);
+        SOAPBody body = msg.getSOAPBody();
+
+        AttachmentPart part = msg.getAttachment(href(body, "cid:part1@example.org"));
+        assertNotNull(part);
+        assertEquals("<part1@example.org>", part.getContentId());
+        if (MessageHelper.isLazyParsing()) {
+            assertTrue("read " + in.count + " of " + bytes.length,
+                    in.count < bytes.length / 2);
+        }
+
+        part = msg.getAttachment(href(body, "http://example.org/part15"));
+        assertNotNull(part);
+        assertEquals("<part15@example.org>", part.getContentId());
+
+        assertNull(msg.getAttachment(href(body, "cid:missing@example.org")));
+        assertEquals(PARTS, msg.countAttachments());
+
+        assertTrue(Arrays.equals(MessageHelper.content(16, PART_SIZE),
+                msg.getAttachment(href(body, "cid:PART16@example.org")).getRawContentBytes()));
+    }
+
+    public void testLookupFollowsChanges() throws Exception {
+        SOAPMessage msg = createMessage();
+        SOAPBody body = msg.getSOAPBody();
+
+        AttachmentPart part = msg.getAttachment(href(body, "cid:part3@example.org"));
+        assertNotNull(part);
+        part.setContentId("<renamed@example.org>");
+        assertNull(msg.getAttachment(href(body, "cid:part3@example.org")));
+        assertSame(part, msg.getAttachment(href(body, "cid:renamed@example.org")));
+
+        MimeHeaders headers = new MimeHeaders();
+        headers.addHeader("Content-ID", "<renamed@example.org>");
+        msg.removeAttachments(headers);
+        assertNull(msg.getAttachment(href(body, "cid:renamed@example.org")));
+        assertNotNull(msg.getAttachment(href(body, "cid:part4@example.org")));
+
+        AttachmentPart rpc = msg.createAttachmentPart("text", "text/plain");
+        rpc.setContentId("<order=12345@example.org>");
+        msg.addAttachmentPart(rpc);
+        assertSame(rpc, msg.getAttachment(href(body, "order")));
+    }
+
+    private static SOAPMessage createMessage() throws Exception {
+        SOAPMessage msg = MessageHelper.createMessage(PARTS, PART_SIZE);
+        int i = 0;
+        for (Iterator<AttachmentPart> it = msg.getAttachments(); it.hasNext(); i++) {
+            it.next().setContentLocation("http://example.org/part" + i);
+        }
+        msg.saveChanges();
+        return msg;
+    }
+
+    private static SOAPElement href(SOAPBody body, String uri) throws Exception {
+        SOAPElement ref = body.addChildElement("ref", "p", "urn:p");
+        ref.setAttribute("href", uri);
+        return ref;
+    }
+}
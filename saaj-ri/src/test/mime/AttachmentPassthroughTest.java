@@ -0,0 +1,311 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package mime;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import javax.xml.soap.AttachmentPart;
+import javax.xml.soap.MessageFactory;
+import javax.xml.soap.SOAPException;
+import javax.xml.soap.SOAPMessage;
+
+import com.sun.xml.messaging.saaj.soap.MessageImpl;
+import com.sun.xml.messaging.saaj.util.ByteInputStream;
+
+import util.MessageHelper;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests forwarding the attachments of a received message unchanged.
+ */
+public class AttachmentPassthroughTest extends TestCase {
+
+    private static final int PARTS = 4;
+    private static final int PART_SIZE = 100 * 1024;
+
+    public AttachmentPassthroughTest(String name) {
+        super(name);
+    }
+
+    public void testForwardTransportStream() throws Exception {
+        SOAPMessage sent = MessageHelper.createMessage(PARTS, PART_SIZE);
+        byte[] bytes = MessageHelper.toBytes(sent);
+        // hides the stream type, as a transport stream would
+        InputStream in = new FilterInputStream(new ByteArrayInputStream(bytes)) {};
+        MessageImpl msg = (MessageImpl) MessageFactory.newInstance()
+                .createMessage(MessageHelper.headers(sent), in);
+        assertEquals("text", msg.getSOAPBody().getTextContent().trim());
+        msg.setAttachmentPassthrough(true);
+        msg.getSOAPBody().addChildElement("forwarded", "p", "urn:p");
+        msg.saveChanges();
+
+        assertForwarded(msg, MessageHelper.toBytes(msg));
+    }
+
+    public void testTransportStreamForwardedOnce() throws Exception {
+        SOAPMessage sent = MessageHelper.createMessage(PARTS, PART_SIZE);
+        byte[] bytes = MessageHelper.toBytes(sent);
+        InputStream in = new FilterInputStream(new ByteArrayInputStream(bytes)) {};
+        MessageImpl msg = (MessageImpl) MessageFactory.newInstance()
+                .createMessage(MessageHelper.headers(sent), in);
+        msg.setAttachmentPassthrough(true);
+        assertForwarded(msg, MessageHelper.toBytes(msg));
+
+        // the attachments are gone, and must not be written as missing
+        try {
+            MessageHelper.toBytes(msg);
+            fail();
+        } catch (SOAPException expected) {
+        }
+        try {
+            msg.saveChanges();
+            fail();
+        } catch (SOAPException expected) {
+        }
+        try {
+            msg.countAttachments();
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+        try {
+            msg.getAttachments();
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+        // the envelope is still there
+        assertEquals("text", msg.getSOAPBody().getTextContent().trim());
+    }
+
+    public void testForwardFile() throws Exception {
+        forwardFile(false);
+    }
+
+    public void testForwardFileToChannel() throws Exception {
+        forwardFile(true);
+    }
+
+    private static void forwardFile(boolean toChannel) throws Exception {
+        SOAPMessage sent = MessageHelper.createMessage(PARTS, PART_SIZE);
+        File source = File.createTempFile("saaj", ".msg");
+        File target = File.createTempFile("saaj", ".msg");
+        try {
+            FileOutputStream out = new FileOutputStream(source);
+            try {
+                sent.writeTo(out);
+            } finally {
+                out.close();
+            }
+            CountingFileInputStream in = new CountingFileInputStream(source);
+            out = new FileOutputStream(target);
+            try {
+                MessageImpl msg = (MessageImpl) MessageFactory.newInstance()
+                        .createMessage(MessageHelper.headers(sent), in);
+                assertEquals("text", msg.getSOAPBody().getTextContent().trim());
+                msg.setAttachmentPassthrough(true);
+                if (toChannel) {
+                    msg.writeTo(out.getChannel());
+                } else {
+                    msg.writeTo(out);
+                }
+                assertForwarded(msg, readFile(target));
+            } finally {
+                in.close();
+                out.close();
+            }
+            // the attachments went from file to file, not through the stream
+            assertTrue(in.count < PARTS * PART_SIZE / 2);
+        } finally {
+            source.delete();
+            target.delete();
+        }
+    }
+
+    public void testForwardFileToStalledChannel() throws Exception {
+        SOAPMessage sent = MessageHelper.createMessage(PARTS, PART_SIZE);
+        File source = File.createTempFile("saaj", ".msg");
+        try {
+            FileOutputStream out = new FileOutputStream(source);
+            try {
+                sent.writeTo(out);
+            } finally {
+                out.close();
+            }
+            FileInputStream in = new FileInputStream(source);
+            try {
+                final MessageImpl msg = (MessageImpl) MessageFactory.newInstance()
+                        .createMessage(MessageHelper.headers(sent), in);
+                msg.getSOAPBody();
+                msg.setAttachmentPassthrough(true);
+                final Exception[] failure = new Exception[1];
+                Thread writer = new Thread() {
+                    @Override
+                    public void run() {
+                        try {
+                            msg.writeTo(new StalledChannel(PART_SIZE));
+                        } catch (Exception ex) {
+                            failure[0] = ex;
+                        }
+                    }
+                };
+                writer.setDaemon(true);
+                writer.start();
+                writer.join(10000);
+                assertFalse("writing to a stalled channel should fail", writer.isAlive());
+                assertNotNull(failure[0]);
+            } finally {
+                in.close();
+            }
+        } finally {
+            source.delete();
+        }
+    }
+
+    public void testForwardSharedBuffer() throws Exception {
+        SOAPMessage sent = MessageHelper.createMessage(PARTS, PART_SIZE);
+        byte[] bytes = MessageHelper.toBytes(sent);
+        MessageImpl msg = (MessageImpl) MessageFactory.newInstance().createMessage(
+                MessageHelper.headers(sent), new ByteInputStream(bytes, bytes.length));
+        msg.setAttachmentPassthrough(true);
+        msg.saveChanges();
+        assertForwarded(msg, MessageHelper.toBytes(msg));
+        // a shared source is not consumed by writing it
+        assertForwarded(msg, MessageHelper.toBytes(msg));
+
+        // the received message is still intact
+        int i = 0;
+        for (Iterator<AttachmentPart> it = msg.getAttachments(); it.hasNext(); i++) {
+            assertTrue(Arrays.equals(MessageHelper.content(i, PART_SIZE),
+                    it.next().getRawContentBytes()));
+        }
+        assertEquals(PARTS, i);
+    }
+
+    private static void assertForwarded(SOAPMessage msg, byte[] forwarded) throws Exception {
+        SOAPMessage received = MessageFactory.newInstance().createMessage(
+                MessageHelper.headers(msg), new ByteArrayInputStream(forwarded));
+        assertEquals(PARTS, received.countAttachments());
+        int i = 0;
+        for (Iterator<AttachmentPart> it = received.getAttachments(); it.hasNext(); i++) {
+            AttachmentPart ap = it.next();
+            assertEquals(MessageHelper.contentId(i), ap.getContentId());
+            assertTrue(Arrays.equals(MessageHelper.content(i, PART_SIZE), ap.getRawContentBytes()));
+        }
+    }
+
+    private static byte[] readFile(File file) throws Exception {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        InputStream in = new FileInputStream(file);
+        try {
+            byte[] buf = new byte[8192];
+            for (int n; (n = in.read(buf)) != -1;) {
+                bos.write(buf, 0, n);
+            }
+        } finally {
+            in.close();
+        }
+        return bos.toByteArray();
+    }
+
+    private static class CountingFileInputStream extends FileInputStream {
+        long count;
+
+        CountingFileInputStream(File file) throws Exception {
+            super(file);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+    }
+
+    /**
+     * Takes the given number of bytes, then nothing at all.
+     */
+    private static class StalledChannel implements WritableByteChannel {
+        private long room;
+
+        StalledChannel(long room) {
+            this.room = room;
+        }
+
+        @Override
+        public int write(ByteBuffer src) {
+            int n = (int) Math.min(room, src.remaining());
+            src.position(src.position() + n);
+            room -= n;
+            return n;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,271 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package mime;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import javax.activation.DataSource;
+import javax.xml.soap.AttachmentPart;
+import javax.xml.soap.MessageFactory;
+import javax.xml.soap.SOAPMessage;
+
+import com.sun.xml.messaging.saaj.packaging.mime.internet.AttachmentStore;
+import com.sun.xml.messaging.saaj.packaging.mime.internet.BMMimeMultipart;
+import com.sun.xml.messaging.saaj.packaging.mime.internet.ContentType;
+import com.sun.xml.messaging.saaj.packaging.mime.internet.MimeMultipart;
+import com.sun.xml.messaging.saaj.packaging.mime.internet.SharedInputStream;
+import com.sun.xml.messaging.saaj.soap.AttachmentPartImpl;
+import com.sun.xml.messaging.saaj.soap.MessageImpl;
+
+import util.MessageHelper;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests spilling attachment bodies to temporary files.
+ */
+public class AttachmentStoreTest extends TestCase {
+
+    private static final String CT = "multipart/related; boundary=\"bnd\"";
+    private static final int THRESHOLD = 1024;
+
+    private File dir;
+
+    public AttachmentStoreTest(String name) {
+        super(name);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        dir = File.createTempFile("saaj", "store");
+        assertTrue(dir.delete());
+        assertTrue(dir.mkdir());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                f.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    public void testBuffer() throws Exception {
+        for (boolean mapped : new boolean[] {false, true}) {
+            AttachmentStore store = new AttachmentStore(THRESHOLD, dir, mapped);
+            byte[] small = content(THRESHOLD);
+            byte[] large = content(10 * THRESHOLD + 17);
+
+            InputStream in = store(store, small);
+            assertEquals(0, dir.list().length);
+            assertTrue(Arrays.equals(small, read(in)));
+
+            in = store(store, large);
+            assertEquals(1, dir.list().length);
+            assertTrue(Arrays.equals(large, read(in)));
+            assertTrue(Arrays.equals(Arrays.copyOfRange(large, 100, 3000),
+                    read(((SharedInputStream) in).newStream(100, 3000))));
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            ((SharedInputStream) in).writeTo(5, -1, bos);
+            assertTrue(Arrays.equals(Arrays.copyOfRange(large, 5, large.length),
+                    bos.toByteArray()));
+
+            File copy = new File(dir, "copy");
+            FileOutputStream fos = new FileOutputStream(copy);
+            try {
+                ((SharedInputStream) in).writeTo(0, -1, fos);
+            } finally {
+                fos.close();
+            }
+            assertTrue(Arrays.equals(large, read(new FileInputStream(copy))));
+            assertTrue(copy.delete());
+
+            assertEquals(1, store.getSpilledParts());
+            assertEquals(large.length, store.getSpilledBytes());
+            assertEquals(small.length, store.getMemoryBytes());
+
+            store.close();
+            assertEquals(0, dir.list().length);
+        }
+    }
+
+    public void testMultipartParsing() throws Exception {
+        byte[][] bodies = {content(10), content(3 * THRESHOLD), content(0)};
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        for (byte[] body : bodies) {
+            bos.write("--bnd\r\nContent-Type: application/octet-stream\r\n\r\n".getBytes("US-ASCII"));
+            bos.write(body);
+            bos.write("\r\n".getBytes("US-ASCII"));
+        }
+        bos.write("--bnd--\r\n".getBytes("US-ASCII"));
+        byte[] bytes = bos.toByteArray();
+
+        MimeMultipart[] multiparts = {
+            new BMMimeMultipart(dataSource(bytes), new ContentType(CT)),
+            new MimeMultipart(dataSource(bytes), new ContentType(CT))
+        };
+        for (MimeMultipart mp : multiparts) {
+            AttachmentStore store = new AttachmentStore(THRESHOLD, dir, false);
+            mp.setAttachmentStore(store);
+            assertEquals(bodies.length, mp.getCount());
+            for (int i = 0; i < bodies.length; i++) {
+                assertTrue("part " + i,
+                        Arrays.equals(bodies[i], read(mp.getBodyPart(i).getRawInputStream())));
+            }
+            assertEquals(1, store.getSpilledParts());
+            assertEquals(3 * THRESHOLD, store.getSpilledBytes());
+            assertEquals(10, store.getMemoryBytes());
+            assertEquals(1, dir.list().length);
+            store.close();
+            assertEquals(0, dir.list().length);
+        }
+    }
+
+    public void testAttachmentContent() throws Exception {
+        AttachmentStore store = new AttachmentStore(THRESHOLD, dir, true);
+        byte[] content = content(5 * THRESHOLD);
+        AttachmentPartImpl ap = new AttachmentPartImpl();
+        ap.setAttachmentStore(store);
+        ap.setRawContent(new ByteArrayInputStream(content), "application/octet-stream");
+        assertEquals(1, store.getSpilledParts());
+        assertTrue(Arrays.equals(content, read(ap.getRawContent())));
+        assertTrue(Arrays.equals(content, ap.getRawContentBytes()));
+        store.close();
+        assertEquals(0, dir.list().length);
+    }
+
+    public void testMessageAfterDispose() throws Exception {
+        System.setProperty(AttachmentStore.MEMORY_THRESHOLD, String.valueOf(THRESHOLD));
+        System.setProperty(AttachmentStore.TEMP_DIR, dir.getPath());
+        try {
+            byte[] content = content(5 * THRESHOLD);
+            MessageImpl msg = (MessageImpl) MessageFactory.newInstance().createMessage();
+            AttachmentStore store = msg.getAttachmentStore();
+            addAttachment(msg, content);
+            assertEquals(1, dir.list().length);
+            msg.dispose();
+            assertEquals(0, dir.list().length);
+
+            // the message is used again with a store of its own
+            msg.removeAllAttachments();
+            assertNotSame(store, msg.getAttachmentStore());
+            addAttachment(msg, content);
+            assertEquals(1, dir.list().length);
+            msg.saveChanges();
+            SOAPMessage received = MessageFactory.newInstance().createMessage(
+                    MessageHelper.headers(msg),
+                    new ByteArrayInputStream(MessageHelper.toBytes(msg)));
+            assertTrue(Arrays.equals(content,
+                    received.getAttachments().next().getRawContentBytes()));
+            ((MessageImpl) received).dispose();
+            msg.dispose();
+            assertEquals(0, dir.list().length);
+        } finally {
+            System.clearProperty(AttachmentStore.MEMORY_THRESHOLD);
+            System.clearProperty(AttachmentStore.TEMP_DIR);
+        }
+    }
+
+    private static void addAttachment(SOAPMessage msg, byte[] content) throws Exception {
+        AttachmentPart ap = msg.createAttachmentPart();
+        ap.setRawContent(new ByteArrayInputStream(content), "application/octet-stream");
+        msg.addAttachmentPart(ap);
+    }
+
+    private static InputStream store(AttachmentStore store, byte[] content) throws Exception {
+        AttachmentStore.Buffer buf = store.newBuffer();
+        buf.write(content, 0, 1);
+        buf.write(new ByteArrayInputStream(content, 1, content.length - 1));
+        buf.close();
+        return buf.newInputStream();
+    }
+
+    private static byte[] content(int size) {
+        byte[] content = new byte[size];
+        for (int i = 0; i < size; i++) {
+            content[i] = (byte) ('a' + i % 23);
+        }
+        return content;
+    }
+
+    private static byte[] read(InputStream in) throws Exception {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        byte[] buf = new byte[700];
+        for (int n; (n = in.read(buf)) != -1;) {
+            bos.write(buf, 0, n);
+        }
+        in.close();
+        return bos.toByteArray();
+    }
+
+    private static DataSource dataSource(final byte[] bytes) {
+        return new DataSource() {
+            @Override
+            public InputStream getInputStream() {
+                return new ByteArrayInputStream(bytes);
+            }
+
+            @Override
+            public OutputStream getOutputStream() {
+                return null;
+            }
+
+            @Override
+            public String getContentType() {
+                return CT;
+            }
+
+            @Override
+            public String getName() {
+                return "";
+            }
+        };
+    }
+}
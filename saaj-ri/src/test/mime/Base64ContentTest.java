@@ -0,0 +1,127 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package mime;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import javax.xml.soap.AttachmentPart;
+import javax.xml.soap.MessageFactory;
+import javax.xml.soap.SOAPMessage;
+
+import com.sun.xml.messaging.saaj.packaging.mime.util.BASE64EncoderInputStream;
+import com.sun.xml.messaging.saaj.packaging.mime.util.BASE64EncoderStream;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the streaming base64 content of attachments.
+ */
+public class Base64ContentTest extends TestCase {
+
+    public Base64ContentTest(String name) {
+        super(name);
+    }
+
+    public void testEncoderInputStream() throws Exception {
+        int[] sizes = {0, 1, 2, 3, 56, 57, 58, 114, 1000, 65537};
+        for (int size : sizes) {
+            byte[] content = content(size);
+            ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            OutputStream encoder = new BASE64EncoderStream(expected);
+            encoder.write(content);
+            encoder.flush();
+
+            byte[] actual = read(new BASE64EncoderInputStream(
+                    new ByteArrayInputStream(content)), 1 + size % 100);
+            assertTrue("size " + size, Arrays.equals(expected.toByteArray(), actual));
+        }
+    }
+
+    public void testEncodesAsRead() throws Exception {
+        final int[] consumed = new int[1];
+        InputStream source = new ByteArrayInputStream(content(1 << 20)) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                int n = super.read(b, off, len);
+                consumed[0] += Math.max(n, 0);
+                return n;
+            }
+        };
+        InputStream in = new BASE64EncoderInputStream(source);
+        byte[] buf = new byte[100];
+        assertEquals(100, in.read(buf));
+        assertTrue("consumed " + consumed[0], consumed[0] < 8192);
+    }
+
+    public void testRoundTrip() throws Exception {
+        SOAPMessage msg = MessageFactory.newInstance().createMessage();
+        AttachmentPart ap = msg.createAttachmentPart();
+        byte[] content = content(300 * 1024 + 1);
+        ap.setRawContentBytes(content, 0, content.length, "application/octet-stream");
+        byte[] encoded = read(ap.getBase64Content(), 8192);
+
+        AttachmentPart copy = msg.createAttachmentPart();
+        copy.setBase64Content(new ByteArrayInputStream(encoded), "application/octet-stream");
+        assertTrue(Arrays.equals(content, copy.getRawContentBytes()));
+        assertTrue(Arrays.equals(encoded, read(copy.getBase64Content(), 8192)));
+    }
+
+    private static byte[] content(int size) {
+        byte[] content = new byte[size];
+        for (int i = 0; i < size; i++) {
+            content[i] = (byte) (i * 31 + (i >> 8));
+        }
+        return content;
+    }
+
+    private static byte[] read(InputStream in, int chunk) throws Exception {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        byte[] buf = new byte[chunk];
+        for (int n; (n = in.read(buf)) != -1;) {
+            bos.write(buf, 0, n);
+        }
+        in.close();
+        return bos.toByteArray();
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package mime;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import javax.activation.DataSource;
+
+import com.sun.xml.messaging.saaj.packaging.mime.MessagingException;
+import com.sun.xml.messaging.saaj.packaging.mime.internet.BMMimeMultipart;
+import com.sun.xml.messaging.saaj.packaging.mime.internet.ContentType;
+import com.sun.xml.messaging.saaj.packaging.mime.internet.MimeBodyPart;
+import com.sun.xml.messaging.saaj.packaging.mime.internet.SharedByteArrayInputStream;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the boundary scanner of BMMimeMultipart.
+ */
+public class BoundaryScanTest extends TestCase {
+
+    private static final String CT = "multipart/related; boundary=\"bnd\"";
+
+    public BoundaryScanTest(String name) {
+        super(name);
+    }
+
+    public void testLineBreaks() throws Exception {
+        String msg = "preamble\r\n--bnd\r\n"
+                + "Content-Type: text/plain\r\n\r\n"
+                + "crlf\r\n--bnd \t\r\n"
+                + "Content-Type: text/plain\r\n\r\n"
+                + "lf only\n--bnd\r\r\n"
+                + "Content-Type: text/plain\r\n\r\n"
+                + "\r\n--bnd\r\n"
+                + "Content-Type: text/plain\r\n\r\n"
+                + "last\r\n\r\n--bnd--\r\nepilogue";
+        String[] expected = {"crlf", "lf only", "", "last\r\n"};
+        for (boolean shared : new boolean[] {false, true}) {
+            BMMimeMultipart mp = parse(msg.getBytes("US-ASCII"), shared);
+            assertEquals(expected.length, mp.getCount());
+            for (int i = 0; i < expected.length; i++) {
+                assertEquals(expected[i], new String(content(mp, i), "US-ASCII"));
+            }
+        }
+    }
+
+    public void testLargeParts() throws Exception {
+        // bodies around the size of the scan buffer, with line breaks
+        // falling on both sides of its end
+        int[] sizes = {65536 - 40, 65536 - 7, 65536, 65536 + 3, 3 * 65536 + 1};
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        bos.write("--bnd\r\n".getBytes("US-ASCII"));
+        byte[][] bodies = new byte[sizes.length][];
+        for (int i = 0; i < sizes.length; i++) {
+            byte[] body = new byte[sizes[i]];
+            for (int j = 0; j < body.length; j++) {
+                body[j] = (byte) ((j % 61 == 60) ? '\n' : (j % 61 == 59) ? '\r' : '-');
+            }
+            bodies[i] = body;
+            bos.write("Content-Type: application/octet-stream\r\n\r\n".getBytes("US-ASCII"));
+            bos.write(body);
+            bos.write((i == sizes.length - 1 ? "\r\n--bnd--\r\n" : "\r\n--bnd\r\n").getBytes("US-ASCII"));
+        }
+        for (boolean shared : new boolean[] {false, true}) {
+            BMMimeMultipart mp = parse(bos.toByteArray(), shared);
+            assertEquals(sizes.length, mp.getCount());
+            for (int i = 0; i < sizes.length; i++) {
+                assertTrue("part " + i, Arrays.equals(bodies[i], content(mp, i)));
+            }
+        }
+    }
+
+    public void testLineFeedsBeforeBoundary() throws Exception {
+        // only the last line break belongs to the delimiter, wherever the
+        // body ends relative to the scan
+        for (int n = 0; n < 80; n++) {
+            char[] text = new char[n];
+            Arrays.fill(text, 'x');
+            String body = new String(text) + "\n";
+            String msg = "--bnd\r\nContent-Type: text/plain\r\n\r\n" + body + "\n--bnd--\r\n";
+            for (boolean shared : new boolean[] {false, true}) {
+                BMMimeMultipart mp = parse(msg.getBytes("US-ASCII"), shared);
+                assertEquals("length " + n, body, new String(content(mp, 0), "US-ASCII"));
+            }
+        }
+    }
+
+    public void testEmptyBodyWithoutLineBreak() throws Exception {
+        String msg = "--bnd\r\nContent-Type: text/plain\r\n\r\n--bnd\r\n"
+                + "Content-Type: text/plain\r\n\r\nsecond\r\n--bnd--\r\n";
+        for (boolean shared : new boolean[] {false, true}) {
+            BMMimeMultipart mp = parse(msg.getBytes("US-ASCII"), shared);
+            assertEquals(2, mp.getCount());
+            assertEquals(0, content(mp, 0).length);
+            assertEquals("second", new String(content(mp, 1), "US-ASCII"));
+        }
+    }
+
+    public void testPartHeaders() throws Exception {
+        // part headers are read from where the scanner left the stream
+        String msg = "--bnd\n"
+                + "Content-Type: text/plain;\r\n\tcharset=us-ascii\n"
+                + ": no name\r"
+                + "X-Bare\r\r\n"
+                + "\r\n"
+                + "body\r\n--bnd--";
+        for (boolean shared : new boolean[] {false, true}) {
+            BMMimeMultipart mp = parse(msg.getBytes("US-ASCII"), shared);
+            MimeBodyPart part = mp.getBodyPart(0);
+            assertEquals("text/plain;\r\n\tcharset=us-ascii", part.getHeader("Content-Type", null));
+            assertEquals("no name", part.getHeader("", null));
+            assertEquals("X-Bare", part.getHeader("X-Bare", null));
+            assertEquals("body", new String(content(mp, 0), "US-ASCII"));
+        }
+    }
+
+    public void testBoundaryInsideLine() throws Exception {
+        String msg = "--bnd\r\nContent-Type: text/plain\r\n\r\nnot a --bnd\r\n--bnd--\r\n";
+        BMMimeMultipart mp = parse(msg.getBytes("US-ASCII"), false);
+        try {
+            mp.getCount();
+            fail("boundary without a preceding line break accepted");
+        } catch (MessagingException expected) {
+        }
+    }
+
+    private static BMMimeMultipart parse(final byte[] bytes, final boolean shared)
+            throws Exception {
+        return new BMMimeMultipart(new DataSource() {
+            @Override
+            public InputStream getInputStream() {
+                return shared ? new SharedByteArrayInputStream(bytes, 0, bytes.length)
+                        : new ByteArrayInputStream(bytes);
+            }
+
+            @Override
+            public OutputStream getOutputStream() {
+                return null;
+            }
+
+            @Override
+            public String getContentType() {
+                return CT;
+            }
+
+            @Override
+            public String getName() {
+                return "";
+            }
+        }, new ContentType(CT));
+    }
+
+    private static byte[] content(BMMimeMultipart mp, int i) throws Exception {
+        InputStream in = mp.getBodyPart(i).getRawInputStream();
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        byte[] buf = new byte[8192];
+        for (int n; (n = in.read(buf)) != -1;) {
+            bos.write(buf, 0, n);
+        }
+        return bos.toByteArray();
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package mime;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+
+import javax.activation.DataHandler;
+import javax.activation.FileDataSource;
+import javax.xml.soap.AttachmentPart;
+import javax.xml.soap.MessageFactory;
+import javax.xml.soap.MimeHeaders;
+import javax.xml.soap.SOAPMessage;
+
+import com.sun.xml.messaging.saaj.util.ByteInputStream;
+
+import util.MessageHelper;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the Content-Length computed by saveChanges for messages with
+ * attachments.
+ */
+public class ContentLengthTest extends TestCase {
+
+    public ContentLengthTest(String name) {
+        super(name);
+    }
+
+    public void testRawContent() throws Exception {
+        SOAPMessage msg = MessageHelper.createMessage(3, 2000);
+        msg.saveChanges();
+        assertContentLength(msg);
+    }
+
+    public void testFileDataSource() throws Exception {
+        File file = File.createTempFile("saaj", ".bin");
+        try {
+            OutputStream out = new FileOutputStream(file);
+            try {
+                out.write(MessageHelper.content(0, 5000));
+            } finally {
+                out.close();
+            }
+            SOAPMessage msg = MessageHelper.createMessage(3, 2000);
+            AttachmentPart ap = msg.createAttachmentPart(
+                    new DataHandler(new FileDataSource(file)));
+            ap.setContentId("<file@example.org>");
+            msg.addAttachmentPart(ap);
+            msg.saveChanges();
+            assertContentLength(msg);
+        } finally {
+            file.delete();
+        }
+    }
+
+    public void testReceivedMessage() throws Exception {
+        SOAPMessage sent = MessageHelper.createMessage(3, 2000);
+        byte[] bytes = MessageHelper.toBytes(sent);
+
+        SOAPMessage msg = MessageFactory.newInstance().createMessage(
+                MessageHelper.headers(sent), new ByteInputStream(bytes, bytes.length));
+        msg.getSOAPBody().addChildElement("forwarded", "p", "urn:p");
+        msg.saveChanges();
+        assertContentLength(msg);
+
+        msg = MessageFactory.newInstance().createMessage(
+                MessageHelper.headers(sent), new ByteArrayInputStream(bytes));
+        assertEquals(3, msg.countAttachments());
+        msg.saveChanges();
+        assertContentLength(msg);
+    }
+
+    public void testXOPMessage() throws Exception {
+        String boundary = "xop-boundary";
+        String root = "<?xml version='1.0' encoding='UTF-8'?>"
+                + "<S:Envelope xmlns:S=\"http://schemas.xmlsoap.org/soap/envelope/\">"
+                + "<S:Body><p:data xmlns:p=\"urn:p\">"
+                + "<xop:Include xmlns:xop=\"http://www.w3.org/2004/08/xop/include\""
+                + " href=\"cid:data@example.org\"/></p:data></S:Body></S:Envelope>";
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        bos.write(("--" + boundary + "\r\n"
+                + "Content-Type: application/xop+xml; charset=utf-8; type=\"text/xml\"\r\n"
+                + "Content-ID: <root@example.org>\r\n\r\n"
+                + root + "\r\n"
+                + "--" + boundary + "\r\n"
+                + "Content-Type: application/octet-stream\r\n"
+                + "Content-ID: <data@example.org>\r\n\r\n").getBytes("US-ASCII"));
+        bos.write(MessageHelper.content(1, 3000));
+        bos.write(("\r\n--" + boundary + "--").getBytes("US-ASCII"));
+
+        MimeHeaders headers = new MimeHeaders();
+        headers.addHeader("Content-Type", "multipart/related; type=\"application/xop+xml\";"
+                + " start=\"<root@example.org>\"; start-info=\"text/xml\";"
+                + " boundary=\"" + boundary + "\"");
+        SOAPMessage msg = MessageFactory.newInstance().createMessage(
+                headers, new ByteArrayInputStream(bos.toByteArray()));
+        msg.getSOAPPart().getEnvelope().addHeader().addChildElement("forwarded", "p", "urn:p");
+        msg.saveChanges();
+        assertContentLength(msg);
+    }
+
+    public void testUnknownSize() throws Exception {
+        SOAPMessage msg = MessageHelper.createMessage(3, 2000);
+        // the size of an object is only known once it is written
+        msg.addAttachmentPart(msg.createAttachmentPart("text", "text/plain"));
+        msg.saveChanges();
+        assertNull(msg.getMimeHeaders().getHeader("Content-Length"));
+        assertTrue(MessageHelper.toBytes(msg).length > 0);
+    }
+
+    private static void assertContentLength(SOAPMessage msg) throws Exception {
+        String[] length = msg.getMimeHeaders().getHeader("Content-Length");
+        assertNotNull(length);
+        assertEquals(1, length.length);
+        assertEquals(MessageHelper.toBytes(msg).length, Long.parseLong(length[0]));
+    }
+}
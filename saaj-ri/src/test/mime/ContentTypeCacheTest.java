@@ -0,0 +1,104 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package mime;
+
+import com.sun.xml.messaging.saaj.packaging.mime.internet.ContentType;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the shared, cached ContentType instances.
+ */
+public class ContentTypeCacheTest extends TestCase {
+
+    public ContentTypeCacheTest(String name) {
+        super(name);
+    }
+
+    public void testSharedInstance() throws Exception {
+        String header = "multipart/related; type=\"text/xml\"; boundary=\"b1\"";
+        ContentType ct = ContentType.getInstance(header);
+        assertTrue(ct.isReadOnly());
+        assertEquals("multipart/related", ct.getBaseType());
+        assertEquals("b1", ct.getParameter("boundary"));
+
+        try {
+            ct.setParameter("boundary", "b2");
+            fail();
+        } catch (UnsupportedOperationException expected) {
+        }
+        try {
+            ct.getParameterList().set("type", "application/soap+xml");
+            fail();
+        } catch (UnsupportedOperationException expected) {
+        }
+        assertEquals("b1", ct.getParameter("boundary"));
+
+        ContentType copy = ct.copy();
+        assertFalse(copy.isReadOnly());
+        copy.setParameter("boundary", "b2");
+        assertEquals("b2", copy.getParameter("boundary"));
+        assertEquals("b1", ct.getParameter("boundary"));
+
+        ContentType plain = ContentType.getInstance("text/xml");
+        assertNull(plain.getParameter("charset"));
+        plain.copy().setParameter("charset", "utf-8");
+    }
+
+    public void testMultipartNotCached() throws Exception {
+        String header = "multipart/related; type=\"text/xml\"; boundary=\"b1\"";
+        assertNotSame(ContentType.getInstance(header), ContentType.getInstance(header));
+        String start = "multipart/related; type=\"application/xop+xml\"; start=\"<root>\"";
+        assertNotSame(ContentType.getInstance(start), ContentType.getInstance(start));
+
+        String plain = "application/soap+xml; charset=utf-8";
+        assertSame(ContentType.getInstance(plain), ContentType.getInstance(plain));
+    }
+
+    public void testRecentlyUsedAreKept() throws Exception {
+        String hot = "text/xml; charset=iso-8859-1";
+        ContentType ct = ContentType.getInstance(hot);
+        for (int i = 0; i < 1000; i++) {
+            assertEquals("v" + i,
+                    ContentType.getInstance("text/plain; v=v" + i).getParameter("v"));
+            assertSame(ct, ContentType.getInstance(hot));
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package mime;
+
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.activation.CommandInfo;
+import javax.activation.CommandMap;
+import javax.activation.DataContentHandler;
+import javax.activation.DataSource;
+import javax.activation.MailcapCommandMap;
+import javax.xml.soap.AttachmentPart;
+import javax.xml.soap.MessageFactory;
+import javax.xml.soap.SOAPMessage;
+import javax.xml.transform.stream.StreamSource;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests that attachment content is converted by the SAAJ handlers without
+ * going through the default CommandMap.
+ */
+public class DataContentHandlerTest extends TestCase {
+
+    public DataContentHandlerTest(String name) {
+        super(name);
+    }
+
+    public void testMailcapRegisteredOnce() throws Exception {
+        SOAPMessage msg = MessageFactory.newInstance().createMessage();
+        for (int i = 0; i < 10; i++) {
+            msg.createAttachmentPart();
+        }
+        CommandMap map = CommandMap.getDefaultCommandMap();
+        assertTrue(map instanceof MailcapCommandMap);
+        int count = 0;
+        for (CommandInfo info : map.getAllCommands("application/fastinfoset")) {
+            if ("com.sun.xml.messaging.saaj.soap.FastInfosetDataContentHandler".equals(
+                    info.getCommandClass())) {
+                count++;
+            }
+        }
+        assertEquals(1, count);
+    }
+
+    public void testLocalHandlers() throws Exception {
+        SOAPMessage msg = MessageFactory.newInstance().createMessage();
+        CommandMap original = CommandMap.getDefaultCommandMap();
+        CountingCommandMap counting = new CountingCommandMap(original);
+        CommandMap.setDefaultCommandMap(counting);
+        try {
+            AttachmentPart text = msg.createAttachmentPart();
+            text.setContent("text", "text/plain; charset=utf-8");
+            assertEquals("text", text.getContent());
+
+            AttachmentPart xml = msg.createAttachmentPart();
+            byte[] bytes = "<a/>".getBytes("UTF-8");
+            xml.setRawContentBytes(bytes, 0, bytes.length, "TEXT/XML");
+            assertTrue(xml.getContent() instanceof StreamSource);
+            assertEquals(0, counting.created.get());
+
+            // other types are left to the default map
+            AttachmentPart other = msg.createAttachmentPart();
+            other.setRawContentBytes(bytes, 0, bytes.length, "application/x-other");
+            assertTrue(other.getContent() instanceof InputStream);
+            assertTrue(counting.created.get() > 0);
+        } finally {
+            CommandMap.setDefaultCommandMap(original);
+        }
+    }
+
+    private static final class CountingCommandMap extends CommandMap {
+        private final CommandMap map;
+        final AtomicInteger created = new AtomicInteger();
+
+        CountingCommandMap(CommandMap map) {
+            this.map = map;
+        }
+
+        @Override
+        public DataContentHandler createDataContentHandler(String mimeType) {
+            created.incrementAndGet();
+            return map.createDataContentHandler(mimeType);
+        }
+
+        @Override
+        public DataContentHandler createDataContentHandler(String mimeType, DataSource ds) {
+            created.incrementAndGet();
+            return map.createDataContentHandler(mimeType, ds);
+        }
+
+        @Override
+        public CommandInfo[] getPreferredCommands(String mimeType) {
+            return map.getPreferredCommands(mimeType);
+        }
+
+        @Override
+        public CommandInfo[] getAllCommands(String mimeType) {
+            return map.getAllCommands(mimeType);
+        }
+
+        @Override
+        public CommandInfo getCommand(String mimeType, String cmdName) {
+            return map.getCommand(mimeType, cmdName);
+        }
+    }
+}
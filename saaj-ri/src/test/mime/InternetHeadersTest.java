@@ -0,0 +1,278 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package mime;
+
+import com.sun.xml.messaging.saaj.packaging.mime.Header;
+import com.sun.xml.messaging.saaj.packaging.mime.internet.InternetHeaders;
+import com.sun.xml.messaging.saaj.packaging.mime.internet.SharedByteArrayInputStream;
+import com.sun.xml.messaging.saaj.packaging.mime.util.LineInputStream;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests header parsing from markable, shared and plain streams.
+ */
+public class InternetHeadersTest extends TestCase {
+
+    private static final String HEADERS =
+            "Content-Type: text/xml; charset=utf-8\r\n" +
+            "Content-ID:   <part1@example.com>\r\n" +
+            "X-Folded: first\r\n" +
+            "\tsecond\r\n" +
+            "Content-Description:  \tkeeps a space\r\n" +
+            "Content-Transfer-Encoding: binary\r\n" +
+            "\r\n";
+
+    private static final String BODY = "<body/>";
+
+    public InternetHeadersTest(String name) {
+        super(name);
+    }
+
+    public void testMarkableStream() throws Exception {
+        InputStream in = new BufferedInputStream(stream(HEADERS + BODY), 16);
+        check(new InternetHeaders(in));
+        assertEquals(BODY, rest(in));
+    }
+
+    public void testSharedStream() throws Exception {
+        byte[] b = ("garbage" + HEADERS + BODY).getBytes("ISO-8859-1");
+        InputStream in = new SharedByteArrayInputStream(b, 7, b.length - 7);
+        check(new InternetHeaders(in));
+        assertEquals(BODY, rest(in));
+    }
+
+    public void testPlainStream() throws Exception {
+        InputStream in = new FilterInputStream(stream(HEADERS + BODY)) {
+            @Override
+            public boolean markSupported() {
+                return false;
+            }
+        };
+        check(new InternetHeaders(in));
+    }
+
+    public void testLineTerminators() throws Exception {
+        String headers = "A: 1\n" + "B: 2\r" + "C: 3\r\r\n" + "D: 4\r\rE: 5\r\n" + "\n";
+        InputStream in = new BufferedInputStream(stream(headers + BODY));
+        InternetHeaders h = new InternetHeaders(in);
+        assertEquals("1", h.getHeader("a", null));
+        assertEquals("2", h.getHeader("B", null));
+        assertEquals("3", h.getHeader("C", null));
+        assertEquals("4", h.getHeader("D", null));
+        assertEquals("5", h.getHeader("E", null));
+        assertEquals(BODY, rest(in));
+    }
+
+    public void testHeadersUntilEOF() throws Exception {
+        InputStream in = stream("A: 1\r\nB: 2");
+        InternetHeaders h = new InternetHeaders(in);
+        assertEquals("2", h.getHeader("B", null));
+        assertEquals(-1, in.read());
+    }
+
+    public void testModifyLoadedHeader() throws Exception {
+        InternetHeaders h = new InternetHeaders(stream(HEADERS));
+        h.setHeader("content-type", "text/plain");
+        assertEquals("text/plain", h.getHeader("Content-Type", null));
+        assertEquals("Content-Type: text/plain", h.getAllHeaderLines().get(0));
+        h.addHeaderLine(" more");
+        List<String> lines = h.getAllHeaderLines();
+        assertEquals("Content-Transfer-Encoding: binary\r\n more",
+                lines.get(lines.size() - 1));
+    }
+
+    public void testReadLineRepositionsStream() throws Exception {
+        // a bare CR used to need a PushbackInputStream, which kept
+        // the next byte away from the underlying stream
+        InputStream in = new BufferedInputStream(stream("line1\rline2\r\nrest"));
+        LineInputStream lin = new LineInputStream(in);
+        assertEquals("line1", lin.readLine());
+        assertEquals('l', in.read());
+        assertEquals("ine2", lin.readLine());
+        assertEquals("rest", lin.readLine());
+        assertNull(lin.readLine());
+    }
+
+    public void testBodyNotRetainedByMark() throws Exception {
+        BufferSizeStream in = new BufferSizeStream(stream(HEADERS),
+                new ByteArrayInputStream(new byte[1 << 20]));
+        check(new InternetHeaders(in));
+        assertEquals(1 << 20, drain(in));
+        assertTrue("buffer grew to " + in.bufferSize(),
+                in.bufferSize() <= 2 * LineInputStream.MARK_LIMIT);
+    }
+
+    public void testLineNotRetainedByMark() throws Exception {
+        BufferSizeStream in = new BufferSizeStream(stream("line\r\n"),
+                new ByteArrayInputStream(new byte[1 << 20]));
+        assertEquals("line", new LineInputStream(in).readLine());
+        assertEquals(1 << 20, drain(in));
+        assertTrue("buffer grew to " + in.bufferSize(),
+                in.bufferSize() <= 2 * LineInputStream.MARK_LIMIT);
+    }
+
+    public void testHeadersLongerThanMarkLimit() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        char[] value = new char[LineInputStream.MARK_LIMIT + 100];
+        Arrays.fill(value, 'v');
+        sb.append("X-Long: ").append(value).append("\r\n");
+        for (int i = 0; i < 100; i++)
+            sb.append("X-Header-").append(i).append(": value ").append(i).append("\r\n");
+        InputStream in = new BufferedInputStream(stream(sb + HEADERS + BODY));
+        InternetHeaders h = new InternetHeaders(in);
+        assertEquals(new String(value), h.getHeader("X-Long", null));
+        assertEquals("value 99", h.getHeader("X-Header-99", null));
+        assertEquals("first\r\n\tsecond", h.getHeader("X-Folded", null));
+        assertEquals(BODY, rest(in));
+    }
+
+    public void testFoldedLines() throws Exception {
+        assertEquals("[A=1\r\n\tfolded\r\n B][C=3\r\n ]",
+                parseAll("A: 1\r\n\tfolded\r\n B\r\nC: 3\r\n \r\n\r\n"));
+        // a continuation before any header starts a header of its own
+        assertEquals("[leading=fold][A=1]",
+                parseAll(" leading: fold\r\nA: 1\r\n\r\n"));
+    }
+
+    public void testBareLineEndings() throws Exception {
+        assertEquals("[A=1][B=2][C=3][D=4]",
+                parseAll("A: 1\nB: 2\rC: 3\r\r\nD: 4\n\r\n"));
+        assertEquals("[A=1]", parseAll("A: 1\r\n\n"));
+    }
+
+    public void testEmptyHeaderNames() throws Exception {
+        assertEquals("[=empty][=][nocolon=nocolon][A=]",
+                parseAll(": empty\r\n:\r\nnocolon\r\nA:\r\n\r\n"));
+    }
+
+    public void testUnterminatedLastLine() throws Exception {
+        assertEquals("[A=1][B=2]", parseAll("A: 1\r\nB: 2"));
+        assertEquals("[A=1][B=2]", parseAll("A: 1\r\nB: 2\r"));
+    }
+
+    private static void check(InternetHeaders h) {
+        assertEquals("text/xml; charset=utf-8", h.getHeader("Content-Type", null));
+        assertEquals("<part1@example.com>", h.getHeader("Content-Id", null));
+        assertEquals("first\r\n\tsecond", h.getHeader("X-Folded", null));
+        assertEquals("  \tkeeps a space", h.getHeader("Content-Description", null));
+        assertEquals("binary", h.getHeader("content-transfer-encoding", null));
+
+        List<Header> all = (List) h.getAllHeaders();
+        assertEquals(5, all.size());
+        assertEquals("Content-ID", all.get(1).getName());
+        assertEquals("X-Folded: first\r\n\tsecond", h.getAllHeaderLines().get(2));
+    }
+
+    /**
+     * Parses the headers, followed by {@link #BODY} when they are terminated,
+     * from a plain, a markable and a shared stream, checks that all three
+     * agree and leave the body unread, and returns the headers as a string.
+     */
+    private static String parseAll(String headers) throws Exception {
+        String body = headers.endsWith("\n") ? BODY : "";
+        byte[] b = (headers + body).getBytes("ISO-8859-1");
+        InputStream[] sources = {
+            new FilterInputStream(new ByteArrayInputStream(b)) {
+                @Override
+                public boolean markSupported() {
+                    return false;
+                }
+            },
+            new BufferedInputStream(new ByteArrayInputStream(b), 4),
+            new SharedByteArrayInputStream(b, 0, b.length)
+        };
+        String result = null;
+        for (InputStream in : sources) {
+            StringBuilder sb = new StringBuilder();
+            for (Object o : new InternetHeaders(in).getAllHeaders()) {
+                Header hdr = (Header) o;
+                sb.append('[').append(hdr.getName()).append('=')
+                        .append(hdr.getValue()).append(']');
+            }
+            if (result != null)
+                assertEquals(in.getClass().getName(), result, sb.toString());
+            result = sb.toString();
+            assertEquals(body, rest(in));
+        }
+        return result;
+    }
+
+    private static InputStream stream(String s) throws Exception {
+        return new ByteArrayInputStream(s.getBytes("ISO-8859-1"));
+    }
+
+    private static int drain(InputStream in) throws Exception {
+        byte[] buf = new byte[1000];
+        int total = 0;
+        int n;
+        while ((n = in.read(buf)) != -1)
+            total += n;
+        return total;
+    }
+
+    private static class BufferSizeStream extends BufferedInputStream {
+
+        BufferSizeStream(InputStream headers, InputStream body) {
+            super(new SequenceInputStream(headers, body));
+        }
+
+        int bufferSize() {
+            return buf.length;
+        }
+    }
+
+    private static String rest(InputStream in) throws Exception {
+        StringBuilder sb = new StringBuilder();
+        int c;
+        while ((c = in.read()) != -1)
+            sb.append((char) c);
+        return sb.toString();
+    }
+}
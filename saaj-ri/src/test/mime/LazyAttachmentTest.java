@@ -0,0 +1,127 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package mime;
+
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import javax.xml.soap.AttachmentPart;
+import javax.xml.soap.MessageFactory;
+import javax.xml.soap.MimeHeaders;
+import javax.xml.soap.SOAPMessage;
+
+import com.sun.xml.messaging.saaj.util.ByteInputStream;
+
+import util.MessageHelper;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests on demand parsing of the attachments of a received message.
+ */
+public class LazyAttachmentTest extends TestCase {
+
+    private static final int PARTS = 16;
+    private static final int PART_SIZE = 64 * 1024;
+
+    public LazyAttachmentTest(String name) {
+        super(name);
+    }
+
+    public void testIteratorParsesVisitedPartsOnly() throws Exception {
+        SOAPMessage sent = MessageHelper.createMessage(PARTS, PART_SIZE);
+        byte[] bytes = MessageHelper.toBytes(sent);
+        MessageHelper.CountingInputStream in =
+                new MessageHelper.CountingInputStream(new ByteArrayInputStream(bytes));
+        SOAPMessage msg = MessageFactory.newInstance().createMessage(MessageHelper.headers(sent), in);
+
+        Iterator<AttachmentPart> it = msg.getAttachments();
+        assertContent(0, PART_SIZE, it.next());
+        assertContent(1, PART_SIZE, it.next());
+        if (MessageHelper.isLazyParsing()) {
+            assertTrue("read " + in.count + " of " + bytes.length,
+                    in.count < bytes.length / 2);
+        }
+
+        it.remove();
+        assertEquals(PARTS - 1, msg.countAttachments());
+        int i = 0;
+        for (it = msg.getAttachments(); it.hasNext(); i++) {
+            assertContent(i == 0 ? 0 : i + 1, PART_SIZE, it.next());
+        }
+        assertEquals(PARTS - 1, i);
+    }
+
+    public void testPartsOfSharedBuffer() throws Exception {
+        for (int size = 0; size < 8; size++) {
+            SOAPMessage sent = MessageHelper.createMessage(PARTS, size);
+            byte[] bytes = MessageHelper.toBytes(sent);
+            SOAPMessage msg = MessageFactory.newInstance().createMessage(
+                    MessageHelper.headers(sent), new ByteInputStream(bytes, bytes.length));
+            int i = 0;
+            for (Iterator<AttachmentPart> it = msg.getAttachments(); it.hasNext(); i++) {
+                assertContent(i, size, it.next());
+            }
+            assertEquals(PARTS, i);
+
+            // and once more from the re-serialized message
+            bytes = MessageHelper.toBytes(msg);
+            msg = MessageFactory.newInstance().createMessage(
+                    MessageHelper.headers(msg), new ByteInputStream(bytes, bytes.length));
+            assertEquals(PARTS, msg.countAttachments());
+            assertContent(PARTS - 1, size,
+                    (AttachmentPart) msg.getAttachments(contentIdHeader(PARTS - 1)).next());
+        }
+    }
+
+    private static void assertContent(int i, int size, AttachmentPart part) throws Exception {
+        assertEquals(MessageHelper.contentId(i), part.getContentId());
+        assertTrue(Arrays.equals(MessageHelper.content(i, size),
+                part.getRawContentBytes()));
+    }
+
+    private static MimeHeaders contentIdHeader(int i) {
+        MimeHeaders headers = new MimeHeaders();
+        headers.addHeader("Content-ID", MessageHelper.contentId(i));
+        return headers;
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package mime;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.IllegalBlockingModeException;
+import java.nio.channels.Pipe;
+
+import javax.activation.DataSource;
+import javax.xml.soap.SOAPMessage;
+
+import com.sun.xml.messaging.saaj.packaging.mime.internet.ContentType;
+import com.sun.xml.messaging.saaj.packaging.mime.internet.MimeMultipart;
+import com.sun.xml.messaging.saaj.soap.MessageImpl;
+
+import util.MessageHelper;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests writing multipart messages to streams and channels.
+ */
+public class MultipartWriterTest extends TestCase {
+
+    public MultipartWriterTest(String name) {
+        super(name);
+    }
+
+    public void testGatheringChannel() throws Exception {
+        SOAPMessage msg = MessageHelper.createMessage(new int[] {100, 1000, 40000, 10});
+        String expected = normalize(msg, MessageHelper.toBytes(msg));
+
+        RecordingChannel channel = new RecordingChannel();
+        ((MessageImpl) msg).writeTo(channel);
+        assertEquals(expected, normalize(msg, channel.bytes.toByteArray()));
+        // the large attachment went out together with the buffered headers
+        assertTrue(channel.gathered > 0);
+    }
+
+    public void testPlainChannel() throws Exception {
+        SOAPMessage msg = MessageHelper.createMessage(new int[] {100, 1000, 40000, 10});
+        String expected = normalize(msg, MessageHelper.toBytes(msg));
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        ((MessageImpl) msg).writeTo(Channels.newChannel(bos));
+        assertEquals(expected, normalize(msg, bos.toByteArray()));
+    }
+
+    public void testNonBlockingChannel() throws Exception {
+        Pipe pipe = Pipe.open();
+        try {
+            pipe.sink().configureBlocking(false);
+            MimeMultipart mp = new MimeMultipart();
+            try {
+                mp.writeTo(pipe.sink());
+                fail();
+            } catch (IllegalBlockingModeException expected) {
+            }
+        } finally {
+            pipe.sink().close();
+            pipe.source().close();
+        }
+    }
+
+    public void testReceivedHeadersWrittenAsRead() throws Exception {
+        String data = "--b1\r\n"
+                + "Content-Type:text/xml\r\n"
+                + "X-Custom:   some value\r\n"
+                + "X-Folded: first\r\n\tsecond\r\n"
+                + "\r\n"
+                + "<root/>\r\n"
+                + "--b1\r\n"
+                + "Content-ID: <a@example.org>\r\n"
+                + "\r\n"
+                + "attachment\r\n"
+                + "--b1--";
+        byte[] bytes = data.getBytes("US-ASCII");
+        MimeMultipart mp = new MimeMultipart(new BytesDataSource(bytes),
+                new ContentType("multipart/related; boundary=b1"));
+        assertEquals(2, mp.getCount());
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        mp.writeTo(bos);
+        assertEquals(data, bos.toString("US-ASCII"));
+
+        mp.getBodyPart(1).setHeader("Content-ID", "<b@example.org>");
+        bos.reset();
+        mp.writeTo(bos);
+        assertEquals(data.replace("<a@", "<b@"), bos.toString("US-ASCII"));
+    }
+
+    // every write saves the message again, with a new boundary
+    private static String normalize(SOAPMessage msg, byte[] bytes) throws Exception {
+        ContentType ct = new ContentType(
+                msg.getMimeHeaders().getHeader("Content-Type")[0]);
+        return new String(bytes, "ISO-8859-1").replace(
+                ct.getParameter("boundary"), "BOUNDARY");
+    }
+
+    private static class RecordingChannel implements GatheringByteChannel {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        int gathered;
+
+        @Override
+        public int write(ByteBuffer src) {
+            int n = src.remaining();
+            while (src.hasRemaining()) {
+                bytes.write(src.get());
+            }
+            return n;
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs, int offset, int length) {
+            gathered++;
+            long n = 0;
+            for (int i = offset; i < offset + length; i++) {
+                n += write(srcs[i]);
+            }
+            return n;
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs) {
+            return write(srcs, 0, srcs.length);
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static class BytesDataSource implements DataSource {
+        private final byte[] bytes;
+
+        BytesDataSource(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return new ByteArrayInputStream(bytes);
+        }
+
+        @Override
+        public OutputStream getOutputStream() throws IOException {
+            throw new IOException("read only");
+        }
+
+        @Override
+        public String getContentType() {
+            return "multipart/related; boundary=b1";
+        }
+
+        @Override
+        public String getName() {
+            return null;
+        }
+    }
+}
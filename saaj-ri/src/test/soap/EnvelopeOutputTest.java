@@ -0,0 +1,293 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package soap;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.net.URL;
+import java.util.Collections;
+import java.util.Enumeration;
+
+import javax.xml.namespace.QName;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.soap.MessageFactory;
+import javax.xml.soap.MimeHeaders;
+import javax.xml.soap.SOAPBody;
+import javax.xml.soap.SOAPElement;
+import javax.xml.soap.SOAPMessage;
+import javax.xml.stream.XMLEventWriter;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import javax.xml.transform.Result;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import com.sun.xml.messaging.saaj.soap.MessageImpl;
+import com.sun.xml.messaging.saaj.util.stax.DOMSerializer;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests serialization of envelopes without the identity transformer.
+ */
+public class EnvelopeOutputTest extends TestCase {
+
+    public EnvelopeOutputTest(String name) {
+        super(name);
+    }
+
+    public void testRoundTrip() throws Exception {
+        SOAPMessage msg = MessageFactory.newInstance().createMessage();
+        SOAPBody body = msg.getSOAPBody();
+        SOAPElement order = body.addChildElement("order", "m", "urn:order");
+        order.addAttribute(new QName("urn:attr", "id", "a"), "1 < 2 & \"3\"");
+        order.addChildElement("item", "m").addTextNode("text & <markup>");
+        SOAPElement plain = order.addChildElement(new QName("plain"));
+        plain.addTextNode("no namespace");
+        msg.getSOAPHeader().addHeaderElement(new QName("urn:header", "h", "x")).addTextNode("header");
+
+        SOAPMessage copy = roundTrip(msg);
+        SOAPElement order2 = (SOAPElement) copy.getSOAPBody().getChildElements().next();
+        assertEquals(new QName("urn:order", "order"), order2.getElementQName());
+        assertEquals("1 < 2 & \"3\"", order2.getAttributeValue(new QName("urn:attr", "id")));
+        SOAPElement item = (SOAPElement) order2.getChildElements(new QName("urn:order", "item")).next();
+        assertEquals("text & <markup>", item.getValue());
+        assertTrue(order2.getChildElements(new QName("plain")).hasNext());
+        assertEquals("header", copy.getSOAPHeader().getFirstChild().getTextContent());
+    }
+
+    public void testXmlDeclarationAndEncoding() throws Exception {
+        SOAPMessage msg = MessageFactory.newInstance().createMessage();
+        msg.getSOAPBody().addChildElement("text", "m", "urn:test").addTextNode("\u00e4\u20ac");
+        msg.setProperty(SOAPMessage.WRITE_XML_DECLARATION, "true");
+        msg.setProperty(SOAPMessage.CHARACTER_SET_ENCODING, "ISO-8859-1");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        msg.writeTo(out);
+        String xml = out.toString("ISO-8859-1");
+        assertTrue(xml, xml.startsWith("<?xml version=\"1.0\" encoding=\"ISO-8859-1\" ?>"));
+        // the euro sign cannot be encoded and has to be escaped
+        assertTrue(xml, xml.contains("\u00e4&#"));
+
+        SOAPMessage copy = MessageFactory.newInstance().createMessage(
+                msg.getMimeHeaders(), new ByteArrayInputStream(out.toByteArray()));
+        assertEquals("\u00e4\u20ac", copy.getSOAPBody().getFirstChild().getTextContent());
+    }
+
+    public void testLazyBodyIsStreamed() throws Exception {
+        String xml = "<env:Envelope xmlns:env='http://schemas.xmlsoap.org/soap/envelope/'>"
+                + "<env:Body><p:payload xmlns:p='urn:p'><p:a>1</p:a></p:payload></env:Body>"
+                + "</env:Envelope>";
+        MimeHeaders headers = new MimeHeaders();
+        headers.addHeader("Content-Type", "text/xml");
+        SOAPMessage msg = MessageFactory.newInstance().createMessage(
+                headers, new ByteArrayInputStream(xml.getBytes("UTF-8")));
+        msg.setProperty(MessageImpl.LAZY_SOAP_BODY_PARSING, "true");
+        msg.getSOAPPart().getEnvelope();
+
+        SOAPMessage copy = roundTrip(msg);
+        SOAPElement payload = (SOAPElement) copy.getSOAPBody().getChildElements().next();
+        assertEquals(new QName("urn:p", "payload"), payload.getElementQName());
+        assertEquals("1", payload.getTextContent());
+    }
+
+    public void testOutputFactoryOfContextClassLoader() throws Exception {
+        SOAPMessage msg = MessageFactory.newInstance().createMessage();
+        msg.getSOAPBody().addChildElement("text", "m", "urn:test").addTextNode("t");
+        msg.writeTo(new ByteArrayOutputStream());
+
+        File services = File.createTempFile("saaj", ".services");
+        Thread thread = Thread.currentThread();
+        ClassLoader tccl = thread.getContextClassLoader();
+        try {
+            FileOutputStream out = new FileOutputStream(services);
+            try {
+                out.write(CountingOutputFactory.class.getName().getBytes("US-ASCII"));
+            } finally {
+                out.close();
+            }
+            CountingOutputFactory.delegate = XMLOutputFactory.newInstance();
+            CountingOutputFactory.instances = 0;
+            final URL url = services.toURI().toURL();
+            thread.setContextClassLoader(new ClassLoader(tccl) {
+                @Override
+                public Enumeration<URL> getResources(String name) throws IOException {
+                    if (!name.equals("META-INF/services/" + XMLOutputFactory.class.getName())) {
+                        return super.getResources(name);
+                    }
+                    return Collections.enumeration(Collections.singleton(url));
+                }
+            });
+            msg.getSOAPBody().addChildElement("more", "m", "urn:test");
+            msg.writeTo(new ByteArrayOutputStream());
+            assertEquals(1, CountingOutputFactory.instances);
+        } finally {
+            thread.setContextClassLoader(tccl);
+            services.delete();
+        }
+
+        // not pinned to the classloader which asked last
+        msg.getSOAPBody().addChildElement("again", "m", "urn:test");
+        msg.writeTo(new ByteArrayOutputStream());
+        assertEquals(1, CountingOutputFactory.instances);
+        assertEquals(1, CountingOutputFactory.writers);
+    }
+
+    public void testNamespaceFixup() throws Exception {
+        Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+        Element root = doc.createElementNS("urn:a", "a:root");
+        doc.appendChild(root);
+        Element child = doc.createElementNS("urn:b", "child");
+        root.appendChild(child);
+        Element empty = doc.createElementNS(null, "empty");
+        child.appendChild(empty);
+        empty.setAttributeNS("urn:c", "c:att", "v");
+        child.appendChild(doc.createCDATASection("a]]>b"));
+
+        StringWriter w = new StringWriter();
+        XMLStreamWriter writer = XMLOutputFactory.newInstance().createXMLStreamWriter(w);
+        new DOMSerializer(writer).serialize(doc);
+        writer.flush();
+
+        Document parsed = parse(w.toString());
+        Element root2 = parsed.getDocumentElement();
+        assertEquals("urn:a", root2.getNamespaceURI());
+        Element child2 = (Element) root2.getFirstChild();
+        assertEquals("urn:b", child2.getNamespaceURI());
+        Element empty2 = (Element) child2.getFirstChild();
+        assertNull(empty2.getNamespaceURI());
+        assertEquals("v", empty2.getAttributeNS("urn:c", "att"));
+        assertEquals("a]]>b", child2.getTextContent());
+    }
+
+    private static SOAPMessage roundTrip(SOAPMessage msg) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        msg.writeTo(out);
+        // must be well formed on its own
+        parse(out.toString("UTF-8"));
+        return MessageFactory.newInstance().createMessage(
+                msg.getMimeHeaders(), new ByteArrayInputStream(out.toByteArray()));
+    }
+
+    private static Document parse(String xml) throws Exception {
+        DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+        dbf.setNamespaceAware(true);
+        return dbf.newDocumentBuilder().parse(new ByteArrayInputStream(xml.getBytes("UTF-8")));
+    }
+
+    public static class CountingOutputFactory extends XMLOutputFactory {
+        static XMLOutputFactory delegate;
+        static int instances;
+        static int writers;
+
+        public CountingOutputFactory() {
+            instances++;
+        }
+
+        @Override
+        public XMLStreamWriter createXMLStreamWriter(Writer stream) throws XMLStreamException {
+            writers++;
+            return delegate.createXMLStreamWriter(stream);
+        }
+
+        @Override
+        public XMLStreamWriter createXMLStreamWriter(OutputStream stream) throws XMLStreamException {
+            writers++;
+            return delegate.createXMLStreamWriter(stream);
+        }
+
+        @Override
+        public XMLStreamWriter createXMLStreamWriter(OutputStream stream, String encoding)
+                throws XMLStreamException {
+            writers++;
+            return delegate.createXMLStreamWriter(stream, encoding);
+        }
+
+        @Override
+        public XMLStreamWriter createXMLStreamWriter(Result result) throws XMLStreamException {
+            writers++;
+            return delegate.createXMLStreamWriter(result);
+        }
+
+        @Override
+        public XMLEventWriter createXMLEventWriter(Result result) throws XMLStreamException {
+            return delegate.createXMLEventWriter(result);
+        }
+
+        @Override
+        public XMLEventWriter createXMLEventWriter(OutputStream stream) throws XMLStreamException {
+            return delegate.createXMLEventWriter(stream);
+        }
+
+        @Override
+        public XMLEventWriter createXMLEventWriter(OutputStream stream, String encoding)
+                throws XMLStreamException {
+            return delegate.createXMLEventWriter(stream, encoding);
+        }
+
+        @Override
+        public XMLEventWriter createXMLEventWriter(Writer stream) throws XMLStreamException {
+            return delegate.createXMLEventWriter(stream);
+        }
+
+        @Override
+        public void setProperty(String name, Object value) {
+            delegate.setProperty(name, value);
+        }
+
+        @Override
+        public Object getProperty(String name) {
+            return delegate.getProperty(name);
+        }
+
+        @Override
+        public boolean isPropertySupported(String name) {
+            return delegate.isPropertySupported(name);
+        }
+    }
+}
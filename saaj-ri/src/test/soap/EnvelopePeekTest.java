@@ -0,0 +1,142 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package soap;
+
+import java.io.ByteArrayInputStream;
+
+import javax.xml.namespace.QName;
+import javax.xml.soap.AttachmentPart;
+import javax.xml.soap.MessageFactory;
+import javax.xml.soap.MimeHeaders;
+import javax.xml.soap.SOAPConstants;
+import javax.xml.soap.SOAPElement;
+import javax.xml.soap.SOAPMessage;
+
+import com.sun.xml.messaging.saaj.soap.EnvelopePeek;
+import com.sun.xml.messaging.saaj.soap.LazyEnvelope;
+
+import util.MessageHelper;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests reading the headers and payload name of a message without its body.
+ */
+public class EnvelopePeekTest extends TestCase {
+
+    private static final String ENVELOPE_1_1 =
+            "<S:Envelope xmlns:S=\"http://schemas.xmlsoap.org/soap/envelope/\">"
+            + "<S:Header><h:route xmlns:h=\"urn:h\">queue-1</h:route>"
+            + "<h:trace xmlns:h=\"urn:h\"/></S:Header>"
+            + "<S:Body><p:order xmlns:p=\"urn:p\" id=\"42\" p:priority=\"high\">"
+            + "<p:item>book</p:item></p:order></S:Body></S:Envelope>";
+
+    private static final String ENVELOPE_1_2 =
+            "<S:Envelope xmlns:S=\"http://www.w3.org/2003/05/soap-envelope\">"
+            + "<S:Body><p:order xmlns:p=\"urn:p\"/></S:Body></S:Envelope>";
+
+    public EnvelopePeekTest(String name) {
+        super(name);
+    }
+
+    public void testPlainMessage() throws Exception {
+        EnvelopePeek peek = EnvelopePeek.read(null,
+                new ByteArrayInputStream(ENVELOPE_1_1.getBytes("UTF-8")));
+        assertEquals(SOAPConstants.URI_NS_SOAP_1_1_ENVELOPE, peek.getEnvelopeNamespace());
+        assertEquals(2, peek.getHeaderElements().size());
+        assertEquals("queue-1", peek.getHeaderElement(new QName("urn:h", "route")).getValue());
+        assertNull(peek.getHeaderElement(new QName("urn:h", "missing")));
+        assertEquals(new QName("urn:p", "order"), peek.getPayloadQName());
+        assertEquals("42", peek.getPayloadAttributeValue("id"));
+        assertEquals("high", peek.getPayloadAttributeValue(new QName("urn:p", "priority")));
+        assertTrue(((LazyEnvelope) peek.getMessage().getSOAPPart().getEnvelope()).isLazy());
+
+        // the body is forwarded unchanged
+        SOAPMessage forwarded = forward(peek.getMessage());
+        SOAPElement order = (SOAPElement) forwarded.getSOAPBody().getChildElements().next();
+        assertEquals("42", order.getAttribute("id"));
+        assertEquals("book", order.getTextContent());
+        assertEquals(2, forwarded.getSOAPHeader().getChildNodes().getLength());
+    }
+
+    public void testSOAP12Message() throws Exception {
+        MimeHeaders headers = new MimeHeaders();
+        headers.addHeader("Content-Type", SOAPConstants.SOAP_1_2_CONTENT_TYPE);
+        EnvelopePeek peek = EnvelopePeek.read(headers,
+                new ByteArrayInputStream(ENVELOPE_1_2.getBytes("UTF-8")));
+        assertEquals(SOAPConstants.URI_NS_SOAP_1_2_ENVELOPE, peek.getEnvelopeNamespace());
+        assertTrue(peek.getHeaderElements().isEmpty());
+        assertEquals(new QName("urn:p", "order"), peek.getPayloadQName());
+    }
+
+    public void testCallerHeadersUnchanged() throws Exception {
+        MimeHeaders headers = new MimeHeaders();
+        headers.addHeader("X-Route", "queue-1");
+        EnvelopePeek peek = EnvelopePeek.read(headers,
+                new ByteArrayInputStream(ENVELOPE_1_1.getBytes("UTF-8")));
+        peek.getMessage().saveChanges();
+        assertNull(headers.getHeader("Content-Type"));
+        assertEquals("queue-1", peek.getMessage().getMimeHeaders().getHeader("X-Route")[0]);
+    }
+
+    public void testMultipartMessage() throws Exception {
+        SOAPMessage sent = MessageFactory.newInstance().createMessage(null,
+                new ByteArrayInputStream(ENVELOPE_1_1.getBytes("UTF-8")));
+        AttachmentPart ap = sent.createAttachmentPart();
+        ap.setRawContentBytes(new byte[] {1, 2, 3}, 0, 3, "application/octet-stream");
+        sent.addAttachmentPart(ap);
+        sent.saveChanges();
+
+        EnvelopePeek peek = EnvelopePeek.read(MessageHelper.headers(sent),
+                new ByteArrayInputStream(MessageHelper.toBytes(sent)));
+        assertEquals("queue-1", peek.getHeaderElement(new QName("urn:h", "route")).getValue());
+        assertEquals(new QName("urn:p", "order"), peek.getPayloadQName());
+
+        SOAPMessage forwarded = forward(peek.getMessage());
+        assertEquals(1, forwarded.countAttachments());
+        assertEquals("book", forwarded.getSOAPBody().getTextContent());
+    }
+
+    private static SOAPMessage forward(SOAPMessage msg) throws Exception {
+        msg.saveChanges();
+        return MessageFactory.newInstance().createMessage(MessageHelper.headers(msg),
+                new ByteArrayInputStream(MessageHelper.toBytes(msg)));
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package soap;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import javax.xml.namespace.QName;
+import javax.xml.soap.AttachmentPart;
+import javax.xml.soap.MessageFactory;
+import javax.xml.soap.MimeHeaders;
+import javax.xml.soap.SOAPBody;
+import javax.xml.soap.SOAPElement;
+import javax.xml.soap.SOAPMessage;
+
+import com.sun.xml.messaging.saaj.soap.LazyEnvelope;
+import com.sun.xml.messaging.saaj.soap.MessageFactoryImpl;
+import com.sun.xml.messaging.saaj.soap.MessageImpl;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests deferring the parsing of the SOAP body for the messages of a factory.
+ */
+public class LazyBodyParsingTest extends TestCase {
+
+    private static final String ENVELOPE =
+            "<S:Envelope xmlns:S=\"http://schemas.xmlsoap.org/soap/envelope/\">"
+            + "<S:Header><h:route xmlns:h=\"urn:h\">queue-1</h:route></S:Header>"
+            + "<S:Body><p:payload xmlns:p=\"urn:p\" id=\"42\">text \u00e9</p:payload></S:Body>"
+            + "</S:Envelope>";
+
+    public LazyBodyParsingTest(String name) {
+        super(name);
+    }
+
+    public void testPlainMessage() throws Exception {
+        MimeHeaders headers = new MimeHeaders();
+        headers.addHeader("Content-Type", "text/xml; charset=utf-8");
+        SOAPMessage msg = factory().createMessage(
+                headers, new ByteArrayInputStream(ENVELOPE.getBytes("UTF-8")));
+        assertLazy(msg);
+    }
+
+    public void testAttachmentMessage() throws Exception {
+        SOAPMessage sent = MessageFactory.newInstance().createMessage(null,
+                new ByteArrayInputStream(ENVELOPE.getBytes("UTF-8")));
+        AttachmentPart ap = sent.createAttachmentPart();
+        ap.setRawContentBytes(new byte[] {1, 2, 3}, 0, 3, "application/octet-stream");
+        sent.addAttachmentPart(ap);
+        sent.saveChanges();
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        sent.writeTo(bos);
+
+        MimeHeaders headers = new MimeHeaders();
+        headers.addHeader("Content-Type", sent.getMimeHeaders().getHeader("Content-Type")[0]);
+        SOAPMessage msg = factory().createMessage(
+                headers, new ByteArrayInputStream(bos.toByteArray()));
+        assertLazy(msg);
+        assertEquals(1, msg.countAttachments());
+    }
+
+    public void testXOPMessage() throws Exception {
+        String boundary = "xop-boundary";
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        bos.write(("--" + boundary + "\r\n"
+                + "Content-Type: application/xop+xml; charset=iso-8859-1; type=\"text/xml\"\r\n"
+                + "Content-ID: <root@example.org>\r\n\r\n").getBytes("US-ASCII"));
+        bos.write(ENVELOPE.getBytes("ISO-8859-1"));
+        bos.write(("\r\n--" + boundary + "\r\n"
+                + "Content-Type: application/octet-stream\r\n"
+                + "Content-ID: <data@example.org>\r\n\r\n"
+                + "data\r\n--" + boundary + "--").getBytes("US-ASCII"));
+
+        MimeHeaders headers = new MimeHeaders();
+        headers.addHeader("Content-Type", "multipart/related; type=\"application/xop+xml\";"
+                + " start=\"<root@example.org>\"; start-info=\"text/xml\";"
+                + " boundary=\"" + boundary + "\"");
+        SOAPMessage msg = factory().createMessage(
+                headers, new ByteArrayInputStream(bos.toByteArray()));
+        assertLazy(msg);
+    }
+
+    private static MessageFactory factory() throws Exception {
+        MessageFactory factory = MessageFactory.newInstance();
+        ((MessageFactoryImpl) factory).setLazySoapBodyParsing(true);
+        return factory;
+    }
+
+    private static void assertLazy(SOAPMessage msg) throws Exception {
+        assertEquals(Boolean.TRUE, msg.getProperty(MessageImpl.LAZY_SOAP_BODY_PARSING));
+        SOAPElement route = (SOAPElement) msg.getSOAPHeader().getChildElements().next();
+        assertEquals("queue-1", route.getTextContent());
+
+        // the body is still a stream
+        LazyEnvelope env = (LazyEnvelope) msg.getSOAPPart().getEnvelope();
+        assertTrue(env.isLazy());
+        assertEquals(new QName("urn:p", "payload"), env.getPayloadQName());
+        assertEquals("42", env.getPayloadAttributeValue("id"));
+
+        SOAPBody body = msg.getSOAPBody();
+        SOAPElement payload = (SOAPElement) body.getChildElements().next();
+        assertEquals("text \u00e9", payload.getTextContent());
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package soap;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.CyclicBarrier;
+
+import com.sun.xml.messaging.saaj.soap.EnvelopeFactory;
+import com.sun.xml.messaging.saaj.util.ParserPool;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests that the parser pool is kept per context classloader.
+ */
+public class ParserPoolLookupTest extends TestCase {
+
+    public ParserPoolLookupTest(String name) {
+        super(name);
+    }
+
+    public void testPoolPerClassLoader() throws Exception {
+        ParserPool pool = EnvelopeFactory.getParserPool();
+        assertSame(pool, EnvelopeFactory.getParserPool());
+
+        Thread thread = Thread.currentThread();
+        ClassLoader original = thread.getContextClassLoader();
+        try {
+            thread.setContextClassLoader(new URLClassLoader(new URL[0], original));
+            ParserPool other = EnvelopeFactory.getParserPool();
+            assertNotSame(pool, other);
+            assertSame(other, EnvelopeFactory.getParserPool());
+
+            thread.setContextClassLoader(null);
+            ParserPool none = EnvelopeFactory.getParserPool();
+            assertNotSame(pool, none);
+            assertNotSame(other, none);
+            assertSame(none, EnvelopeFactory.getParserPool());
+        } finally {
+            thread.setContextClassLoader(original);
+        }
+        assertSame(pool, EnvelopeFactory.getParserPool());
+    }
+
+    public void testConcurrentFirstUse() throws Exception {
+        final ClassLoader loader = new URLClassLoader(new URL[0], getClass().getClassLoader());
+        final Set<ParserPool> pools =
+                Collections.synchronizedSet(Collections.newSetFromMap(
+                        new IdentityHashMap<ParserPool, Boolean>()));
+        final CyclicBarrier barrier = new CyclicBarrier(16);
+        Thread[] threads = new Thread[16];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        barrier.await();
+                        pools.add(EnvelopeFactory.getParserPool());
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            };
+            threads[i].setContextClassLoader(loader);
+            threads[i].start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertEquals(1, pools.size());
+    }
+}
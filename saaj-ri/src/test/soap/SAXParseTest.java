@@ -0,0 +1,150 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package soap;
+
+import java.io.ByteArrayInputStream;
+import java.util.Iterator;
+
+import javax.xml.namespace.QName;
+import javax.xml.soap.MessageFactory;
+import javax.xml.soap.MimeHeaders;
+import javax.xml.soap.SOAPBody;
+import javax.xml.soap.SOAPElement;
+import javax.xml.soap.SOAPException;
+import javax.xml.soap.SOAPFault;
+import javax.xml.soap.SOAPMessage;
+import javax.xml.soap.Text;
+
+import org.w3c.dom.Comment;
+import org.w3c.dom.Node;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the SAAJ tree built while parsing envelopes with SAX.
+ */
+public class SAXParseTest extends TestCase {
+
+    private static final String ENV_START =
+            "<env:Envelope xmlns:env='http://schemas.xmlsoap.org/soap/envelope/'>";
+
+    public SAXParseTest(String name) {
+        super(name);
+    }
+
+    public void testTree() throws Exception {
+        SOAPMessage msg = parse(ENV_START
+                + "<env:Header><h:id xmlns:h='urn:h' env:mustUnderstand='1'>4711</h:id></env:Header>"
+                + "<env:Body><order xmlns='urn:order' xmlns:wsu='urn:wsu' wsu:Id='o1'>"
+                + "<!--note--><item>a &amp; <![CDATA[<b>]]> c</item><item/></order>"
+                + "</env:Body></env:Envelope>");
+
+        SOAPElement header = (SOAPElement) msg.getSOAPHeader().getChildElements().next();
+        assertEquals(new QName("urn:h", "id"), header.getElementQName());
+        assertEquals("h", header.getElementQName().getPrefix());
+        assertEquals("h:id", header.getNodeName());
+        assertEquals("1", header.getAttributeValue(
+                new QName("http://schemas.xmlsoap.org/soap/envelope/", "mustUnderstand")));
+
+        SOAPBody body = msg.getSOAPBody();
+        SOAPElement order = (SOAPElement) body.getChildElements().next();
+        assertEquals(new QName("urn:order", "order"), order.getElementQName());
+        assertEquals("", order.getElementQName().getPrefix());
+        assertEquals("order", order.getLocalName());
+        assertEquals("urn:order", order.getNamespaceURI(""));
+        assertEquals("o1", order.getAttributeValue(new QName("urn:wsu", "Id")));
+        assertTrue(order.getFirstChild() instanceof Comment);
+        assertEquals("note", order.getFirstChild().getNodeValue());
+
+        Iterator<?> items = order.getChildElements(new QName("urn:order", "item"));
+        SOAPElement item = (SOAPElement) items.next();
+        // character data is merged into a single text node
+        Node text = item.getFirstChild();
+        assertTrue(text instanceof Text);
+        assertNull(text.getNextSibling());
+        assertEquals("a & <b> c", text.getNodeValue());
+        assertSame(item, text.getParentNode());
+        assertFalse(((SOAPElement) items.next()).hasChildNodes());
+        assertSame(body, order.getParentElement());
+    }
+
+    public void testAttributeStartingWithXmlns() throws Exception {
+        SOAPMessage msg = parse(ENV_START
+                + "<env:Body><order xmlnsVersion='2'/></env:Body></env:Envelope>");
+        SOAPElement order = (SOAPElement) msg.getSOAPBody().getChildElements().next();
+        assertEquals("2", order.getAttributeValue(new QName("xmlnsVersion")));
+        assertNull(order.getNamespaceURI("xmlnsVersion"));
+    }
+
+    public void testFault() throws Exception {
+        SOAPMessage msg = parse(ENV_START + "<env:Body><env:Fault>"
+                + "<faultcode>env:Server</faultcode><faultstring>failed</faultstring>"
+                + "</env:Fault></env:Body></env:Envelope>");
+        assertTrue(msg.getSOAPBody().hasFault());
+        SOAPFault fault = msg.getSOAPBody().getFault();
+        assertEquals("failed", fault.getFaultString());
+        assertEquals("Server", fault.getFaultCodeAsQName().getLocalPart());
+    }
+
+    public void testDoctypeRejected() throws Exception {
+        assertRejected("<!DOCTYPE env:Envelope []>" + ENV_START
+                + "<env:Body/></env:Envelope>");
+    }
+
+    public void testProcessingInstructionRejected() throws Exception {
+        assertRejected(ENV_START + "<env:Body><?pi data?></env:Body></env:Envelope>");
+    }
+
+    private static void assertRejected(String xml) throws Exception {
+        try {
+            parse(xml).getSOAPBody();
+            fail("message should be rejected");
+        } catch (SOAPException expected) {
+        }
+    }
+
+    private static SOAPMessage parse(String xml) throws Exception {
+        MimeHeaders headers = new MimeHeaders();
+        headers.addHeader("Content-Type", "text/xml");
+        return MessageFactory.newInstance().createMessage(
+                headers, new ByteArrayInputStream(xml.getBytes("UTF-8")));
+    }
+}
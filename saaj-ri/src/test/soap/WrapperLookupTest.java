@@ -0,0 +1,115 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package soap;
+
+import javax.xml.namespace.QName;
+import javax.xml.soap.MessageFactory;
+import javax.xml.soap.SOAPBody;
+import javax.xml.soap.SOAPElement;
+import javax.xml.soap.SOAPMessage;
+import javax.xml.soap.Text;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import com.sun.xml.messaging.saaj.soap.SOAPDocumentImpl;
+import com.sun.xml.messaging.saaj.soap.impl.ElementImpl;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the mapping of DOM nodes to their SAAJ wrappers.
+ */
+public class WrapperLookupTest extends TestCase {
+
+    public WrapperLookupTest(String name) {
+        super(name);
+    }
+
+    public void testNavigationReturnsWrappers() throws Exception {
+        SOAPMessage msg = MessageFactory.newInstance().createMessage();
+        SOAPBody body = msg.getSOAPBody();
+        SOAPElement child = body.addChildElement("child", "c", "urn:c");
+        child.addTextNode("text");
+
+        assertSame(child, body.getFirstChild());
+        assertSame(body, child.getParentNode());
+        assertTrue(child.getFirstChild() instanceof Text);
+        assertSame(child, child.getFirstChild().getParentNode());
+
+        SOAPDocumentImpl doc = (SOAPDocumentImpl) body.getOwnerDocument();
+        Element dom = ((ElementImpl) child).getDomElement();
+        assertSame(child, doc.find(dom));
+        assertSame(doc, doc.find(doc.getDomDocument()));
+        try {
+            doc.register(child);
+            fail("wrapper registered twice");
+        } catch (IllegalStateException expected) {
+        }
+        assertSame(child, doc.find(dom));
+    }
+
+    public void testLookupAcrossDocuments() throws Exception {
+        SOAPMessage source = MessageFactory.newInstance().createMessage();
+        SOAPElement original = source.getSOAPBody().addChildElement("a", "p", "urn:p");
+        original.addChildElement("b", "p").addTextNode("value");
+
+        SOAPMessage target = MessageFactory.newInstance().createMessage();
+        SOAPBody body = target.getSOAPBody();
+        Document targetDoc = body.getOwnerDocument();
+        Node imported = targetDoc.importNode(original, true);
+        body.appendChild(imported);
+
+        SOAPElement copy = (SOAPElement) body.getChildElements(new QName("urn:p", "a")).next();
+        assertSame(imported, copy);
+        SOAPElement b = (SOAPElement) copy.getFirstChild();
+        assertEquals("value", b.getValue());
+        assertSame(copy, b.getParentElement());
+
+        // the original document still resolves its own nodes
+        SOAPDocumentImpl sourceDoc = (SOAPDocumentImpl) original.getOwnerDocument();
+        SOAPDocumentImpl importedDoc = (SOAPDocumentImpl) targetDoc;
+        Element dom = ((ElementImpl) original).getDomElement();
+        assertSame(original, sourceDoc.find(dom));
+        assertSame(original, importedDoc.find(dom));
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.xml.bind.DatatypeConverter;
+
+import com.sun.xml.messaging.saaj.packaging.mime.util.BASE64DecoderStream;
+import com.sun.xml.messaging.saaj.packaging.mime.util.BASE64EncoderStream;
+import com.sun.xml.messaging.saaj.util.Base64;
+import junit.framework.TestCase;
+
+/**
+ * Tests the {@link Base64} codec and the BASE64 streams built on it.
+ */
+public class Base64Test extends TestCase {
+
+    private final Random random = new Random(7);
+
+    public Base64Test(String name) {
+        super(name);
+    }
+
+    public void testArrays() throws Exception {
+        for (int size = 0; size < 300; size++) {
+            byte[] data = random(size);
+            String expected = DatatypeConverter.printBase64Binary(data);
+            byte[] encoded = Base64.encode(data);
+            assertEquals(expected, new String(encoded, "US-ASCII"));
+            assertEquals(encoded.length, Base64.encodedLength(size, 0));
+            assertTrue("size " + size, Arrays.equals(data, new Base64().decode(encoded)));
+        }
+    }
+
+    public void testLines() throws Exception {
+        byte[] data = random(1000);
+        byte[] encoded = new byte[Base64.encodedLength(data.length, 76)];
+        assertEquals(encoded.length, Base64.encode(data, 0, data.length, encoded, 0, 76));
+        String[] lines = new String(encoded, "US-ASCII").split("\r\n");
+        assertEquals(18, lines.length);
+        assertEquals(76, lines[0].length());
+        assertTrue(Arrays.equals(data, new Base64().decode(encoded)));
+    }
+
+    public void testByteBuffers() throws Exception {
+        byte[] data = random(10000);
+        ByteBuffer encoded = ByteBuffer.allocateDirect(Base64.encodedLength(data.length, 0));
+        Base64.encode(ByteBuffer.wrap(data), encoded);
+        encoded.flip();
+        ByteBuffer decoded = ByteBuffer.allocate(data.length);
+        Base64.decode(encoded, decoded);
+        assertFalse(encoded.hasRemaining());
+        assertTrue(Arrays.equals(data, decoded.array()));
+    }
+
+    public void testIllegalGroup() throws Exception {
+        byte[] bad = "ab=c".getBytes("US-ASCII");
+        try {
+            Base64.decode(bad, 0, bad.length, new byte[3], 0);
+            fail("illegal group decoded");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    public void testStreams() throws Exception {
+        for (int size : new int[] {0, 1, 2, 56, 57, 58, 9000, 100001}) {
+            byte[] data = random(size);
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            OutputStream enc = new BASE64EncoderStream(bos);
+            // mix single bytes and arrays
+            int i = 0;
+            for (; i < Math.min(size, 5); i++) {
+                enc.write(data[i]);
+            }
+            for (int chunk = 1; i < size; chunk = chunk * 3 + 1) {
+                int n = Math.min(chunk, size - i);
+                enc.write(data, i, n);
+                i += n;
+            }
+            enc.close();
+
+            String mime = DatatypeConverter.printBase64Binary(data)
+                    .replaceAll("(.{76})(?=.)", "$1\r\n");
+            assertEquals("size " + size, mime, bos.toString("US-ASCII"));
+
+            InputStream dec = new BASE64DecoderStream(
+                    new ByteArrayInputStream(bos.toByteArray()));
+            ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+            int b = dec.read();
+            if (b != -1) {
+                decoded.write(b);
+            }
+            byte[] buf = new byte[1000];
+            for (int n; (n = dec.read(buf)) != -1;) {
+                decoded.write(buf, 0, n);
+            }
+            assertTrue("size " + size, Arrays.equals(data, decoded.toByteArray()));
+        }
+    }
+
+    public void testTruncatedStream() throws Exception {
+        InputStream dec = new BASE64DecoderStream(
+                new ByteArrayInputStream("YWJj\r\nYW".getBytes("US-ASCII")));
+        assertEquals('a', dec.read());
+        assertEquals('b', dec.read());
+        assertEquals('c', dec.read());
+        try {
+            dec.read();
+            fail("truncated group decoded");
+        } catch (IOException expected) {
+        }
+    }
+
+    private byte[] random(int size) {
+        byte[] data = new byte[size];
+        random.nextBytes(data);
+        return data;
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package util;
+
+import com.sun.xml.messaging.saaj.util.transform.EfficientStreamingTransformer;
+import junit.framework.TestCase;
+
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.StringWriter;
+import java.net.URL;
+import java.net.URLClassLoader;
+
+import org.w3c.dom.Document;
+
+/**
+ * Tests reuse of {@link EfficientStreamingTransformer} instances.
+ */
+public class EfficientStreamingTransformerTest extends TestCase {
+
+    public EfficientStreamingTransformerTest(String name) {
+        super(name);
+    }
+
+    public void testReleasedTransformerIsReused() throws Exception {
+        Transformer t1 = EfficientStreamingTransformer.newTransformer();
+        EfficientStreamingTransformer.release(t1);
+        // a second release must not hand the same instance out twice
+        EfficientStreamingTransformer.release(t1);
+        Transformer t2 = EfficientStreamingTransformer.newTransformer();
+        Transformer t3 = EfficientStreamingTransformer.newTransformer();
+        assertSame(t1, t2);
+        assertNotSame(t2, t3);
+        EfficientStreamingTransformer.release(t2);
+        EfficientStreamingTransformer.release(t3);
+    }
+
+    public void testOutputPropertiesAreReset() throws Exception {
+        Transformer t = EfficientStreamingTransformer.newTransformer();
+        t.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+        assertEquals("<a/>", transform(t));
+        EfficientStreamingTransformer.release(t);
+
+        t = EfficientStreamingTransformer.newTransformer();
+        assertTrue(transform(t).startsWith("<?xml"));
+        EfficientStreamingTransformer.release(t);
+    }
+
+    public void testPoolPerContextClassLoader() throws Exception {
+        Transformer t1 = EfficientStreamingTransformer.newTransformer();
+        EfficientStreamingTransformer.release(t1);
+
+        Thread thread = Thread.currentThread();
+        ClassLoader orig = thread.getContextClassLoader();
+        thread.setContextClassLoader(new URLClassLoader(new URL[0], orig));
+        try {
+            Transformer t2 = EfficientStreamingTransformer.newTransformer();
+            assertNotSame(t1, t2);
+            EfficientStreamingTransformer.release(t2);
+        } finally {
+            thread.setContextClassLoader(orig);
+        }
+        assertSame(t1, EfficientStreamingTransformer.newTransformer());
+        EfficientStreamingTransformer.release(t1);
+    }
+
+    private static String transform(Transformer t) throws Exception {
+        Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+        doc.appendChild(doc.createElement("a"));
+        StringWriter w = new StringWriter();
+        t.transform(new DOMSource(doc), new StreamResult(w));
+        return w.toString();
+    }
+}
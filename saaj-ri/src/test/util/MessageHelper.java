@@ -0,0 +1,166 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+
+package util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import javax.xml.soap.AttachmentPart;
+import javax.xml.soap.MessageFactory;
+import javax.xml.soap.MimeHeaders;
+import javax.xml.soap.SOAPMessage;
+
+/**
+ * Builds, writes and re-reads the messages with attachments used by the
+ * MIME tests.
+ */
+public final class MessageHelper {
+
+    private MessageHelper() {
+    }
+
+    /**
+     * Creates a saved message with a payload element and one attachment per
+     * size, holding {@link #content(int, int)} with Content-ID
+     * {@code <part<i>@example.org>}.
+     */
+    public static SOAPMessage createMessage(int[] sizes) throws Exception {
+        SOAPMessage msg = MessageFactory.newInstance().createMessage();
+        msg.getSOAPBody().addChildElement("payload", "p", "urn:p").addTextNode("text");
+        for (int i = 0; i < sizes.length; i++) {
+            AttachmentPart ap = msg.createAttachmentPart();
+            byte[] content = content(i, sizes[i]);
+            ap.setRawContentBytes(content, 0, content.length, "application/octet-stream");
+            ap.setContentId(contentId(i));
+            msg.addAttachmentPart(ap);
+        }
+        msg.saveChanges();
+        return msg;
+    }
+
+    /**
+     * Creates a saved message with the given number of attachments of the
+     * same size.
+     */
+    public static SOAPMessage createMessage(int parts, int size) throws Exception {
+        int[] sizes = new int[parts];
+        Arrays.fill(sizes, size);
+        return createMessage(sizes);
+    }
+
+    public static String contentId(int i) {
+        return "<part" + i + "@example.org>";
+    }
+
+    /**
+     * Returns the content of attachment i. It differs for every attachment
+     * and ends with a line break, right before the MIME delimiter.
+     */
+    public static byte[] content(int i, int size) {
+        byte[] content = new byte[size];
+        for (int j = 0; j < content.length; j++) {
+            content[j] = (byte) (i + j * 7);
+        }
+        if (size > 1) {
+            content[size - 2] = '\r';
+            content[size - 1] = '\n';
+        }
+        return content;
+    }
+
+    public static byte[] toBytes(SOAPMessage msg) throws Exception {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        msg.writeTo(bos);
+        return bos.toByteArray();
+    }
+
+    /**
+     * Returns the headers a transport would hand to the receiver of msg.
+     */
+    public static MimeHeaders headers(SOAPMessage msg) {
+        MimeHeaders headers = new MimeHeaders();
+        headers.addHeader("Content-Type", msg.getMimeHeaders().getHeader("Content-Type")[0]);
+        return headers;
+    }
+
+    /**
+     * Tells whether attachments of a received message are parsed on demand
+     * with the current system properties.
+     */
+    public static boolean isLazyParsing() {
+        return !Boolean.getBoolean("saaj.use.mimepull")
+                && !"false".equals(System.getProperty("saaj.mime.optimization"))
+                && !"false".equals(System.getProperty("saaj.lazy.mime.optimization"));
+    }
+
+    /**
+     * Counts the bytes read through it.
+     */
+    public static class CountingInputStream extends FilterInputStream {
+        public long count;
+
+        public CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+    }
+}
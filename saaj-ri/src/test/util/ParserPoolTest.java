@@ -0,0 +1,115 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package util;
+
+import com.sun.xml.messaging.saaj.util.ParserPool;
+import junit.framework.TestCase;
+
+import javax.xml.parsers.SAXParser;
+
+/**
+ * Tests sizing and accounting of {@link ParserPool}.
+ */
+public class ParserPoolTest extends TestCase {
+
+    public ParserPoolTest(String name) {
+        super(name);
+    }
+
+    public void testGrowsUpToMaxSize() throws Exception {
+        ParserPool pool = new ParserPool(1, 3, 0L, 0L);
+        assertEquals(1, pool.getSize());
+
+        SAXParser p1 = pool.get();
+        SAXParser p2 = pool.get();
+        SAXParser p3 = pool.get();
+        assertEquals(1, pool.getHitCount());
+        assertEquals(2, pool.getMissCount());
+        assertEquals(3, pool.getSize());
+
+        pool.returnParser(p1);
+        pool.returnParser(p2);
+        pool.returnParser(p3);
+        assertEquals(3, pool.getIdleCount());
+
+        assertSame(p3, pool.get());
+        assertEquals(2, pool.getHitCount());
+    }
+
+    public void testOverflowDoesNotBlock() throws Exception {
+        ParserPool pool = new ParserPool(1, 1, 0L, 0L);
+        SAXParser p1 = pool.get();
+        SAXParser p2 = pool.get();
+        assertNotSame(p1, p2);
+        assertEquals(1, pool.getOverflowCount());
+        assertEquals(0, pool.getWaitCount());
+
+        pool.returnParser(p2);
+        assertEquals(0, pool.getIdleCount());
+        pool.returnParser(p1);
+        assertEquals(1, pool.getIdleCount());
+        assertEquals(1, pool.getSize());
+    }
+
+    public void testBoundedWait() throws Exception {
+        ParserPool pool = new ParserPool(1, 1, 20L, 0L);
+        pool.get();
+        long start = System.nanoTime();
+        assertNotNull(pool.get());
+        assertTrue(System.nanoTime() - start >= 10000000L);
+        assertEquals(1, pool.getWaitCount());
+        assertEquals(1, pool.getOverflowCount());
+    }
+
+    public void testIdleParsersAreReleased() throws Exception {
+        ParserPool pool = new ParserPool(1, 3, 0L, 1L);
+        SAXParser p1 = pool.get();
+        SAXParser p2 = pool.get();
+        SAXParser p3 = pool.get();
+        pool.returnParser(p1);
+        pool.returnParser(p2);
+        Thread.sleep(20);
+        pool.returnParser(p3);
+        assertEquals(2, pool.getEvictionCount());
+        assertEquals(1, pool.getSize());
+        assertEquals(1, pool.getIdleCount());
+    }
+}